@@ -0,0 +1,332 @@
+import acm.graphics.*;
+import java.awt.Color;
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+/*
+ * Microbenchmarks for the optics math and rendering paths, parameterized over system size, number of sample
+ * points and waist search ROI width. Reports time per operation and bytes allocated per operation (the same
+ * figure as JMH's -prof gc), and compares against a stored baseline so regressions are visible.
+ *
+ * Run from the project root:
+ *   javac -cp acm.jar -d bench/out src/*.java bench/WorkbenchBenchmark.java
+ *   java -Djava.awt.headless=true -cp acm.jar:bench/out WorkbenchBenchmark [options] [filter]
+ *
+ * Options:
+ *   --quick              Shorter warmup and fewer iterations.
+ *   --baseline <file>    Compare against a saved run and flag regressions. Exits with status 1 if any.
+ *   --save <file>        Save this run, e.g. as a new baseline.
+ *   filter               Only run benchmarks whose name contains this string.
+ */
+public class WorkbenchBenchmark {
+
+	/*
+	 * A single operation to time. Returns a value that is folded into a sink so the work is not eliminated.
+	 */
+	private interface Operation {
+		public double run();
+	}
+
+	/*
+	 * Creates the operation for a case. Setup cost is not timed.
+	 */
+	private interface Setup {
+		public Operation create();
+	}
+
+	/*
+	 * Runs the benchmarks selected by the command line.
+	 */
+	public static void main(String[] args) throws IOException {
+		String filter = "";
+		String baselineFile = null;
+		String saveFile = null;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "--quick":
+				warmupTime = QUICK_WARMUP_TIME;
+				iterations = QUICK_ITERATIONS;
+				break;
+			case "--baseline":
+				baselineFile = args[++i];
+				break;
+			case "--save":
+				saveFile = args[++i];
+				break;
+			default:
+				filter = args[i];
+			}
+		}
+
+		Map<String, double[]> baseline = (baselineFile == null) ? null : readResults(baselineFile);
+		LinkedHashMap<String, double[]> results = new LinkedHashMap<String, double[]>();
+		boolean regression = false;
+		System.out.printf("%-45s %14s %10s %14s  %s%n", "Benchmark", "ns/op", "+/-", "B/op", "vs baseline");
+		for (Map.Entry<String, Setup> entry: createCases().entrySet()) {
+			if (! entry.getKey().contains(filter)) continue;
+			double[] result = measure(entry.getValue().create());
+			results.put(entry.getKey(), result);
+			String comparison = "";
+			if (baseline != null && baseline.containsKey(entry.getKey())) {
+				double[] base = baseline.get(entry.getKey());
+				double timeChange = result[0] / base[0] - 1;
+				double allocationChange = result[2] - base[2];
+				comparison = String.format("%+.1f%% time, %+.0f B/op", 100 * timeChange, allocationChange);
+				if (timeChange > TIME_REGRESSION_THRESHOLD
+						|| allocationChange > ALLOCATION_REGRESSION_THRESHOLD * Math.max(base[2], 1)) {
+					comparison += "  REGRESSION";
+					regression = true;
+				}
+			}
+			System.out.printf("%-45s %14.1f %10.1f %14.1f  %s%n", entry.getKey(), result[0], result[1], result[2],
+					comparison);
+		}
+		if (saveFile != null) writeResults(saveFile, results);
+		if (regression) System.exit(1);
+	}
+
+	/*
+	 * Builds every benchmark case, keyed by name and parameters.
+	 */
+	private static LinkedHashMap<String, Setup> createCases() {
+		LinkedHashMap<String, Setup> cases = new LinkedHashMap<String, Setup>();
+
+		cases.put("ABCDMatrix.times", () -> {
+			ABCDMatrix lens = ABCDMatrix.lensMatrix(50);
+			ABCDMatrix space = ABCDMatrix.freeSpace(100);
+			return () -> lens.times(space).baseArray()[1];
+		});
+
+		cases.put("Complex.reciprocal", () -> {
+			Complex q = new Complex(12.5, 4028.3);
+			return () -> q.reciprocal().imag();
+		});
+
+		for (int size: SYSTEM_SIZES) {
+			cases.put("propagateABCDMatrices size=" + size, () -> {
+				ArrayList<OpticsHardware> optics = createSystem(size);
+				return () -> GaussianWorkbench.propagateABCDMatrices(optics, WAVELENGTH).size();
+			});
+		}
+
+		for (int size: SYSTEM_SIZES) {
+			cases.put("getMatrixForPoint size=" + size, () -> {
+				ArrayList<OpticsHardware> optics = createSystem(size);
+				ArrayList<ABCDMatrix> matrices = GaussianWorkbench.propagateABCDMatrices(optics, WAVELENGTH);
+				double[] points = randomPoints(optics, POINT_TABLE_SIZE);
+				int[] next = {0};
+				return () -> {
+					double point = points[next[0]++ & (POINT_TABLE_SIZE - 1)];
+					return GaussianWorkbench.getMatrixForPoint(point, optics, matrices).baseArray()[0];
+				};
+			});
+		}
+
+		for (int size: SEARCH_SYSTEM_SIZES) {
+			for (double width: ROI_WIDTHS) {
+				cases.put("findWaist size=" + size + " roi=" + (int) width, () -> {
+					ArrayList<OpticsHardware> optics = createSystem(size);
+					ArrayList<ABCDMatrix> matrices = GaussianWorkbench.propagateABCDMatrices(optics, WAVELENGTH);
+					double start = middleOf(optics) + LENS_SPACING / 4.0; //Just past a lens, before its focus
+					Complex q_in = sourceQ();
+					return () -> GaussianWorkbench.findWaist(start, start + width, q_in, WAVELENGTH, optics, matrices);
+				});
+			}
+		}
+
+		for (int size: SEARCH_SYSTEM_SIZES) {
+			for (int samples: SAMPLE_COUNTS) {
+				//The beam is traced again on every frame, as it is while an optic is dragged
+				cases.put("drawBeams size=" + size + " samples=" + samples, () -> {
+					OpticsChain chain = new OpticsChain(createSystem(size), WAVELENGTH);
+					GCanvas canvas = new GCanvas();
+					canvas.setSize(2 * samples, CANVAS_HEIGHT);
+					double[] points = viewPoints(chain, canvas);
+					Complex q_in = sourceQ();
+					return () -> {
+						canvas.removeAll();
+						BeamTrace trace = new BeamTrace(chain, q_in, WAVELENGTH);
+						double[] radii = new double[points.length];
+						for (int s = 0; s < points.length; s++) {
+							radii[s] = trace.at(points[s]).getRadius();
+						}
+						GaussianWorkbench.drawEnvelope(canvas, 0, radii, RADIUS_SCALE_FACTOR, Color.RED);
+						return radii[points.length - 1];
+					};
+				});
+			}
+		}
+
+		for (int size: SEARCH_SYSTEM_SIZES) {
+			for (int samples: SAMPLE_COUNTS) {
+				//The path taken by the other beams and by precomputed envelopes: one walk of the chain per frame
+				cases.put("drawBeams.sample size=" + size + " samples=" + samples, () -> {
+					OpticsChain chain = new OpticsChain(createSystem(size), WAVELENGTH);
+					GCanvas canvas = new GCanvas();
+					canvas.setSize(2 * samples, CANVAS_HEIGHT);
+					double[] points = viewPoints(chain, canvas);
+					Complex q_in = sourceQ();
+					return () -> {
+						canvas.removeAll();
+						double[] radii = new double[points.length];
+						chain.sample(points, q_in, WAVELENGTH, radii, null, null);
+						GaussianWorkbench.drawEnvelope(canvas, 0, radii, RADIUS_SCALE_FACTOR, Color.RED);
+						return radii[points.length - 1];
+					};
+				});
+			}
+		}
+		return cases;
+	}
+
+	/*
+	 * Times an operation: warms up, then runs timed iterations. Returns {mean ns/op, standard error of the
+	 * mean, bytes allocated per op}.
+	 */
+	private static double[] measure(Operation operation) {
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long end = System.nanoTime() + warmupTime * 1000000L;
+		while (System.nanoTime() < end) sink += operation.run();
+
+		double[] nsPerOp = new double[iterations];
+		double totalOps = 0;
+		double totalBytes = 0;
+		for (int i = 0; i < iterations; i++) {
+			long ops = 0;
+			long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+			long start = System.nanoTime();
+			long deadline = start + ITERATION_TIME * 1000000L;
+			long now;
+			do {
+				sink += operation.run();
+				ops++;
+				now = System.nanoTime();
+			} while (now < deadline);
+			totalBytes += threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+			totalOps += ops;
+			nsPerOp[i] = (double) (now - start) / ops;
+		}
+
+		double mean = 0;
+		for (double x: nsPerOp) mean += x / iterations;
+		double variance = 0;
+		for (double x: nsPerOp) variance += (x - mean) * (x - mean) / Math.max(1, iterations - 1);
+		return new double[] {mean, Math.sqrt(variance / iterations), totalBytes / totalOps};
+	}
+
+	/*
+	 * Creates a system of a source followed by size - 1 lenses. The lenses form a periodic relay that is stable,
+	 * so the beam has a waist between every pair of lenses.
+	 */
+	private static ArrayList<OpticsHardware> createSystem(int size) {
+		ArrayList<OpticsHardware> optics = new ArrayList<OpticsHardware>();
+		optics.add(new Source(0));
+		for (int i = 1; i < size; i++) {
+			optics.add(new Lens(i * LENS_SPACING, LENS_FOCAL_LENGTH, "L" + i));
+		}
+		return optics;
+	}
+
+	/*
+	 * Returns the position of the lens in the middle of a system.
+	 */
+	private static double middleOf(ArrayList<OpticsHardware> optics) {
+		return optics.get(optics.size() / 2).getPosition();
+	}
+
+	/*
+	 * Returns the ascending points sampled across a canvas whose left edge is at the lens in the middle of a chain,
+	 * one per beam sample as in the workbench.
+	 */
+	private static double[] viewPoints(OpticsChain chain, GCanvas canvas) {
+		int count = GaussianWorkbench.getBeamSampleCount(0, canvas.getWidth());
+		double left = chain.getPosition(chain.size() / 2);
+		double scale = VIEW_WIDTH / canvas.getWidth();
+		double[] points = new double[count];
+		for (int s = 0; s < count; s++) points[s] = left + scale * s * canvas.getWidth() / count;
+		return points;
+	}
+
+	/*
+	 * Returns a table of random points spread over a system, from a fixed seed.
+	 */
+	private static double[] randomPoints(ArrayList<OpticsHardware> optics, int count) {
+		Random random = new Random(RANDOM_SEED);
+		double length = optics.get(optics.size() - 1).getPosition() + LENS_SPACING;
+		double[] points = new double[count];
+		for (int i = 0; i < count; i++) points[i] = random.nextDouble() * length;
+		return points;
+	}
+
+	/*
+	 * Returns q at the source for the default beam.
+	 */
+	private static Complex sourceQ() {
+		return new Complex(0, Math.PI * SOURCE_WAIST * SOURCE_WAIST / (WAVELENGTH * Math.pow(10, -6)));
+	}
+
+	/*
+	 * Reads saved results: one line per benchmark of name, ns/op, error and B/op, separated by tabs.
+	 */
+	private static Map<String, double[]> readResults(String filename) throws IOException {
+		HashMap<String, double[]> results = new HashMap<String, double[]>();
+		BufferedReader rd = new BufferedReader(new FileReader(filename));
+		String line;
+		while ((line = rd.readLine()) != null) {
+			if (line.startsWith("#") || line.trim().isEmpty()) continue;
+			String[] fields = line.split("\t");
+			results.put(fields[0], new double[] {Double.parseDouble(fields[1]), Double.parseDouble(fields[2]),
+					Double.parseDouble(fields[3])});
+		}
+		rd.close();
+		return results;
+	}
+
+	/*
+	 * Writes results in the format read by readResults.
+	 */
+	private static void writeResults(String filename, Map<String, double[]> results) throws IOException {
+		PrintWriter wr = new PrintWriter(new FileWriter(filename));
+		wr.println("# benchmark\tns/op\terror\tB/op");
+		wr.println("# java " + System.getProperty("java.version") + " (" + System.getProperty("java.vm.name") + " "
+				+ System.getProperty("java.vm.version") + ", " + System.getProperty("java.vm.vendor") + "), "
+				+ System.getProperty("os.arch") + ", " + Runtime.getRuntime().availableProcessors() + " processors");
+		for (Map.Entry<String, double[]> entry: results.entrySet()) {
+			double[] result = entry.getValue();
+			wr.println(entry.getKey() + "\t" + result[0] + "\t" + result[1] + "\t" + result[2]);
+		}
+		wr.close();
+	}
+
+
+	/* Sink for benchmark results */
+	private static volatile double sink = 0;
+
+	/* Measurement settings */
+	private static int warmupTime = 2000; //ms
+	private static int iterations = 5;
+	private static final int QUICK_WARMUP_TIME = 300; //ms
+	private static final int QUICK_ITERATIONS = 3;
+	private static final int ITERATION_TIME = 500; //ms
+	private static final double TIME_REGRESSION_THRESHOLD = 0.15; //Fractional slowdown flagged as a regression
+	private static final double ALLOCATION_REGRESSION_THRESHOLD = 0.10; //Fractional allocation increase flagged
+
+	/* Benchmark parameters */
+	private static final int[] SYSTEM_SIZES = {10, 100, 1000, 10000, 100000};
+	private static final int[] SEARCH_SYSTEM_SIZES = {10, 1000, 100000};
+	private static final double[] ROI_WIDTHS = {10, 100, 1000}; //mm
+	private static final int[] SAMPLE_COUNTS = {256, 1024, 4096};
+	private static final int POINT_TABLE_SIZE = 1024; //Must be a power of 2
+	private static final long RANDOM_SEED = 42;
+	private static final double LENS_SPACING = 100; //mm
+	private static final double LENS_FOCAL_LENGTH = 50; //mm
+	private static final double WAVELENGTH = 780; //nm
+	private static final double SOURCE_WAIST = 1.0; //mm
+	private static final double VIEW_WIDTH = 1040; //mm shown across the canvas
+	private static final int CANVAS_HEIGHT = 700; //pixels
+	private static final double RADIUS_SCALE_FACTOR = 10; //pixels per mm
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Represents an augmented ABCDEF ray matrix, the 3 by 3 matrix [[A, B, E], [C, D, F], [0, 0, 1]] acting on the ray
+ * vector (x, theta, 1). E (mm) and F (rad) are the offset and angle a misaligned optic adds to every ray, so the
+ * matrix carries the centre of a beam as well as its size. q is acted on by the ABCD part alone: misalignment moves
+ * and steers a Gaussian beam without changing it. Note that an ABCDEFMatrix object is immutable.
+ */
+
+public class ABCDEFMatrix {
+
+	/*
+	 * Constructs an ABCDEF matrix from its ABCD part and its offset E (mm) and angle F (rad).
+	 */
+	public ABCDEFMatrix(ABCDMatrix abcd, double E, double F) {
+		this.abcd = abcd;
+		this.E = E;
+		this.F = F;
+	}
+
+	/*
+	 * Returns the ABCD part of the matrix.
+	 */
+	public ABCDMatrix ABCD() {
+		return abcd;
+	}
+
+	/*
+	 * Returns the offset (mm) added to a ray.
+	 */
+	public double getE() {
+		return E;
+	}
+
+	/*
+	 * Returns the angle (rad) added to a ray.
+	 */
+	public double getF() {
+		return F;
+	}
+
+	/*
+	 * Returns a string representation of the matrix.
+	 */
+	public String toString() {
+		double[] m = abcd.baseArray();
+		return "[[" + m[0] + "," + m[1] + "," + E + "][" + m[2] + "," + m[3] + "," + F + "][0,0,1]]";
+	}
+
+
+	//Static methods
+
+	/*
+	 * Returns the entries [dE/dd, dE/dt, dF/dd, dF/dt] of the offset and angle added by an optic with a given ABCD
+	 * matrix per unit decentre d (mm) and tilt t (rad) about its reference plane. A ray is taken into the frame of
+	 * the optic, acted on, and taken back, giving E = d (1 - A) - B t and F = (1 - D) t - C d.
+	 */
+	public static double[] misalignmentResponse(ABCDMatrix abcd) {
+		double[] m = abcd.baseArray();
+		return new double[] {1 - m[0], -m[1], -m[2], 1 - m[3]};
+	}
+
+
+
+	//Private instance variables
+
+	private final ABCDMatrix abcd;
+	private final double E; //mm
+	private final double F; //rad
+
+}
@@ -58,6 +58,55 @@ public class ABCDMatrix {
 		return new ABCDMatrix(entries[0] * c, entries[1] * c, entries[2] * c, entries[3] * c);
 	}
 	
+	/*
+	 * Returns the inverse matrix, which carries a beam back through the same system. The determinant is 1 for
+	 * optics between media of equal index, but is divided out in general.
+	 */
+	public ABCDMatrix inverse() {
+		double determinant = entries[0] * entries[3] - entries[1] * entries[2];
+		return new ABCDMatrix(entries[3] / determinant, -entries[1] / determinant,
+							  -entries[2] / determinant, entries[0] / determinant);
+	}
+	
+	/*
+	 * Returns the matrix raised to a non-negative power, in constant time whatever the power, by Sylvester's theorem:
+	 * M^n = U(n-1) M - U(n-2) I, where U(k) = sin((k + 1) t) / sin(t) and cos(t) = (A + D) / 2, with the hyperbolic
+	 * form when |A + D| > 2. Near |A + D| = 2, where t is poorly determined, falls back to repeated squaring, which
+	 * takes log2(n) products. Assumes a determinant of 1, as for any chain of lenses and free space.
+	 */
+	public ABCDMatrix power(long n) {
+		double x = (entries[0] + entries[3]) / 2;
+		if (Math.abs(Math.abs(x) - 1) < SYLVESTER_MIN_DISTANCE) {
+			ABCDMatrix result = identity();
+			ABCDMatrix square = this;
+			for (long k = n; k > 0; k >>= 1) {
+				if ((k & 1) == 1) result = result.times(square);
+				square = square.times(square);
+			}
+			return result;
+		}
+		if (n == 0) return identity();
+		double u1; //U(n-1)
+		double u2; //U(n-2)
+		if (Math.abs(x) < 1) {
+			double t = Math.acos(x);
+			u1 = Math.sin(n * t) / Math.sin(t);
+			u2 = Math.sin((n - 1) * t) / Math.sin(t);
+		} else {
+			double t = Math.log(Math.abs(x) + Math.sqrt(x * x - 1)); //acosh |x|
+			u1 = Math.sinh(n * t) / Math.sinh(t);
+			u2 = Math.sinh((n - 1) * t) / Math.sinh(t);
+			if (x < 0) { //U(k) at -|x| is (-1)^k U(k) at |x|
+				if (n % 2 == 0) {
+					u1 = -u1;
+				} else {
+					u2 = -u2;
+				}
+			}
+		}
+		return new ABCDMatrix(u1 * entries[0] - u2, u1 * entries[1], u1 * entries[2], u1 * entries[3] - u2);
+	}
+	
 	/*
 	 * Transforms q via action by an ABCDMatrix.
 	 */
@@ -97,4 +146,9 @@ public class ABCDMatrix {
 	
 	private double[] entries = new double[4];
 	
+	
+	//Constants
+	
+	private static final double SYLVESTER_MIN_DISTANCE = Math.pow(10, -6); //Of |A + D| / 2 from 1
+	
 }
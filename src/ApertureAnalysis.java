@@ -0,0 +1,140 @@
+import java.util.stream.*;
+
+/*
+ * Clipping of a beam by the clear apertures of the optics. A Gaussian beam of 1/e^2 radius w passes a fraction
+ * 1 - exp(-2 a^2 / w^2) of its power through a circular aperture of radius a. The beam past an aperture is taken to
+ * stay Gaussian, so the fractions multiply, which holds while the losses are small. In free space w^2 is a
+ * quadratic in z with a positive leading coefficient, so the widest point of a segment between two optics is
+ * always at one of its ends: the radii at the optics give the peak radius over the whole beam without sampling.
+ */
+public class ApertureAnalysis {
+
+	/*
+	 * Analyzes a beam with q = q_in at the source through a chain. apertures holds the clear aperture diameter
+	 * (mm) of each optic of the chain, 0 for none, and lengths the length (mm) of each, 0 for a thin optic. The
+	 * beam inside an optic with a length is not included in the peak. wavelength is in nm.
+	 */
+	public ApertureAnalysis(OpticsChain chain, Complex q_in, double wavelength, double[] apertures, double[] lengths) {
+		int n = chain.size();
+		double lambda = wavelength * Math.pow(10, -6); //mm
+		double[] qr = new double[n];
+		double[] qi = new double[n];
+		chain.trace(q_in, qr, qi, new double[n]);
+		radii = new double[n];
+		transmissions = new double[n];
+		totalTransmission = 1;
+		for (int i = 0; i < n; i++) {
+			double exit = qr[i] + lengths[i]; //q at the far end of the optic, the same plane for a thin one
+			radii[i] = radius(exit, qi[i], lambda);
+			transmissions[i] = transmission(apertures[i], radii[i]);
+			totalTransmission *= transmissions[i];
+			if (! (radii[i] <= peakRadius)) { //Ends of the segment after the optic, the start first
+				peakRadius = radii[i];
+				peakPosition = chain.getPosition(i) + lengths[i];
+			}
+			if (i + 1 < n) {
+				double end = radius(exit + chain.getPosition(i + 1) - chain.getPosition(i) - lengths[i], qi[i], lambda);
+				if (end > peakRadius) {
+					peakRadius = end;
+					peakPosition = chain.getPosition(i + 1);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Returns the beam radius (mm) at the optic at an index, at its exit if it has a length.
+	 */
+	public double getRadius(int index) {
+		return radii[index];
+	}
+
+	/*
+	 * Returns the fraction of power that passes the aperture of the optic at an index.
+	 */
+	public double getTransmission(int index) {
+		return transmissions[index];
+	}
+
+	/*
+	 * Returns the fraction of power that passes every aperture.
+	 */
+	public double getTotalTransmission() {
+		return totalTransmission;
+	}
+
+	/*
+	 * Returns the largest beam radius (mm) between the source and the last optic.
+	 */
+	public double getPeakRadius() {
+		return peakRadius;
+	}
+
+	/*
+	 * Returns the position (mm) of the largest beam radius.
+	 */
+	public double getPeakPosition() {
+		return peakPosition;
+	}
+
+
+	//Static methods
+
+	/*
+	 * Returns the fraction of power of a beam of 1/e^2 radius (mm) that passes a circular clear aperture of a given
+	 * diameter (mm). 1 if the diameter is 0, meaning no aperture.
+	 */
+	public static double transmission(double apertureDiameter, double radius) {
+		if (apertureDiameter <= 0) return 1;
+		double a = apertureDiameter / 2;
+		return 1 - Math.exp(-2 * a * a / (radius * radius));
+	}
+
+	/*
+	 * Returns the lowest total transmission over the tuning range of each of several tunable optics, each tuned
+	 * through its settings with the others left as they are. focalLengths[k] lists the settings of the optic at
+	 * index tunables[k]. All the settings of all the optics are evaluated in one parallel sweep. In resonator mode
+	 * the beam at each setting is that setting's cavity mode, and settings with no stable mode are skipped;
+	 * otherwise q_in is used throughout. An optic with no stable setting gives NaN.
+	 */
+	public static double[] worstOverTuning(OpticsChain chain, boolean resonator, Complex q_in, double wavelength,
+			double[] apertures, double[] lengths, int[] tunables, double[][] focalLengths) {
+		int settings = 0;
+		for (double[] f: focalLengths) settings = Math.max(settings, f.length);
+		final int stride = settings;
+		double[] transmissions = IntStream.range(0, tunables.length * stride).parallel().mapToDouble(job -> {
+			int k = job / stride;
+			int setting = job % stride;
+			if (setting >= focalLengths[k].length) return Double.NaN;
+			OpticsChain variant = chain.withLens(tunables[k], focalLengths[k][setting]);
+			Complex q = resonator ? Resonator.eigenmode(variant.transfer(0, variant.size() - 1)) : q_in;
+			if (q == null) return Double.NaN; //No stable mode at this setting
+			return new ApertureAnalysis(variant, q, wavelength, apertures, lengths).getTotalTransmission();
+		}).toArray();
+		double[] worst = new double[tunables.length];
+		for (int k = 0; k < tunables.length; k++) {
+			worst[k] = Double.NaN;
+			for (int setting = 0; setting < stride; setting++) {
+				double t = transmissions[k * stride + setting];
+				if (! Double.isNaN(t) && ! (t >= worst[k])) worst[k] = t;
+			}
+		}
+		return worst;
+	}
+
+	/*
+	 * Returns the 1/e^2 radius of a beam from the real and imaginary parts of its q.
+	 */
+	private static double radius(double qr, double qi, double lambda) {
+		return Math.sqrt(lambda * (qr * qr + qi * qi) / (Math.PI * qi));
+	}
+
+
+	/* Instance variables */
+	private final double[] radii;
+	private final double[] transmissions;
+	private double totalTransmission;
+	private double peakRadius = Double.NaN;
+	private double peakPosition = Double.NaN;
+
+}
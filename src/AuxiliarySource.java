@@ -0,0 +1,81 @@
+/*
+ * Class representing a further laser entering the bench, such as an imaging beam overlapped with a trap beam. Like
+ * a POI it has no effect on the beams passing it. Its own collimated beam starts at its position and passes
+ * through the optics downstream of it.
+ */
+public class AuxiliarySource extends POI {
+
+	/*
+	 * Constructor. waist is the 1/e^2 radius (mm) of the collimated beam at the source and wavelength is in nm.
+	 */
+	public AuxiliarySource(double position, double waist, double wavelength, String name) {
+		super(position, name);
+		this.waist = waist;
+		this.wavelength = wavelength;
+	}
+
+	/*
+	 * Returns the type.
+	 */
+	public String getType() {
+		return "AuxiliarySource";
+	}
+
+	/*
+	 * Returns the 1/e^2 radius (mm) of the beam at the source.
+	 */
+	public double getWaist() {
+		return waist;
+	}
+
+	/*
+	 * Sets the 1/e^2 radius (mm) of the beam at the source.
+	 */
+	public void setWaist(double waist) {
+		this.waist = waist;
+	}
+
+	/*
+	 * Returns the wavelength (nm) of the beam.
+	 */
+	public double getWavelength() {
+		return wavelength;
+	}
+
+	/*
+	 * Sets the wavelength (nm) of the beam.
+	 */
+	public void setWavelength(double wavelength) {
+		this.wavelength = wavelength;
+	}
+
+	/*
+	 * Returns the q of the beam at the source.
+	 */
+	public Complex getQ() {
+		return new Complex(0, Math.PI * waist * waist / (wavelength * Math.pow(10, -6)));
+	}
+
+	/*
+	 * Returns a copy of the source.
+	 */
+	public OpticsHardware copy() {
+		return new AuxiliarySource(getPosition(), waist, wavelength, getName());
+	}
+
+	/*
+	 * Returns whether another optic is an auxiliary source with the same name and parameters.
+	 */
+	public boolean matches(OpticsHardware o) {
+		if (o == null || o.getClass() != AuxiliarySource.class) return false;
+		AuxiliarySource s = (AuxiliarySource) o;
+		return getPosition() == s.getPosition() && getName().equals(s.getName()) && waist == s.waist
+				&& wavelength == s.wavelength;
+	}
+
+
+	/* Instance variables */
+	private volatile double waist;
+	private volatile double wavelength;
+
+}
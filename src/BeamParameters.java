@@ -0,0 +1,42 @@
+/*
+ * The parameters of a Gaussian beam at a point. Note that this is an immutable object.
+ */
+public class BeamParameters {
+
+	/*
+	 * Constructor. radius and radiusOfCurvature are in mm and gouyPhase is in radians.
+	 */
+	public BeamParameters(double radius, double radiusOfCurvature, double gouyPhase) {
+		this.radius = radius;
+		this.radiusOfCurvature = radiusOfCurvature;
+		this.gouyPhase = gouyPhase;
+	}
+
+	/*
+	 * Returns the 1/e^2 radius of the beam (mm).
+	 */
+	public double getRadius() {
+		return radius;
+	}
+
+	/*
+	 * Returns the radius of curvature of the wavefront (mm). Diverges at a waist.
+	 */
+	public double getRadiusOfCurvature() {
+		return radiusOfCurvature;
+	}
+
+	/*
+	 * Returns the Gouy phase accumulated since the source (radians).
+	 */
+	public double getGouyPhase() {
+		return gouyPhase;
+	}
+
+
+	/* Instance variables */
+	private final double radius;
+	private final double radiusOfCurvature;
+	private final double gouyPhase;
+
+}
@@ -0,0 +1,279 @@
+/*
+ * Least-squares fit of the source beam to a measured beam profile: radii measured at a set of positions along the
+ * bench, as from knife-edge or camera scans. The beam starts at the source, which stays where it is, and has its
+ * waist somewhere before the first optic, so the fit finds the waist radius, the position of the waist and the beam
+ * quality M^2, with the beam carried through the optics as they are. The fit is Levenberg-Marquardt with the
+ * analytic Jacobian.
+ *
+ * For a waist w0 at the source, the radius where the matrix from the source has entries A and B is given by
+ * w^2 = A^2 w0^2 + (M^2 lambda / pi)^2 B^2 / w0^2. A and B are found once for every measured position in one walk of
+ * the chain, and moving the waist away from the source only adds free space before the first optic, so each
+ * iteration of the fit is a single pass over primitive arrays with no walk of the chain at all.
+ */
+public class BeamProfileFit {
+
+	/*
+	 * Fits the source beam of a chain to radii (mm) measured at an ascending array of positions, at a wavelength in
+	 * nm, starting from a waist (mm) at the source as it is and M^2 of 1. Needs at least three measurements.
+	 */
+	public BeamProfileFit(OpticsChain chain, double[] positions, double[] radii, double wavelength,
+			double startWaist) {
+		this.chain = chain;
+		this.wavelength = wavelength;
+		int n = positions.length;
+		if (n < PARAMETERS || radii.length != n) {
+			throw new IllegalArgumentException("A fit needs three or more measured radii");
+		}
+		measured = radii;
+		a = new double[n];
+		b = new double[n];
+		chain.sampleTransfer(positions, a, b);
+		reference = chain.getPosition(0);
+		latestPosition = (chain.size() > 1) ? chain.getPosition(1) : Double.POSITIVE_INFINITY;
+
+		double[] p = {startWaist, reference, 1};
+		double[] normal = new double[PARAMETERS * PARAMETERS];
+		double[] gradient = new double[PARAMETERS];
+		double[] trialNormal = new double[PARAMETERS * PARAMETERS];
+		double[] trialGradient = new double[PARAMETERS];
+		double[] damped = new double[PARAMETERS * PARAMETERS];
+		double[] step = new double[PARAMETERS];
+		double cost = evaluate(p, normal, gradient);
+		double damping = START_DAMPING;
+		int iteration = 0;
+		boolean done = false;
+		while (! done && iteration < MAX_ITERATIONS && damping < MAX_DAMPING) {
+			iteration++;
+			System.arraycopy(normal, 0, damped, 0, normal.length);
+			for (int j = 0; j < PARAMETERS; j++) damped[j * PARAMETERS + j] *= 1 + damping;
+			for (int j = 0; j < PARAMETERS; j++) step[j] = -gradient[j];
+			if (! solve(damped, step)) {
+				damping *= DAMPING_FACTOR;
+				continue;
+			}
+			double[] trial = {p[0] + step[0], Math.min(p[1] + step[1], latestPosition), p[2] + step[2]};
+			if (! (trial[0] > 0) || ! (trial[2] > 0)) { //Waist and M^2 must stay positive
+				damping *= DAMPING_FACTOR;
+				continue;
+			}
+			double trialCost = evaluate(trial, trialNormal, trialGradient);
+			if (trialCost < cost) {
+				done = cost - trialCost <= TOLERANCE * cost;
+				p = trial;
+				cost = trialCost;
+				System.arraycopy(trialNormal, 0, normal, 0, normal.length);
+				System.arraycopy(trialGradient, 0, gradient, 0, gradient.length);
+				damping = Math.max(damping / DAMPING_FACTOR, MIN_DAMPING);
+			} else {
+				damping *= DAMPING_FACTOR;
+			}
+		}
+		waist = p[0];
+		waistPosition = p[1];
+		mSquared = p[2];
+		rmsResidual = Math.sqrt(cost / n);
+		iterations = iteration;
+
+		//Standard errors from the covariance, the residual variance times the inverse of the normal matrix
+		double variance = (n > PARAMETERS) ? cost / (n - PARAMETERS) : Double.NaN;
+		errors = new double[PARAMETERS];
+		for (int j = 0; j < PARAMETERS; j++) {
+			double[] unit = new double[PARAMETERS];
+			unit[j] = 1;
+			double[] copy = normal.clone();
+			errors[j] = solve(copy, unit) ? Math.sqrt(variance * unit[j]) : Double.NaN;
+		}
+	}
+
+	/*
+	 * Returns the fitted waist radius (mm).
+	 */
+	public double getWaist() {
+		return waist;
+	}
+
+	/*
+	 * Returns the fitted position of the waist. It is never after the first optic, and is before the source if the
+	 * beam leaving the source is already diverging.
+	 */
+	public double getWaistPosition() {
+		return waistPosition;
+	}
+
+	/*
+	 * Returns the position of the source, where the fitted beam starts.
+	 */
+	public double getSourcePosition() {
+		return reference;
+	}
+
+	/*
+	 * Returns the fitted beam quality M^2.
+	 */
+	public double getMSquared() {
+		return mSquared;
+	}
+
+	/*
+	 * Returns the standard errors of the waist (mm), waist position (mm) and M^2, or NaN with too few measurements.
+	 */
+	public double[] getStandardErrors() {
+		return errors.clone();
+	}
+
+	/*
+	 * Returns the root mean square of the differences (mm) between the fitted and measured radii.
+	 */
+	public double getRmsResidual() {
+		return rmsResidual;
+	}
+
+	/*
+	 * Returns the number of iterations the fit took.
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/*
+	 * Computes the radius of the fitted beam at each of an ascending array of positions. Positions before the source
+	 * are set to NaN.
+	 */
+	public void sample(double[] samplePositions, double[] radiusOut) {
+		double[] sampleA = new double[samplePositions.length];
+		double[] sampleB = new double[samplePositions.length];
+		chain.sampleTransfer(samplePositions, sampleA, sampleB);
+		double kappa = wavelength * Math.pow(10, -6) * mSquared / Math.PI;
+		double shift = reference - waistPosition;
+		for (int s = 0; s < samplePositions.length; s++) {
+			if (samplePositions[s] < reference) {
+				radiusOut[s] = Double.NaN;
+				continue;
+			}
+			double d = sampleB[s] + sampleA[s] * shift;
+			radiusOut[s] = Math.sqrt(sampleA[s] * sampleA[s] * waist * waist + kappa * kappa * d * d / (waist * waist));
+		}
+	}
+
+	/*
+	 * Computes the radii for parameters {waist, waist position, M^2}, returning the sum of the squared residuals
+	 * and filling the normal matrix J^T J and the gradient J^T r. The one pass over the measurements that every
+	 * iteration makes.
+	 */
+	private double evaluate(double[] p, double[] normal, double[] gradient) {
+		double w0 = p[0];
+		double w02 = w0 * w0;
+		double m2 = p[2];
+		double kappa = wavelength * Math.pow(10, -6) * m2 / Math.PI;
+		double k2 = kappa * kappa;
+		double shift = reference - p[1];
+		double j00 = 0; //Entries of the normal matrix
+		double j01 = 0;
+		double j02 = 0;
+		double j11 = 0;
+		double j12 = 0;
+		double j22 = 0;
+		double g0 = 0; //Entries of the gradient
+		double g1 = 0;
+		double g2 = 0;
+		double cost = 0;
+		for (int i = 0; i < measured.length; i++) {
+			double ai = a[i];
+			double d = b[i] + ai * shift;
+			double far = k2 * d * d / w02; //Square of the part of the radius from divergence
+			double w = Math.sqrt(ai * ai * w02 + far);
+			double r = w - measured[i];
+			double dw0 = (ai * ai * w0 - far / w0) / w;
+			double dPosition = -k2 * d * ai / (w02 * w);
+			double dM2 = far / (m2 * w);
+			j00 += dw0 * dw0;
+			j01 += dw0 * dPosition;
+			j02 += dw0 * dM2;
+			j11 += dPosition * dPosition;
+			j12 += dPosition * dM2;
+			j22 += dM2 * dM2;
+			g0 += dw0 * r;
+			g1 += dPosition * r;
+			g2 += dM2 * r;
+			cost += r * r;
+		}
+		normal[0] = j00;
+		normal[1] = j01;
+		normal[2] = j02;
+		normal[3] = j01;
+		normal[4] = j11;
+		normal[5] = j12;
+		normal[6] = j02;
+		normal[7] = j12;
+		normal[8] = j22;
+		gradient[0] = g0;
+		gradient[1] = g1;
+		gradient[2] = g2;
+		return cost;
+	}
+
+
+	//Static methods
+
+	/*
+	 * Solves a small square system in place by Gaussian elimination with partial pivoting, the matrix given by rows
+	 * and the right-hand side replaced by the solution. Returns false if the matrix is singular.
+	 */
+	private static boolean solve(double[] matrix, double[] rhs) {
+		int n = rhs.length;
+		for (int col = 0; col < n; col++) {
+			int pivot = col;
+			for (int row = col + 1; row < n; row++) {
+				if (Math.abs(matrix[row * n + col]) > Math.abs(matrix[pivot * n + col])) pivot = row;
+			}
+			if (! (Math.abs(matrix[pivot * n + col]) > 0)) return false;
+			if (pivot != col) {
+				for (int k = 0; k < n; k++) {
+					double swap = matrix[col * n + k];
+					matrix[col * n + k] = matrix[pivot * n + k];
+					matrix[pivot * n + k] = swap;
+				}
+				double swap = rhs[col];
+				rhs[col] = rhs[pivot];
+				rhs[pivot] = swap;
+			}
+			for (int row = col + 1; row < n; row++) {
+				double factor = matrix[row * n + col] / matrix[col * n + col];
+				for (int k = col; k < n; k++) matrix[row * n + k] -= factor * matrix[col * n + k];
+				rhs[row] -= factor * rhs[col];
+			}
+		}
+		for (int row = n - 1; row >= 0; row--) {
+			double sum = rhs[row];
+			for (int k = row + 1; k < n; k++) sum -= matrix[row * n + k] * rhs[k];
+			rhs[row] = sum / matrix[row * n + row];
+		}
+		return true;
+	}
+
+
+	/* Instance variables */
+	private final OpticsChain chain;
+	private final double wavelength; //nm
+	private final double[] measured; //mm
+	private final double[] a; //A entry of the matrix from the source to each measurement
+	private final double[] b; //B entry, mm
+	private final double reference; //Position of the source in the chain
+	private final double latestPosition; //Of the waist, at the first optic after the source
+	private final double waist; //mm
+	private final double waistPosition; //mm
+	private final double mSquared;
+	private final double[] errors;
+	private final double rmsResidual; //mm
+	private final int iterations;
+
+	/* Constants */
+	private static final int PARAMETERS = 3;
+	private static final int MAX_ITERATIONS = 200;
+	private static final double TOLERANCE = 1e-12; //Relative fall in the cost at which the fit has converged
+	private static final double START_DAMPING = 1e-3;
+	private static final double MIN_DAMPING = 1e-12;
+	private static final double MAX_DAMPING = 1e12;
+	private static final double DAMPING_FACTOR = 10;
+
+}
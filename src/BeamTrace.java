@@ -0,0 +1,82 @@
+/*
+ * The beam traced once through a chain of optics: q just past each optic and the Gouy phase accumulated up to it.
+ * The parameters at any point then follow from the nearest optic upstream by free space propagation alone, so a
+ * query costs a binary search and no matrix products.
+ */
+public class BeamTrace {
+
+	/*
+	 * Traces a beam with q = q_in at the source through a chain. wavelength is in nm.
+	 */
+	public BeamTrace(OpticsChain chain, Complex q_in, double wavelength) {
+		int n = chain.size();
+		positions = new double[n];
+		for (int i = 0; i < n; i++) {
+			positions[i] = chain.getPosition(i);
+		}
+		qReal = new double[n];
+		qImag = new double[n];
+		gouyPhases = new double[n];
+		chain.trace(q_in, qReal, qImag, gouyPhases);
+		this.q_in = q_in;
+		this.wavelength = wavelength;
+	}
+
+	/*
+	 * Returns whether the trace was made for a given q at the source and wavelength.
+	 */
+	public boolean isFor(Complex q_in, double wavelength) {
+		return this.wavelength == wavelength && this.q_in.real() == q_in.real() && this.q_in.imag() == q_in.imag();
+	}
+
+	/*
+	 * Returns the beam parameters at a point, or null if the point is before the source.
+	 */
+	public BeamParameters at(double point) {
+		int index = floorIndex(point);
+		if (index < 0) return null;
+		double distance = point - positions[index];
+		double qr = qReal[index] + distance;
+		double qi = qImag[index];
+		double modulusSquared = qr * qr + qi * qi;
+		double radius = Math.sqrt(wavelength * Math.pow(10, -6) * modulusSquared / (Math.PI * qi));
+		double gouyPhase = gouyPhases[index] + OpticsChain.gouyPhase(1, distance, qReal[index], qi);
+		return new BeamParameters(radius, modulusSquared / qr, gouyPhase);
+	}
+
+	/*
+	 * Returns q at a point, or null if the point is before the source.
+	 */
+	public Complex getQ(double point) {
+		int index = floorIndex(point);
+		if (index < 0) return null;
+		return new Complex(qReal[index] + point - positions[index], qImag[index]);
+	}
+
+	/*
+	 * Returns the index of the last optic at or before a point, or -1 if there is none.
+	 */
+	private int floorIndex(double point) {
+		int low = 0;
+		int high = positions.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (positions[mid] <= point) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return high;
+	}
+
+
+	/* Instance variables */
+	private final double[] positions;
+	private final double[] qReal; //q just past each optic
+	private final double[] qImag;
+	private final double[] gouyPhases; //Accumulated from the source to just past each optic
+	private final Complex q_in;
+	private final double wavelength;
+
+}
@@ -0,0 +1,72 @@
+import java.util.*;
+
+/*
+ * Unlimited undo and redo for the bench, as a list of snapshots and a cursor. Consecutive snapshots share
+ * structure (see BenchSnapshot), so a long history of small edits stays small.
+ */
+public class BenchHistory {
+
+	/*
+	 * Records the state of the bench as a new step, discarding any steps that were undone. Does nothing and
+	 * returns false if the state is unchanged since the current step. The caller is responsible for locking.
+	 */
+	public boolean record(List<OpticsHardware> optics, double wavelength, double collWaist) {
+		BenchSnapshot previous = current();
+		BenchSnapshot snapshot = BenchSnapshot.of(previous, optics, wavelength, collWaist);
+		if (snapshot == previous) return false;
+		steps.subList(cursor + 1, steps.size()).clear();
+		steps.add(snapshot);
+		cursor++;
+		return true;
+	}
+
+	/*
+	 * Returns the snapshot of the current step, or null if nothing has been recorded.
+	 */
+	public BenchSnapshot current() {
+		return (cursor >= 0) ? steps.get(cursor) : null;
+	}
+
+	/*
+	 * Returns whether there is a step to undo.
+	 */
+	public boolean canUndo() {
+		return cursor > 0;
+	}
+
+	/*
+	 * Returns whether there is an undone step to redo.
+	 */
+	public boolean canRedo() {
+		return cursor + 1 < steps.size();
+	}
+
+	/*
+	 * Steps back and returns the snapshot to restore, or null if there is nothing to undo.
+	 */
+	public BenchSnapshot undo() {
+		if (!canUndo()) return null;
+		return steps.get(--cursor);
+	}
+
+	/*
+	 * Steps forward and returns the snapshot to restore, or null if there is nothing to redo.
+	 */
+	public BenchSnapshot redo() {
+		if (!canRedo()) return null;
+		return steps.get(++cursor);
+	}
+
+	/*
+	 * Returns the number of recorded steps.
+	 */
+	public int size() {
+		return steps.size();
+	}
+
+
+	/* Instance variables */
+	private final ArrayList<BenchSnapshot> steps = new ArrayList<BenchSnapshot>();
+	private int cursor = -1;
+
+}
@@ -0,0 +1,272 @@
+import java.util.*;
+
+/*
+ * Immutable snapshot of the bench: every optic and the source parameters. The optics are held in a persistent
+ * treap keyed by position. A snapshot is built from its predecessor by path copying, so two snapshots that differ
+ * in k optics share all but O(k log n) nodes. Only the state of each optic is kept, not the propagated matrices:
+ * an edit changes every matrix downstream of it, so keeping them would copy most of the tree on every step. They
+ * are computed again on restore instead. Optics stored in a snapshot are private copies and are never handed out,
+ * so they can't be changed after the fact.
+ */
+public class BenchSnapshot {
+
+	/*
+	 * Receives the differences between two snapshots.
+	 */
+	public interface Changes {
+		/* An optic was added or changed. The optic is a copy. */
+		public void opticPut(OpticsHardware optic);
+
+		/* The optic at a position was removed. */
+		public void opticRemoved(double position);
+
+		/* The wavelength (nm) or collimated waist (mm) changed. */
+		public void sourceChanged(double wavelength, double collWaist);
+	}
+
+	/*
+	 * Node of a treap. Ordered by key as a binary search tree and by priority as a max-heap.
+	 */
+	private static class Node<T> {
+		Node(double key, T value, int priority, Node<T> left, Node<T> right) {
+			this.key = key;
+			this.value = value;
+			this.priority = priority;
+			this.left = left;
+			this.right = right;
+		}
+
+		/* Returns a copy of the node with different children. */
+		Node<T> withChildren(Node<T> newLeft, Node<T> newRight) {
+			if (newLeft == left && newRight == right) return this;
+			return new Node<T>(key, value, priority, newLeft, newRight);
+		}
+
+		final double key;
+		final T value;
+		final int priority;
+		final Node<T> left;
+		final Node<T> right;
+	}
+
+	/*
+	 * Constructs a snapshot from its parts.
+	 */
+	private BenchSnapshot(Node<OpticsHardware> optics, int size, double wavelength, double collWaist) {
+		this.optics = optics;
+		this.size = size;
+		this.wavelength = wavelength;
+		this.collWaist = collWaist;
+	}
+
+	/*
+	 * Returns a snapshot of the bench, sharing structure with a previous snapshot (which may be null). Optics must be
+	 * sorted by position with no two at the same position. Walks the optics and the previous snapshot in order
+	 * together, without building a list of either; only optics that were added, removed or changed are copied.
+	 * Returns previous itself if nothing has changed. The caller is responsible for locking.
+	 */
+	public static BenchSnapshot of(BenchSnapshot previous, List<OpticsHardware> optics, double wavelength,
+			double collWaist) {
+		Node<OpticsHardware> oldRoot = (previous == null) ? null : previous.optics;
+		Node<OpticsHardware> root = oldRoot;
+		InOrder<OpticsHardware> old = new InOrder<OpticsHardware>(oldRoot);
+		for (OpticsHardware o: optics) {
+			double key = o.getPosition();
+			while (old.peek() != null && Double.compare(old.peek().key, key) < 0) { //Optic no longer present
+				root = remove(root, old.next().key);
+			}
+			if (old.peek() != null && Double.compare(old.peek().key, key) == 0) {
+				if (! old.next().value.matches(o)) root = put(root, key, o.copy());
+			} else {
+				root = put(root, key, o.copy());
+			}
+		}
+		while (old.peek() != null) root = remove(root, old.next().key);
+		if (previous != null && root == oldRoot && previous.wavelength == wavelength
+				&& previous.collWaist == collWaist) {
+			return previous;
+		}
+		return new BenchSnapshot(root, optics.size(), wavelength, collWaist);
+	}
+
+	/*
+	 * Returns the number of optics, including the source.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * Returns the wavelength in nm.
+	 */
+	public double getWavelength() {
+		return wavelength;
+	}
+
+	/*
+	 * Returns the collimated waist in mm.
+	 */
+	public double getCollWaist() {
+		return collWaist;
+	}
+
+	/*
+	 * Appends fresh copies of the optics, sorted by position, to a list.
+	 */
+	public void restore(List<OpticsHardware> opticsOut) {
+		InOrder<OpticsHardware> nodes = new InOrder<OpticsHardware>(optics);
+		while (nodes.peek() != null) opticsOut.add(nodes.next().value.copy());
+	}
+
+	/*
+	 * Reports the changes that turn one snapshot (which may be null, for an empty bench) into another. Changes to
+	 * the propagated matrices alone are not reported. Subtrees the two snapshots share are skipped, so snapshots
+	 * a few edits apart are compared in roughly O(k log n) time rather than by a walk of both.
+	 */
+	public static void diff(BenchSnapshot from, BenchSnapshot to, Changes changes) {
+		diff((from == null) ? null : from.optics, to.optics, changes);
+		if (from == null || from.wavelength != to.wavelength || from.collWaist != to.collWaist) {
+			changes.sourceChanged(to.wavelength, to.collWaist);
+		}
+	}
+
+
+	//Treap operations. None of them modifies an existing node.
+
+	/*
+	 * Walks the nodes of a subtree in order, holding only the path to the next node.
+	 */
+	private static class InOrder<T> {
+		InOrder(Node<T> root) {
+			descend(root);
+		}
+
+		/* Returns the next node without moving past it, or null at the end. */
+		Node<T> peek() {
+			return path.peek();
+		}
+
+		/* Returns the next node and moves past it. */
+		Node<T> next() {
+			Node<T> node = path.pop();
+			descend(node.right);
+			return node;
+		}
+
+		private void descend(Node<T> node) {
+			for (; node != null; node = node.left) path.push(node);
+		}
+
+		private final ArrayDeque<Node<T>> path = new ArrayDeque<Node<T>>();
+	}
+
+	/*
+	 * Reports the changes that turn optics subtree a into subtree b.
+	 */
+	private static void diff(Node<OpticsHardware> a, Node<OpticsHardware> b, Changes changes) {
+		if (a == b) return;
+		if (a == null) {
+			ArrayList<Node<OpticsHardware>> nodes = new ArrayList<Node<OpticsHardware>>();
+			collect(b, nodes);
+			for (Node<OpticsHardware> node: nodes) changes.opticPut(node.value.copy());
+			return;
+		}
+		if (b == null) {
+			ArrayList<Node<OpticsHardware>> nodes = new ArrayList<Node<OpticsHardware>>();
+			collect(a, nodes);
+			for (Node<OpticsHardware> node: nodes) changes.opticRemoved(node.key);
+			return;
+		}
+		ArrayList<Node<OpticsHardware>> parts = split(b, a.key);
+		diff(a.left, parts.get(0), changes);
+		if (parts.get(1) == null) {
+			changes.opticRemoved(a.key);
+		} else if (parts.get(1).value != a.value && ! parts.get(1).value.matches(a.value)) {
+			changes.opticPut(parts.get(1).value.copy());
+		}
+		diff(a.right, parts.get(2), changes);
+	}
+
+	/*
+	 * Splits a subtree into the nodes before a key, the node with the key (or null) and the nodes after it. When
+	 * the root has the key its own children are returned, so subtrees of the same shape stay identical.
+	 */
+	private static <T> ArrayList<Node<T>> split(Node<T> node, double key) {
+		if (node == null) return new ArrayList<Node<T>>(Arrays.asList(null, null, null));
+		int c = Double.compare(key, node.key);
+		if (c == 0) return new ArrayList<Node<T>>(Arrays.asList(node.left, node, node.right));
+		if (c < 0) {
+			ArrayList<Node<T>> parts = split(node.left, key);
+			parts.set(2, node.withChildren(parts.get(2), node.right));
+			return parts;
+		} else {
+			ArrayList<Node<T>> parts = split(node.right, key);
+			parts.set(0, node.withChildren(node.left, parts.get(0)));
+			return parts;
+		}
+	}
+
+	/*
+	 * Adds the nodes of a subtree to a list in order.
+	 */
+	private static <T> void collect(Node<T> node, List<Node<T>> out) {
+		if (node == null) return;
+		collect(node.left, out);
+		out.add(node);
+		collect(node.right, out);
+	}
+
+	/*
+	 * Inserts a value, replacing any value with the same key.
+	 */
+	private static <T> Node<T> put(Node<T> node, double key, T value) {
+		if (node == null) return new Node<T>(key, value, random.nextInt(), null, null);
+		int c = Double.compare(key, node.key);
+		if (c == 0) return new Node<T>(key, value, node.priority, node.left, node.right);
+		if (c < 0) {
+			Node<T> left = put(node.left, key, value);
+			if (left.priority > node.priority) { //Rotate right
+				return left.withChildren(left.left, node.withChildren(left.right, node.right));
+			}
+			return node.withChildren(left, node.right);
+		} else {
+			Node<T> right = put(node.right, key, value);
+			if (right.priority > node.priority) { //Rotate left
+				return right.withChildren(node.withChildren(node.left, right.left), right.right);
+			}
+			return node.withChildren(node.left, right);
+		}
+	}
+
+	/*
+	 * Removes the value with a key, if present.
+	 */
+	private static <T> Node<T> remove(Node<T> node, double key) {
+		if (node == null) return null;
+		int c = Double.compare(key, node.key);
+		if (c < 0) return node.withChildren(remove(node.left, key), node.right);
+		if (c > 0) return node.withChildren(node.left, remove(node.right, key));
+		return merge(node.left, node.right);
+	}
+
+	/*
+	 * Joins two subtrees, every key in the first being less than every key in the second.
+	 */
+	private static <T> Node<T> merge(Node<T> a, Node<T> b) {
+		if (a == null) return b;
+		if (b == null) return a;
+		if (a.priority > b.priority) return a.withChildren(a.left, merge(a.right, b));
+		return b.withChildren(merge(a, b.left), b.right);
+	}
+
+
+	/* Instance variables */
+	private final Node<OpticsHardware> optics;
+	private final int size;
+	private final double wavelength;
+	private final double collWaist;
+
+	/* Constants */
+	private static final Random random = new Random();
+
+}
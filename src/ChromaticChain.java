@@ -0,0 +1,136 @@
+import java.util.*;
+
+/*
+ * Immutable snapshot of a list of optics evaluated at several wavelengths at once. The matrices of all the
+ * wavelengths at an optic are stored together and computed once, so that any number of beams, of any of the
+ * wavelengths and starting at any optic, are carried through the chain together in a single walk.
+ */
+public class ChromaticChain {
+
+	/*
+	 * Constructs a snapshot of a list of optics sorted by position, at each of an array of wavelengths in nm. The
+	 * first optic is taken to be the source. The caller is responsible for holding whatever lock guards the list.
+	 */
+	public ChromaticChain(List<OpticsHardware> optics, double[] wavelengths) {
+		int n = optics.size();
+		int w = wavelengths.length;
+		this.wavelengths = wavelengths.clone();
+		positions = new double[n];
+		matrices = new double[4 * n * w];
+		for (int i = 0; i < n; i++) {
+			OpticsHardware o = optics.get(i);
+			positions[i] = o.getPosition();
+			for (int k = 0; k < w; k++) {
+				System.arraycopy(o.ABCD(wavelengths[k]).baseArray(), 0, matrices, 4 * (i * w + k), 4);
+			}
+		}
+	}
+
+	/*
+	 * Returns the number of wavelengths.
+	 */
+	public int getWavelengthCount() {
+		return wavelengths.length;
+	}
+
+	/*
+	 * Returns a wavelength (nm).
+	 */
+	public double getWavelength(int k) {
+		return wavelengths[k];
+	}
+
+	/*
+	 * Returns the ABCD matrix of the whole chain, from the source to just past the last optic, at one wavelength.
+	 */
+	public ABCDMatrix transfer(int k) {
+		int w = wavelengths.length;
+		double a = 1, b = 0, c = 0, d = 1;
+		for (int i = 1; i < positions.length; i++) {
+			double gap = positions[i] - positions[i - 1];
+			a += gap * c;
+			b += gap * d;
+			int m = 4 * (i * w + k);
+			double na = matrices[m] * a + matrices[m + 1] * c;
+			double nb = matrices[m] * b + matrices[m + 1] * d;
+			double nc = matrices[m + 2] * a + matrices[m + 3] * c;
+			double nd = matrices[m + 2] * b + matrices[m + 3] * d;
+			a = na;
+			b = nb;
+			c = nc;
+			d = nd;
+		}
+		return new ABCDMatrix(a, b, c, d);
+	}
+
+	/*
+	 * Computes the beam radius of every wavelength at each of an ascending array of positions, for beams that all
+	 * start at the source. q_in[k] is q at the source and radiusOut[k] receives the radii for wavelength k.
+	 */
+	public void sample(double[] samplePositions, Complex[] q_in, double[][] radiusOut) {
+		int[] wavelengthIndices = new int[wavelengths.length];
+		for (int k = 0; k < wavelengths.length; k++) wavelengthIndices[k] = k;
+		sample(samplePositions, wavelengthIndices, new int[wavelengths.length], q_in, radiusOut);
+	}
+
+	/*
+	 * Computes the radius of several beams at each of an ascending array of positions, walking the chain once and
+	 * carrying the q of every beam from optic to optic together. Beam j has wavelength wavelengthIndices[j], starts
+	 * just past the optic at index startIndices[j] with q = q_in[j], and its radii go to radiusOut[j]. Positions
+	 * before the start of a beam are set to NaN. Beams of the same wavelength share the matrices of the chain.
+	 */
+	public void sample(double[] samplePositions, int[] wavelengthIndices, int[] startIndices, Complex[] q_in,
+			double[][] radiusOut) {
+		int n = positions.length;
+		int w = wavelengths.length;
+		int beams = q_in.length;
+		double[] qr = new double[beams];
+		double[] qi = new double[beams];
+		double[] lambda = new double[beams]; //mm
+		for (int j = 0; j < beams; j++) {
+			qr[j] = q_in[j].real();
+			qi[j] = q_in[j].imag();
+			lambda[j] = wavelengths[wavelengthIndices[j]] * Math.pow(10, -6);
+		}
+		int index = 0; //Index of the last optic passed
+		for (int s = 0; s < samplePositions.length; s++) {
+			double z = samplePositions[s];
+			if (n == 0 || z < positions[0]) {
+				for (int j = 0; j < beams; j++) radiusOut[j][s] = Double.NaN;
+				continue;
+			}
+			while (index + 1 < n && positions[index + 1] <= z) { //Carry every started beam through the next optic
+				double gap = positions[index + 1] - positions[index];
+				index++;
+				for (int j = 0; j < beams; j++) {
+					if (startIndices[j] >= index) continue; //Starts here or further on
+					int m = 4 * (index * w + wavelengthIndices[j]);
+					double r = qr[j] + gap;
+					double nr = matrices[m] * r + matrices[m + 1];
+					double ni = matrices[m] * qi[j];
+					double dr = matrices[m + 2] * r + matrices[m + 3];
+					double di = matrices[m + 2] * qi[j];
+					double denominator = dr * dr + di * di;
+					qr[j] = (nr * dr + ni * di) / denominator;
+					qi[j] = (ni * dr - nr * di) / denominator;
+				}
+			}
+			double distance = z - positions[index];
+			for (int j = 0; j < beams; j++) {
+				if (startIndices[j] > index) {
+					radiusOut[j][s] = Double.NaN;
+					continue;
+				}
+				double zr = qr[j] + distance;
+				radiusOut[j][s] = Math.sqrt(lambda[j] * (zr * zr + qi[j] * qi[j]) / (Math.PI * qi[j]));
+			}
+		}
+	}
+
+
+	/* Instance variables */
+	private final double[] wavelengths; //nm
+	private final double[] positions;
+	private final double[] matrices; //Entries [A, B, C, D] of each optic at each wavelength, wavelengths innermost
+
+}
@@ -0,0 +1,136 @@
+import java.awt.image.*;
+import java.util.concurrent.*;
+
+/*
+ * Rasterizes the transverse intensity of a Hermite-Gaussian mode into an image. The intensity separates into a
+ * profile along x times a profile along y, so each render fills one table per axis and every pixel is then a
+ * product and a palette lookup. The image is split into tiles that are filled in parallel on the fork-join pool.
+ * The image and tables are reused from one render to the next, so a render only allocates its tasks.
+ */
+public class CrossSection {
+
+	/*
+	 * Constructs a cross section rendering into a square image of a given size in pixels.
+	 */
+	public CrossSection(int size) {
+		this.size = size;
+		image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		xTable = new double[size];
+		yTable = new double[size];
+	}
+
+	/*
+	 * Renders the intensity of the mode TEM_mn with 1/e^2 radii radiusX and radiusY (mm) of its fundamental,
+	 * over a square field of view extending halfWidth (mm) either side of the axis. Intensity is scaled so the
+	 * brightest point is white. Returns the image, which is overwritten by the next render.
+	 */
+	public BufferedImage render(double radiusX, double radiusY, int m, int n, double halfWidth) {
+		fillProfile(xTable, radiusX, m, halfWidth);
+		fillProfile(yTable, radiusY, n, halfWidth);
+		int tilesPerSide = (size + TILE_SIZE - 1) / TILE_SIZE;
+		ForkJoinPool.commonPool().invoke(new Tiles(0, tilesPerSide * tilesPerSide, tilesPerSide));
+		return image;
+	}
+
+	/*
+	 * Returns the image of the last render.
+	 */
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	/*
+	 * Returns the intensity at a pixel of the image in the last render, relative to the brightest point.
+	 */
+	public double getIntensity(int col, int row) {
+		return xTable[col] * yTable[size - 1 - row];
+	}
+
+	/*
+	 * Fills a table with the intensity profile H_k(sqrt(2) x / w)^2 exp(-2 x^2 / w^2) along one axis, at the
+	 * center of each pixel, normalized to a peak of 1. The Hermite polynomial is evaluated by its recurrence
+	 * H_j+1 = 2t H_j - 2j H_j-1. A NaN radius fills the table with zeros.
+	 */
+	private void fillProfile(double[] table, double radius, int order, double halfWidth) {
+		double peak = 0;
+		for (int i = 0; i < size; i++) {
+			double x = halfWidth * (2 * (i + 0.5) / size - 1);
+			double t = Math.sqrt(2) * x / radius;
+			double previous = 1;
+			double hermite = (order == 0) ? 1 : 2 * t;
+			for (int j = 1; j < order; j++) {
+				double next = 2 * t * hermite - 2 * j * previous;
+				previous = hermite;
+				hermite = next;
+			}
+			double value = hermite * hermite * Math.exp(-t * t);
+			table[i] = value;
+			if (value > peak) peak = value;
+		}
+		for (int i = 0; i < size; i++) {
+			table[i] = (peak > 0) ? table[i] / peak : 0;
+		}
+	}
+
+	/*
+	 * Fills a range of tiles, numbered row by row, splitting the range in half until it is a single tile.
+	 */
+	private class Tiles extends RecursiveAction {
+		Tiles(int from, int to, int tilesPerSide) {
+			this.from = from;
+			this.to = to;
+			this.tilesPerSide = tilesPerSide;
+		}
+
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Tiles(from, middle, tilesPerSide), new Tiles(middle, to, tilesPerSide));
+				return;
+			}
+			int row0 = (from / tilesPerSide) * TILE_SIZE;
+			int col0 = (from % tilesPerSide) * TILE_SIZE;
+			int row1 = Math.min(row0 + TILE_SIZE, size);
+			int col1 = Math.min(col0 + TILE_SIZE, size);
+			for (int row = row0; row < row1; row++) {
+				double y = yTable[size - 1 - row]; //Image rows run downward
+				int offset = row * size;
+				for (int col = col0; col < col1; col++) {
+					pixels[offset + col] = PALETTE[(int) (255 * xTable[col] * y)];
+				}
+			}
+		}
+
+		private final int from;
+		private final int to;
+		private final int tilesPerSide;
+		public static final long serialVersionUID = 1L;
+	}
+
+	/*
+	 * Returns the color of an intensity level from 0 to 255: black through red and yellow to white.
+	 */
+	private static int heat(int level) {
+		int red = Math.min(255, 3 * level);
+		int green = Math.max(0, Math.min(255, 3 * level - 255));
+		int blue = Math.max(0, 3 * level - 510);
+		return (red << 16) | (green << 8) | blue;
+	}
+
+
+	/* Instance variables */
+	private final int size;
+	private final BufferedImage image;
+	private final int[] pixels;
+	private final double[] xTable; //Relative intensity along x at each column
+	private final double[] yTable; //Relative intensity along y at each row, from the bottom
+
+	/* Constants */
+	private static final int TILE_SIZE = 64; //pixels
+	private static final int[] PALETTE = new int[256];
+	static {
+		for (int level = 0; level < 256; level++) PALETTE[level] = heat(level);
+	}
+
+}
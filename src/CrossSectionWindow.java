@@ -0,0 +1,181 @@
+import acm.graphics.*;
+import javax.swing.*;
+import javax.swing.event.*;
+import java.awt.*;
+import java.awt.event.*;
+
+/*
+ * Window that shows the transverse intensity of the beam at a POI, updated by the workbench whenever the beam
+ * changes. The mode orders are chosen in the window; the field of view stays fixed until refitted, so the beam
+ * can be seen to grow and shrink as the system is tuned.
+ */
+public class CrossSectionWindow extends JFrame implements MouseMotionListener, ComponentListener, ChangeListener,
+		ActionListener {
+
+	/*
+	 * Constructs and shows the window for a POI.
+	 */
+	public CrossSectionWindow(POI poi) {
+		super("Cross Section at " + poi.getName());
+		poiName = poi.getName();
+		setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+		canvas.setAutoRepaintFlag(false);
+		canvas.addComponentListener(this);
+		canvas.addMouseMotionListener(this);
+		add(canvas, BorderLayout.CENTER);
+		JPanel north = new JPanel();
+		north.add(new JLabel("TEM m:"));
+		mSpinner.addChangeListener(this);
+		north.add(mSpinner);
+		north.add(new JLabel("n:"));
+		nSpinner.addChangeListener(this);
+		north.add(nSpinner);
+		JButton fitButton = new JButton("Fit");
+		fitButton.addActionListener(this);
+		north.add(fitButton);
+		add(north, BorderLayout.NORTH);
+		JPanel south = new JPanel(new GridLayout(2, 1));
+		south.add(beamLabel);
+		south.add(readoutLabel);
+		add(south, BorderLayout.SOUTH);
+		setSize(WINDOW_SIZE_X, WINDOW_SIZE_Y);
+		setVisible(true);
+	}
+
+	/*
+	 * Returns the name of the POI whose cross section is shown. The window follows the POI by name, since undo
+	 * replaces the optics with copies.
+	 */
+	public String getPOIName() {
+		return poiName;
+	}
+
+	/*
+	 * Shows the beam with given parameters at the POI. Null if there is no beam there. Does nothing if the beam is
+	 * unchanged.
+	 */
+	public void setBeam(BeamParameters params) {
+		double newRadius = (params == null) ? Double.NaN : params.getRadius();
+		double newGouyPhase = (params == null) ? Double.NaN : params.getGouyPhase();
+		if (rendered && Double.compare(newRadius, radius) == 0 && Double.compare(newGouyPhase, gouyPhase) == 0) return;
+		rendered = true;
+		radius = newRadius;
+		gouyPhase = newGouyPhase;
+		if (Double.isNaN(halfWidth)) fit();
+		render();
+	}
+
+	/*
+	 * Sets the field of view to fit the current mode.
+	 */
+	private void fit() {
+		if (Double.isNaN(radius)) return;
+		int order = Math.max(getOrder(mSpinner), getOrder(nSpinner));
+		halfWidth = FIT_RADII * radius * Math.sqrt(order + 1);
+	}
+
+	/*
+	 * Renders the cross section and shows it.
+	 */
+	private void render() {
+		if (Double.isNaN(radius)) {
+			beamLabel.setText("No beam at " + poiName);
+		} else {
+			beamLabel.setText(String.format("Beam radius %.4f mm, Gouy phase %.4f rad, field of view \u00b1%.4f mm",
+					radius, gouyPhase, halfWidth));
+		}
+		crossSection.render(radius, radius, getOrder(mSpinner), getOrder(nSpinner), halfWidth);
+		canvas.repaint();
+	}
+
+	/*
+	 * Places the image scaled to fit the canvas.
+	 */
+	private void layoutImage() {
+		canvas.removeAll();
+		double side = Math.min(canvas.getWidth(), canvas.getHeight());
+		if (side <= 0) return;
+		picture.setSize(side, side);
+		canvas.add(picture, (canvas.getWidth() - side) / 2, (canvas.getHeight() - side) / 2);
+		canvas.repaint();
+	}
+
+	/*
+	 * Returns the mode order selected by a spinner.
+	 */
+	private static int getOrder(JSpinner spinner) {
+		return (Integer) spinner.getValue();
+	}
+
+	/*
+	 * Shows the transverse position and relative intensity under the cursor.
+	 */
+	public void mouseMoved(MouseEvent e) {
+		double side = picture.getWidth();
+		int col = (int) ((e.getX() - picture.getX()) / side * IMAGE_SIZE);
+		int row = (int) ((e.getY() - picture.getY()) / side * IMAGE_SIZE);
+		if (col < 0 || col >= IMAGE_SIZE || row < 0 || row >= IMAGE_SIZE || Double.isNaN(halfWidth)) {
+			readoutLabel.setText(" ");
+			return;
+		}
+		double x = halfWidth * (2 * (col + 0.5) / IMAGE_SIZE - 1);
+		double y = -halfWidth * (2 * (row + 0.5) / IMAGE_SIZE - 1);
+		readoutLabel.setText(String.format("x = %.4f mm, y = %.4f mm, relative intensity = %.4f", x, y,
+				crossSection.getIntensity(col, row)));
+	}
+
+	/*
+	 * Rerenders when a mode order changes, refitting the field of view to the new mode.
+	 */
+	public void stateChanged(ChangeEvent e) {
+		fit();
+		render();
+	}
+
+	/*
+	 * Refits the field of view when the fit button is pressed.
+	 */
+	public void actionPerformed(ActionEvent e) {
+		fit();
+		render();
+	}
+
+	/*
+	 * Rescales the image when the canvas is resized.
+	 */
+	public void componentResized(ComponentEvent e) {
+		layoutImage();
+	}
+
+	/*
+	 * Empty methods within MouseMotionListener and ComponentListener interfaces.
+	 */
+	public void mouseDragged(MouseEvent e) {}
+	public void componentHidden(ComponentEvent e) {}
+	public void componentMoved(ComponentEvent e) {}
+	public void componentShown(ComponentEvent e) {}
+
+
+	/* Instance variables */
+	private final String poiName;
+	private final CrossSection crossSection = new CrossSection(IMAGE_SIZE);
+	private final GImage picture = new GImage(crossSection.getImage());
+	private final GCanvas canvas = new GCanvas();
+	private final JSpinner mSpinner = new JSpinner(new SpinnerNumberModel(0, 0, MAX_ORDER, 1));
+	private final JSpinner nSpinner = new JSpinner(new SpinnerNumberModel(0, 0, MAX_ORDER, 1));
+	private final JLabel beamLabel = new JLabel(" ");
+	private final JLabel readoutLabel = new JLabel(" ");
+	private boolean rendered = false;
+	private double radius = Double.NaN; //mm
+	private double gouyPhase = Double.NaN; //radians
+	private double halfWidth = Double.NaN; //mm
+
+	/* Constants */
+	private static final int IMAGE_SIZE = 1024; //pixels
+	private static final int MAX_ORDER = 20;
+	private static final double FIT_RADII = 2.5; //Half width of the fitted field of view, in radii of the mode
+	private static final int WINDOW_SIZE_X = 700;
+	private static final int WINDOW_SIZE_Y = 760;
+	public static final long serialVersionUID = 1L;
+
+}
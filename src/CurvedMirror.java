@@ -0,0 +1,75 @@
+/*
+ * Class representing a curved mirror, with the beam path unfolded onto the bench so that it carries on forwards after
+ * the mirror. A mirror of radius of curvature R focuses like a thin lens of focal length R / 2, positive for a
+ * concave mirror, so it inherits from class Lens. Unlike a lens it has no glass, and tilting it turns the reflected
+ * beam by twice the tilt.
+ */
+
+public class CurvedMirror extends Lens {
+
+	/*
+	 * Constructor for a mirror of a given radius of curvature (mm).
+	 */
+	public CurvedMirror(double position, double radiusOfCurvature, String name) {
+		super(position, radiusOfCurvature / 2, name);
+	}
+
+	/*
+	 * Returns the radius of curvature (mm), twice the focal length.
+	 */
+	public double getRadiusOfCurvature() {
+		return 2 * focalLength;
+	}
+
+	/*
+	 * Sets the radius of curvature (mm).
+	 */
+	public void setRadiusOfCurvature(double radiusOfCurvature) {
+		setFocalLength(radiusOfCurvature / 2);
+	}
+
+	/*
+	 * Returns the type of the mirror.
+	 */
+	public String getType() {
+		return "Curved Mirror";
+	}
+
+	/*
+	 * Does nothing, as a mirror reflects every wavelength alike.
+	 */
+	public void setGlass(Glass glass, double designWavelength) {
+	}
+
+	/*
+	 * Returns how the misalignment of the mirror moves the beam centre. Decentre acts as for a lens, and each mrad of
+	 * tilt turns the beam by 2 mrad.
+	 */
+	public double[] misalignmentResponse(ABCDMatrix abcd) {
+		double[] r = super.misalignmentResponse(abcd);
+		r[3] += 2 / MRAD_PER_RAD;
+		return r;
+	}
+
+
+	/*
+	 * Returns a copy of the mirror.
+	 */
+	public OpticsHardware copy() {
+		CurvedMirror mirror = new CurvedMirror(position, getRadiusOfCurvature(), name);
+		mirror.setClearAperture(clearAperture);
+		mirror.setDecentre(decentre);
+		mirror.setTilt(tilt);
+		return mirror;
+	}
+
+	/*
+	 * Returns whether another optic is a mirror with the same name and parameters.
+	 */
+	public boolean matches(OpticsHardware o) {
+		if (o == null || o.getClass() != CurvedMirror.class) return false;
+		CurvedMirror mirror = (CurvedMirror) o;
+		return position == mirror.position && focalLength == mirror.focalLength && name.equals(mirror.name)
+				&& clearAperture == mirror.clearAperture && sameAlignment(mirror);
+	}
+}
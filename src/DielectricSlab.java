@@ -0,0 +1,172 @@
+/*
+ * Class representing a flat slab of glass of a given index and thickness in air, such as a window, a plate or a
+ * crystal. Inside, the beam spreads as if the slab were thinner by a factor of the index, so the waist after it is
+ * moved downstream by the thickness times (1 - 1/n). The position is that of the front face and the length is the
+ * thickness. Its matrices are made when its thickness or index changes and kept. Dispersion is not modelled.
+ */
+public class DielectricSlab implements ThickOptic {
+
+	/*
+	 * Constructor.
+	 */
+	public DielectricSlab(double position, double thickness, double index, String name) {
+		this.position = position;
+		this.name = name;
+		setSlab(thickness, index);
+	}
+
+	/*
+	 * Returns the type.
+	 */
+	public String getType() {
+		return "Dielectric Slab";
+	}
+
+	/*
+	 * Returns the position of the front face.
+	 */
+	public double getPosition() {
+		return position;
+	}
+
+	/*
+	 * Sets the position of the front face. Moving the slab does not change its matrix.
+	 */
+	public void setPosition(double position) {
+		this.position = position;
+	}
+
+	/*
+	 * Returns the thickness (mm).
+	 */
+	public double getThickness() {
+		return thickness;
+	}
+
+	/*
+	 * Returns the refractive index.
+	 */
+	public double getIndex() {
+		return index;
+	}
+
+	/*
+	 * Changes the thickness (mm) and index of the slab and makes its matrix anew.
+	 */
+	public synchronized void setSlab(double thickness, double index) {
+		this.thickness = thickness;
+		this.index = index;
+		matrix = ABCDMatrix.freeSpace(thickness / index - thickness); //Free space of minus the thickness after it
+	}
+
+	/*
+	 * Returns the distance (mm) from the entrance to the exit, the thickness.
+	 */
+	public double getLength() {
+		return thickness;
+	}
+
+	/*
+	 * Returns the matrix of the slab at its entrance.
+	 */
+	public ABCDMatrix ABCD() {
+		return matrix;
+	}
+
+	/*
+	 * Returns the matrix of the slab at its entrance, the same at every wavelength.
+	 */
+	public ABCDMatrix ABCD(double wavelength) {
+		return matrix;
+	}
+
+	/*
+	 * Returns the Gouy phase of the slab, which acts as free space and so never reaches pi.
+	 */
+	public double getGouyPhase(Complex q_arriving, double wavelength) {
+		return OpticsChain.gouyPhase(1, matrix.baseArray()[1], q_arriving.real(), q_arriving.imag());
+	}
+
+	/*
+	 * Computes the beam radius inside the slab, where q over n goes up by the distance over n.
+	 */
+	public void sampleInterior(double[] samplePositions, Complex q_arriving, double wavelength, double[] radiusOut) {
+		double entrance = position;
+		double n = index;
+		double lambda = wavelength * Math.pow(10, -6); //mm
+		for (int s = 0; s < samplePositions.length; s++) {
+			double z = samplePositions[s] - entrance;
+			if (z < 0 || z > thickness) {
+				radiusOut[s] = Double.NaN;
+				continue;
+			}
+			double qr = q_arriving.real() + z / n;
+			double qi = q_arriving.imag();
+			radiusOut[s] = Math.sqrt(lambda * (qr * qr + qi * qi) / (Math.PI * qi));
+		}
+	}
+
+	/*
+	 * Returns the name of the slab.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/*
+	 * Sets the name of the slab.
+	 */
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/*
+	 * Returns whether the slab is selected.
+	 */
+	public boolean isSelected() {
+		return selected;
+	}
+
+	/*
+	 * Sets whether the slab is selected.
+	 */
+	public void setSelected(boolean selected) {
+		this.selected = selected;
+	}
+
+	/*
+	 * Returns a copy of the slab.
+	 */
+	public synchronized OpticsHardware copy() {
+		return new DielectricSlab(position, thickness, index, name);
+	}
+
+	/*
+	 * Returns whether another optic is a slab with the same name, position, thickness and index.
+	 */
+	public boolean matches(OpticsHardware o) {
+		if (o == null || o.getClass() != DielectricSlab.class) return false;
+		DielectricSlab slab = (DielectricSlab) o;
+		return position == slab.position && name.equals(slab.name) && thickness == slab.thickness
+				&& index == slab.index;
+	}
+
+	/*
+	 * Compares the position of two optics. Does not work with .equals()!
+	 */
+	public int compareTo(OpticsHardware o) {
+		if (position == o.getPosition()) return 0;
+		if (position > o.getPosition()) return 1;
+		return -1;
+	}
+
+
+	/* Instance variables */
+	private volatile double position;
+	private String name;
+	private boolean selected = false;
+	private volatile double thickness; //mm
+	private volatile double index;
+	private volatile ABCDMatrix matrix; //At the entrance, as the bench applies it
+
+}
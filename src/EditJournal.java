@@ -0,0 +1,387 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * Crash-safe autosave. Every edit is appended to a journal as the operations that turn the previous snapshot of the
+ * bench into the new one: an optic put at its position (add, retune, rename, or the new end of a move), an optic
+ * removed from a position, or a change of source. The operations are encoded into a buffer and handed to the
+ * operating system in one write per edit, so an edit costs microseconds however large the bench is and survives
+ * the program crashing. Every so often the journal is compacted: the current snapshot is written in the background
+ * as a full .gwb file, after which the journal segments it covers are deleted.
+ *
+ * The directory holds autosave.gwb and journal segments autosave.N.journal. Recovery loads autosave.gwb and replays
+ * the segments in order. Replaying a segment the snapshot already covers is harmless, because each operation sets
+ * the optic at a position outright. A clean close deletes everything.
+ *
+ * A journal holds a lock on session.lock in the directory for as long as it is open, so a second window can't
+ * start a journal there and delete the first one's autosave, and doesn't take a live autosave for a crashed one.
+ */
+public class EditJournal implements BenchSnapshot.Changes {
+
+	/*
+	 * Starts a journal in a directory, deleting any previous autosave there, and writes the initial snapshot.
+	 * Compactions run on the given executor. Throws an IOException if another journal has the directory.
+	 */
+	public EditJournal(File directory, BenchSnapshot initial, Executor executor) throws IOException {
+		this.directory = directory;
+		this.executor = executor;
+		if (! directory.isDirectory() && ! directory.mkdirs()) {
+			throw new IOException("Could not create " + directory);
+		}
+		lockChannel = FileChannel.open(new File(directory, LOCK_NAME).toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE);
+		lock = tryLock(lockChannel);
+		if (lock == null) {
+			lockChannel.close();
+			throw new IOException("The autosave is in use by another window");
+		}
+		try {
+			deleteAll(directory);
+			writeSnapshot(directory, initial);
+			lastSnapshot = initial;
+			openSegment(0);
+		} catch (IOException ex) {
+			unlock();
+			throw ex;
+		}
+	}
+
+	/*
+	 * Appends the changes since the last recorded snapshot. Does nothing if the snapshot is the last one recorded.
+	 * Called on the event thread.
+	 */
+	public synchronized void record(BenchSnapshot snapshot) throws IOException {
+		if (closed || snapshot == lastSnapshot) return;
+		BenchSnapshot.diff(lastSnapshot, snapshot, this);
+		append(COMMIT + "\n");
+		flush();
+		lastSnapshot = snapshot;
+		if (segmentBytes >= COMPACTION_BYTES) compact();
+	}
+
+	/*
+	 * Closes the journal and deletes the autosave, after a clean exit. May be called from any thread.
+	 */
+	public synchronized void close() {
+		if (closed) return;
+		closed = true;
+		try {
+			channel.close();
+		} catch (IOException ex) {
+			//Nothing to recover from; the files are deleted next
+		}
+		deleteAll(directory);
+		if (compactions == 0) unlock(); //Otherwise the last compaction to finish unlocks
+	}
+
+	/*
+	 * Journals an added or changed optic.
+	 */
+	public void opticPut(OpticsHardware optic) {
+		StringWriter text = new StringWriter();
+		PrintWriter wr = new PrintWriter(text);
+		wr.println(PUT);
+		GaussianWorkbench.writeOptic(wr, optic);
+		wr.flush();
+		append(text.toString());
+	}
+
+	/*
+	 * Journals a removed optic.
+	 */
+	public void opticRemoved(double position) {
+		append(REMOVE + "\n" + position + "\n");
+	}
+
+	/*
+	 * Journals a change of source parameters.
+	 */
+	public void sourceChanged(double wavelength, double collWaist) {
+		append(SOURCE + "\n" + wavelength + "\n" + collWaist + "\n");
+	}
+
+	/*
+	 * Encodes text into the buffer, writing the buffer out first if it is full.
+	 */
+	private void append(String text) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > buffer.remaining()) {
+			try {
+				flush();
+			} catch (IOException ex) {
+				pendingError = ex;
+			}
+		}
+		if (bytes.length > buffer.capacity()) {
+			buffer = ByteBuffer.allocateDirect(bytes.length);
+		}
+		buffer.put(bytes);
+	}
+
+	/*
+	 * Writes the buffer to the current segment.
+	 */
+	private void flush() throws IOException {
+		if (pendingError != null) {
+			IOException ex = pendingError;
+			pendingError = null;
+			throw ex;
+		}
+		buffer.flip();
+		while (buffer.hasRemaining()) segmentBytes += channel.write(buffer);
+		buffer.clear();
+	}
+
+	/*
+	 * Starts a new segment, then writes the last snapshot and deletes the earlier segments in the background.
+	 */
+	private void compact() throws IOException {
+		channel.close();
+		final BenchSnapshot snapshot = lastSnapshot;
+		final int covered = segment;
+		openSegment(segment + 1);
+		compactions++;
+		executor.execute(new Runnable() {
+			public void run() {
+				boolean written = false;
+				try {
+					writeSnapshot(directory, snapshot);
+					written = true;
+				} catch (IOException ex) {
+					//The segments are kept, so recovery still replays them
+				}
+				synchronized (EditJournal.this) {
+					compactions--;
+					if (closed) { //Closed while the snapshot was being written
+						deleteAll(directory);
+						if (compactions == 0) unlock();
+						return;
+					}
+					for (int n = 0; written && n <= covered; n++) segmentFile(directory, n).delete();
+				}
+			}
+		});
+	}
+
+	/*
+	 * Releases the lock on the directory.
+	 */
+	private void unlock() {
+		try {
+			lock.release();
+			lockChannel.close();
+		} catch (IOException ex) {
+			//Closing the channel releases the lock in any case
+		}
+	}
+
+	/*
+	 * Opens a segment for appending.
+	 */
+	private void openSegment(int n) throws IOException {
+		segment = n;
+		segmentBytes = 0;
+		channel = FileChannel.open(segmentFile(directory, n).toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+
+	//Static methods
+
+	/*
+	 * Returns the default autosave directory, in the user's home directory.
+	 */
+	public static File defaultDirectory() {
+		return new File(System.getProperty("user.home"), DIRECTORY_NAME);
+	}
+
+	/*
+	 * Returns whether a directory holds an autosave left by a session that did not close cleanly, rather than one
+	 * that is still open in another window.
+	 */
+	public static boolean hasAutosave(File directory) {
+		if (! new File(directory, SNAPSHOT_NAME).isFile()) return false;
+		try (FileChannel channel = FileChannel.open(new File(directory, LOCK_NAME).toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			FileLock held = tryLock(channel);
+			if (held == null) return false;
+			held.release();
+			return true;
+		} catch (IOException ex) {
+			return true; //Can't tell, so offer it
+		}
+	}
+
+	/*
+	 * Locks a file without waiting. Returns null if another process or another channel in this one has it.
+	 */
+	private static FileLock tryLock(FileChannel channel) throws IOException {
+		try {
+			return channel.tryLock();
+		} catch (OverlappingFileLockException ex) {
+			return null;
+		}
+	}
+
+	/*
+	 * Rebuilds the bench from the autosave in a directory. Fills optics, sorted by position, and sourceOut with
+	 * the wavelength and collimated waist. An edit cut short by the crash is ignored.
+	 */
+	public static void recover(File directory, List<OpticsHardware> optics, double[] sourceOut) throws IOException {
+		ArrayList<OpticsHardware> base = new ArrayList<OpticsHardware>();
+		BufferedReader rd = new BufferedReader(new InputStreamReader(
+				new FileInputStream(new File(directory, SNAPSHOT_NAME)), StandardCharsets.UTF_8));
+		try {
+			GaussianWorkbench.readBench(rd, base, sourceOut);
+		} catch (RuntimeException ex) {
+			throw new IOException("Autosave is damaged");
+		} finally {
+			rd.close();
+		}
+		TreeMap<Double, OpticsHardware> bench = new TreeMap<Double, OpticsHardware>();
+		for (OpticsHardware o: base) bench.put(o.getPosition(), o);
+		for (int n: segmentNumbers(directory)) replay(segmentFile(directory, n), bench, sourceOut);
+		optics.addAll(bench.values());
+	}
+
+	/*
+	 * Applies the complete edits in a segment to a bench keyed by position.
+	 */
+	private static void replay(File file, TreeMap<Double, OpticsHardware> bench, double[] sourceOut)
+			throws IOException {
+		BufferedReader rd = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+				StandardCharsets.UTF_8));
+		try {
+			ArrayList<Object> edit = new ArrayList<Object>(); //Optics to put, and Double positions to remove
+			double[] source = null;
+			String line;
+			while ((line = rd.readLine()) != null) {
+				switch (line) {
+				case PUT:
+					ArrayList<OpticsHardware> read = new ArrayList<OpticsHardware>();
+					GaussianWorkbench.addOptic(rd, read);
+					edit.add(read.get(0));
+					break;
+				case REMOVE:
+					edit.add(Double.valueOf(rd.readLine()));
+					break;
+				case SOURCE:
+					source = new double[] {Double.parseDouble(rd.readLine()), Double.parseDouble(rd.readLine())};
+					break;
+				case COMMIT:
+					for (Object op: edit) {
+						if (op instanceof Double) {
+							bench.remove(op);
+						} else {
+							bench.put(((OpticsHardware) op).getPosition(), (OpticsHardware) op);
+						}
+					}
+					if (source != null) System.arraycopy(source, 0, sourceOut, 0, 2);
+					edit.clear();
+					source = null;
+					break;
+				default:
+					return; //Torn write
+				}
+			}
+		} catch (IOException | RuntimeException ex) {
+			//Torn write at the end of the segment. The edit in progress is dropped.
+		} finally {
+			rd.close();
+		}
+	}
+
+	/*
+	 * Returns the numbers of the journal segments in a directory, in ascending order. Compaction leaves gaps.
+	 */
+	private static List<Integer> segmentNumbers(File directory) {
+		ArrayList<Integer> numbers = new ArrayList<Integer>();
+		String[] names = directory.list();
+		if (names == null) return numbers;
+		for (String name: names) {
+			if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+				try {
+					numbers.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+							name.length() - SEGMENT_SUFFIX.length())));
+				} catch (NumberFormatException ex) {
+					//Not a segment
+				}
+			}
+		}
+		Collections.sort(numbers);
+		return numbers;
+	}
+
+	/*
+	 * Writes a snapshot as a .gwb file, replacing the previous one atomically once it is safely on disk.
+	 */
+	private static void writeSnapshot(File directory, BenchSnapshot snapshot) throws IOException {
+		ArrayList<OpticsHardware> optics = new ArrayList<OpticsHardware>(snapshot.size());
+		snapshot.restore(optics);
+		File temp = new File(directory, SNAPSHOT_NAME + ".tmp");
+		FileOutputStream out = new FileOutputStream(temp);
+		try {
+			PrintWriter wr = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+			GaussianWorkbench.writeBench(wr, snapshot.getWavelength(), snapshot.getCollWaist(), optics);
+			wr.flush();
+			if (wr.checkError()) throw new IOException("Could not write autosave");
+			out.getChannel().force(true);
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), new File(directory, SNAPSHOT_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/*
+	 * Deletes the autosave files in a directory.
+	 */
+	private static void deleteAll(File directory) {
+		String[] names = directory.list();
+		if (names == null) return;
+		for (String name: names) {
+			if (name.startsWith(SEGMENT_PREFIX)) new File(directory, name).delete();
+		}
+	}
+
+	/*
+	 * Returns the file of a journal segment.
+	 */
+	private static File segmentFile(File directory, int n) {
+		return new File(directory, SEGMENT_PREFIX + n + SEGMENT_SUFFIX);
+	}
+
+
+	/* Instance variables */
+	private final File directory;
+	private final Executor executor;
+	private BenchSnapshot lastSnapshot;
+	private FileChannel channel;
+	private final FileChannel lockChannel;
+	private final FileLock lock;
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private IOException pendingError = null;
+	private boolean closed = false;
+	private int segment;
+	private int compactions = 0; //Snapshots being written in the background
+	private long segmentBytes;
+
+	/* Constants */
+	private static final String DIRECTORY_NAME = ".gaussianworkbench";
+	private static final String SEGMENT_PREFIX = "autosave.";
+	private static final String SEGMENT_SUFFIX = ".journal";
+	private static final String SNAPSHOT_NAME = "autosave.gwb";
+	private static final String LOCK_NAME = "session.lock"; //Not deleted with the autosave files
+	private static final String PUT = "Put";
+	private static final String REMOVE = "Remove";
+	private static final String SOURCE = "Beam"; //Not "Source", which names an optic
+	private static final String COMMIT = "Commit";
+	private static final int BUFFER_SIZE = 64 * 1024; //bytes
+	private static final long COMPACTION_BYTES = 1024 * 1024; //Journal size at which a snapshot is written
+
+}
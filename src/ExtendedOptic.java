@@ -0,0 +1,27 @@
+/*
+ * Interface implemented by thick optics made of many thin lenses, such as blocks of lenses and relays, which can be
+ * drawn collapsed into a box or expanded to show their lenses.
+ */
+public interface ExtendedOptic extends ThickOptic {
+	
+	/*
+	 * Returns the number of lenses in the optic.
+	 */
+	public int getLensCount();
+	
+	/*
+	 * Returns the positions of the lenses between two positions on the bench, thinned so that no two are closer
+	 * than a minimum spacing (mm), for drawing.
+	 */
+	public double[] getLensPositions(double from, double to, double minSpacing);
+	
+	/*
+	 * Returns whether the optic is drawn with its lenses showing.
+	 */
+	public boolean isExpanded();
+	
+	/*
+	 * Sets whether the optic is drawn with its lenses showing.
+	 */
+	public void setExpanded(boolean expanded);
+}
@@ -0,0 +1,125 @@
+import java.util.stream.*;
+
+/*
+ * In-place two dimensional fast Fourier transform of a square complex grid whose side is a power of two, stored
+ * row by row as separate arrays of real and imaginary parts. Each row is transformed by an iterative radix-2
+ * transform with precomputed twiddle factors and bit reversal; the columns are transformed as rows between two
+ * transposes. Rows are spread across threads, and nothing is allocated per transform.
+ */
+public class FFT2D {
+
+	/*
+	 * Constructs a transform for an n by n grid. n must be a power of two.
+	 */
+	public FFT2D(int n) {
+		if (n < 2 || Integer.bitCount(n) != 1) throw new IllegalArgumentException("Grid size must be a power of two");
+		this.n = n;
+		cos = new double[n / 2];
+		sin = new double[n / 2];
+		for (int k = 0; k < n / 2; k++) {
+			cos[k] = Math.cos(2 * Math.PI * k / n);
+			sin[k] = Math.sin(2 * Math.PI * k / n);
+		}
+		reversed = new int[n];
+		int bits = Integer.numberOfTrailingZeros(n);
+		for (int i = 0; i < n; i++) {
+			reversed[i] = Integer.reverse(i) >>> (32 - bits);
+		}
+	}
+
+	/*
+	 * Returns the side of the grid.
+	 */
+	public int size() {
+		return n;
+	}
+
+	/*
+	 * Transforms a grid in place. The forward transform uses exp(-2 pi i jk / n); the inverse uses exp(+2 pi i jk / n)
+	 * and divides by n^2, so that it undoes the forward transform.
+	 */
+	public void transform(double[] re, double[] im, boolean inverse) {
+		rows(re, im, inverse);
+		transpose(re, im);
+		rows(re, im, inverse);
+		transpose(re, im);
+		if (inverse) {
+			double scale = 1.0 / ((double) n * n);
+			IntStream.range(0, n).parallel().forEach(row -> {
+				for (int i = row * n; i < (row + 1) * n; i++) {
+					re[i] *= scale;
+					im[i] *= scale;
+				}
+			});
+		}
+	}
+
+	/*
+	 * Transforms every row of a grid.
+	 */
+	private void rows(double[] re, double[] im, boolean inverse) {
+		IntStream.range(0, n).parallel().forEach(row -> transformRow(re, im, row * n, inverse));
+	}
+
+	/*
+	 * Transforms the n entries starting at an offset: bit reversal, then log2(n) passes of butterflies.
+	 */
+	private void transformRow(double[] re, double[] im, int offset, boolean inverse) {
+		for (int i = 0; i < n; i++) {
+			int j = reversed[i];
+			if (j > i) {
+				double t = re[offset + i];
+				re[offset + i] = re[offset + j];
+				re[offset + j] = t;
+				t = im[offset + i];
+				im[offset + i] = im[offset + j];
+				im[offset + j] = t;
+			}
+		}
+		double sign = inverse ? 1 : -1;
+		for (int length = 2; length <= n; length <<= 1) {
+			int half = length >>> 1;
+			int stride = n / length; //Step through the twiddle table
+			for (int start = offset; start < offset + n; start += length) {
+				for (int k = 0; k < half; k++) {
+					double wr = cos[k * stride];
+					double wi = sign * sin[k * stride];
+					int a = start + k;
+					int b = a + half;
+					double tr = re[b] * wr - im[b] * wi;
+					double ti = re[b] * wi + im[b] * wr;
+					re[b] = re[a] - tr;
+					im[b] = im[a] - ti;
+					re[a] += tr;
+					im[a] += ti;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Transposes a grid in place.
+	 */
+	private void transpose(double[] re, double[] im) {
+		IntStream.range(0, n).parallel().forEach(row -> {
+			for (int col = row + 1; col < n; col++) {
+				int a = row * n + col;
+				int b = col * n + row;
+				double t = re[a];
+				re[a] = re[b];
+				re[b] = t;
+				t = im[a];
+				im[a] = im[b];
+				im[b] = t;
+			}
+		});
+	}
+
+
+	/* Instance variables */
+	private final int n;
+	private final double[] cos; //cos(2 pi k / n) for k < n / 2
+	private final double[] sin;
+	private final int[] reversed; //Bit reversal of each index
+
+}
@@ -0,0 +1,178 @@
+import java.util.stream.*;
+
+/*
+ * Paraxial wave optics cross-check of the Gaussian beam calculation. The field is sampled on a square grid and
+ * carried through the same optics: free space by the angular spectrum method, each thin element as a phase screen.
+ * Unlike the q parameter, the field can start clipped by an aperture, so diffraction rings and side lobes are
+ * propagated. The beam size is reported as the D4 sigma radius, twice the standard deviation of the intensity
+ * along x, which equals the 1/e^2 radius for a Gaussian. Both the free space transfer function and the lens phase
+ * separate into a factor along x times a factor along y, so each step fills one table of n factors. The grid and
+ * tables are allocated once.
+ */
+public class FresnelPropagator {
+
+	/*
+	 * Constructs a propagator on an n by n grid. n must be a power of two.
+	 */
+	public FresnelPropagator(int n) {
+		this.n = n;
+		fft = new FFT2D(n);
+		re = new double[n * n];
+		im = new double[n * n];
+		factorRe = new double[n];
+		factorIm = new double[n];
+	}
+
+	/*
+	 * Returns the side of the grid.
+	 */
+	public int size() {
+		return n;
+	}
+
+	/*
+	 * Propagates a beam with q = q_in at the source through a chain and returns its D4 sigma radius (mm) at each of
+	 * an ascending array of positions, NaN before the source. The field at the source is clipped to a circular
+	 * aperture of a given radius (mm), or not at all if the radius is 0. width is the full width of the grid (mm)
+	 * and wavelength is in nm. Throws IllegalArgumentException if an optic is not a thin element.
+	 */
+	public double[] propagate(OpticsChain chain, Complex q_in, double wavelength, double apertureRadius,
+			double width, double[] samplePositions) {
+		double lambda = wavelength * Math.pow(10, -6); //mm
+		double dx = width / n;
+		initialize(q_in, lambda, dx, apertureRadius);
+		double[] radii = new double[samplePositions.length];
+		double z = chain.getPosition(0);
+		int index = 0; //Index of the last optic the field has passed through
+		for (int s = 0; s < samplePositions.length; s++) {
+			if (samplePositions[s] < chain.getPosition(0)) {
+				radii[s] = Double.NaN;
+				continue;
+			}
+			while (index + 1 < chain.size() && chain.getPosition(index + 1) <= samplePositions[s]) {
+				index++;
+				freeSpace(chain.getPosition(index) - z, lambda, dx);
+				z = chain.getPosition(index);
+				thinElement(chain.getMatrix(index), lambda, dx);
+			}
+			freeSpace(samplePositions[s] - z, lambda, dx);
+			z = samplePositions[s];
+			radii[s] = d4SigmaRadius(dx);
+		}
+		return radii;
+	}
+
+	/*
+	 * Fills the grid with the field exp(-i k r^2 / 2q) of the beam at the source, clipped to the aperture.
+	 */
+	private void initialize(Complex q_in, double lambda, double dx, double apertureRadius) {
+		Complex qInverse = q_in.reciprocal();
+		double k = 2 * Math.PI / lambda;
+		IntStream.range(0, n).parallel().forEach(row -> {
+			double y = (row - n / 2) * dx;
+			for (int col = 0; col < n; col++) {
+				double x = (col - n / 2) * dx;
+				double r2 = x * x + y * y;
+				int i = row * n + col;
+				if (apertureRadius > 0 && r2 > apertureRadius * apertureRadius) {
+					re[i] = 0;
+					im[i] = 0;
+					continue;
+				}
+				double amplitude = Math.exp(k * r2 / 2 * qInverse.imag()); //Im(1/q) < 0 for a confined beam
+				double phase = -k * r2 / 2 * qInverse.real();
+				re[i] = amplitude * Math.cos(phase);
+				im[i] = amplitude * Math.sin(phase);
+			}
+		});
+	}
+
+	/*
+	 * Propagates the field a distance (mm) through free space, multiplying its spectrum by the Fresnel transfer
+	 * function exp(i pi lambda L (fx^2 + fy^2)). The sign follows the exp(-ikz) convention of q.
+	 */
+	private void freeSpace(double distance, double lambda, double dx) {
+		if (distance == 0) return;
+		for (int j = 0; j < n; j++) {
+			double f = ((j < n / 2) ? j : j - n) / (n * dx); //FFT order: zero frequency first
+			setFactor(j, Math.PI * lambda * distance * f * f);
+		}
+		fft.transform(re, im, false);
+		applyFactors();
+		fft.transform(re, im, true);
+	}
+
+	/*
+	 * Applies a thin element as the phase screen exp(-i k C r^2 / 2), which is exp(i k r^2 / 2f) for a lens.
+	 */
+	private void thinElement(ABCDMatrix matrix, double lambda, double dx) {
+		double[] m = matrix.baseArray();
+		if (m[0] != 1 || m[1] != 0 || m[3] != 1) {
+			throw new IllegalArgumentException("Only thin lenses can be propagated as wave optics");
+		}
+		if (m[2] == 0) return;
+		double k = 2 * Math.PI / lambda;
+		for (int j = 0; j < n; j++) {
+			double x = (j - n / 2) * dx;
+			setFactor(j, -k * m[2] * x * x / 2);
+		}
+		applyFactors();
+	}
+
+	/*
+	 * Sets the factor for row or column j to exp(i phase).
+	 */
+	private void setFactor(int j, double phase) {
+		factorRe[j] = Math.cos(phase);
+		factorIm[j] = Math.sin(phase);
+	}
+
+	/*
+	 * Multiplies each point of the grid by the factor of its row times the factor of its column.
+	 */
+	private void applyFactors() {
+		IntStream.range(0, n).parallel().forEach(row -> {
+			double rowRe = factorRe[row];
+			double rowIm = factorIm[row];
+			for (int col = 0; col < n; col++) {
+				double fr = rowRe * factorRe[col] - rowIm * factorIm[col];
+				double fi = rowRe * factorIm[col] + rowIm * factorRe[col];
+				int i = row * n + col;
+				double r = re[i];
+				re[i] = r * fr - im[i] * fi;
+				im[i] = r * fi + im[i] * fr;
+			}
+		});
+	}
+
+	/*
+	 * Returns twice the standard deviation along x of the intensity on the grid (mm).
+	 */
+	private double d4SigmaRadius(double dx) {
+		double total = 0;
+		double first = 0;
+		double second = 0;
+		for (int row = 0; row < n; row++) {
+			for (int col = 0; col < n; col++) {
+				int i = row * n + col;
+				double intensity = re[i] * re[i] + im[i] * im[i];
+				double x = (col - n / 2) * dx;
+				total += intensity;
+				first += intensity * x;
+				second += intensity * x * x;
+			}
+		}
+		double mean = first / total;
+		return 2 * Math.sqrt(Math.max(0, second / total - mean * mean));
+	}
+
+
+	/* Instance variables */
+	private final int n;
+	private final FFT2D fft;
+	private final double[] re; //Field on the grid, row by row, x along a row
+	private final double[] im;
+	private final double[] factorRe; //Factor of each row or column for the step being applied
+	private final double[] factorIm;
+
+}
@@ -22,6 +22,8 @@ import acm.graphics.*;
 import acm.gui.*;
 import javax.swing.*;
 import java.awt.Color;
+import java.awt.BorderLayout;
+import java.awt.GridLayout;
 import java.util.*;
 import javax.swing.event.*;
 import java.awt.event.*;
@@ -29,6 +31,10 @@ import javax.swing.filechooser.*;
 import java.io.*;
 import java.text.*;
 import java.math.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+import java.util.function.*;
+import java.lang.management.*;
 import acm.util.*;
 
 public class GaussianWorkbench extends Program implements ChangeListener, ComponentListener {
@@ -57,6 +63,7 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		canvas.addComponentListener(this);
 		
 		addInteractors(); //Buttons and fields around the side of screen
+		registerOpticViews();
 		addDefaultOptics(); //Adds the optics to be displayed on screen at start. Can remove all but source if desired.
 		addActionListeners();
 		canvas.addMouseListener(this);
@@ -65,8 +72,15 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		timer = new javax.swing.Timer(CANVAS_REFRESH_PAUSE_TIME, this); //Creates the timer used to refresh screen
 		timer.setActionCommand("timer");
 		timer.start();
+		metrics.register(); //Exposes timings over JMX
+		hoverTimer = new javax.swing.Timer(HOVER_SETTLE_TIME, this); //Computes exact readouts once cursor stops
+		hoverTimer.setActionCommand("HoverSettled");
+		hoverTimer.setRepeats(false);
 		propagateABCDMatrices();
-		refreshCanvasFlag = true;
+		recoverSession(); //Offers to restore the autosave if the last session crashed
+		recordHistory(); //First step, which can't be undone
+		startJournal();
+		requestRefresh();
 	}
 	
 	
@@ -104,6 +118,10 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		wavelengthField.setActionCommand("Wavelength");
 		wavelengthField.addActionListener(this);
 		add(wavelengthField, WEST);
+		add(new JLabel("Other Wavelengths (nm)"), WEST);
+		otherWavelengthsField.setActionCommand("OtherWavelengths");
+		otherWavelengthsField.addActionListener(this);
+		add(otherWavelengthsField, WEST);
 
 		//Collimated waist input
 		add(new JLabel("Collimated Waist"), WEST);
@@ -160,6 +178,54 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		add(calcWaistPositionLabel, WEST);
 		add(new JLabel("Waist Radius"), WEST);
 		add(calcWaistLabel, WEST);
+		
+		//Spacer
+		add(new JLabel(" "), WEST);
+		
+		//Resonator mode, in which the optics form one round trip of a cavity
+		resonatorButton.setActionCommand("Resonator");
+		resonatorButton.addActionListener(this);
+		add(resonatorButton, WEST);
+		add(resonatorLabel, WEST);
+		stabilityMapButton = new JButton("Stability Map");
+		stabilityMapButton.setActionCommand("StabilityMap");
+		stabilityMapButton.addActionListener(this);
+		add(stabilityMapButton, WEST);
+		couplingMapButton = new JButton("Coupling Map");
+		couplingMapButton.setActionCommand("CouplingMap");
+		couplingMapButton.addActionListener(this);
+		add(couplingMapButton, WEST);
+		crossSectionButton = new JButton("Cross Section");
+		crossSectionButton.setActionCommand("CrossSection");
+		crossSectionButton.addActionListener(this);
+		add(crossSectionButton, WEST);
+		waveOpticsButton.setActionCommand("WaveOptics");
+		waveOpticsButton.addActionListener(this);
+		add(waveOpticsButton, WEST);
+		backwardBeamButton.setActionCommand("BackwardBeam");
+		backwardBeamButton.addActionListener(this);
+		add(backwardBeamButton, WEST);
+		profileFitButton.setActionCommand("ProfileFit");
+		profileFitButton.addActionListener(this);
+		add(profileFitButton, WEST);
+		applyFitButton = new JButton("Apply Fit");
+		applyFitButton.setActionCommand("ApplyFit");
+		applyFitButton.addActionListener(this);
+		add(applyFitButton, WEST);
+		
+		//Spacer
+		add(new JLabel(" "), WEST);
+		
+		//Waveform playback for tunable lenses
+		playbackButton = new JButton("Waveform Playback");
+		playbackButton.setActionCommand("Playback");
+		playbackButton.addActionListener(this);
+		add(playbackButton, WEST);
+		
+		//Performance overlay
+		hudButton.setActionCommand("HUD");
+		hudButton.addActionListener(this);
+		add(hudButton, WEST);
 	}
 	
 	
@@ -176,6 +242,24 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		//Spacer
 		add(new JLabel("   "), SOUTH);
 		
+		//Add target mode button
+		addTargetButton = new JButton("Add Target Mode");
+		addTargetButton.setActionCommand("AddTarget");
+		addTargetButton.addActionListener(this);
+		add(addTargetButton, SOUTH);
+		
+		//Spacer
+		add(new JLabel("   "), SOUTH);
+		
+		//Add source button
+		addSourceButton = new JButton("Add Source");
+		addSourceButton.setActionCommand("AddSource");
+		addSourceButton.addActionListener(this);
+		add(addSourceButton, SOUTH);
+		
+		//Spacer
+		add(new JLabel("   "), SOUTH);
+		
 		//Add lens button
 		addLensButton = new JButton("Add Lens");
 		addLensButton.setActionCommand("AddLens");
@@ -194,6 +278,48 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		//Spacer
 		add(new JLabel("   "), SOUTH);
 		
+		//Buttons for mirrors and thick optics
+		addMirrorButton = new JButton("Add Mirror");
+		addMirrorButton.setActionCommand("AddMirror");
+		addMirrorButton.addActionListener(this);
+		add(addMirrorButton, SOUTH);
+		addThickLensButton = new JButton("Add Thick Lens");
+		addThickLensButton.setActionCommand("AddThickLens");
+		addThickLensButton.addActionListener(this);
+		add(addThickLensButton, SOUTH);
+		addSlabButton = new JButton("Add Slab");
+		addSlabButton.setActionCommand("AddSlab");
+		addSlabButton.addActionListener(this);
+		add(addSlabButton, SOUTH);
+		addGradientIndexButton = new JButton("Add GRIN");
+		addGradientIndexButton.setActionCommand("AddGradientIndex");
+		addGradientIndexButton.addActionListener(this);
+		add(addGradientIndexButton, SOUTH);
+		
+		//Spacer
+		add(new JLabel("   "), SOUTH);
+		
+		//Buttons for blocks of lenses
+		groupButton = new JButton("Group Lenses");
+		groupButton.setActionCommand("Group");
+		groupButton.addActionListener(this);
+		add(groupButton, SOUTH);
+		editBlockButton = new JButton("Edit Block");
+		editBlockButton.setActionCommand("EditBlock");
+		editBlockButton.addActionListener(this);
+		add(editBlockButton, SOUTH);
+		insertBlockButton = new JButton("Insert Block");
+		insertBlockButton.setActionCommand("InsertBlock");
+		insertBlockButton.addActionListener(this);
+		add(insertBlockButton, SOUTH);
+		addRelayButton = new JButton("Add Relay");
+		addRelayButton.setActionCommand("AddRelay");
+		addRelayButton.addActionListener(this);
+		add(addRelayButton, SOUTH);
+		
+		//Spacer
+		add(new JLabel("   "), SOUTH);
+		
 		//Remove button
 		removeButton = new JButton("Remove Optic");
 		removeButton.setActionCommand("Remove");
@@ -209,6 +335,24 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		clearButton.addActionListener(this);
 		add(clearButton, SOUTH);
 		
+		//Spacer
+		add(new JLabel("   "), SOUTH);
+		
+		//Undo button
+		undoButton = new JButton("Undo");
+		undoButton.setActionCommand("Undo");
+		undoButton.addActionListener(this);
+		add(undoButton, SOUTH);
+		
+		//Spacer
+		add(new JLabel("   "), SOUTH);
+		
+		//Redo button
+		redoButton = new JButton("Redo");
+		redoButton.setActionCommand("Redo");
+		redoButton.addActionListener(this);
+		add(redoButton, SOUTH);
+		
 		//Spacer
 		add(new JLabel("                              "), SOUTH);
 		
@@ -272,6 +416,27 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		focalLengthField.setText(Double.toString(DEFAULT_FOCAL_LENGTH));
 		focalLengthField.addActionListener(this);
 		add(focalLengthField, EAST);
+		add(new JLabel("Glass"), EAST);
+		glassBox.addItem(NO_GLASS);
+		for (Glass glass: Glass.getCatalog()) glassBox.addItem(glass.getName());
+		glassBox.setActionCommand("Glass");
+		glassBox.addActionListener(this);
+		add(glassBox, EAST);
+		add(new JLabel("Clear Aperture (0 for none)"), EAST);
+		clearApertureField.setActionCommand("ClearAperture");
+		clearApertureField.setValue(0);
+		clearApertureField.addActionListener(this);
+		add(clearApertureField, EAST);
+		add(new JLabel("Decentre (mm)"), EAST);
+		decentreField.setActionCommand("Misalignment");
+		decentreField.setValue(0);
+		decentreField.addActionListener(this);
+		add(decentreField, EAST);
+		add(new JLabel("Tilt (mrad)"), EAST);
+		tiltField.setActionCommand("Misalignment");
+		tiltField.setValue(0);
+		tiltField.addActionListener(this);
+		add(tiltField, EAST);
 		
 		//Spacer
 		add(new JLabel(" "), EAST);
@@ -299,6 +464,38 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		//Spacer
 		add(new JLabel(" "), EAST);
 		
+		//Fields to set the waist of a target mode
+		add(new JLabel("For Target Modes:"), EAST);
+		add(new JLabel("Target Waist"), EAST);
+		targetWaistField.setActionCommand("TargetWaist");
+		targetWaistField.setValue(DEFAULT_TARGET_WAIST);
+		targetWaistField.addActionListener(this);
+		add(targetWaistField, EAST);
+		add(new JLabel("Target Waist Offset"), EAST);
+		targetOffsetField.setActionCommand("TargetOffset");
+		targetOffsetField.setValue(0);
+		targetOffsetField.addActionListener(this);
+		add(targetOffsetField, EAST);
+		
+		//Spacer
+		add(new JLabel(" "), EAST);
+		
+		//Fields to set the beam of an added source
+		add(new JLabel("For Added Sources:"), EAST);
+		add(new JLabel("Source Waist"), EAST);
+		sourceWaistField.setActionCommand("SourceWaist");
+		sourceWaistField.setValue(DEFAULT_COLLWAIST);
+		sourceWaistField.addActionListener(this);
+		add(sourceWaistField, EAST);
+		add(new JLabel("Source Wavelength"), EAST);
+		sourceWavelengthField.setActionCommand("SourceWavelength");
+		sourceWavelengthField.setValue(DEFAULT_WAVELENGTH);
+		sourceWavelengthField.addActionListener(this);
+		add(sourceWavelengthField, EAST);
+		
+		//Spacer
+		add(new JLabel(" "), EAST);
+		
 		//Labels to display information
 		add(new JLabel("Cursor"), EAST);
 		cursorPositionField.setActionCommand("CursorPosition");
@@ -310,6 +507,12 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		add(new JLabel("Beam Radius:"), EAST);
 		radiusLabel = new JLabel("             ");
 		add(radiusLabel, EAST);
+		add(new JLabel("Gouy Phase (rad):"), EAST);
+		add(gouyPhaseLabel, EAST);
+		add(new JLabel("Transmitted Power:"), EAST);
+		add(transmissionLabel, EAST);
+		add(new JLabel("Peak Radius:"), EAST);
+		add(peakRadiusLabel, EAST);
 		add(new JLabel(" "), EAST);
 		add(new JLabel("**Note that radius of"), EAST);
 		add(new JLabel("curvature diverges at waist**"), EAST);
@@ -321,9 +524,9 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	 */
 	private void addDefaultOptics() {
 		synchronized (lock) {
-			opticsList.add(new Source(0));
-			opticsList.add(new Lens(100, 50, "L1"));
-			opticsList.add(new Lens(300, 150, "L2"));
+			addToOpticsList(new Source(0));
+			addToOpticsList(new Lens(100, 50, "L1"));
+			addToOpticsList(new Lens(300, 150, "L2"));
 		}
 	}
 	
@@ -394,52 +597,95 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	 * Propagates the ABCD matrices of all the optics to get the ABCD matrix at each optic.
 	 */
 	private void propagateABCDMatrices() {
+		long start = System.nanoTime();
 		synchronized (lock) { //Ensures that the matrix list and optics list are thread safe
-			matrixList = new ArrayList<ABCDMatrix>();
-			OpticsHardware source = opticsList.get(0); //The source
-			matrixList.add(source.ABCD());
-			for (int i = 1; i < opticsList.size(); i++) { //Intentionally skips the source
-				matrixList.add((opticsList.get(i).ABCD()).times(ABCDMatrix.freeSpace(opticsList.get(i).getPosition() -
-						opticsList.get(i-1).getPosition())).times(matrixList.get(i-1)));
-			}
+			matrixList = propagateABCDMatrices(opticsList, wavelength);
+			opticsIndex = new OpticsIndex(opticsList); //Every add, move or removal is followed by a propagation
+			modelVersion++;
 		}
+		long elapsed = System.nanoTime() - start;
+		metrics.record(metrics.propagation, elapsed);
+		propagationNanosSinceRefresh += elapsed;
 	}
-
+	
+	/**
+	 * Propagates the ABCD matrices of a list of optics, taking each optic at a wavelength. Does not depend on the
+	 * state of the program, so it can be run without a display (e.g. by the benchmarks).
+	 * @param optics The optics, sorted by position, with the source first.
+	 * @param wavelength The wavelength in nm.
+	 * @return The ABCD matrix of the entire system immediately past each optic.
+	 */
+	static ArrayList<ABCDMatrix> propagateABCDMatrices(List<OpticsHardware> optics, double wavelength) {
+		ArrayList<ABCDMatrix> matrices = new ArrayList<ABCDMatrix>();
+		propagateABCDMatrices(optics, wavelength, matrices);
+		return matrices;
+	}
+	
+	/**
+	 * Propagates the ABCD matrices of a list of optics on from the ones already propagated.
+	 * @param optics The optics, sorted by position, with the source first.
+	 * @param wavelength The wavelength in nm.
+	 * @param matrices The matrices just past the first few optics, to which those of the rest are appended.
+	 */
+	static void propagateABCDMatrices(List<OpticsHardware> optics, double wavelength, List<ABCDMatrix> matrices) {
+		if (matrices.isEmpty()) matrices.add(optics.get(0).ABCD(wavelength)); //The source
+		for (int i = matrices.size(); i < optics.size(); i++) {
+			matrices.add((optics.get(i).ABCD(wavelength)).times(ABCDMatrix.freeSpace(optics.get(i).getPosition() -
+					optics.get(i-1).getPosition())).times(matrices.get(i-1)));
+		}
+	}
+	
 	/**
-	 * Returns a pair of numbers representing the radius of curvature and radius of beam
-	 * at any point in space.
+	 * Returns the beam radius, radius of curvature and accumulated Gouy phase at any point in space.
 	 * @param point The point at which we are interested.
 	 * @param q_in The q parameter at the start of the beam.
+	 * @return The beam parameters at that point. Null if no beam.
+	 */
+	private BeamParameters beamParametersAtPoint(double point, Complex q_in) {
+		return getBeamTrace(q_in).at(point);
+	}
+	
+	/**
+	 * Returns the beam traced through the current system, tracing it again only if the system, q_in or the
+	 * wavelength has changed since the last trace.
+	 * @param q_in The q parameter at the start of the beam.
+	 */
+	private BeamTrace getBeamTrace(Complex q_in) {
+		synchronized (lock) {
+			if (beamTrace == null || beamTraceVersion != modelVersion || ! beamTrace.isFor(q_in, wavelength)) {
+				beamTrace = new BeamTrace(new OpticsChain(opticsList, wavelength), q_in, wavelength);
+				beamTraceVersion = modelVersion;
+			}
+			return beamTrace;
+		}
+	}
+	
+	/**
+	 * Returns a pair of numbers representing the radius of curvature and radius of beam after a system.
+	 * @param matrix The ABCD matrix of the system.
+	 * @param q_in The q parameter at the start of the beam.
+	 * @param wavelength The wavelength (nm).
 	 * @return A pair of numbers representing the radius of curvature and beam radius.
 	 */
-	private GPoint beamParametersAtPoint(double point, Complex q_in) {
-		Complex q_out = getMatrixForPoint(point).transformQ(q_in);
+	static GPoint beamParameters(ABCDMatrix matrix, Complex q_in, double wavelength) {
+		Complex q_out = matrix.transformQ(q_in);
 		double radiusOfCurvature = 1.0 / (q_out.reciprocal().real());;
 		double radius = Math.sqrt(-1 * (wavelength * Math.pow(10, -6) / (Math.PI * q_out.reciprocal().imag())));
 		return new GPoint(radiusOfCurvature, radius);
 	}
 	
 	/**
-	 * Returns the ABCD Matrix corresponding to a point in space.
-	 * Returns null in the event that there is no beam.
+	 * Returns the ABCD Matrix corresponding to a point in space, given the optics and their propagated matrices.
+	 * Returns null in the event that there is no beam. The caller is responsible for locking.
 	 * @param point The point at which we are interested.
+	 * @param optics The optics, sorted by position.
+	 * @param matrices The matrices returned by propagateABCDMatrices for those optics.
 	 * @return The matrix corresponding to that point. Null if no beam.
 	 */
-	private ABCDMatrix getMatrixForPoint(double point) {
+	static ABCDMatrix getMatrixForPoint(double point, List<OpticsHardware> optics, List<ABCDMatrix> matrices) {
 		if (point < 0) return null;
-		int index = 0;
-		synchronized (lock) {
-			for(int i = 0; i < opticsList.size(); i++) {
-				double opticPosition = opticsList.get(i).getPosition();
-				if (opticPosition <= point) {
-					index = i;
-				} else {
-					break;
-				}
-			}
-			return ABCDMatrix.freeSpace(point - opticsList.get(index).getPosition()).
-					times(matrixList.get(index));
-		}
+		int index = Math.max(OpticsIndex.floorIndex(optics, point), 0);
+		return ABCDMatrix.freeSpace(point - optics.get(index).getPosition()).times(matrices.get(index));
 	}
 
 	/**
@@ -452,7 +698,7 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 			double scrollIncrement = (rightEdge - leftEdge) * numClicksScroll * SCROLL_FRACTION;
 			rightEdge += scrollIncrement;
 			leftEdge += scrollIncrement;
-			refreshCanvasFlag = true;
+			requestRefresh();
 		}
 	}
 	
@@ -469,7 +715,7 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 				double center = (rightEdge + leftEdge) / 2;
 				rightEdge = center + newWidth / 2.0;
 				leftEdge = center - newWidth / 2.0;
-				refreshCanvasFlag = true;
+				requestRefresh();
 			}
 		}
 	}
@@ -479,55 +725,320 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	 * Refreshes the canvas to update graphics.
 	 */
 	private void refreshCanvas() {
+		RefreshEvent event = new RefreshEvent();
+		event.begin();
+		long allocatedBefore = hudButton.isSelected() ? getAllocatedBytes() : 0;
+		long start = System.nanoTime();
 		canvas.removeAll();
 		findWaistButton.setSelected(false);
 		ROI = null;
 		drawRuler();
+		long rulerEnd = System.nanoTime();
 		drawBeams();
+		drawOtherBeams();
+		long beamsEnd = System.nanoTime();
+		drawBackwardBeam();
+		drawPlaybackBeam();
+		drawProfileFit();
+		drawWaveOptics();
+		updateCrossSections();
+		updateApertureAnalysis();
+		updatePointingAnalysis();
+		drawBeamCentre();
+		long overlaysEnd = System.nanoTime();
 		drawOptics();
+		long opticsEnd = System.nanoTime();
 		drawOpticsLabels();
+		long labelsEnd = System.nanoTime();
+		
+		metrics.record(metrics.refreshRuler, rulerEnd - start);
+		metrics.record(metrics.refreshBeams, beamsEnd - rulerEnd);
+		metrics.record(metrics.refreshOverlays, overlaysEnd - beamsEnd);
+		metrics.record(metrics.refreshOptics, opticsEnd - overlaysEnd);
+		metrics.record(metrics.refreshLabels, labelsEnd - opticsEnd);
+		metrics.record(metrics.refresh, labelsEnd - start);
+		event.end();
+		if (event.shouldCommit()) {
+			synchronized (lock) {
+				event.modelVersion = modelVersion;
+				event.elementCount = opticsList.size();
+			}
+			event.sampleCount = beamSampleCount;
+			event.requestsCoalesced = refreshRequests;
+			event.propagationTime = propagationNanosSinceRefresh;
+			event.drawBeamsTime = beamsEnd - rulerEnd;
+			event.drawOverlaysTime = overlaysEnd - beamsEnd;
+			event.drawOpticsTime = opticsEnd - overlaysEnd;
+			event.drawOpticsLabelsTime = labelsEnd - opticsEnd;
+			event.commit();
+		}
+		if (hudButton.isSelected()) {
+			drawHUD(labelsEnd - start, refreshRequests, getAllocatedBytes() - allocatedBefore);
+		}
+		propagationNanosSinceRefresh = 0;
+		refreshRequests = 0;
 		canvas.repaint();
 	}
 	
+	
+	/**
+	 * Flags the canvas to be refreshed at the next tick of the timer. Requests made before then are coalesced into
+	 * a single refresh.
+	 */
+	private void requestRefresh() {
+		refreshCanvasFlag = true;
+		refreshRequests++;
+	}
+	
+	
+	/**
+	 * Draws the performance overlay in the top left corner of the canvas.
+	 * @param frameNanos The time taken to draw this frame.
+	 * @param coalesced The number of refresh requests served by this frame.
+	 * @param allocatedBytes The bytes allocated by the event thread while drawing this frame, or negative if unknown.
+	 */
+	private void drawHUD(long frameNanos, int coalesced, long allocatedBytes) {
+		DecimalFormat df = new DecimalFormat("#.###");
+		String[] lines = {
+				"Frame time: " + df.format(frameNanos / 1e6) + " ms",
+				"Requests coalesced: " + coalesced,
+				"Allocated: " + ((allocatedBytes < 0) ? "n/a" : df.format(allocatedBytes / 1024.0) + " KB"),
+				"Samples: " + beamSampleCount + ", model version: " + modelVersion
+		};
+		for (int i = 0; i < lines.length; i++) {
+			GLabel label = new GLabel(lines[i]);
+			label.setColor(Color.BLUE);
+			canvas.add(label, HUD_X, HUD_Y + i * LABEL_SEPARATION);
+		}
+	}
+	
+	
+	/**
+	 * Returns the total bytes allocated so far by the current thread, or a negative number if this is not supported
+	 * by the JVM.
+	 */
+	private static long getAllocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (! (threads instanceof com.sun.management.ThreadMXBean)) return -1;
+		return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
 	/**
-	 * Draws the optics on the screen.
+	 * Draws the optics on the screen, each as its class is drawn in the table of drawers.
 	 */
 	private void drawOptics() {
+		auxiliarySourcesDrawn = 0;
 		synchronized (lock) {
 			for (OpticsHardware o: opticsList) {
-				if (o instanceof Source) {
-					GRoundRect rect = new GRoundRect(SOURCE_WIDTH, SOURCE_HEIGHT);
-					rect.setFilled(true);
-					rect.setColor(Color.LIGHT_GRAY);
-					canvas.add(rect, spacialToCanvasX(o.getPosition()) - SOURCE_WIDTH, 
-							canvas.getHeight() - CENTERLINE_HEIGHT - SOURCE_HEIGHT / 2.0);
-				} else if (o instanceof Lens) {
-					GOval oval = new GOval(LENS_WIDTH, LENS_HEIGHT);
-					if (o.isSelected()) {
-						oval.setColor(Color.RED);
-					} else {
-						oval.setColor(Color.BLACK);
-					}
-					oval.setFilled(true);
-					oval.setFillColor(Color.CYAN);
-					canvas.add(oval, spacialToCanvasX(o.getPosition()) - LENS_WIDTH / 2.0,
-							canvas.getHeight() - CENTERLINE_HEIGHT - LENS_HEIGHT / 2.0);		
-				} else if (o instanceof POI) {
-					GRect rect = new GRect(POI_WIDTH, POI_HEIGHT);
-					rect.setFilled(true);
-					if (o.isSelected()) {
-						rect.setColor(Color.RED);
-					} else {
-						rect.setColor(Color.BLACK);
-					}
-					canvas.add(rect, spacialToCanvasX(o.getPosition()) - POI_WIDTH / 2.0,
-							canvas.getHeight() - CENTERLINE_HEIGHT - POI_HEIGHT / 2.0);
-				}
+				Consumer<OpticsHardware> drawer = opticDrawers.get(o.getClass());
+				if (drawer != null) drawer.accept(o);
 			}
 		}
 	}
 	
 	
+	/**
+	 * Fills the tables of how each class of optic is drawn and labelled. They are looked up by the exact class of an
+	 * optic, so drawing takes the same time per optic however many types there are, and a new type is added here.
+	 */
+	private void registerOpticViews() {
+		opticDrawers.put(Source.class, o -> drawSource(o));
+		opticDrawers.put(Lens.class, o -> drawLens((Lens) o));
+		opticDrawers.put(TunableLens.class, o -> drawLens((Lens) o));
+		opticDrawers.put(CurvedMirror.class, o -> drawMirror((CurvedMirror) o));
+		opticDrawers.put(POI.class, o -> drawPOI(o));
+		opticDrawers.put(TargetMode.class, o -> drawPOI(o));
+		opticDrawers.put(AuxiliarySource.class, o -> drawPOI(o));
+		opticDrawers.put(Subassembly.class, o -> drawBlock((ExtendedOptic) o));
+		opticDrawers.put(PeriodicRelay.class, o -> drawBlock((ExtendedOptic) o));
+		opticDrawers.put(ThickLens.class, o -> drawThickOptic((ThickOptic) o, true));
+		opticDrawers.put(DielectricSlab.class, o -> drawThickOptic((ThickOptic) o, false));
+		opticDrawers.put(GradientIndexMedium.class, o -> drawThickOptic((ThickOptic) o, false));
+		
+		opticLabelers.put(Source.class, (o, labels) -> addBeamRadiusLabel(o, labels));
+		opticLabelers.put(Lens.class, (o, labels) -> addLensLabels((Lens) o, labels));
+		opticLabelers.put(TunableLens.class, (o, labels) -> addTunableLensLabels((TunableLens) o, labels));
+		opticLabelers.put(CurvedMirror.class, (o, labels) -> addMirrorLabels((CurvedMirror) o, labels));
+		opticLabelers.put(POI.class, (o, labels) -> addPOILabels(o, labels));
+		opticLabelers.put(TargetMode.class, (o, labels) -> addTargetModeLabels((TargetMode) o, labels));
+		opticLabelers.put(AuxiliarySource.class, (o, labels) -> addAuxiliarySourceLabels((AuxiliarySource) o,
+				labels));
+		opticLabelers.put(Subassembly.class, (o, labels) -> addBlockLabels((ExtendedOptic) o, labels));
+		opticLabelers.put(PeriodicRelay.class, (o, labels) -> addRelayLabels((PeriodicRelay) o, labels));
+		opticLabelers.put(ThickLens.class, (o, labels) -> addThickLensLabels((ThickLens) o, labels));
+		opticLabelers.put(DielectricSlab.class, (o, labels) -> addSlabLabels((DielectricSlab) o, labels));
+		opticLabelers.put(GradientIndexMedium.class,
+				(o, labels) -> addGradientIndexLabels((GradientIndexMedium) o, labels));
+	}
+	
+	
+	/**
+	 * Draws the source.
+	 * @param o The source.
+	 */
+	private void drawSource(OpticsHardware o) {
+		GRoundRect rect = new GRoundRect(SOURCE_WIDTH, SOURCE_HEIGHT);
+		rect.setFilled(true);
+		rect.setColor(Color.LIGHT_GRAY);
+		canvas.add(rect, spacialToCanvasX(o.getPosition()) - SOURCE_WIDTH, 
+				canvas.getHeight() - CENTERLINE_HEIGHT - SOURCE_HEIGHT / 2.0);
+	}
+	
+	
+	/**
+	 * Draws a lens, tunable or not, with its clear aperture.
+	 * @param lens The lens.
+	 */
+	private void drawLens(Lens lens) {
+		GOval oval = new GOval(LENS_WIDTH, LENS_HEIGHT);
+		if (lens.isSelected()) {
+			oval.setColor(Color.RED);
+		} else {
+			oval.setColor(Color.BLACK);
+		}
+		oval.setFilled(true);
+		oval.setFillColor(Color.CYAN);
+		canvas.add(oval, spacialToCanvasX(lens.getPosition()) - LENS_WIDTH / 2.0,
+				canvas.getHeight() - CENTERLINE_HEIGHT - LENS_HEIGHT / 2.0);		
+		drawClearAperture(lens, oval);
+	}
+	
+	
+	/**
+	 * Draws a curved mirror as a narrow silvered bar, with its clear aperture.
+	 * @param mirror The mirror.
+	 */
+	private void drawMirror(CurvedMirror mirror) {
+		GRect rect = new GRect(MIRROR_WIDTH, LENS_HEIGHT);
+		rect.setColor(mirror.isSelected() ? Color.RED : Color.BLACK);
+		rect.setFilled(true);
+		rect.setFillColor(Color.LIGHT_GRAY);
+		canvas.add(rect, spacialToCanvasX(mirror.getPosition()) - MIRROR_WIDTH / 2.0,
+				canvas.getHeight() - CENTERLINE_HEIGHT - LENS_HEIGHT / 2.0);
+		drawClearAperture(mirror, rect);
+	}
+	
+	
+	/**
+	 * Draws a point of interest, a target mode or an added source, each added source in the color of its beam. The
+	 * added sources must be drawn in order along the bench.
+	 * @param o The optic.
+	 */
+	private void drawPOI(OpticsHardware o) {
+		GRect rect = new GRect(POI_WIDTH, POI_HEIGHT);
+		rect.setFilled(true);
+		if (o.isSelected()) {
+			rect.setColor(Color.RED);
+		} else if (o instanceof TargetMode) {
+			rect.setColor(Color.MAGENTA);
+		} else if (o instanceof AuxiliarySource) {
+			rect.setColor(getOtherBeamColor(otherWavelengths.length + auxiliarySourcesDrawn));
+		} else {
+			rect.setColor(Color.BLACK);
+		}
+		canvas.add(rect, spacialToCanvasX(o.getPosition()) - POI_WIDTH / 2.0,
+				canvas.getHeight() - CENTERLINE_HEIGHT - POI_HEIGHT / 2.0);
+		if (o instanceof AuxiliarySource) auxiliarySourcesDrawn++;
+	}
+	
+	
+	/**
+	 * Marks the clear aperture of a lens, if it has one, with a tick at its edge either side of the centerline. The
+	 * ticks and the outline of the lens are orange if the lens clips the beam.
+	 * @param lens The lens.
+	 * @param shape The shape drawn for the lens.
+	 */
+	private void drawClearAperture(Lens lens, GObject shape) {
+		if (lens.getClearAperture() <= 0) return;
+		double transmission = getApertureTransmission(lens);
+		Color color = (transmission < CLIPPING_FLAG_TRANSMISSION) ? Color.ORANGE : Color.BLACK;
+		if (! lens.isSelected()) shape.setColor(color);
+		double x = spacialToCanvasX(lens.getPosition());
+		double centerline = canvas.getHeight() - CENTERLINE_HEIGHT;
+		double edge = lens.getClearAperture() / 2 * radiusScaleFactor;
+		for (int side = -1; side <= 1; side += 2) {
+			GLine tick = new GLine(x - LENS_WIDTH, centerline + side * edge, x + LENS_WIDTH, centerline + side * edge);
+			tick.setColor(color);
+			canvas.add(tick);
+		}
+	}
+	
+	
+	/**
+	 * Draws a block of lenses as a box from its entrance to its exit, which hides the beam inside when collapsed.
+	 * When expanded, draws its lenses and the actual beam inside instead, carried through them from the beam
+	 * arriving at the entrance. Only the part in view is drawn, so a long relay costs no more than a short one.
+	 * The caller must hold lock.
+	 * @param block The block.
+	 */
+	private void drawBlock(ExtendedOptic block) {
+		double left = Math.max(-LENS_WIDTH, spacialToCanvasX(block.getPosition()));
+		double right = Math.min(canvas.getWidth() + LENS_WIDTH,
+				spacialToCanvasX(block.getPosition() + block.getLength()));
+		if (right < left) return; //Out of view
+		GRect rect = new GRect(right - left + LENS_WIDTH, LENS_HEIGHT);
+		rect.setFilled(true);
+		rect.setColor(block.isSelected() ? Color.RED : Color.BLACK);
+		rect.setFillColor(block.isExpanded() ? Color.WHITE : Color.LIGHT_GRAY);
+		canvas.add(rect, left - LENS_WIDTH / 2.0, canvas.getHeight() - CENTERLINE_HEIGHT - LENS_HEIGHT / 2.0);
+		if (! block.isExpanded()) return;
+		
+		drawInteriorBeam(block, left, right);
+		for (double position: block.getLensPositions(canvasToSpacialX(left), canvasToSpacialX(right),
+				LENS_WIDTH / getScaleFactor())) {
+			GOval oval = new GOval(LENS_WIDTH, LENS_HEIGHT);
+			oval.setFilled(true);
+			oval.setFillColor(Color.CYAN);
+			canvas.add(oval, spacialToCanvasX(position) - LENS_WIDTH / 2.0,
+					canvas.getHeight() - CENTERLINE_HEIGHT - LENS_HEIGHT / 2.0);
+		}
+	}
+	
+	
+	/**
+	 * Draws a thick lens or a slab as a box of glass from its entrance to its exit, with the actual beam inside.
+	 * The caller must hold lock.
+	 * @param optic The optic.
+	 * @param rounded Whether to round the corners of the box, as for a lens.
+	 */
+	private void drawThickOptic(ThickOptic optic, boolean rounded) {
+		double left = Math.max(-LENS_WIDTH, spacialToCanvasX(optic.getPosition()));
+		double right = Math.min(canvas.getWidth() + LENS_WIDTH,
+				spacialToCanvasX(optic.getPosition() + optic.getLength()));
+		if (right < left) return; //Out of view
+		double width = right - left + LENS_WIDTH;
+		GRect rect = rounded ? new GRoundRect(width, LENS_HEIGHT) : new GRect(width, LENS_HEIGHT);
+		rect.setFilled(true);
+		rect.setColor(optic.isSelected() ? Color.RED : Color.BLACK);
+		rect.setFillColor(Color.CYAN);
+		canvas.add(rect, left - LENS_WIDTH / 2.0, canvas.getHeight() - CENTERLINE_HEIGHT - LENS_HEIGHT / 2.0);
+		drawInteriorBeam(optic, left, right);
+	}
+	
+	
+	/**
+	 * Draws the actual beam inside a thick optic between two columns of the canvas, carried through it from the
+	 * beam arriving at its entrance.
+	 * @param optic The optic.
+	 * @param left The first column.
+	 * @param right The last column.
+	 */
+	private void drawInteriorBeam(ThickOptic optic, double left, double right) {
+		Complex q_in = getQIn();
+		if (Double.isNaN(q_in.imag())) return;
+		Complex leaving = getBeamTrace(q_in).getQ(optic.getPosition());
+		Complex arriving = optic.ABCD(wavelength).inverse().transformQ(leaving);
+		int minPixel = (int) Math.ceil(left);
+		double[] positions = new double[Math.max(1, (int) (right - minPixel) / BEAM_PIXEL_RESOLUTION + 1)];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = canvasToSpacialX(minPixel + i * BEAM_PIXEL_RESOLUTION);
+		}
+		double[] radii = new double[positions.length];
+		optic.sampleInterior(positions, arriving, wavelength, radii);
+		drawEnvelope(canvas, minPixel, radii, radiusScaleFactor, Color.RED);
+	}
+	
+	
 	/**
 	 * Draws the labels for each optic on the screen.
 	 */
@@ -561,421 +1072,2770 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	 * @return An ArrayList containing the necessary labels.
 	 */
 	private ArrayList<GLabel> getLabelList(OpticsHardware o) {
-		DecimalFormat df = new DecimalFormat("#.####");
-		df.setRoundingMode(RoundingMode.HALF_UP);
+		DecimalFormat df = getLabelFormat();
 		ArrayList<GLabel> labelList = new ArrayList<GLabel>();
 		labelList.add(new GLabel("Name: " + o.getName()));
 		labelList.add(new GLabel("Type: " + o.getType()));
 		labelList.add(new GLabel("Position: " + df.format((o.getPosition()))));
-		if (o instanceof Lens) {
-			if (focalPowerMode) {
-				labelList.add(new GLabel("Focal power: " + df.format(1000.0 / ((Lens) o).getFocalLength())));
-			} else {
-				labelList.add(new GLabel("f: " + df.format(((Lens) o).getFocalLength())));
-			}
-		}
-		if (o instanceof TunableLens) {
-			TunableLens t = (TunableLens) o;
-			if (focalPowerMode) {
-				labelList.add(new GLabel("Min focal power: " + df.format(1000.0 / t.getMaxFocalLength())));
-				labelList.add(new GLabel("Max focal power: " + df.format(1000.0 / t.getMinFocalLength())));
-			} else {
-				labelList.add(new GLabel("f at min current: " + df.format(t.getMinFocalLength())));
-				labelList.add(new GLabel("f at max current: " + df.format(t.getMaxFocalLength())));
+		BiConsumer<OpticsHardware, ArrayList<GLabel>> labeler = opticLabelers.get(o.getClass());
+		if (labeler != null) labeler.accept(o, labelList);
+		if (o instanceof ThickOptic) return labelList; //The beam at the entrance plane is only equivalent to the exit
+		for (int i = 0; i < otherBeamOptics.length; i++) { //Radius of each other beam reaching the optic
+			if (otherBeamOptics[i] != o) continue;
+			for (int j = 0; j < otherBeamNames.length; j++) {
+				if (Double.isNaN(otherBeamRadii[j][i])) continue;
+				labelList.add(new GLabel("Beam radius (" + otherBeamNames[j] + "): "
+						+ df.format(otherBeamRadii[j][i])));
 			}
 		}
-		double radius = beamParametersAtPoint(o.getPosition(), getQIn()).getY();
-		labelList.add(new GLabel("Beam radius: " + df.format(radius)));
 		return labelList;
 	}
 	
 	
 	/**
-	 * Draws the beams on the screen.
+	 * Returns the format for numbers in the labels of the optics.
 	 */
-	private void drawBeams() {
-		Complex q_in = getQIn();
-		int minPixel = (1 + (int) spacialToCanvasX(0));
-		int prevPixel = minPixel;
-		double prevRadius = beamParametersAtPoint(canvasToSpacialX(prevPixel), q_in).getY() * radiusScaleFactor;
-		for (int pixel = minPixel + BEAM_PIXEL_RESOLUTION; pixel <= canvas.getWidth() - 1; 
-				pixel += BEAM_PIXEL_RESOLUTION) {
-			double radius = beamParametersAtPoint(canvasToSpacialX(pixel), q_in).getY() * radiusScaleFactor;
-			GLine line1 = new GLine(prevPixel, canvas.getHeight() - CENTERLINE_HEIGHT - prevRadius, pixel,
-					canvas.getHeight() - CENTERLINE_HEIGHT - radius);
-			GLine line2 = new GLine(prevPixel, canvas.getHeight() - CENTERLINE_HEIGHT + prevRadius, pixel,
-					canvas.getHeight() - CENTERLINE_HEIGHT + radius);
-			line1.setColor(Color.RED);
-			line2.setColor(Color.RED);
-			canvas.add(line1);
-			canvas.add(line2);
-			prevPixel = pixel;
-			prevRadius = radius;
-		}
+	private static DecimalFormat getLabelFormat() {
+		DecimalFormat df = new DecimalFormat("#.####");
+		df.setRoundingMode(RoundingMode.HALF_UP);
+		return df;
 	}
 	
-
+	
 	/**
-	 * Converts an x coordinate on the canvas to the spacial coordinate.
-	 * @param canvasCoordinate The coordinate on the canvas.
-	 * @return The coordinate in actual space (mm)
+	 * Adds the label for the beam radius at an optic.
+	 * @param o The optic.
+	 * @param labelList The labels of the optic.
+	 * @return The beam parameters at the optic.
 	 */
-	private double canvasToSpacialX(double canvasCoordinate) {
-		return (canvasCoordinate - RULER_X_FROM_EDGE) / getScaleFactor() + leftEdge;
+	private BeamParameters addBeamRadiusLabel(OpticsHardware o, ArrayList<GLabel> labelList) {
+		BeamParameters params = beamParametersAtPoint(o.getPosition(), getQIn());
+		labelList.add(new GLabel("Beam radius: " + getLabelFormat().format(params.getRadius())));
+		return params;
 	}
 	
 	
 	/**
-	 * Converts an x coordinate in space to the pixel on the canvas.
-	 * @param spacialCoordinate The coordinate in space.
-	 * @return The coordinate on the canvas.
+	 * Adds the label for the beam radius at the exit of a thick optic.
+	 * @param optic The optic.
+	 * @param labelList The labels of the optic.
 	 */
-	private double spacialToCanvasX(double spacialCoordinate) {
-		return (spacialCoordinate - leftEdge) * getScaleFactor() + RULER_X_FROM_EDGE;
+	private void addExitRadiusLabel(ThickOptic optic, ArrayList<GLabel> labelList) {
+		double exit = optic.getPosition() + optic.getLength();
+		labelList.add(new GLabel("Beam radius at exit: "
+				+ getLabelFormat().format(beamParametersAtPoint(exit, getQIn()).getRadius())));
 	}
 	
 	
 	/**
-	 * Saves the current optics setup as a file.
-	 * @param filename The filename at which to save the file. If null, selects location using JFileChooser.
-	 * @return Whether save was successful.
+	 * Adds the labels of a fixed lens.
+	 * @param lens The lens.
+	 * @param labelList The labels of the lens.
 	 */
-	private boolean saveFile(String filename) {
-		if (filename != null) {
-			if (saveToFile(new File(filename))) return true;
-			saveName = null;
-		}
-		JFileChooser chooser = new JFileChooser();
-		chooser.setFileFilter(new FileNameExtensionFilter("Gaussian Optics files", EXTENSION));
-		int saveOption = chooser.showSaveDialog(this);
-		if (saveOption != JFileChooser.APPROVE_OPTION) return false;
-		File file = chooser.getSelectedFile();
-		if (! file.getAbsolutePath().endsWith(EXTENSION)) file = new File(file + "." + EXTENSION);
-		return saveToFile(file);
+	private void addLensLabels(Lens lens, ArrayList<GLabel> labelList) {
+		addLensPropertyLabels(lens, labelList);
+		addBeamRadiusLabel(lens, labelList);
 	}
-
+	
 	
 	/**
-	 * Saves the current optics setup to an open file.
-	 * @param file The file to which to save.
-	 * @return Whether the save was successful.
+	 * Adds the labels for the properties any lens has: its focal length, glass, clear aperture and misalignment.
+	 * @param lens The lens.
+	 * @param labelList The labels of the lens.
 	 */
-	private boolean saveToFile(File file) {
-		try {
-			PrintWriter wr = new PrintWriter(new FileWriter(file));
-			wr.println(wavelength);
-			wr.println(collWaist);
-			synchronized (lock) {
-				for (OpticsHardware o: opticsList) {
-					wr.println();
-					writeOptic(wr, o);
-				}
+	private void addLensPropertyLabels(Lens lens, ArrayList<GLabel> labelList) {
+		DecimalFormat df = getLabelFormat();
+		if (focalPowerMode) {
+			labelList.add(new GLabel("Focal power: " + df.format(1000.0 / lens.getFocalLength())));
+		} else {
+			labelList.add(new GLabel("f: " + df.format(lens.getFocalLength())));
+		}
+		if (lens.getGlass() != null) {
+			labelList.add(new GLabel("Glass: " + lens.getGlass().getName() + ", f given at "
+					+ df.format(lens.getDesignWavelength()) + " nm"));
+			if (lens.getDesignWavelength() != wavelength) {
+				labelList.add(new GLabel("f at " + df.format(wavelength) + " nm: "
+						+ df.format(lens.getFocalLength(wavelength))));
 			}
-			wr.close();
-			saveName = file.getAbsolutePath();
-			return true;
-		} catch (IOException ex) {
-			saveName = null;
-			return false;
+		}
+		if (lens.getClearAperture() > 0) {
+			labelList.add(new GLabel("Clear aperture: " + df.format(lens.getClearAperture()) + ", passes "
+					+ df.format(100 * getApertureTransmission(lens)) + "%"));
+		}
+		if (lens.getDecentre() != 0 || lens.getTilt() != 0) {
+			labelList.add(new GLabel("Decentre: " + df.format(lens.getDecentre()) + ", tilt: "
+					+ df.format(lens.getTilt()) + " mrad"));
 		}
 	}
-
+	
 	
 	/**
-	 * Writes a single optic to a file.
-	 * @param wr A PrintWriter to the file.
-	 * @param o The optic to print.
+	 * Adds the labels of a tunable lens.
+	 * @param t The lens.
+	 * @param labelList The labels of the lens.
 	 */
-	private void writeOptic(PrintWriter wr, OpticsHardware o) {
-		if (o instanceof Source) {
-			wr.println("Source");
-			wr.println(o.getName());
-			wr.println(o.getPosition());
-		} else if (o instanceof POI) {
-			wr.println("POI");
-			wr.println(o.getName());
-			wr.println(o.getPosition());
-		} else if (o instanceof TunableLens) {
-			wr.println("TunableLens");
-			TunableLens lens = (TunableLens) o;
-			wr.println(lens.getName());
-			wr.println(lens.getPosition());
-			wr.println(lens.getFocalLength());
-			wr.println(lens.getMinFocalLength());
-			wr.println(lens.getMaxFocalLength());
-		} else if (o instanceof Lens) { //Not tunable lens
-			wr.println("Lens");
-			Lens lens = (Lens) o;
-			wr.println(lens.getName());
-			wr.println(lens.getPosition());
-			wr.println(lens.getFocalLength());
+	private void addTunableLensLabels(TunableLens t, ArrayList<GLabel> labelList) {
+		DecimalFormat df = getLabelFormat();
+		addLensPropertyLabels(t, labelList);
+		double worst = getWorstTunedTransmission(t);
+		if (! Double.isNaN(worst)) {
+			labelList.add(new GLabel("Worst transmission when tuned: " + df.format(100 * worst) + "%"));
 		}
+		if (focalPowerMode) {
+			labelList.add(new GLabel("Min focal power: " + df.format(1000.0 / t.getMaxFocalLength())));
+			labelList.add(new GLabel("Max focal power: " + df.format(1000.0 / t.getMinFocalLength())));
+		} else {
+			labelList.add(new GLabel("f at min current: " + df.format(t.getMinFocalLength())));
+			labelList.add(new GLabel("f at max current: " + df.format(t.getMaxFocalLength())));
+		}
+		addBeamRadiusLabel(t, labelList);
 	}
 	
 	
 	/**
-	 * Opens a file.
-	 * @return Whether the open was successful.
+	 * Adds the labels of a curved mirror.
+	 * @param mirror The mirror.
+	 * @param labelList The labels of the mirror.
 	 */
-	private boolean openFile() {
-		JFileChooser chooser = new JFileChooser();
-		chooser.setFileFilter(new FileNameExtensionFilter("Gaussian Optics files", EXTENSION));
-		int option = chooser.showOpenDialog(this);
-		if (option != JFileChooser.APPROVE_OPTION) return false;
-		
-		try {
-			File file = chooser.getSelectedFile();
-			BufferedReader rd = new BufferedReader(new FileReader(file));
-			double newWavelength = Double.parseDouble(rd.readLine());
-			double newCollWaist = Double.parseDouble(rd.readLine());
-			ArrayList<OpticsHardware> newOpticsList = new ArrayList<OpticsHardware>();
-			while (rd.readLine() != null) {
-				addOptic(rd, newOpticsList);
-			}
-			rd.close();
-			wavelength = newWavelength;
-			collWaist = newCollWaist;
-			opticsList = newOpticsList;
-			wavelengthField.setValue(newWavelength);
-			collWaistField.setValue(newCollWaist);
-			saveName = file.getAbsolutePath();
-			propagateABCDMatrices();
-			refreshCanvasFlag = true;
-			return true;
-		} catch (IOException ex) {
-			return false;
-		}
+	private void addMirrorLabels(CurvedMirror mirror, ArrayList<GLabel> labelList) {
+		labelList.add(new GLabel("Radius of curvature: " + getLabelFormat().format(mirror.getRadiusOfCurvature())));
+		addLensLabels(mirror, labelList);
 	}
 	
 	
 	/**
-	 * Adds an optic from file to the virtual benchtop.
-	 * @param rd A buffered reader for the file.
-	 * @param newOpticsList The list to which to add the optics.
-	 * @throws IOException
+	 * Adds the labels of a point of interest: the beam there and where it points.
+	 * @param o The point of interest, which may also be a target mode or an added source.
+	 * @param labelList The labels of the point of interest.
 	 */
-	private void addOptic(BufferedReader rd, ArrayList<OpticsHardware> newOpticsList) throws IOException {
-		double position;
-		String name;
-		double focalLength;
-		switch (rd.readLine()) { //Determines type of optic
-		case "Source":
-			rd.readLine(); //Name not needed, always "source"
-			position = Double.parseDouble(rd.readLine());
-			newOpticsList.add(new Source(position));
-			break;
-		case "POI":
-			name = rd.readLine();
-			position = Double.parseDouble(rd.readLine());
-			newOpticsList.add(new POI(position, name));
-			break;
-		case "Lens":
-			name = rd.readLine();
-			position = Double.parseDouble(rd.readLine());
-			focalLength = Double.parseDouble(rd.readLine());
-			newOpticsList.add(new Lens(position, focalLength, name));
-			break;
-		case "TunableLens":
-			name = rd.readLine();
-			position = Double.parseDouble(rd.readLine());
-			focalLength = Double.parseDouble(rd.readLine());
-			newOpticsList.add(new TunableLens(position, Double.parseDouble(rd.readLine()), 
-					Double.parseDouble(rd.readLine()), focalLength, name));
-			break;
-		default:
-			throw new IOException("Reached end of switch statement without hitting name of optic");
+	private void addPOILabels(OpticsHardware o, ArrayList<GLabel> labelList) {
+		DecimalFormat df = getLabelFormat();
+		BeamParameters params = addBeamRadiusLabel(o, labelList);
+		labelList.add(new GLabel("Gouy phase: " + df.format(params.getGouyPhase()) + " rad"));
+		int pointed = getPointingTarget(o);
+		if (pointed < 0) return;
+		if (anyMisalignment) {
+			labelList.add(new GLabel("Beam centre: " + df.format(pointingAnalysis.getOffset(pointed)) + ", "
+					+ df.format(pointingAnalysis.getAngle(pointed)) + " mrad"));
 		}
+		int most = pointingAnalysis.getMostSensitive(pointed, false);
+		if (most >= 0) {
+			labelList.add(new GLabel("Most sensitive to decentre of " + pointingOptics[most].getName() + ": "
+					+ df.format(pointingAnalysis.getOffsetPerDecentre(pointed, most)) + " mm, "
+					+ df.format(pointingAnalysis.getAnglePerDecentre(pointed, most)) + " mrad per mm"));
+		}
+		most = pointingAnalysis.getMostSensitive(pointed, true);
+		if (most >= 0) {
+			labelList.add(new GLabel("Most sensitive to tilt of " + pointingOptics[most].getName() + ": "
+					+ df.format(pointingAnalysis.getOffsetPerTilt(pointed, most)) + " mm, "
+					+ df.format(pointingAnalysis.getAnglePerTilt(pointed, most)) + " mrad per mrad"));
+		}
+	}
+	
+	
+	/**
+	 * Adds the labels of a target mode.
+	 * @param target The target mode.
+	 * @param labelList The labels of the target mode.
+	 */
+	private void addTargetModeLabels(TargetMode target, ArrayList<GLabel> labelList) {
+		DecimalFormat df = getLabelFormat();
+		addPOILabels(target, labelList);
+		labelList.add(new GLabel("Target waist: " + df.format(target.getTargetWaist())));
+		labelList.add(new GLabel("Coupling: " + df.format(100 * getCouplingEfficiency(target)) + "%"));
+	}
+	
+	
+	/**
+	 * Adds the labels of an added source.
+	 * @param source The source.
+	 * @param labelList The labels of the source.
+	 */
+	private void addAuxiliarySourceLabels(AuxiliarySource source, ArrayList<GLabel> labelList) {
+		DecimalFormat df = getLabelFormat();
+		addPOILabels(source, labelList);
+		labelList.add(new GLabel("Source waist: " + df.format(source.getWaist()) + " at "
+				+ df.format(source.getWavelength()) + " nm"));
+	}
+	
+	
+	/**
+	 * Adds the labels of a block of lenses.
+	 * @param block The block.
+	 * @param labelList The labels of the block.
+	 */
+	private void addBlockLabels(ExtendedOptic block, ArrayList<GLabel> labelList) {
+		labelList.add(new GLabel("Lenses: " + block.getLensCount() + ", length "
+				+ getLabelFormat().format(block.getLength())));
+		addExitRadiusLabel(block, labelList);
+	}
+	
+	
+	/**
+	 * Adds the labels of a relay.
+	 * @param relay The relay.
+	 * @param labelList The labels of the relay.
+	 */
+	private void addRelayLabels(PeriodicRelay relay, ArrayList<GLabel> labelList) {
+		DecimalFormat df = getLabelFormat();
+		labelList.add(new GLabel("Cell: f " + df.format(relay.getFocalLength()) + ", spacing "
+				+ df.format(relay.getSpacing())));
+		addBlockLabels(relay, labelList);
+	}
+	
+	
+	/**
+	 * Adds the labels of a thick lens: its shape, and its focal length and principal planes.
+	 * @param lens The lens.
+	 * @param labelList The labels of the lens.
+	 */
+	private void addThickLensLabels(ThickLens lens, ArrayList<GLabel> labelList) {
+		DecimalFormat df = getLabelFormat();
+		labelList.add(new GLabel("Radii: " + df.format(lens.getFrontRadius()) + ", "
+				+ df.format(lens.getBackRadius())));
+		labelList.add(new GLabel("Thickness: " + df.format(lens.getThickness()) + ", index "
+				+ df.format(lens.getIndex())));
+		if (focalPowerMode) {
+			labelList.add(new GLabel("Focal power: " + df.format(1000.0 / lens.getFocalLength())));
+		} else {
+			labelList.add(new GLabel("f: " + df.format(lens.getFocalLength())));
+		}
+		labelList.add(new GLabel("Principal planes: " + df.format(lens.getFrontPrincipalPlane()) + ", "
+				+ df.format(lens.getBackPrincipalPlane())));
+		addExitRadiusLabel(lens, labelList);
+	}
+	
+	
+	/**
+	 * Adds the labels of a slab.
+	 * @param slab The slab.
+	 * @param labelList The labels of the slab.
+	 */
+	private void addSlabLabels(DielectricSlab slab, ArrayList<GLabel> labelList) {
+		DecimalFormat df = getLabelFormat();
+		labelList.add(new GLabel("Thickness: " + df.format(slab.getThickness()) + ", index "
+				+ df.format(slab.getIndex())));
+		labelList.add(new GLabel("Waist moved by: "
+				+ df.format(slab.getThickness() * (1 - 1 / slab.getIndex()))));
+		addExitRadiusLabel(slab, labelList);
+	}
+	
+	
+	/**
+	 * Adds the labels of a gradient-index medium.
+	 * @param medium The medium.
+	 * @param labelList The labels of the medium.
+	 */
+	private void addGradientIndexLabels(GradientIndexMedium medium, ArrayList<GLabel> labelList) {
+		DecimalFormat df = getLabelFormat();
+		labelList.add(new GLabel("Length: " + df.format(medium.getLength()) + ", "
+				+ medium.getProfilePositions().length + " profile points, " + medium.getStepCount() + " steps"));
+		if (focalPowerMode) {
+			labelList.add(new GLabel("Focal power: " + df.format(1000.0 / medium.getFocalLength())));
+		} else {
+			labelList.add(new GLabel("f: " + df.format(medium.getFocalLength())));
+		}
+		labelList.add(new GLabel("Principal planes: " + df.format(medium.getFrontPrincipalPlane()) + ", "
+				+ df.format(medium.getBackPrincipalPlane())));
+		addExitRadiusLabel(medium, labelList);
+	}
+	
+	
+	/**
+	 * Draws the beams on the screen.
+	 */
+	private void drawBeams() {
+		Complex q_in = getQIn();
+		int minPixel = (1 + (int) spacialToCanvasX(0));
+		resetPixelTable();
+		if (resonatorMode) updateResonatorLabel();
+		if (Double.isNaN(q_in.imag())) { //Unstable resonator, so there is no mode to draw
+			beamSampleCount = 0;
+			return;
+		}
+		double[][] envelope = getPrecomputedEnvelope();
+		double[] radii = new double[getBeamSampleCount(minPixel, canvas.getWidth())];
+		for (int sample = 0; sample < radii.length; sample++) {
+			radii[sample] = samplePixel(minPixel + sample * BEAM_PIXEL_RESOLUTION, q_in, envelope, sample);
+		}
+		drawEnvelope(canvas, minPixel, radii, radiusScaleFactor, Color.RED);
+		beamSampleCount = radii.length;
+	}
+	
+	
+	/**
+	 * Draws the beams other than the main one, each in its own color: the beams of the other wavelengths, and the
+	 * beam of each added source. The matrices of the optics are computed once for each distinct wavelength, and all
+	 * the beams are carried through them in one pass, which also finds their radii at the optics for the labels.
+	 * The beams of the other wavelengths start with the same collimated waist at the source, or in resonator mode
+	 * with their own cavity modes. The beam of an added source starts at it and passes the optics downstream once.
+	 */
+	private void drawOtherBeams() {
+		double[] extraWavelengths = otherWavelengths;
+		ArrayList<AuxiliarySource> sources = new ArrayList<AuxiliarySource>();
+		ArrayList<Integer> sourceIndices = new ArrayList<Integer>();
+		ChromaticChain chain;
+		OpticsHardware[] optics;
+		synchronized (lock) {
+			for (int i = 0; i < opticsList.size(); i++) {
+				if (opticsList.get(i) instanceof AuxiliarySource) {
+					sources.add((AuxiliarySource) opticsList.get(i));
+					sourceIndices.add(i);
+				}
+			}
+			int beams = extraWavelengths.length + sources.size();
+			if (beams == 0) {
+				otherBeamOptics = new OpticsHardware[0];
+				return;
+			}
+			double[] wavelengths = Arrays.copyOf(extraWavelengths, beams);
+			int distinct = extraWavelengths.length;
+			for (AuxiliarySource source: sources) {
+				boolean found = false;
+				for (int k = 0; k < distinct; k++) found |= wavelengths[k] == source.getWavelength();
+				if (! found) wavelengths[distinct++] = source.getWavelength();
+			}
+			chain = new ChromaticChain(opticsList, Arrays.copyOf(wavelengths, distinct));
+			optics = opticsList.toArray(new OpticsHardware[0]);
+		}
+		int beams = extraWavelengths.length + sources.size();
+		int[] wavelengthIndices = new int[beams];
+		int[] startIndices = new int[beams];
+		Complex[] q_in = new Complex[beams];
+		String[] names = new String[beams];
+		for (int k = 0; k < extraWavelengths.length; k++) {
+			wavelengthIndices[k] = k;
+			names[k] = extraWavelengths[k] + " nm";
+			if (resonatorMode) {
+				q_in[k] = Resonator.eigenmode(chain.transfer(k));
+				if (q_in[k] == null) q_in[k] = new Complex(Double.NaN, Double.NaN); //Unstable at this wavelength
+			} else {
+				q_in[k] = new Complex(0, Math.PI * Math.pow(collWaist, 2) / (extraWavelengths[k] * Math.pow(10, -6)));
+			}
+		}
+		for (int j = 0; j < sources.size(); j++) {
+			int k = extraWavelengths.length + j;
+			AuxiliarySource source = sources.get(j);
+			while (chain.getWavelength(wavelengthIndices[k]) != source.getWavelength()) wavelengthIndices[k]++;
+			startIndices[k] = sourceIndices.get(j);
+			q_in[k] = source.getQ();
+			names[k] = source.getName();
+		}
+		
+		//Sample the view and the optics together, the optics after the view in their own ascending run
+		int minPixel = (1 + (int) spacialToCanvasX(0));
+		double[] viewPositions = getBeamSamplePositions();
+		double[][] radii = new double[beams][viewPositions.length];
+		double[][] radiiAtOptics = new double[beams][optics.length];
+		double[] opticPositions = new double[optics.length];
+		for (int i = 0; i < optics.length; i++) opticPositions[i] = optics[i].getPosition();
+		chain.sample(viewPositions, wavelengthIndices, startIndices, q_in, radii);
+		chain.sample(opticPositions, wavelengthIndices, startIndices, q_in, radiiAtOptics);
+		otherBeamNames = names;
+		otherBeamRadii = radiiAtOptics;
+		otherBeamOptics = optics;
+		
+		GLabel primary = new GLabel(wavelength + " nm");
+		primary.setColor(Color.RED);
+		canvas.add(primary, HUD_X, canvas.getHeight() - LABEL_SEPARATION * (beams + 1));
+		for (int k = 0; k < beams; k++) {
+			Color color = getOtherBeamColor(k);
+			boolean unstable = Double.isNaN(q_in[k].imag());
+			if (! unstable) drawEnvelope(canvas, minPixel, radii[k], radiusScaleFactor, color);
+			String text = (k < extraWavelengths.length) ? names[k]
+					: names[k] + ": " + chain.getWavelength(wavelengthIndices[k]) + " nm";
+			GLabel label = new GLabel(text + (unstable ? " (unstable)" : ""));
+			label.setColor(color);
+			canvas.add(label, HUD_X, canvas.getHeight() - LABEL_SEPARATION * (beams - k));
+		}
+	}
+	
+	
+	/**
+	 * Chooses the target mode the backward beam is run from when the button is turned on: the selected target
+	 * mode, or else the first.
+	 */
+	private void respondToBackwardBeamButton() {
+		if (backwardBeamButton.isSelected()) {
+			TargetMode target = null;
+			synchronized (lock) {
+				for (OpticsHardware o: opticsList) {
+					if (o instanceof TargetMode && (target == null || o == selectedOptic)) target = (TargetMode) o;
+				}
+			}
+			if (target == null) {
+				JOptionPane.showMessageDialog(this, "Add a target mode first.");
+				backwardBeamButton.setSelected(false);
+				return;
+			}
+			backwardTargetName = target.getName();
+		}
+		requestRefresh();
+	}
+	
+	
+	/**
+	 * Draws the beam through the system as it is at the sample shown by a running waveform playback.
+	 */
+	private void drawPlaybackBeam() {
+		OpticsChain chain = playbackChain;
+		if (chain == null) return;
+		int minPixel = (1 + (int) spacialToCanvasX(0));
+		double[] radii = new double[getBeamSampleCount(minPixel, canvas.getWidth())];
+		chain.sample(getBeamSamplePositions(), playbackQIn, playbackWavelength, radii, null, null);
+		drawEnvelope(canvas, minPixel, radii, radiusScaleFactor, PLAYBACK_COLOR);
+		GLabel label = new GLabel("Playback sample " + playbackSample);
+		label.setColor(PLAYBACK_COLOR);
+		canvas.add(label, canvas.getWidth() - label.getWidth() - HUD_X, HUD_Y + 4 * LABEL_SEPARATION);
+	}
+	
+	
+	/**
+	 * Draws the beam that must leave the source for the beam at the chosen target mode to be exactly the target,
+	 * found by running the target q back through the inverted matrices of the optics. Reports the waist this beam
+	 * needs at the source and how well the actual input beam matches it there, which is the coupling into the
+	 * target, since the optics preserve the overlap of two beams.
+	 */
+	private void drawBackwardBeam() {
+		if (! backwardBeamButton.isSelected()) return;
+		OpticsChain chain;
+		TargetMode target = null;
+		int end = -1;
+		synchronized (lock) {
+			chain = new OpticsChain(opticsList, wavelength);
+			OpticsHardware o = nameIndex.get(backwardTargetName);
+			if (o instanceof TargetMode) {
+				target = (TargetMode) o;
+				end = opticsList.indexOf(o);
+			}
+		}
+		GLabel title = new GLabel((target == null) ? "Backward beam: no target mode named " + backwardTargetName
+				: "Backward beam from " + target.getName());
+		title.setColor(Color.MAGENTA);
+		canvas.add(title, canvas.getWidth() - title.getWidth() - HUD_X, HUD_Y + LABEL_SEPARATION);
+		if (target == null) return;
+		
+		Complex q_end = target.getTargetQ(wavelength);
+		int minPixel = (1 + (int) spacialToCanvasX(0));
+		double[] radii = new double[getBeamSampleCount(minPixel, canvas.getWidth())];
+		chain.sampleBackward(getBeamSamplePositions(), end, q_end, wavelength, radii);
+		drawEnvelope(canvas, minPixel, radii, radiusScaleFactor, Color.MAGENTA);
+		
+		Complex required = chain.transfer(0, end).inverse().transformQ(q_end); //Just past the source
+		Complex q_in = getQIn();
+		DecimalFormat df = new DecimalFormat("#.####");
+		df.setRoundingMode(RoundingMode.HALF_UP);
+		String text = "Needs waist " + df.format(Math.sqrt(wavelength * Math.pow(10, -6) * required.imag() / Math.PI))
+				+ " at " + df.format(chain.getPosition(0) - required.real());
+		if (! Double.isNaN(q_in.imag())) {
+			text += ", input matches " + df.format(100 * TargetMode.couplingEfficiency(q_in, required)) + "%";
+		}
+		GLabel label = new GLabel(text);
+		label.setColor(Color.MAGENTA);
+		canvas.add(label, canvas.getWidth() - label.getWidth() - HUD_X, HUD_Y + 2 * LABEL_SEPARATION);
+	}
+	
+	
+	/**
+	 * Returns the color of one of the beams other than the main one.
+	 * @param k The index of the beam: the other wavelengths in order, then the added sources in order of position.
+	 */
+	private static Color getOtherBeamColor(int k) {
+		return WAVELENGTH_COLORS[k % WAVELENGTH_COLORS.length];
+	}
+	
+	
+	/**
+	 * Sets the other wavelengths from the comma separated list in their field. Restores the field if the list is
+	 * not valid.
+	 */
+	private void changeOtherWavelengths() {
+		String[] entries = otherWavelengthsField.getText().split(",");
+		ArrayList<Double> wavelengths = new ArrayList<Double>();
+		try {
+			for (String entry: entries) {
+				if (entry.trim().isEmpty()) continue;
+				double value = Double.parseDouble(entry.trim());
+				if (! (value > 0) || Double.isInfinite(value)) throw new NumberFormatException();
+				wavelengths.add(value);
+			}
+		} catch (NumberFormatException ex) {
+			JOptionPane.showMessageDialog(this, "Enter the other wavelengths in nm, separated by commas.");
+			otherWavelengthsField.setText(formatWavelengths(otherWavelengths));
+			return;
+		}
+		double[] newWavelengths = new double[wavelengths.size()];
+		for (int k = 0; k < newWavelengths.length; k++) newWavelengths[k] = wavelengths.get(k);
+		otherWavelengths = newWavelengths;
+		requestRefresh();
+	}
+	
+	
+	/**
+	 * Formats a list of wavelengths as a comma separated list.
+	 * @param wavelengths The wavelengths (nm).
+	 */
+	private static String formatWavelengths(double[] wavelengths) {
+		StringBuilder text = new StringBuilder();
+		for (int k = 0; k < wavelengths.length; k++) {
+			if (k > 0) text.append(", ");
+			text.append(wavelengths[k]);
+		}
+		return text.toString();
+	}
+	
+	
+	/**
+	 * Sets the glass of the selected lens to the one chosen. Its focal length as entered becomes the focal length at
+	 * the current wavelength.
+	 */
+	private void changeGlass() {
+		if (! (selectedOptic instanceof Lens)) return;
+		Lens lens = (Lens) selectedOptic;
+		if (lens instanceof CurvedMirror) {
+			if (glassBox.getSelectedIndex() != 0) glassBox.setSelectedIndex(0); //Mirrors have no glass
+			return;
+		}
+		Glass glass = Glass.forName((String) glassBox.getSelectedItem()); //Null for no glass
+		if ((glass == null) ? lens.getGlass() == null : glass.equals(lens.getGlass())) return; //Filled, not chosen
+		lens.setGlass(glass, wavelength);
+		propagateABCDMatrices();
+		recordHistory();
+		requestRefresh();
+	}
+	
+	
+	/**
+	 * Sets the clear aperture of the selected optic from its field, if it is a lens.
+	 */
+	private void changeClearAperture() {
+		if (! (selectedOptic instanceof Lens)) return;
+		Lens lens = (Lens) selectedOptic;
+		if (! (clearApertureField.getValue() >= 0) || Double.isInfinite(clearApertureField.getValue())) {
+			clearApertureField.setValue(lens.getClearAperture()); //Restore previous value
+			return;
+		}
+		lens.setClearAperture(clearApertureField.getValue());
+		propagateABCDMatrices(); //Starts a new model version, so the clipping is analyzed again
+		recordHistory();
+		requestRefresh();
+	}
+	
+	
+	/**
+	 * Analyzes the clipping of the beam by the clear apertures of the lenses, if the system or beam has changed
+	 * since the last analysis: the transmission at each lens and in all, and the peak radius. If any lens has an
+	 * aperture, also finds the worst transmission over the whole range of each tunable lens, so that the result
+	 * holds at every slider setting. The analysis runs in the background and is installed on the event thread when
+	 * complete.
+	 */
+	private void updateApertureAnalysis() {
+		final double[] key;
+		final OpticsChain chain;
+		final OpticsHardware[] optics;
+		synchronized (lock) {
+			key = new double[] {modelVersion, wavelength, collWaist, resonatorMode ? 1 : 0};
+			if (Arrays.equals(key, apertureKey) || Arrays.equals(key, pendingApertureKey)) return;
+			chain = new OpticsChain(opticsList, wavelength);
+			optics = opticsList.toArray(new OpticsHardware[0]);
+		}
+		final double[] apertures = new double[optics.length];
+		final double[] lengths = new double[optics.length];
+		ArrayList<Integer> tunables = new ArrayList<Integer>();
+		boolean anyAperture = false;
+		for (int i = 0; i < optics.length; i++) {
+			if (optics[i] instanceof Lens) {
+				apertures[i] = ((Lens) optics[i]).getClearAperture();
+				anyAperture |= apertures[i] > 0;
+			}
+			if (optics[i] instanceof ThickOptic) lengths[i] = ((ThickOptic) optics[i]).getLength();
+			if (optics[i] instanceof TunableLens) tunables.add(i);
+		}
+		final Complex q_in = getQIn();
+		final double currentWavelength = wavelength;
+		final boolean roundTrip = resonatorMode;
+		final boolean tuned = anyAperture && ! tunables.isEmpty();
+		final int[] indices = new int[tuned ? tunables.size() : 0];
+		final double[][] focalLengths = new double[indices.length][TUNE_LENS_SLIDER_STEPS + 1];
+		for (int k = 0; k < indices.length; k++) {
+			indices[k] = tunables.get(k);
+			TunableLens lens = (TunableLens) optics[indices[k]];
+			double dispersion = lens.getFocalLength(wavelength) / lens.getFocalLength(); //1 with no glass
+			for (int value = 0; value <= TUNE_LENS_SLIDER_STEPS; value++) {
+				focalLengths[k][value] = focalLengthForSliderValue(lens, value) * dispersion;
+			}
+		}
+		pendingApertureKey = key;
+		backgroundExecutor.execute(() -> {
+			final ApertureAnalysis analysis = Double.isNaN(q_in.imag()) ? null
+					: new ApertureAnalysis(chain, q_in, currentWavelength, apertures, lengths);
+			final double[] worst = new double[optics.length];
+			Arrays.fill(worst, Double.NaN);
+			if (tuned) {
+				double[] transmissions = ApertureAnalysis.worstOverTuning(chain, roundTrip, q_in, currentWavelength,
+						apertures, lengths, indices, focalLengths);
+				for (int k = 0; k < indices.length; k++) worst[indices[k]] = transmissions[k];
+			}
+			SwingUtilities.invokeLater(() -> {
+				if (pendingApertureKey != key) return; //Superseded
+				apertureOptics = optics;
+				apertureAnalysis = analysis;
+				worstTunedTransmission = worst;
+				apertureKey = key;
+				pendingApertureKey = null;
+				showApertureAnalysis();
+				requestRefresh();
+			});
+		});
+	}
+	
+	
+	/**
+	 * Shows the total transmission, the worst over tuning and the peak radius from the last aperture analysis.
+	 */
+	private void showApertureAnalysis() {
+		ApertureAnalysis analysis = apertureAnalysis;
+		DecimalFormat df = new DecimalFormat("#.####");
+		df.setRoundingMode(RoundingMode.HALF_UP);
+		if (analysis == null) {
+			transmissionLabel.setText("No beam");
+			peakRadiusLabel.setText(" ");
+			return;
+		}
+		String text = df.format(100 * analysis.getTotalTransmission()) + "%";
+		double worstOverall = Double.NaN;
+		for (double t: worstTunedTransmission) {
+			if (! Double.isNaN(t) && ! (t >= worstOverall)) worstOverall = t;
+		}
+		if (! Double.isNaN(worstOverall)) text += ", " + df.format(100 * worstOverall) + "% worst tuned";
+		transmissionLabel.setText(text);
+		peakRadiusLabel.setText(df.format(analysis.getPeakRadius()) + " at " + df.format(analysis.getPeakPosition()));
+	}
+	
+	
+	/**
+	 * Returns the fraction of power passing the clear aperture of an optic, from the last analysis.
+	 * @param o The optic.
+	 * @return The transmission, 1 if the optic was not analyzed.
+	 */
+	private double getApertureTransmission(OpticsHardware o) {
+		if (apertureAnalysis == null) return 1;
+		for (int i = 0; i < apertureOptics.length; i++) {
+			if (apertureOptics[i] == o) return apertureAnalysis.getTransmission(i);
+		}
+		return 1;
+	}
+	
+	
+	/**
+	 * Returns the worst total transmission over the tuning range of a tunable lens, from the last analysis.
+	 * @param o The tunable lens.
+	 * @return The transmission, or NaN if not analyzed.
+	 */
+	private double getWorstTunedTransmission(OpticsHardware o) {
+		for (int i = 0; i < apertureOptics.length; i++) {
+			if (apertureOptics[i] == o) return worstTunedTransmission[i];
+		}
+		return Double.NaN;
+	}
+	
+	
+	/**
+	 * Sets the decentre and tilt of the selected optic from their fields, if it is a lens.
+	 */
+	private void changeMisalignment() {
+		if (! (selectedOptic instanceof Lens)) return;
+		Lens lens = (Lens) selectedOptic;
+		if (! Double.isFinite(decentreField.getValue()) || ! Double.isFinite(tiltField.getValue())) {
+			decentreField.setValue(lens.getDecentre()); //Restore previous values
+			tiltField.setValue(lens.getTilt());
+			return;
+		}
+		lens.setDecentre(decentreField.getValue());
+		lens.setTilt(tiltField.getValue());
+		propagateABCDMatrices(); //Starts a new model version, so the pointing is analyzed again
+		recordHistory();
+		requestRefresh();
+	}
+	
+	
+	/**
+	 * Analyzes the pointing of the beam centre at each point of interest, if the system has changed since the last
+	 * analysis: where the misalignments of the lenses put it, and how far it moves per unit decentre and tilt of
+	 * each lens, all in one pass down the optics.
+	 */
+	private void updatePointingAnalysis() {
+		double[] key;
+		OpticsChain chain;
+		OpticsHardware[] optics;
+		synchronized (lock) {
+			key = new double[] {modelVersion, wavelength};
+			if (Arrays.equals(key, pointingKey)) return;
+			chain = new OpticsChain(opticsList, wavelength);
+			optics = opticsList.toArray(new OpticsHardware[0]);
+		}
+		ArrayList<Integer> targets = new ArrayList<Integer>();
+		boolean misaligned = false;
+		for (int i = 0; i < optics.length; i++) {
+			if (optics[i] instanceof POI) targets.add(i);
+			misaligned |= chain.getDecentre(i) != 0 || chain.getTilt(i) != 0;
+		}
+		int[] indices = new int[targets.size()];
+		for (int k = 0; k < indices.length; k++) indices[k] = targets.get(k);
+		pointingAnalysis = new PointingAnalysis(chain, indices);
+		pointingTargets = indices;
+		pointingOptics = optics;
+		pointingChain = chain;
+		anyMisalignment = misaligned;
+		pointingKey = key;
+	}
+	
+	
+	/**
+	 * Responds to the profile fit button. Turning it on imports a measured beam profile from a file, and turning it
+	 * off drops the profile.
+	 */
+	private void respondToProfileFitButton() {
+		profileFit = null;
+		profileFitKey = null;
+		profilePositions = null;
+		profileRadii = null;
+		if (profileFitButton.isSelected()) {
+			JFileChooser chooser = new JFileChooser();
+			if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+				profileFitButton.setSelected(false);
+				return;
+			}
+			try (BufferedReader rd = new BufferedReader(new FileReader(chooser.getSelectedFile()))) {
+				double[][] profile = readProfile(rd);
+				if (profile[0].length < MIN_PROFILE_POINTS) {
+					JOptionPane.showMessageDialog(this, "The file needs at least " + MIN_PROFILE_POINTS
+							+ " lines of position and beam radius, both in mm.");
+					profileFitButton.setSelected(false);
+					return;
+				}
+				profilePositions = profile[0];
+				profileRadii = profile[1];
+			} catch (IOException ex) {
+				JOptionPane.showMessageDialog(this, "Could not read the beam profile.");
+				profileFitButton.setSelected(false);
+				return;
+			}
+		}
+		requestRefresh();
+	}
+	
+	
+	/**
+	 * Reads a measured beam profile: one measurement per line as a position and a beam radius, both in mm, separated
+	 * by spaces, tabs or a comma. Lines that are not a pair of numbers, such as headers, are skipped.
+	 * @param rd A buffered reader for the file.
+	 * @return The positions, sorted, and the radii measured at them.
+	 * @throws IOException
+	 */
+	static double[][] readProfile(BufferedReader rd) throws IOException {
+		ArrayList<double[]> points = new ArrayList<double[]>();
+		for (String line = rd.readLine(); line != null; line = rd.readLine()) {
+			String[] values = line.trim().split("[\\s,]+");
+			if (values.length != 2) continue;
+			try {
+				double position = Double.parseDouble(values[0]);
+				double radius = Double.parseDouble(values[1]);
+				if (Double.isFinite(position) && radius > 0 && Double.isFinite(radius)) {
+					points.add(new double[] {position, radius});
+				}
+			} catch (NumberFormatException ex) {
+				continue; //Not a measurement
+			}
+		}
+		points.sort((p1, p2) -> Double.compare(p1[0], p2[0]));
+		double[][] profile = new double[2][points.size()];
+		for (int i = 0; i < points.size(); i++) {
+			profile[0][i] = points.get(i)[0];
+			profile[1][i] = points.get(i)[1];
+		}
+		return profile;
+	}
+	
+	
+	/**
+	 * Draws the measured beam profile and the beam fitted to it, fitting again if the system, wavelength or source
+	 * waist has changed since the last fit. With the transfer to every measured position found once per fit, the
+	 * fit itself is quick enough to redo on every edit, even for camera scans of thousands of points.
+	 */
+	private void drawProfileFit() {
+		if (! profileFitButton.isSelected() || profilePositions == null) return;
+		String text;
+		if (resonatorMode) {
+			text = "Profile fit: not in resonator mode";
+		} else {
+			OpticsChain chain = null;
+			double[] key;
+			synchronized (lock) {
+				key = new double[] {modelVersion, wavelength, collWaist};
+				if (! Arrays.equals(key, profileFitKey)) chain = new OpticsChain(opticsList, wavelength);
+			}
+			if (chain != null) {
+				profileFit = new BeamProfileFit(chain, profilePositions, profileRadii, key[1], key[2]);
+				profileFitKey = key;
+			}
+			double[] radii = new double[getBeamSampleCount(1 + (int) spacialToCanvasX(0), canvas.getWidth())];
+			profileFit.sample(getBeamSamplePositions(), radii);
+			drawEnvelope(canvas, 1 + (int) spacialToCanvasX(0), radii, radiusScaleFactor, PROFILE_COLOR);
+			
+			DecimalFormat df = new DecimalFormat("#.####");
+			df.setRoundingMode(RoundingMode.HALF_UP);
+			double[] errors = profileFit.getStandardErrors();
+			text = "Profile fit: waist " + df.format(profileFit.getWaist()) + " \u00b1 " + df.format(errors[0])
+					+ " at " + df.format(profileFit.getWaistPosition()) + " \u00b1 " + df.format(errors[1])
+					+ ", M\u00b2 " + df.format(profileFit.getMSquared()) + " \u00b1 " + df.format(errors[2])
+					+ ", rms " + df.format(profileFit.getRmsResidual());
+		}
+		
+		double centerline = canvas.getHeight() - CENTERLINE_HEIGHT;
+		int lastColumn = Integer.MIN_VALUE;
+		for (int i = 0; i < profilePositions.length; i++) { //At most one point per column, as scans can be dense
+			double x = spacialToCanvasX(profilePositions[i]);
+			if (x < 0 || x > canvas.getWidth() || (int) x == lastColumn) continue;
+			lastColumn = (int) x;
+			double radius = profileRadii[i] * radiusScaleFactor;
+			for (int side = -1; side <= 1; side += 2) {
+				GOval point = new GOval(PROFILE_POINT_SIZE, PROFILE_POINT_SIZE);
+				point.setFilled(true);
+				point.setColor(PROFILE_COLOR);
+				canvas.add(point, x - PROFILE_POINT_SIZE / 2.0, centerline + side * radius - PROFILE_POINT_SIZE / 2.0);
+			}
+		}
+		GLabel label = new GLabel(text + " (" + profilePositions.length + " points)");
+		label.setColor(PROFILE_COLOR);
+		canvas.add(label, canvas.getWidth() - label.getWidth() - HUD_X, HUD_Y + 3 * LABEL_SEPARATION);
+	}
+	
+	
+	/**
+	 * Sets the source waist to the one fitted to the measured profile. The source stays at 0 and the bench puts the
+	 * waist of its beam there, so a fitted waist away from the source is reported rather than applied, as is a
+	 * fitted M^2 above 1, since the bench models an ideal beam.
+	 */
+	private void applyProfileFit() {
+		BeamProfileFit fit = profileFit;
+		if (fit == null || ! profileFitButton.isSelected()) {
+			JOptionPane.showMessageDialog(this, "Import a beam profile with Profile Fit first.");
+			return;
+		}
+		collWaist = fit.getWaist();
+		collWaistField.setValue(collWaist);
+		propagateABCDMatrices();
+		recordHistory();
+		requestRefresh();
+		
+		DecimalFormat df = new DecimalFormat("#.##");
+		String message = "";
+		double offset = fit.getWaistPosition() - fit.getSourcePosition();
+		if (Math.abs(offset) > MIN_DISTANCE_BETWEEN_OPTICS && ! (Math.abs(offset) <= fit.getStandardErrors()[1])) {
+			message += "The fitted waist is " + df.format(offset) + " mm from the source, but the bench puts the waist "
+					+ "at the source, so the beam drawn is shifted from the one measured.\n";
+		}
+		if (fit.getMSquared() > 1 + M_SQUARED_TOLERANCE) {
+			message += "The fitted beam has M\u00b2 " + df.format(fit.getMSquared())
+					+ ", but the bench draws an ideal beam, so its divergence will look smaller than measured.\n";
+		}
+		if (! message.isEmpty()) JOptionPane.showMessageDialog(this, message.trim());
+	}
+	
+	
+	/**
+	 * Draws the centre of the beam, on the same scale as its radius, if any lens is misaligned.
+	 */
+	private void drawBeamCentre() {
+		if (! anyMisalignment) return;
+		int minPixel = (1 + (int) spacialToCanvasX(0));
+		double[] positions = new double[getBeamSampleCount(minPixel, canvas.getWidth())];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = canvasToSpacialX(minPixel + i * BEAM_PIXEL_RESOLUTION);
+		}
+		double[] offsets = new double[positions.length];
+		pointingChain.sampleCentre(positions, offsets);
+		double centerline = canvas.getHeight() - CENTERLINE_HEIGHT;
+		for (int sample = 1; sample < offsets.length; sample++) {
+			if (Double.isNaN(offsets[sample - 1]) || Double.isNaN(offsets[sample])) continue;
+			int pixel = minPixel + sample * BEAM_PIXEL_RESOLUTION;
+			GLine line = new GLine(pixel - BEAM_PIXEL_RESOLUTION, centerline - offsets[sample - 1] * radiusScaleFactor,
+					pixel, centerline - offsets[sample] * radiusScaleFactor);
+			line.setColor(Color.GRAY);
+			canvas.add(line);
+		}
+	}
+	
+	
+	/**
+	 * Returns the index of a point of interest among the targets of the last pointing analysis.
+	 * @param o The optic.
+	 * @return The index, or -1 if it was not analyzed.
+	 */
+	private int getPointingTarget(OpticsHardware o) {
+		for (int k = 0; k < pointingTargets.length; k++) {
+			if (pointingOptics[pointingTargets[k]] == o) return k;
+		}
+		return -1;
+	}
+	
+	
+	/**
+	 * Draws the envelope of a beam as a pair of lines either side of the centerline.
+	 * @param canvas The canvas on which to draw.
+	 * @param minPixel The pixel column of the first sample. Samples are BEAM_PIXEL_RESOLUTION columns apart.
+	 * @param radii The beam radius (mm) at each sample.
+	 * @param scaleFactor The scale factor for the beam radius (pixels per mm).
+	 * @param color The color of the lines.
+	 */
+	static void drawEnvelope(GCanvas canvas, int minPixel, double[] radii, double scaleFactor, Color color) {
+		double centerline = canvas.getHeight() - CENTERLINE_HEIGHT;
+		for (int sample = 1; sample < radii.length; sample++) {
+			int pixel = minPixel + sample * BEAM_PIXEL_RESOLUTION;
+			double prevRadius = radii[sample - 1] * scaleFactor;
+			double radius = radii[sample] * scaleFactor;
+			if (Double.isNaN(prevRadius) || Double.isNaN(radius)) continue; //Beam absent here
+			GLine line1 = new GLine(pixel - BEAM_PIXEL_RESOLUTION, centerline - prevRadius, pixel,
+					centerline - radius);
+			GLine line2 = new GLine(pixel - BEAM_PIXEL_RESOLUTION, centerline + prevRadius, pixel,
+					centerline + radius);
+			line1.setColor(color);
+			line2.setColor(color);
+			canvas.add(line1);
+			canvas.add(line2);
+		}
+	}
+	
+	
+	/**
+	 * Returns the number of pixel columns sampled when drawing a beam. Always at least one.
+	 * @param minPixel The first column sampled.
+	 * @param width The width of the canvas.
+	 */
+	static int getBeamSampleCount(int minPixel, int width) {
+		return Math.max(1, (width - 1 - minPixel) / BEAM_PIXEL_RESOLUTION + 1);
+	}
+	
+
+	/**
+	 * Clears the per-pixel table of beam parameters and sizes it to the current canvas width.
+	 */
+	private void resetPixelTable() {
+		int width = Math.max(canvas.getWidth(), 0);
+		if (pixelRadiusTable == null || pixelRadiusTable.length != width) {
+			pixelRadiusTable = new double[width];
+			pixelCurvatureTable = new double[width];
+			pixelGouyTable = new double[width];
+		}
+		Arrays.fill(pixelRadiusTable, Double.NaN);
+		Arrays.fill(pixelCurvatureTable, Double.NaN);
+		Arrays.fill(pixelGouyTable, Double.NaN);
+	}
+	
+	
+	/**
+	 * Computes the beam parameters at a pixel column and records them in the per-pixel table. The columns skipped
+	 * by BEAM_PIXEL_RESOLUTION reuse the value of the sampled column to their left.
+	 * @param pixel The pixel column on the canvas.
+	 * @param q_in The q parameter at the start of the beam.
+	 * @param envelope A precomputed envelope {radii, curvatures, Gouy phases} over the drawn columns, or null to
+	 * compute directly.
+	 * @param sample The index of this column among the drawn columns.
+	 * @return The beam radius at that column (mm).
+	 */
+	private double samplePixel(int pixel, Complex q_in, double[][] envelope, int sample) {
+		double radiusOfCurvature;
+		double radius;
+		double gouyPhase;
+		if (envelope != null) {
+			radius = envelope[0][sample];
+			radiusOfCurvature = envelope[1][sample];
+			gouyPhase = envelope[2][sample];
+		} else {
+			BeamParameters params = beamParametersAtPoint(canvasToSpacialX(pixel), q_in);
+			if (params == null) return Double.NaN;
+			radiusOfCurvature = params.getRadiusOfCurvature();
+			radius = params.getRadius();
+			gouyPhase = params.getGouyPhase();
+		}
+		int end = Math.min(pixel + BEAM_PIXEL_RESOLUTION, pixelRadiusTable.length);
+		for (int i = Math.max(pixel, 0); i < end; i++) {
+			pixelCurvatureTable[i] = radiusOfCurvature;
+			pixelRadiusTable[i] = radius;
+			pixelGouyTable[i] = gouyPhase;
+		}
+		return radius;
+	}
+	
+	
+	/**
+	 * Returns the spacial positions of the pixel columns sampled by drawBeams, in order.
+	 */
+	private double[] getBeamSamplePositions() {
+		int minPixel = (1 + (int) spacialToCanvasX(0));
+		int count = getBeamSampleCount(minPixel, canvas.getWidth());
+		double[] samplePositions = new double[count];
+		for (int i = 0; i < count; i++) {
+			samplePositions[i] = canvasToSpacialX(minPixel + i * BEAM_PIXEL_RESOLUTION);
+		}
+		return samplePositions;
+	}
+	
+	
+	/**
+	 * Returns the precomputed envelope for the current slider setting of the selected tunable lens, if one is
+	 * cached for the current system. Otherwise starts computing the family of envelopes in the background and
+	 * returns null so the caller computes the envelope directly.
+	 * @return The envelope {radii, curvatures, Gouy phases} over the columns sampled by drawBeams, or null.
+	 */
+	private double[][] getPrecomputedEnvelope() {
+		if (! (selectedOptic instanceof TunableLens)) return null;
+		TunableLens lens = (TunableLens) selectedOptic;
+		double[] key = getEnvelopeFamilyKey(lens);
+		if (key == null) return null;
+		if (envelopeFamily != null && Arrays.equals(key, envelopeFamilyKey)) {
+			int value = tuneLens.getValue();
+			if (lens.getFocalLength() == focalLengthForSliderValue(lens, value)) return envelopeFamily[value];
+			return null; //Focal length was typed in and does not sit on a slider position
+		}
+		if (! Arrays.equals(key, pendingEnvelopeFamilyKey)) computeEnvelopeFamily(lens, key);
+		return null;
+	}
+	
+	
+	/**
+	 * Builds the key identifying the system state for which an envelope family is valid: everything that affects
+	 * the envelope except the focal length of the lens being tuned. Every other optic is keyed by its position, its
+	 * matrix at the current wavelength and, for a thick optic, its length, so that any edit to it (a glass, an inner
+	 * lens of a block, a gradient-index profile) changes the key.
+	 * @param lens The tunable lens being tuned.
+	 * @return The key, or null if the lens is no longer in the optics list.
+	 */
+	private double[] getEnvelopeFamilyKey(TunableLens lens) {
+		synchronized (lock) {
+			int index = opticsList.indexOf(lens);
+			if (index == -1) return null;
+			double[] key = new double[ENVELOPE_KEY_STRIDE * opticsList.size() + 10];
+			for (int i = 0; i < opticsList.size(); i++) {
+				OpticsHardware o = opticsList.get(i);
+				int k = ENVELOPE_KEY_STRIDE * i;
+				key[k] = o.getPosition();
+				if (o != lens) System.arraycopy(o.ABCD(wavelength).baseArray(), 0, key, k + 1, 4);
+				if (o instanceof ThickOptic) key[k + 5] = ((ThickOptic) o).getLength();
+			}
+			int k = ENVELOPE_KEY_STRIDE * opticsList.size();
+			key[k++] = index;
+			key[k++] = lens.getMinFocalLength();
+			key[k++] = lens.getMaxFocalLength();
+			Glass glass = lens.getGlass(); //The ratio of the focal length at this wavelength to the one set
+			key[k++] = (glass == null) ? 1 : glass.focalLength(1, lens.getDesignWavelength(), wavelength);
+			key[k++] = wavelength;
+			key[k++] = collWaist;
+			key[k++] = leftEdge;
+			key[k++] = rightEdge;
+			key[k++] = canvas.getWidth();
+			key[k++] = resonatorMode ? 1 : 0;
+			return key;
+		}
+	}
+	
+	
+	/**
+	 * Computes in the background the envelope of the beam at every position of the tune lens slider, evaluating the
+	 * slider positions in parallel. The result is installed on the event thread when complete.
+	 * @param lens The tunable lens being tuned.
+	 * @param key The key of the system state the family is computed for.
+	 */
+	private void computeEnvelopeFamily(final TunableLens lens, final double[] key) {
+		final OpticsChain chain;
+		final int index;
+		synchronized (lock) {
+			chain = new OpticsChain(opticsList, wavelength);
+			index = opticsList.indexOf(lens);
+		}
+		final double[] samplePositions = getBeamSamplePositions();
+		final Complex q_in = getQIn();
+		final boolean roundTrip = resonatorMode;
+		final double currentWavelength = wavelength;
+		final double[] focalLengths = new double[TUNE_LENS_SLIDER_STEPS + 1];
+		for (int value = 0; value <= TUNE_LENS_SLIDER_STEPS; value++) {
+			focalLengths[value] = focalLengthForSliderValue(lens, value);
+			Glass glass = lens.getGlass();
+			if (glass != null) { //The slider sets the focal length at the design wavelength
+				focalLengths[value] = glass.focalLength(focalLengths[value], lens.getDesignWavelength(), wavelength);
+			}
+		}
+		pendingEnvelopeFamilyKey = key;
+		backgroundExecutor.execute(() -> {
+			final double[][][] family = new double[TUNE_LENS_SLIDER_STEPS + 1][][];
+			IntStream.rangeClosed(0, TUNE_LENS_SLIDER_STEPS).parallel().forEach(value -> {
+				double[][] envelope = new double[3][samplePositions.length];
+				OpticsChain variant = chain.withLens(index, focalLengths[value]);
+				Complex q = q_in;
+				if (roundTrip) { //The cavity mode changes with the lens
+					q = Resonator.eigenmode(variant.transfer(0, variant.size() - 1));
+					if (q == null) q = new Complex(Double.NaN, Double.NaN);
+				}
+				variant.sample(samplePositions, q, currentWavelength, envelope[0], envelope[1], envelope[2]);
+				family[value] = envelope;
+			});
+			SwingUtilities.invokeLater(() -> {
+				if (pendingEnvelopeFamilyKey == key) {
+					envelopeFamily = family;
+					envelopeFamilyKey = key;
+					pendingEnvelopeFamilyKey = null;
+				}
+			});
+		});
+	}
+	
+	
+	/**
+	 * Returns the focal length of a tunable lens at a position of the tune lens slider. The slider maps linearly
+	 * in focal power across the range of the lens.
+	 * @param lens The tunable lens.
+	 * @param value The slider position, from 0 to TUNE_LENS_SLIDER_STEPS.
+	 * @return The focal length (mm).
+	 */
+	private double focalLengthForSliderValue(TunableLens lens, int value) {
+		double minFocalPower = 1000.0 / lens.getMinFocalLength();
+		double maxFocalPower = 1000.0 / lens.getMaxFocalLength();
+		double focalPower = minFocalPower + (maxFocalPower - minFocalPower) / TUNE_LENS_SLIDER_STEPS * value;
+		return 1000.0 / focalPower;
+	}
+	
+	
+	/**
+	 * Converts an x coordinate on the canvas to the spacial coordinate.
+	 * @param canvasCoordinate The coordinate on the canvas.
+	 * @return The coordinate in actual space (mm)
+	 */
+	private double canvasToSpacialX(double canvasCoordinate) {
+		return (canvasCoordinate - RULER_X_FROM_EDGE) / getScaleFactor() + leftEdge;
+	}
+	
+	
+	/**
+	 * Converts an x coordinate in space to the pixel on the canvas.
+	 * @param spacialCoordinate The coordinate in space.
+	 * @return The coordinate on the canvas.
+	 */
+	private double spacialToCanvasX(double spacialCoordinate) {
+		return (spacialCoordinate - leftEdge) * getScaleFactor() + RULER_X_FROM_EDGE;
+	}
+	
+	
+	/**
+	 * Saves the current optics setup as a file.
+	 * @param filename The filename at which to save the file. If null, selects location using JFileChooser.
+	 * @return Whether save was successful.
+	 */
+	private boolean saveFile(String filename) {
+		if (filename != null) {
+			if (saveToFile(new File(filename))) return true;
+			saveName = null;
+		}
+		JFileChooser chooser = new JFileChooser();
+		chooser.setFileFilter(new FileNameExtensionFilter("Gaussian Optics files", EXTENSION));
+		int saveOption = chooser.showSaveDialog(this);
+		if (saveOption != JFileChooser.APPROVE_OPTION) return false;
+		File file = chooser.getSelectedFile();
+		if (! file.getAbsolutePath().endsWith(EXTENSION)) file = new File(file + "." + EXTENSION);
+		return saveToFile(file);
+	}
+
+	
+	/**
+	 * Saves the current optics setup to an open file.
+	 * @param file The file to which to save.
+	 * @return Whether the save was successful.
+	 */
+	private boolean saveToFile(File file) {
+		long start = metrics.start();
+		try {
+			PrintWriter wr = new PrintWriter(new FileWriter(file));
+			synchronized (lock) {
+				writeBench(wr, wavelength, collWaist, opticsList);
+			}
+			wr.close();
+			saveName = file.getAbsolutePath();
+			return true;
+		} catch (IOException ex) {
+			saveName = null;
+			return false;
+		} finally {
+			metrics.stop(metrics.save, start);
+		}
+	}
+
+	
+	/**
+	 * Writes a bench in the format of a saved file. Shared with the autosave journal.
+	 * @param wr A PrintWriter to the file.
+	 * @param wavelength The wavelength in nm.
+	 * @param collWaist The collimated waist in mm.
+	 * @param optics The optics, sorted by position.
+	 */
+	static void writeBench(PrintWriter wr, double wavelength, double collWaist, List<OpticsHardware> optics) {
+		wr.println(wavelength);
+		wr.println(collWaist);
+		for (OpticsHardware o: optics) {
+			wr.println();
+			writeOptic(wr, o);
+		}
+	}
+	
+	
+	/**
+	 * Writes a single optic to a file, with the codec for its class.
+	 * @param wr A PrintWriter to the file.
+	 * @param o The optic to print.
+	 */
+	static void writeOptic(PrintWriter wr, OpticsHardware o) {
+		OpticCodecs.write(wr, o);
+	}
+	
+	
+	/**
+	 * Opens a file.
+	 * @return Whether the open was successful.
+	 */
+	private boolean openFile() {
+		JFileChooser chooser = new JFileChooser();
+		chooser.setFileFilter(new FileNameExtensionFilter("Gaussian Optics files", EXTENSION));
+		int option = chooser.showOpenDialog(this);
+		if (option != JFileChooser.APPROVE_OPTION) return false;
+		
+		long start = metrics.start();
+		try {
+			File file = chooser.getSelectedFile();
+			BufferedReader rd = new BufferedReader(new FileReader(file));
+			ArrayList<OpticsHardware> newOpticsList = new ArrayList<OpticsHardware>();
+			double[] source = new double[2];
+			readBench(rd, newOpticsList, source);
+			rd.close();
+			double newWavelength = source[0];
+			double newCollWaist = source[1];
+			wavelength = newWavelength;
+			collWaist = newCollWaist;
+			synchronized (lock) {
+				opticsList = newOpticsList;
+				rebuildNameIndex();
+			}
+			wavelengthField.setValue(newWavelength);
+			collWaistField.setValue(newCollWaist);
+			saveName = file.getAbsolutePath();
+			propagateABCDMatrices();
+			requestRefresh();
+			return true;
+		} catch (IOException ex) {
+			return false;
+		} finally {
+			metrics.stop(metrics.open, start);
+		}
+	}
+	
+	
+	/**
+	 * Reads a bench in the format of a saved file. Shared with the autosave journal.
+	 * @param rd A buffered reader for the file.
+	 * @param newOpticsList The list to which to add the optics.
+	 * @param sourceOut Receives the wavelength (nm) and collimated waist (mm).
+	 * @throws IOException
+	 */
+	static void readBench(BufferedReader rd, List<OpticsHardware> newOpticsList, double[] sourceOut)
+			throws IOException {
+		sourceOut[0] = Double.parseDouble(rd.readLine());
+		sourceOut[1] = Double.parseDouble(rd.readLine());
+		while (rd.readLine() != null) {
+			addOptic(rd, newOpticsList);
+		}
+	}
+	
+	
+	/**
+	 * Adds an optic from file to the virtual benchtop, read with the codec for its type line.
+	 * @param rd A buffered reader for the file.
+	 * @param newOpticsList The list to which to add the optics.
+	 * @throws IOException
+	 */
+	static void addOptic(BufferedReader rd, List<OpticsHardware> newOpticsList) throws IOException {
+		newOpticsList.add(OpticCodecs.read(rd));
+	}
+
+	
+	/**
+	 * Responds to moved sliders. Called externally.
+	 */
+	public void stateChanged(ChangeEvent e) {
+		Object source = e.getSource();
+		if (source == apparentBeamDiameter) {
+			radiusScaleFactor = Math.pow(10, apparentBeamDiameter.getValue() / 50.0);
+			requestRefresh();
+		} else if (source == tuneLens) {
+			if (ignoreChangeEventFlag) { //Ignores one change event from the tuneLens slider
+				ignoreChangeEventFlag = false;
+			} else if (selectedOptic != null && selectedOptic instanceof TunableLens) {
+				TunableLens o = (TunableLens) selectedOptic;
+				double focalLength = focalLengthForSliderValue(o, tuneLens.getValue());
+				o.setFocalLength(focalLength);
+				setFieldFocalLengthValue(focalLengthField, focalLength);
+				propagateABCDMatrices();
+				if (! tuneLens.getValueIsAdjusting()) recordHistory(); //One step per drag, not per tick
+				requestRefresh();
+				
+			}
+		}
+	}
+	
+	
+	/**
+	 * Responds to interactors that are pressed or updated by user, or signals sent by timer. Directs appropriate
+	 * action to take place based on signal sent from source. Called externally in events thread.
+	 */
+	public void actionPerformed(ActionEvent e) {
+		
+		switch (e.getActionCommand()) { //Gets command thrown by the source to identify the required action.
+		
+		case "timer": //Timer has told screen to refresh
+			respondToTimer();
+			break;
+			
+		case "Wavelength": //User has changed the wavelength
+			wavelength = wavelengthField.getValue();
+			propagateABCDMatrices(); //Lenses with a glass change focal length
+			recordHistory();
+			requestRefresh();
+			break;
+			
+		case "OtherWavelengths": //User has changed the other wavelengths
+			changeOtherWavelengths();
+			break;
+			
+		case "Glass": //User has chosen a glass
+			changeGlass();
+			break;
+			
+		case "ClearAperture": //User has pressed enter in the clear aperture field
+			changeClearAperture();
+			break;
+			
+		case "Misalignment": //User has pressed enter in the decentre or tilt field
+			changeMisalignment();
+			break;
+			
+		case "CollWaist": //User has changed the collimated waist
+			collWaist = collWaistField.getValue();
+			recordHistory();
+			requestRefresh();
+			break;
+		
+		case "LeftScroll": //User has pressed left scroll button
+			scroll(-1);
+			requestRefresh();
+			break;
+			
+		case "RightScroll": //User has pressed right scroll button
+			scroll(1);
+			requestRefresh();
+			break;
+			
+		case "ZoomPlus": //User has pressed zoom in button
+			zoom(1);
+			requestRefresh();
+			break;
+			
+		case "ZoomMinus": //User has pressed zoom out button
+			zoom(-1);
+			requestRefresh();
+			break;
+			
+		case "Save": //User has pressed save button
+			saveFile(saveName);
+			break;
+			
+		case "SaveAs": //User has pressed save as button
+			saveFile(null);
+			break;
+			
+		case "Open": //User has pressed open button
+			if (openFile()) { //If file was opened successfully
+				refreshForNewFile();
+				recordHistory();
+			}
+			break;
+			
+		case "Remove": //User has pressed the remove optic button
+			removeSelectedOptic();
+			break;
+			
+		case "Group": //User has pressed the group lenses button
+			groupLenses();
+			break;
+			
+		case "EditBlock": //User has pressed the edit block button
+			editBlock();
+			break;
+			
+		case "InsertBlock": //User has pressed the insert block button
+			insertBlock();
+			break;
+			
+		case "AddRelay": //User has pressed the add relay button
+			addRelay();
+			break;
+		
+		case "Name": //User has pressed enter in the name field
+			changeName();
+			break;
+			
+		case "Position": //User has pressed enter in the position field
+			changePosition();
+			break;
+			
+		case "FocalLength": //User has pressed enter in the focal length field
+			changeFocalLength();
+			break;
+			
+		case "MinFocalLength": //User has pressed enter in the focal length at min current field
+			changeMinFocalLength();
+			break;
+			
+		case "MaxFocalLength": //User has pressed enter in the focal length at max current field
+			changeMaxFocalLength();
+			break;
+			
+		case "AddLens": //User has pressed the add lens button
+			addLens();
+			break;
+			
+		case "AddTunableLens": //User has pressed the add tunable lens button
+			addTunableLens();
+			break;
+			
+		case "AddMirror": //User has pressed the add mirror button
+			addMirror();
+			break;
+			
+		case "AddThickLens": //User has pressed the add thick lens button
+			addThickOptic(true);
+			break;
+			
+		case "AddSlab": //User has pressed the add slab button
+			addThickOptic(false);
+			break;
+			
+		case "AddGradientIndex": //User has pressed the add GRIN button
+			addGradientIndex();
+			break;
+		
+		case "CursorPosition": //User has input a value into the cursor position box and pressed enter	
+			updateParamsAtPointLabels(cursorPositionField.getValue());
+			break;
+			
+		case "HoverSettled": //Cursor has stopped moving, so replace the table readout with exact values
+			updateParamsAtPointLabels(hoverPosition);
+			break;
+			
+		case "FindWaist": //User has pressed the find waist button
+			respondToClickedFindWaistButton();
+			break;
+			
+		case "FocalPowerMode": //User has pressed the focal power mode button
+			respondToFocalPowerModeButton();
+			break;
+			
+		case "FocalLengthMode": //User has pressed the focal length mode button
+			respondToFocalLengthModeButton();
+			break;
+			
+		case "AddPOI": //User has pressed the add POI button
+			addPOI();
+			break;
+			
+		case "AddTarget": //User has pressed the add target mode button
+			addTargetMode();
+			break;
+			
+		case "TargetWaist": //User has pressed enter in the target waist field
+			changeTarget();
+			break;
+			
+		case "TargetOffset": //User has pressed enter in the target waist offset field
+			changeTarget();
+			break;
+			
+		case "AddSource": //User has pressed the add source button
+			addAuxiliarySource();
+			break;
+			
+		case "SourceWaist": //User has pressed enter in the source waist field
+			changeAuxiliarySource();
+			break;
+			
+		case "SourceWavelength": //User has pressed enter in the source wavelength field
+			changeAuxiliarySource();
+			break;
+			
+		case "CouplingMap": //User has pressed the coupling map button
+			respondToCouplingMapButton();
+			break;
+			
+		case "CrossSection": //User has pressed the cross section button
+			respondToCrossSectionButton();
+			break;
+			
+		case "Clear": //User has pressed the clear optics button
+			clearAll();
+			recordHistory();
+			break;
+			
+		case "New": //User has pressed the new button
+			respondToNewButton();
+			break;
+			
+		case "Playback": //User has pressed the waveform playback button
+			respondToPlaybackButton();
+			break;
+			
+		case "Undo": //User has pressed the undo button
+			restoreSnapshot(history.undo());
+			break;
+			
+		case "Redo": //User has pressed the redo button
+			restoreSnapshot(history.redo());
+			break;
+			
+		case "Resonator": //User has toggled resonator mode
+			resonatorMode = resonatorButton.isSelected();
+			resonatorLabel.setText(" ");
+			requestRefresh();
+			break;
+			
+		case "StabilityMap": //User has pressed the stability map button
+			respondToStabilityMapButton();
+			break;
+			
+		case "WaveOptics": //User has toggled the wave optics overlay
+			if (waveOpticsButton.isSelected() && ! askForWaveOpticsSettings()) waveOpticsButton.setSelected(false);
+			requestRefresh();
+			break;
+			
+		case "BackwardBeam": //User has toggled the backward beam
+			respondToBackwardBeamButton();
+			break;
+			
+		case "ProfileFit": //User has toggled the measured beam profile
+			respondToProfileFitButton();
+			break;
+			
+		case "ApplyFit": //User has pressed the apply fit button
+			applyProfileFit();
+			break;
+			
+		case "HUD": //User has toggled the performance overlay
+			requestRefresh();
+			break;
+			
+		default:
+			throw new ErrorException("Unrecognized command");
+		}
+	}
+	
+	
+	/**
+	 * Responds to the "new" button being pressed by restoring screen to default and clearing optics.
+	 */
+	private void respondToNewButton() {
+		leftEdge = DEFAULT_LEFT_EDGE;
+		rightEdge = DEFAULT_RIGHT_EDGE;
+		clearAll();
+		saveName = null;
+		wavelength = DEFAULT_WAVELENGTH;
+		collWaist = DEFAULT_COLLWAIST;
+		wavelengthField.setValue(DEFAULT_WAVELENGTH);
+		collWaistField.setValue(DEFAULT_COLLWAIST);
+		nameField.setText("No name");
+		focalLengthField.setValue(DEFAULT_FOCAL_LENGTH);
+		minFocalLengthField.setValue(DEFAULT_MIN_FOCAL_LENGTH);
+		maxFocalLengthField.setValue(DEFAULT_MAX_FOCAL_LENGTH);
+		recordHistory();
+	}
+	
+	
+	/**
+	 * Shows the round trip stability parameter (A + D) / 2 of the resonator.
+	 */
+	private void updateResonatorLabel() {
+		ABCDMatrix roundTrip;
+		synchronized (lock) {
+			roundTrip = matrixList.get(matrixList.size() - 1);
+		}
+		double[] m = roundTrip.baseArray();
+		String stability = new DecimalFormat("#.####").format(Resonator.stability(m[0], m[3]));
+		resonatorLabel.setText(((Resonator.isStable(roundTrip)) ? "Stable" : "Unstable") + ", (A+D)/2 = "
+				+ stability);
+	}
+	
+	
+	/**
+	 * Asks the user for two parameters and maps the round trip stability (A + D) / 2 over them in the background.
+	 */
+	private void respondToStabilityMapButton() {
+		OpticsChain chain;
+		ParameterMap.Axis[] axes;
+		synchronized (lock) {
+			chain = new OpticsChain(opticsList, wavelength);
+		}
+		axes = askForMapAxes("Stability Map", false);
+		if (axes == null) return;
+		final ParameterMap.Axis x = axes[0];
+		final ParameterMap.Axis y = axes[1];
+		backgroundExecutor.execute(() -> {
+			final ParameterMap map = new ParameterMap(chain, chain.size() - 1, x, y, PARAMETER_MAP_RESOLUTION,
+					PARAMETER_MAP_RESOLUTION, (a, b, c, d) -> Resonator.stability(a, d));
+			SwingUtilities.invokeLater(() -> new ParameterMapWindow("Stability Map", map, value -> {
+				if (Double.isNaN(value)) return 0;
+				if (Math.abs(value) >= 1) return UNSTABLE_COLOR; //No confined mode
+				return Color.HSBtoRGB((float) (0.66 * (1 - value) / 2), 1f, 1f); //Blue at -1 to red at +1
+			}, "(A+D)/2"));
+		});
+	}
+	
+	
+	/**
+	 * Asks the user for two parameters, usually the positions of two lenses, and maps the coupling efficiency into
+	 * a target mode over them in the background. Uses the selected target mode, or else the first.
+	 */
+	private void respondToCouplingMapButton() {
+		if (resonatorMode) { //The map carries a fixed input beam, but a cavity mode would change at every point
+			JOptionPane.showMessageDialog(this, "Coupling maps are single pass. Turn off resonator mode first.");
+			return;
+		}
+		OpticsChain chain;
+		TargetMode target = null;
+		int end = -1;
+		synchronized (lock) {
+			chain = new OpticsChain(opticsList, wavelength);
+			for (int i = 0; i < opticsList.size(); i++) {
+				OpticsHardware o = opticsList.get(i);
+				if (o instanceof TargetMode && (target == null || o == selectedOptic)) {
+					target = (TargetMode) o;
+					end = i;
+				}
+			}
+		}
+		if (target == null) {
+			JOptionPane.showMessageDialog(this, "Add a target mode first.");
+			return;
+		}
+		ParameterMap.Axis[] axes = askForMapAxes("Coupling Map into " + target.getName(), true);
+		if (axes == null) return;
+		final ParameterMap.Axis x = axes[0];
+		final ParameterMap.Axis y = axes[1];
+		final int targetIndex = end;
+		final String targetName = target.getName();
+		final Complex q_in = getQIn();
+		final Complex q_target = target.getTargetQ(wavelength);
+		final double qr0 = q_in.real();
+		final double qi0 = q_in.imag();
+		backgroundExecutor.execute(() -> {
+			final ParameterMap map = new ParameterMap(chain, targetIndex, x, y, PARAMETER_MAP_RESOLUTION,
+					PARAMETER_MAP_RESOLUTION, (a, b, c, d) -> {
+				double nr = a * qr0 + b; //q = (A q_in + B) / (C q_in + D)
+				double ni = a * qi0;
+				double dr = c * qr0 + d;
+				double di = c * qi0;
+				double denominator = dr * dr + di * di;
+				return TargetMode.couplingEfficiency((nr * dr + ni * di) / denominator,
+						(ni * dr - nr * di) / denominator, q_target.real(), q_target.imag());
+			});
+			int[] best = map.getMaximum();
+			String title = "Coupling Map into " + targetName;
+			if (best != null) {
+				title += String.format(" (best %.2f%% at %s = %.3f, %s = %.3f)",
+						100 * map.getValue(best[0], best[1]), x.label, x.getValue(best[0], map.getWidth()), y.label,
+						y.getValue(best[1], map.getHeight()));
+			}
+			final String windowTitle = title;
+			SwingUtilities.invokeLater(() -> new ParameterMapWindow(windowTitle, map, value -> {
+				if (Double.isNaN(value)) return 0;
+				int level = (int) Math.round(255 * Math.max(0, Math.min(1, value)));
+				return (level << 16) | (level << 8) | level; //Black at 0 to white at full coupling
+			}, "coupling"));
+		});
+	}
+	
+	
+	/**
+	 * Asks the user for the grid size and input aperture of the wave optics overlay.
+	 * @return Whether valid settings were entered.
+	 */
+	private boolean askForWaveOpticsSettings() {
+		Integer[] sizes = {128, 256, 512, 1024};
+		JComboBox<Integer> sizeBox = new JComboBox<Integer>(sizes);
+		sizeBox.setSelectedItem(waveOpticsGridSize);
+		JTextField apertureField = new JTextField((waveOpticsAperture > 0) ? Double.toString(waveOpticsAperture) : "",
+				TEXT_FIELD_SIZE / 2);
+		JPanel panel = new JPanel(new GridLayout(2, 2, 4, 4));
+		panel.add(new JLabel("Grid size"));
+		panel.add(sizeBox);
+		panel.add(new JLabel("Aperture radius at source (mm)"));
+		panel.add(apertureField);
+		int option = JOptionPane.showConfirmDialog(this, panel, "Wave Optics (leave the aperture blank for none)",
+				JOptionPane.OK_CANCEL_OPTION);
+		if (option != JOptionPane.OK_OPTION) return false;
+		double aperture = 0;
+		try {
+			if (! apertureField.getText().trim().isEmpty()) aperture = Double.parseDouble(apertureField.getText());
+		} catch (NumberFormatException ex) {
+			JOptionPane.showMessageDialog(this, "Enter the aperture radius as a number.");
+			return false;
+		}
+		if (aperture < 0) {
+			JOptionPane.showMessageDialog(this, "The aperture radius cannot be negative.");
+			return false;
+		}
+		waveOpticsGridSize = (Integer) sizeBox.getSelectedItem();
+		waveOpticsAperture = aperture;
+		return true;
+	}
+	
+	
+	/**
+	 * Draws the D4 sigma radius found by wave optics over the Gaussian beam, if the overlay is on and a result is
+	 * ready for the current system and view. Otherwise starts computing one in the background, unless one is
+	 * already being computed; the canvas is refreshed when it finishes.
+	 */
+	private void drawWaveOptics() {
+		if (! waveOpticsButton.isSelected()) return;
+		double[] key = getWaveOpticsKey();
+		String legend;
+		if (Arrays.equals(key, waveOpticsKey)) {
+			double centerline = canvas.getHeight() - CENTERLINE_HEIGHT;
+			for (int i = 1; i < waveOpticsPositions.length; i++) {
+				double x0 = spacialToCanvasX(waveOpticsPositions[i - 1]);
+				double x1 = spacialToCanvasX(waveOpticsPositions[i]);
+				double r0 = waveOpticsRadii[i - 1] * radiusScaleFactor;
+				double r1 = waveOpticsRadii[i] * radiusScaleFactor;
+				if (Double.isNaN(r0) || Double.isNaN(r1)) continue;
+				GLine line1 = new GLine(x0, centerline - r0, x1, centerline - r1);
+				GLine line2 = new GLine(x0, centerline + r0, x1, centerline + r1);
+				line1.setColor(Color.BLUE);
+				line2.setColor(Color.BLUE);
+				canvas.add(line1);
+				canvas.add(line2);
+			}
+			legend = String.format("Wave optics D4\u03c3: %d\u00b2 grid, %.3f mm wide", waveOpticsGridSize,
+					waveOpticsGridWidth);
+			if (waveOpticsUndersampled) legend += " (undersampled at the smallest spot)";
+		} else {
+			legend = "Wave optics: computing...";
+			if (! waveOpticsComputing) computeWaveOptics(key);
+		}
+		GLabel label = new GLabel(legend);
+		label.setColor(Color.BLUE);
+		canvas.add(label, canvas.getWidth() - label.getWidth() - HUD_X, HUD_Y);
+	}
+	
+	
+	/**
+	 * Builds the key identifying the system state and view for which a wave optics result is valid.
+	 */
+	private double[] getWaveOpticsKey() {
+		synchronized (lock) {
+			return new double[] {modelVersion, wavelength, collWaist, leftEdge, rightEdge, resonatorMode ? 1 : 0,
+					waveOpticsGridSize, waveOpticsAperture};
+		}
+	}
+	
+	
+	/**
+	 * Propagates the beam as a sampled field in the background, over the visible part of the system. The grid is
+	 * sized from the widest Gaussian beam between the source and the right edge of the view. The result is installed
+	 * on the event thread, and the canvas refreshed.
+	 * @param key The key of the system state and view the result is computed for.
+	 */
+	private void computeWaveOptics(final double[] key) {
+		final OpticsChain chain;
+		synchronized (lock) {
+			chain = new OpticsChain(opticsList, wavelength);
+		}
+		final Complex q_in = getQIn();
+		if (Double.isNaN(q_in.imag()) || rightEdge <= 0) { //No beam to propagate
+			waveOpticsKey = key;
+			waveOpticsPositions = new double[0];
+			waveOpticsRadii = new double[0];
+			requestRefresh();
+			return;
+		}
+		final double currentWavelength = wavelength;
+		final double aperture = waveOpticsAperture;
+		final int gridSize = waveOpticsGridSize;
+		final double[] samplePositions = new double[WAVE_OPTICS_SAMPLES];
+		double start = Math.max(leftEdge, 0);
+		for (int i = 0; i < WAVE_OPTICS_SAMPLES; i++) {
+			samplePositions[i] = start + (rightEdge - start) * i / (WAVE_OPTICS_SAMPLES - 1);
+		}
+		final double[] sizingPositions = new double[WAVE_OPTICS_SAMPLES];
+		for (int i = 0; i < WAVE_OPTICS_SAMPLES; i++) {
+			sizingPositions[i] = rightEdge * i / (WAVE_OPTICS_SAMPLES - 1);
+		}
+		waveOpticsComputing = true;
+		backgroundExecutor.execute(() -> {
+			double[] gaussianRadii = new double[WAVE_OPTICS_SAMPLES];
+			chain.sample(sizingPositions, q_in, currentWavelength, gaussianRadii, null, null);
+			double widest = aperture;
+			double narrowest = Double.POSITIVE_INFINITY;
+			for (double radius: gaussianRadii) {
+				widest = Math.max(widest, radius);
+				narrowest = Math.min(narrowest, radius);
+			}
+			final double width = WAVE_OPTICS_GRID_RADII * widest;
+			final boolean undersampled = narrowest < WAVE_OPTICS_MIN_PIXELS_PER_RADIUS * width / gridSize;
+			double[] radii;
+			String error = null;
+			try {
+				if (waveOpticsPropagator == null || waveOpticsPropagator.size() != gridSize) {
+					waveOpticsPropagator = new FresnelPropagator(gridSize);
+				}
+				radii = waveOpticsPropagator.propagate(chain, q_in, currentWavelength, aperture, width,
+						samplePositions);
+			} catch (IllegalArgumentException ex) {
+				radii = null;
+				error = ex.getMessage();
+			}
+			final double[] result = radii;
+			final String message = error;
+			SwingUtilities.invokeLater(() -> {
+				waveOpticsComputing = false;
+				if (result == null) {
+					waveOpticsButton.setSelected(false);
+					JOptionPane.showMessageDialog(this, message);
+				} else {
+					waveOpticsKey = key;
+					waveOpticsPositions = samplePositions;
+					waveOpticsRadii = result;
+					waveOpticsGridWidth = width;
+					waveOpticsUndersampled = undersampled;
+				}
+				requestRefresh();
+			});
+		});
+	}
+	
+	
+	/**
+	 * Opens a window showing the transverse intensity of the beam at the selected POI.
+	 */
+	private void respondToCrossSectionButton() {
+		if (! (selectedOptic instanceof POI)) {
+			JOptionPane.showMessageDialog(this, "Select a POI first.");
+			return;
+		}
+		CrossSectionWindow window = new CrossSectionWindow((POI) selectedOptic);
+		window.setBeam(beamParametersAtPoint(selectedOptic.getPosition(), getQIn()));
+		crossSectionWindows.add(window);
+	}
+	
+	
+	/**
+	 * Shows the current beam in each open cross section window, forgetting windows that have been closed.
+	 */
+	private void updateCrossSections() {
+		if (crossSectionWindows.isEmpty()) return;
+		Complex q_in = getQIn();
+		Iterator<CrossSectionWindow> iterator = crossSectionWindows.iterator();
+		while (iterator.hasNext()) {
+			CrossSectionWindow window = iterator.next();
+			OpticsHardware poi;
+			synchronized (lock) {
+				poi = nameIndex.get(window.getPOIName());
+			}
+			if (! window.isDisplayable()) {
+				iterator.remove();
+			} else if (! (poi instanceof POI)) { //The POI was removed or renamed
+				window.setBeam(null);
+			} else {
+				window.setBeam(beamParametersAtPoint(poi.getPosition(), q_in));
+			}
+		}
+	}
+	
+	
+	/**
+	 * Asks the user for the two axes of a parameter map: for each, an optic, the property to vary and its range.
+	 * Positions must stay between the neighbouring optics.
+	 * @param title The title of the dialog.
+	 * @param positions Whether both axes default to positions, rather than a position and a focal length.
+	 * @return The two axes, or null if the user cancelled or entered an invalid range.
+	 */
+	private ParameterMap.Axis[] askForMapAxes(String title, boolean positions) {
+		ArrayList<OpticsHardware> optics;
+		synchronized (lock) {
+			optics = new ArrayList<OpticsHardware>(opticsList);
+		}
+		if (optics.size() < 2) {
+			JOptionPane.showMessageDialog(this, "Add an optic to vary first.");
+			return null;
+		}
+		String[] names = new String[optics.size() - 1];
+		for (int i = 1; i < optics.size(); i++) names[i - 1] = optics.get(i).getName(); //Skips the source
+		String[] kinds = {"Position", "Focal length"};
+		JPanel panel = new JPanel(new GridLayout(3, 5, 4, 4));
+		for (String header: new String[] {"", "Optic", "Parameter", "From", "To"}) panel.add(new JLabel(header));
+		ArrayList<JComboBox<String>> opticBoxes = new ArrayList<JComboBox<String>>();
+		ArrayList<JComboBox<String>> kindBoxes = new ArrayList<JComboBox<String>>();
+		ArrayList<JTextField> minFields = new ArrayList<JTextField>();
+		ArrayList<JTextField> maxFields = new ArrayList<JTextField>();
+		for (String axis: new String[] {"Horizontal", "Vertical"}) {
+			panel.add(new JLabel(axis));
+			JComboBox<String> opticBox = new JComboBox<String>(names);
+			opticBox.setSelectedIndex(Math.min(opticBoxes.size(), names.length - 1));
+			opticBoxes.add(opticBox);
+			panel.add(opticBox);
+			JComboBox<String> kindBox = new JComboBox<String>(kinds);
+			kindBox.setSelectedIndex(positions ? 0 : kindBoxes.size() % 2);
+			kindBoxes.add(kindBox);
+			panel.add(kindBox);
+			JTextField minField = new JTextField(TEXT_FIELD_SIZE / 2);
+			minFields.add(minField);
+			panel.add(minField);
+			JTextField maxField = new JTextField(TEXT_FIELD_SIZE / 2);
+			maxFields.add(maxField);
+			panel.add(maxField);
+		}
+		int option = JOptionPane.showConfirmDialog(this, panel, title + " (leave a range blank for a default)",
+				JOptionPane.OK_CANCEL_OPTION);
+		if (option != JOptionPane.OK_OPTION) return null;
+		
+		ParameterMap.Axis[] axes = new ParameterMap.Axis[2];
+		for (int k = 0; k < 2; k++) {
+			int index = opticBoxes.get(k).getSelectedIndex() + 1;
+			OpticsHardware o = optics.get(index);
+			boolean position = kindBoxes.get(k).getSelectedIndex() == 0;
+			double low = 0;
+			double high = 0;
+			double min;
+			double max;
+			if (position) { //Strictly between the neighbours, so the optics stay in order and don't overlap
+				OpticsHardware previous = optics.get(index - 1);
+				double previousLength = (previous instanceof ThickOptic) ? ((ThickOptic) previous).getLength() : 0;
+				double length = (o instanceof ThickOptic) ? ((ThickOptic) o).getLength() : 0;
+				low = previous.getPosition() + previousLength + MIN_DISTANCE_BETWEEN_OPTICS;
+				high = (index + 1 < optics.size())
+						? optics.get(index + 1).getPosition() - length - MIN_DISTANCE_BETWEEN_OPTICS
+						: 2 * o.getPosition() - previous.getPosition();
+				min = low;
+				max = high;
+			} else {
+				if (! (o instanceof Lens)) {
+					JOptionPane.showMessageDialog(this, o.getName() + " has no focal length.");
+					return null;
+				}
+				double f = ((Lens) o).getFocalLength();
+				min = Math.min(f / 2, f * 2);
+				max = Math.max(f / 2, f * 2);
+			}
+			try {
+				if (! minFields.get(k).getText().trim().isEmpty()) min = Double.parseDouble(minFields.get(k).getText());
+				if (! maxFields.get(k).getText().trim().isEmpty()) max = Double.parseDouble(maxFields.get(k).getText());
+			} catch (NumberFormatException ex) {
+				JOptionPane.showMessageDialog(this, "Enter the ranges as numbers.");
+				return null;
+			}
+			if (position && (min < low || max > high || ! (min < max))) {
+				JOptionPane.showMessageDialog(this, "The position of " + o.getName() + " must increase within "
+						+ low + " to " + high + " mm.");
+				return null;
+			}
+			if (! position && ! (min < max)) {
+				JOptionPane.showMessageDialog(this, "The focal length range of " + o.getName() + " must increase.");
+				return null;
+			}
+			if (! position && min * max <= 0) { //Would pass through zero focal length
+				JOptionPane.showMessageDialog(this, "The focal length of " + o.getName() + " must not change sign.");
+				return null;
+			}
+			axes[k] = new ParameterMap.Axis(index, position ? ParameterMap.Kind.POSITION
+					: ParameterMap.Kind.FOCAL_LENGTH, min, max, o.getName() + (position ? " position" : " f"));
+		}
+		if (axes[0].index == axes[1].index && axes[0].kind == axes[1].kind) {
+			JOptionPane.showMessageDialog(this, "Choose two different parameters.");
+			return null;
+		}
+		return axes;
+	}
+	
+	
+	/**
+	 * Asks the user for a focal power waveform for the tunable lenses, either from a CSV file or a sine drive,
+	 * then computes the waist trajectory and opens a window showing it.
+	 */
+	private void respondToPlaybackButton() {
+		ArrayList<TunableLens> tunableLenses = new ArrayList<TunableLens>();
+		OpticsChain chain;
+		synchronized (lock) {
+			for (OpticsHardware o: opticsList) {
+				if (o instanceof TunableLens) tunableLenses.add((TunableLens) o);
+			}
+			chain = new OpticsChain(opticsList, wavelength);
+		}
+		if (tunableLenses.isEmpty()) {
+			JOptionPane.showMessageDialog(this, "Add a tunable lens to drive first.");
+			return;
+		}
+		if (resonatorMode) { //The playback kernel carries a fixed input beam through a single pass
+			JOptionPane.showMessageDialog(this, "Waveform playback is single pass. Turn off resonator mode first.");
+			return;
+		}
+		
+		String[] options = {"Load CSV", "Sine Drive", "Cancel"};
+		int choice = JOptionPane.showOptionDialog(this, "Drive the tunable lenses from:", "Waveform Playback",
+				JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+		ArrayList<TunableLens> drivenLenses = new ArrayList<TunableLens>();
+		double[][] waveforms;
+		double sampleRate;
+		if (choice == 0) {
+			JFileChooser chooser = new JFileChooser();
+			chooser.setFileFilter(new FileNameExtensionFilter("CSV files", "csv"));
+			if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+			ArrayList<String> names = new ArrayList<String>();
+			double[] sampleRateOut = new double[1];
+			try (BufferedReader rd = new BufferedReader(new FileReader(chooser.getSelectedFile()))) {
+				waveforms = WaveformPlayback.readCSV(rd, names, sampleRateOut, MAX_PLAYBACK_SAMPLES);
+			} catch (IOException ex) {
+				JOptionPane.showMessageDialog(this, "Could not read waveform: " + ex.getMessage());
+				return;
+			}
+			for (String name: names) {
+				OpticsHardware match = getOpticByName(name);
+				if (! (match instanceof TunableLens)) {
+					JOptionPane.showMessageDialog(this, "No tunable lens named " + name);
+					return;
+				}
+				drivenLenses.add((TunableLens) match);
+			}
+			sampleRate = sampleRateOut[0];
+		} else if (choice == 1) {
+			DoubleField frequencyField = new DoubleField(DEFAULT_DRIVE_FREQUENCY);
+			DoubleField sampleRateField = new DoubleField(DEFAULT_DRIVE_SAMPLE_RATE);
+			DoubleField durationField = new DoubleField(DEFAULT_DRIVE_DURATION);
+			Object[] message = {"Frequency (Hz)", frequencyField, "Sample rate (Hz)", sampleRateField,
+					"Duration (s)", durationField};
+			if (JOptionPane.showConfirmDialog(this, message, "Sine Drive", JOptionPane.OK_CANCEL_OPTION) 
+					!= JOptionPane.OK_OPTION) return;
+			sampleRate = sampleRateField.getValue();
+			int sampleCount = (int) Math.min(MAX_PLAYBACK_SAMPLES, Math.round(sampleRate * durationField.getValue()));
+			if (sampleRate <= 0 || sampleCount < 2) return;
+			drivenLenses.addAll(tunableLenses);
+			waveforms = new double[drivenLenses.size()][];
+			for (int j = 0; j < drivenLenses.size(); j++) { //Each lens sweeps its full range in focal power
+				TunableLens lens = drivenLenses.get(j);
+				waveforms[j] = WaveformPlayback.sineWaveform(1000.0 / lens.getMinFocalLength(),
+						1000.0 / lens.getMaxFocalLength(), frequencyField.getValue(), sampleRate, sampleCount);
+			}
+		} else {
+			return;
+		}
+		
+		//The kernel needs the driven lenses in chain order
+		int[] lensIndices = new int[drivenLenses.size()];
+		synchronized (lock) {
+			for (int j = 0; j < drivenLenses.size(); j++) lensIndices[j] = opticsList.indexOf(drivenLenses.get(j));
+		}
+		Integer[] order = new Integer[lensIndices.length];
+		for (int j = 0; j < order.length; j++) order[j] = j;
+		Arrays.sort(order, (x, y) -> Integer.compare(lensIndices[x], lensIndices[y]));
+		int[] sortedIndices = new int[order.length];
+		double[][] sortedWaveforms = new double[order.length][];
+		String[] names = new String[order.length];
+		for (int j = 0; j < order.length; j++) {
+			sortedIndices[j] = lensIndices[order[j]];
+			sortedWaveforms[j] = waveforms[order[j]];
+			names[j] = drivenLenses.get(order[j]).getName();
+		}
+		for (int j = 1; j < sortedIndices.length; j++) {
+			if (sortedIndices[j] == sortedIndices[j - 1]) {
+				JOptionPane.showMessageDialog(this, "Each lens may only be driven by one waveform.");
+				return;
+			}
+		}
+		
+		//The waist trajectory is computed off the event thread, as long waveforms take a while
+		final Complex q_in = getQIn();
+		final double currentWavelength = wavelength;
+		final double rate = sampleRate;
+		backgroundExecutor.execute(() -> {
+			WaveformPlayback playback = new WaveformPlayback(chain, sortedIndices, sortedWaveforms, rate, q_in,
+					currentWavelength);
+			SwingUtilities.invokeLater(() -> showPlayback(playback, chain, sortedIndices, names, q_in,
+					currentWavelength));
+		});
 	}
-
+	
 	
 	/**
-	 * Responds to moved sliders. Called externally.
+	 * Opens the window for a computed playback. The animation draws the beam through a copy of the system with the
+	 * driven lenses set to each sample, leaving the optics on the bench, and so the history and journal, untouched.
+	 * @param playback The computed playback.
+	 * @param chain The system the playback was computed for.
+	 * @param lensIndices The indices in the chain of the driven lenses, in the order of the playback.
+	 * @param names The names of the driven lenses, in the same order.
+	 * @param q_in The q parameter at the source the playback was computed for.
+	 * @param atWavelength The wavelength in nm the playback was computed at.
 	 */
-	public void stateChanged(ChangeEvent e) {
-		Object source = e.getSource();
-		if (source == apparentBeamDiameter) {
-			radiusScaleFactor = Math.pow(10, apparentBeamDiameter.getValue() / 50.0);
-			refreshCanvasFlag = true;
-		} else if (source == tuneLens) {
-			if (ignoreChangeEventFlag) { //Ignores one change event from the tuneLens slider
-				ignoreChangeEventFlag = false;
-			} else if (selectedOptic != null && selectedOptic instanceof TunableLens) {
-				TunableLens o = (TunableLens) selectedOptic;
-				double minFocalPower = 1000.0 / o.getMinFocalLength();
-				double maxFocalPower = 1000.0 / o.getMaxFocalLength();
-				double focalPower = minFocalPower + (maxFocalPower - minFocalPower) / 100 * tuneLens.getValue();
-				o.setFocalLength(1000.0 / focalPower);
-				setFieldFocalLengthValue(focalLengthField, 1000.0 / focalPower);
-				propagateABCDMatrices();
-				refreshCanvasFlag = true;
-				
+	private void showPlayback(WaveformPlayback playback, OpticsChain chain, int[] lensIndices, String[] names,
+			Complex q_in, double atWavelength) {
+		new PlaybackWindow(playback, names, new PlaybackWindow.Listener() {
+			public void sampleShown(WaveformPlayback playback, int sample) {
+				OpticsChain shown = chain;
+				for (int j = 0; j < lensIndices.length; j++) {
+					shown = shown.withLens(lensIndices[j], 1000.0 / playback.getFocalPower(j, sample));
+				}
+				playbackQIn = q_in;
+				playbackWavelength = atWavelength;
+				playbackSample = sample;
+				playbackChain = shown;
+				requestRefresh();
+			}
+			
+			public void playbackStopped(WaveformPlayback playback) {
+				playbackChain = null;
+				requestRefresh();
 			}
+		});
+	}
+	
+	
+	/** 
+	 * Adds a POI at the selected location if there are no naming or position collisions.
+	 */
+	private void addPOI() {
+		deselectAll();
+		String name = nameField.getText().trim();
+		double position = positionField.getValue();
+		//Exit if we can't add a POI due to distance or naming collisions.
+		if (! checkIfFarEnoughFromOtherOptics(position, null)) return;
+		if (! checkForNamingCollision(name, null)) return;
+		
+		if (selectedOptic != null) selectedOptic.setSelected(false);
+		POI poi = new POI(position, name);
+		synchronized (lock) {
+			addToOpticsList(poi);
 		}
+		sortOpticsList();
+		propagateABCDMatrices();
+		recordHistory();
+		selectedOptic = poi;
+		poi.setSelected(true);
+		requestRefresh();
 	}
 	
 	
 	/**
-	 * Responds to interactors that are pressed or updated by user, or signals sent by timer. Directs appropriate
-	 * action to take place based on signal sent from source. Called externally in events thread.
+	 * Adds a target mode at the selected location if there are no naming or position collisions.
 	 */
-	public void actionPerformed(ActionEvent e) {
+	private void addTargetMode() {
+		deselectAll();
+		String name = nameField.getText().trim();
+		double position = positionField.getValue();
+		if (! checkIfFarEnoughFromOtherOptics(position, null)) return;
+		if (! checkForNamingCollision(name, null)) return;
+		if (! (targetWaistField.getValue() > 0)) {
+			JOptionPane.showMessageDialog(this, "The target waist must be positive.");
+			return;
+		}
 		
-		switch (e.getActionCommand()) { //Gets command thrown by the source to identify the required action.
+		TargetMode target = new TargetMode(position, targetWaistField.getValue(), targetOffsetField.getValue(), name);
+		synchronized (lock) {
+			addToOpticsList(target);
+		}
+		sortOpticsList();
+		propagateABCDMatrices();
+		recordHistory();
+		selectedOptic = target;
+		target.setSelected(true);
+		requestRefresh();
+	}
+	
+	
+	/**
+	 * Sets the target waist and offset of the selected optic from the fields, if it is a target mode.
+	 */
+	private void changeTarget() {
+		if (! (selectedOptic instanceof TargetMode)) return;
+		TargetMode target = (TargetMode) selectedOptic;
+		if (! (targetWaistField.getValue() > 0)) {
+			targetWaistField.setValue(target.getTargetWaist()); //Restore previous value
+			return;
+		}
+		target.setTargetWaist(targetWaistField.getValue());
+		target.setTargetWaistOffset(targetOffsetField.getValue());
+		recordHistory();
+		requestRefresh();
+	}
+	
+	
+	/**
+	 * Adds a source of a further beam at the position in the position field, with the waist and wavelength in the
+	 * source fields.
+	 */
+	private void addAuxiliarySource() {
+		deselectAll();
+		String name = nameField.getText().trim();
+		double position = positionField.getValue();
+		if (! checkIfFarEnoughFromOtherOptics(position, null)) return;
+		if (! checkForNamingCollision(name, null)) return;
+		if (! (sourceWaistField.getValue() > 0) || ! (sourceWavelengthField.getValue() > 0)) {
+			JOptionPane.showMessageDialog(this, "The source waist and wavelength must be positive.");
+			return;
+		}
 		
-		case "timer": //Timer has told screen to refresh
-			respondToTimer();
-			break;
-			
-		case "Wavelength": //User has changed the wavelength
-			wavelength = wavelengthField.getValue();
-			refreshCanvasFlag = true;
-			break;
-			
-		case "CollWaist": //User has changed the collimated waist
-			collWaist = collWaistField.getValue();
-			refreshCanvasFlag = true;
-			break;
+		AuxiliarySource source = new AuxiliarySource(position, sourceWaistField.getValue(),
+				sourceWavelengthField.getValue(), name);
+		synchronized (lock) {
+			addToOpticsList(source);
+		}
+		sortOpticsList();
+		propagateABCDMatrices();
+		recordHistory();
+		selectedOptic = source;
+		source.setSelected(true);
+		requestRefresh();
+	}
+	
+	
+	/**
+	 * Groups the fixed lenses between two positions into a block, which then acts as a single optic. The range may
+	 * hold no other optics.
+	 */
+	private void groupLenses() {
+		JTextField fromField = new JTextField(Double.toString(leftEdge), TEXT_FIELD_SIZE / 2);
+		JTextField toField = new JTextField(Double.toString(rightEdge), TEXT_FIELD_SIZE / 2);
+		JPanel panel = new JPanel(new GridLayout(2, 2, 4, 4));
+		panel.add(new JLabel("From (mm)"));
+		panel.add(fromField);
+		panel.add(new JLabel("To (mm)"));
+		panel.add(toField);
+		int option = JOptionPane.showConfirmDialog(this, panel, "Group Lenses into " + nameField.getText().trim(),
+				JOptionPane.OK_CANCEL_OPTION);
+		if (option != JOptionPane.OK_OPTION) return;
+		double from, to;
+		try {
+			from = Double.parseDouble(fromField.getText());
+			to = Double.parseDouble(toField.getText());
+		} catch (NumberFormatException ex) {
+			JOptionPane.showMessageDialog(this, "Enter the range as numbers.");
+			return;
+		}
+		String name = nameField.getText().trim();
+		if (! checkForNamingCollision(name, null)) return;
+		deselectAll();
 		
-		case "LeftScroll": //User has pressed left scroll button
-			scroll(-1);
-			refreshCanvasFlag = true;
-			break;
-			
-		case "RightScroll": //User has pressed right scroll button
-			scroll(1);
-			refreshCanvasFlag = true;
-			break;
-			
-		case "ZoomPlus": //User has pressed zoom in button
-			zoom(1);
-			refreshCanvasFlag = true;
-			break;
-			
-		case "ZoomMinus": //User has pressed zoom out button
-			zoom(-1);
-			refreshCanvasFlag = true;
-			break;
-			
-		case "Save": //User has pressed save button
-			saveFile(saveName);
-			break;
-			
-		case "SaveAs": //User has pressed save as button
-			saveFile(null);
-			break;
-			
-		case "Open": //User has pressed open button
-			if (openFile()) { //If file was opened successfully
-				refreshForNewFile();
+		Subassembly block = null;
+		OpticsHardware other = null; //An optic in the range that cannot be grouped
+		synchronized (lock) {
+			ArrayList<Lens> lenses = new ArrayList<Lens>();
+			for (OpticsHardware o: opticsList) {
+				if (o.getPosition() < from || o.getPosition() > to) continue;
+				if (o.getClass() == Lens.class) {
+					lenses.add((Lens) o);
+				} else if (other == null) {
+					other = o;
+				}
 			}
-			break;
-			
-		case "Remove": //User has pressed the remove optic button
-			removeSelectedOptic();
-			break;
-		
-		case "Name": //User has pressed enter in the name field
-			changeName();
-			break;
-			
-		case "Position": //User has pressed enter in the position field
-			changePosition();
-			break;
-			
-		case "FocalLength": //User has pressed enter in the focal length field
-			changeFocalLength();
-			break;
-			
-		case "MinFocalLength": //User has pressed enter in the focal length at min current field
-			changeMinFocalLength();
-			break;
-			
-		case "MaxFocalLength": //User has pressed enter in the focal length at max current field
-			changeMaxFocalLength();
-			break;
-			
-		case "AddLens": //User has pressed the add lens button
-			addLens();
-			break;
-			
-		case "AddTunableLens": //User has pressed the add tunable lens button
-			addTunableLens();
-			break;
+			if (other == null && lenses.size() >= 2) {
+				block = Subassembly.group(lenses, name);
+				for (Lens lens: lenses) {
+					opticsList.remove(lens);
+					nameIndex.remove(lens.getName());
+				}
+				addToOpticsList(block);
+			}
+		}
+		if (other != null) {
+			JOptionPane.showMessageDialog(this, "Only fixed lenses can be grouped. Move " + other.getName()
+					+ " out of the range first.");
+			return;
+		}
+		if (block == null) {
+			JOptionPane.showMessageDialog(this, "There must be at least two lenses in the range to group.");
+			return;
+		}
+		sortOpticsList();
+		propagateABCDMatrices();
+		recordHistory();
+		selectedOptic = block;
+		block.setSelected(true);
+		requestRefresh();
+	}
+	
+	
+	/**
+	 * Edits the selected block: the spacing and focal lengths of its lenses, and whether it is drawn expanded. It can
+	 * also be broken up into separate lenses again.
+	 */
+	private void editBlock() {
+		if (selectedOptic instanceof PeriodicRelay) {
+			editRelay((PeriodicRelay) selectedOptic);
+			return;
+		}
+		if (selectedOptic instanceof ThickLens || selectedOptic instanceof DielectricSlab) {
+			editThickOptic((ThickOptic) selectedOptic);
+			return;
+		}
+		if (selectedOptic instanceof GradientIndexMedium) {
+			editGradientIndex((GradientIndexMedium) selectedOptic);
+			return;
+		}
+		if (! (selectedOptic instanceof Subassembly)) {
+			JOptionPane.showMessageDialog(this, "Select a block, thick lens, slab or GRIN first.");
+			return;
+		}
+		Subassembly block = (Subassembly) selectedOptic;
+		int count = block.getLensCount();
+		JTextField[] offsetFields = new JTextField[count];
+		JTextField[] focalLengthFields = new JTextField[count];
+		JPanel panel = new JPanel(new GridLayout(count + 2, 3, 4, 4));
+		panel.add(new JLabel("Lens"));
+		panel.add(new JLabel("Offset (mm)"));
+		panel.add(new JLabel("Focal length (mm)"));
+		for (int i = 0; i < count; i++) {
+			Lens lens = block.getLens(i);
+			offsetFields[i] = new JTextField(Double.toString(lens.getPosition()), TEXT_FIELD_SIZE / 2);
+			offsetFields[i].setEditable(i > 0); //The entrance is at the first lens
+			focalLengthFields[i] = new JTextField(Double.toString(lens.getFocalLength()), TEXT_FIELD_SIZE / 2);
+			panel.add(new JLabel(lens.getName()));
+			panel.add(offsetFields[i]);
+			panel.add(focalLengthFields[i]);
+		}
+		JCheckBox expandedBox = new JCheckBox("Expanded", block.isExpanded());
+		JCheckBox ungroupBox = new JCheckBox("Ungroup");
+		panel.add(expandedBox);
+		panel.add(ungroupBox);
+		int option = JOptionPane.showConfirmDialog(this, panel, "Edit Block " + block.getName(),
+				JOptionPane.OK_CANCEL_OPTION);
+		if (option != JOptionPane.OK_OPTION) return;
+		double[] offsets = new double[count];
+		double[] focalLengths = new double[count];
+		try {
+			for (int i = 0; i < count; i++) {
+				offsets[i] = Double.parseDouble(offsetFields[i].getText());
+				focalLengths[i] = Double.parseDouble(focalLengthFields[i].getText());
+				if (i > 0 && ! (offsets[i] >= offsets[i - 1] + MIN_DISTANCE_BETWEEN_OPTICS)) {
+					throw new NumberFormatException();
+				}
+			}
+		} catch (NumberFormatException ex) {
+			JOptionPane.showMessageDialog(this, "Enter the offsets in ascending order, at least "
+					+ MIN_DISTANCE_BETWEEN_OPTICS + " mm apart, and the focal lengths as numbers.");
+			return;
+		}
+		if (offsets[count - 1] != block.getLength()
+				&& ! checkIfFarEnoughFromOtherOptics(block.getPosition(), offsets[count - 1], block)) {
+			JOptionPane.showMessageDialog(this, "The block would run into another optic.");
+			return;
+		}
+		if (ungroupBox.isSelected()) {
+			for (int i = 0; i < count; i++) {
+				String name = block.getLens(i).getName();
+				if (! checkForNamingCollision(name, null)) {
+					JOptionPane.showMessageDialog(this, "Cannot ungroup: another optic is named " + name + ".");
+					return;
+				}
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			Lens lens = block.getLens(i);
+			if (offsets[i] != lens.getPosition() || focalLengths[i] != lens.getFocalLength()) {
+				block.setLens(i, offsets[i], focalLengths[i]);
+			}
+		}
+		block.setExpanded(expandedBox.isSelected());
+		if (ungroupBox.isSelected()) {
+			List<Lens> lenses = block.getLensesOnBench();
+			deselectAll();
+			synchronized (lock) {
+				opticsList.remove(block);
+				nameIndex.remove(block.getName());
+				for (Lens lens: lenses) addToOpticsList(lens);
+			}
+			sortOpticsList();
+		}
+		propagateABCDMatrices();
+		recordHistory();
+		requestRefresh();
+	}
+	
+	
+	/**
+	 * Inserts a copy of a block saved in another file at the position in the position field, named from the name
+	 * field, so that standard blocks can be reused across benches.
+	 */
+	private void insertBlock() {
+		JFileChooser chooser = new JFileChooser();
+		chooser.setFileFilter(new FileNameExtensionFilter("Gaussian Optics files", EXTENSION));
+		if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+		ArrayList<OpticsHardware> optics = new ArrayList<OpticsHardware>();
+		try (BufferedReader rd = new BufferedReader(new FileReader(chooser.getSelectedFile()))) {
+			readBench(rd, optics, new double[2]);
+		} catch (IOException | RuntimeException ex) {
+			JOptionPane.showMessageDialog(this, "Could not read the file.");
+			return;
+		}
+		ArrayList<String> names = new ArrayList<String>();
+		HashMap<String, ExtendedOptic> blocks = new HashMap<String, ExtendedOptic>();
+		for (OpticsHardware o: optics) {
+			if (! (o instanceof ExtendedOptic)) continue;
+			names.add(o.getName());
+			blocks.put(o.getName(), (ExtendedOptic) o);
+		}
+		if (names.isEmpty()) {
+			JOptionPane.showMessageDialog(this, "The file has no blocks.");
+			return;
+		}
+		Object choice = JOptionPane.showInputDialog(this, "Block to insert", "Insert Block",
+				JOptionPane.PLAIN_MESSAGE, null, names.toArray(), names.get(0));
+		if (choice == null) return;
 		
-		case "CursorPosition": //User has input a value into the cursor position box and pressed enter	
-			updateParamsAtPointLabels(cursorPositionField.getValue());
-			break;
-			
-		case "FindWaist": //User has pressed the find waist button
-			respondToClickedFindWaistButton();
-			break;
-			
-		case "FocalPowerMode": //User has pressed the focal power mode button
-			respondToFocalPowerModeButton();
-			break;
-			
-		case "FocalLengthMode": //User has pressed the focal length mode button
-			respondToFocalLengthModeButton();
-			break;
-			
-		case "AddPOI": //User has pressed the add POI button
-			addPOI();
-			break;
-			
-		case "Clear": //User has pressed the clear optics button
-			clearAll();
-			break;
-			
-		case "New": //User has pressed the new button
-			respondToNewButton();
-			break;
-			
-		default:
-			throw new ErrorException("Unrecognized command");
+		deselectAll();
+		ExtendedOptic block = (ExtendedOptic) blocks.get(choice).copy();
+		String name = nameField.getText().trim();
+		double position = positionField.getValue();
+		if (! checkIfFarEnoughFromOtherOptics(position, block.getLength(), null)) return;
+		if (! checkForNamingCollision(name, null)) return;
+		block.setName(name);
+		block.setPosition(position);
+		synchronized (lock) {
+			addToOpticsList(block);
 		}
+		sortOpticsList();
+		propagateABCDMatrices();
+		recordHistory();
+		selectedOptic = block;
+		block.setSelected(true);
+		requestRefresh();
 	}
 	
 	
 	/**
-	 * Responds to the "new" button being pressed by restoring screen to default and clearing optics.
+	 * Adds a relay of identical lenses starting at the position in the position field, with the cell asked for.
 	 */
-	private void respondToNewButton() {
-		leftEdge = DEFAULT_LEFT_EDGE;
-		rightEdge = DEFAULT_RIGHT_EDGE;
-		clearAll();
-		saveName = null;
-		wavelength = DEFAULT_WAVELENGTH;
-		collWaist = DEFAULT_COLLWAIST;
-		wavelengthField.setValue(DEFAULT_WAVELENGTH);
-		collWaistField.setValue(DEFAULT_COLLWAIST);
-		nameField.setText("No name");
-		focalLengthField.setValue(DEFAULT_FOCAL_LENGTH);
-		minFocalLengthField.setValue(DEFAULT_MIN_FOCAL_LENGTH);
-		maxFocalLengthField.setValue(DEFAULT_MAX_FOCAL_LENGTH);
+	private void addRelay() {
+		double[] cell = askForRelayCell(null);
+		if (cell == null) return;
+		deselectAll();
+		String name = nameField.getText().trim();
+		double position = positionField.getValue();
+		if (! checkIfFarEnoughFromOtherOptics(position, (cell[2] - 1) * cell[1], null)) return;
+		if (! checkForNamingCollision(name, null)) return;
+		
+		PeriodicRelay relay = new PeriodicRelay(position, cell[0], cell[1], (int) cell[2], name);
+		synchronized (lock) {
+			addToOpticsList(relay);
+		}
+		sortOpticsList();
+		propagateABCDMatrices();
+		recordHistory();
+		selectedOptic = relay;
+		relay.setSelected(true);
+		requestRefresh();
 	}
 	
 	
-	/** 
-	 * Adds a POI at the selected location if there are no naming or position collisions.
+	/**
+	 * Edits the cell of a relay and whether it is drawn expanded.
+	 * @param relay The relay.
 	 */
-	private void addPOI() {
+	private void editRelay(PeriodicRelay relay) {
+		double[] cell = askForRelayCell(relay);
+		if (cell == null) return;
+		if ((cell[2] - 1) * cell[1] != relay.getLength()
+				&& ! checkIfFarEnoughFromOtherOptics(relay.getPosition(), (cell[2] - 1) * cell[1], relay)) {
+			JOptionPane.showMessageDialog(this, "The relay would run into another optic.");
+			return;
+		}
+		relay.setCell(cell[0], cell[1], (int) cell[2]);
+		relay.setExpanded(cell[3] != 0);
+		propagateABCDMatrices();
+		recordHistory();
+		requestRefresh();
+	}
+	
+	
+	/**
+	 * Asks for the cell of a relay.
+	 * @param relay The relay whose cell is shown to start with, or null for a new relay.
+	 * @return The focal length, spacing, number of lenses and 1 if expanded or 0 if not, or null if cancelled or
+	 * not valid.
+	 */
+	private double[] askForRelayCell(PeriodicRelay relay) {
+		JTextField focalLengthField = new JTextField(Double.toString((relay == null) ? DEFAULT_FOCAL_LENGTH
+				: relay.getFocalLength()), TEXT_FIELD_SIZE / 2);
+		JTextField spacingField = new JTextField(Double.toString((relay == null) ? 2 * DEFAULT_FOCAL_LENGTH
+				: relay.getSpacing()), TEXT_FIELD_SIZE / 2);
+		JTextField countField = new JTextField(Integer.toString((relay == null) ? DEFAULT_RELAY_LENSES
+				: relay.getLensCount()), TEXT_FIELD_SIZE / 2);
+		JCheckBox expandedBox = new JCheckBox("Expanded", relay != null && relay.isExpanded());
+		JPanel panel = new JPanel(new GridLayout(4, 2, 4, 4));
+		panel.add(new JLabel("Focal length of each lens (mm)"));
+		panel.add(focalLengthField);
+		panel.add(new JLabel("Spacing (mm)"));
+		panel.add(spacingField);
+		panel.add(new JLabel("Number of lenses"));
+		panel.add(countField);
+		panel.add(expandedBox);
+		int option = JOptionPane.showConfirmDialog(this, panel, (relay == null) ? "Add Relay" : "Edit Relay "
+				+ relay.getName(), JOptionPane.OK_CANCEL_OPTION);
+		if (option != JOptionPane.OK_OPTION) return null;
+		try {
+			double focalLength = Double.parseDouble(focalLengthField.getText());
+			double spacing = Double.parseDouble(spacingField.getText());
+			int count = Integer.parseInt(countField.getText().trim());
+			if (focalLength == 0 || ! (spacing >= MIN_DISTANCE_BETWEEN_OPTICS) || Double.isInfinite(spacing)
+					|| count < 2) {
+				throw new NumberFormatException();
+			}
+			return new double[] {focalLength, spacing, count, expandedBox.isSelected() ? 1 : 0};
+		} catch (NumberFormatException ex) {
+			JOptionPane.showMessageDialog(this, "Enter a nonzero focal length, a spacing of at least "
+					+ MIN_DISTANCE_BETWEEN_OPTICS + " mm and at least two lenses.");
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * Adds a thick lens or a slab with its front at the position in the position field, with the shape asked for.
+	 * @param lens Whether to add a thick lens rather than a slab.
+	 */
+	private void addThickOptic(boolean lens) {
+		double[] shape = askForThickOptic(lens, null);
+		if (shape == null) return;
 		deselectAll();
 		String name = nameField.getText().trim();
 		double position = positionField.getValue();
-		//Exit if we can't add a POI due to distance or naming collisions.
-		if (! checkIfFarEnoughFromOtherOptics(position, null)) return;
+		double thickness = shape[shape.length - 2];
+		if (! checkIfFarEnoughFromOtherOptics(position, thickness, null)) return;
 		if (! checkForNamingCollision(name, null)) return;
 		
-		if (selectedOptic != null) selectedOptic.setSelected(false);
-		POI poi = new POI(position, name);
+		ThickOptic optic = lens ? new ThickLens(position, shape[0], shape[1], thickness, shape[3], name)
+				: new DielectricSlab(position, thickness, shape[1], name);
 		synchronized (lock) {
-			opticsList.add(poi);
+			addToOpticsList(optic);
 		}
 		sortOpticsList();
 		propagateABCDMatrices();
-		selectedOptic = poi;
-		poi.setSelected(true);
-		refreshCanvasFlag = true;
+		recordHistory();
+		selectedOptic = optic;
+		optic.setSelected(true);
+		requestRefresh();
+	}
+	
+	
+	/**
+	 * Adds a gradient-index medium with its entrance at the position in the position field, with the profile asked
+	 * for.
+	 */
+	private void addGradientIndex() {
+		GradientIndexMedium medium = askForProfile(null);
+		if (medium == null) return;
+		deselectAll();
+		String name = nameField.getText().trim();
+		double position = positionField.getValue();
+		if (! checkIfFarEnoughFromOtherOptics(position, medium.getLength(), null)) return;
+		if (! checkForNamingCollision(name, null)) return;
+		
+		medium.setPosition(position);
+		medium.setName(name);
+		synchronized (lock) {
+			addToOpticsList(medium);
+		}
+		sortOpticsList();
+		propagateABCDMatrices();
+		recordHistory();
+		selectedOptic = medium;
+		medium.setSelected(true);
+		requestRefresh();
+	}
+	
+	
+	/**
+	 * Edits the profile of a gradient-index medium, taking the matrix integrated when the profile was checked.
+	 * @param medium The medium.
+	 */
+	private void editGradientIndex(GradientIndexMedium medium) {
+		GradientIndexMedium edited = askForProfile(medium);
+		if (edited == null) return;
+		double length = edited.getLength();
+		if (length != medium.getLength()
+				&& ! checkIfFarEnoughFromOtherOptics(medium.getPosition(), length, medium)) {
+			JOptionPane.showMessageDialog(this, medium.getName() + " would run into another optic.");
+			return;
+		}
+		medium.setProfile(edited);
+		propagateABCDMatrices();
+		recordHistory();
+		requestRefresh();
+	}
+	
+	
+	/**
+	 * Asks for the index profile of a gradient-index medium, one point per line as its distance from the entrance,
+	 * its index on the axis and its gradient n2, where the index is n0 - n2 r^2 / 2.
+	 * The profile is checked, and its matrix integrated, by making a medium of it.
+	 * @param medium The medium whose profile is shown to start with, or null for a new one.
+	 * @return A medium with the profile, at 0 and with no name, or null if cancelled or not valid.
+	 */
+	private GradientIndexMedium askForProfile(GradientIndexMedium medium) {
+		StringBuilder text = new StringBuilder();
+		if (medium == null) {
+			text.append("0 " + DEFAULT_INDEX + " " + DEFAULT_GRADIENT + "\n");
+			text.append(DEFAULT_GRIN_LENGTH + " " + DEFAULT_INDEX + " " + DEFAULT_GRADIENT + "\n");
+		} else {
+			double[] positions = medium.getProfilePositions();
+			double[] indices = medium.getProfileIndices();
+			double[] gradients = medium.getProfileGradients();
+			for (int i = 0; i < positions.length; i++) {
+				text.append(positions[i] + " " + indices[i] + " " + gradients[i] + "\n");
+			}
+		}
+		JTextArea profileArea = new JTextArea(text.toString(), PROFILE_ROWS, TEXT_FIELD_SIZE);
+		JPanel panel = new JPanel(new BorderLayout(4, 4));
+		panel.add(new JLabel("One point per line: distance from entrance (mm), index, n2 (1/mm^2)"),
+				BorderLayout.NORTH);
+		panel.add(new JScrollPane(profileArea), BorderLayout.CENTER);
+		String title = (medium == null) ? "Add GRIN" : "Edit " + medium.getName();
+		int option = JOptionPane.showConfirmDialog(this, panel, title, JOptionPane.OK_CANCEL_OPTION);
+		if (option != JOptionPane.OK_OPTION) return null;
+		try {
+			ArrayList<double[]> points = new ArrayList<double[]>();
+			for (String line: profileArea.getText().split("\n")) {
+				if (line.trim().isEmpty()) continue;
+				String[] values = line.trim().split("\\s+");
+				if (values.length != 3) throw new NumberFormatException();
+				points.add(new double[] {Double.parseDouble(values[0]), Double.parseDouble(values[1]),
+						Double.parseDouble(values[2])});
+			}
+			double[][] profile = new double[3][points.size()];
+			for (int i = 0; i < points.size(); i++) {
+				for (int j = 0; j < 3; j++) profile[j][i] = points.get(i)[j];
+			}
+			return new GradientIndexMedium(0, profile[0], profile[1], profile[2], "");
+		} catch (NumberFormatException ex) {
+			JOptionPane.showMessageDialog(this, "Enter three numbers on each line.");
+			return null;
+		} catch (IllegalArgumentException ex) {
+			JOptionPane.showMessageDialog(this, ex.getMessage() + ".");
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * Edits the shape of a thick lens or a slab.
+	 * @param optic The thick lens or slab.
+	 */
+	private void editThickOptic(ThickOptic optic) {
+		boolean lens = optic instanceof ThickLens;
+		double[] shape = askForThickOptic(lens, optic);
+		if (shape == null) return;
+		double thickness = shape[shape.length - 2];
+		if (thickness != optic.getLength()
+				&& ! checkIfFarEnoughFromOtherOptics(optic.getPosition(), thickness, optic)) {
+			JOptionPane.showMessageDialog(this, optic.getName() + " would run into another optic.");
+			return;
+		}
+		if (lens) {
+			((ThickLens) optic).setShape(shape[0], shape[1], thickness, shape[3]);
+		} else {
+			((DielectricSlab) optic).setSlab(thickness, shape[1]);
+		}
+		propagateABCDMatrices();
+		recordHistory();
+		requestRefresh();
+	}
+	
+	
+	/**
+	 * Asks for the shape of a thick lens or a slab.
+	 * @param lens Whether the optic is a thick lens rather than a slab.
+	 * @param optic The optic whose shape is shown to start with, or null for a new one.
+	 * @return For a thick lens the front and back radii, thickness and index, and for a slab the thickness and
+	 * index, or null if cancelled or not valid.
+	 */
+	private double[] askForThickOptic(boolean lens, ThickOptic optic) {
+		ThickLens thickLens = lens ? (ThickLens) optic : null;
+		DielectricSlab slab = lens ? null : (DielectricSlab) optic;
+		JTextField frontField = new JTextField(Double.toString((thickLens == null) ? DEFAULT_FOCAL_LENGTH
+				: thickLens.getFrontRadius()), TEXT_FIELD_SIZE / 2);
+		JTextField backField = new JTextField(Double.toString((thickLens == null) ? -DEFAULT_FOCAL_LENGTH
+				: thickLens.getBackRadius()), TEXT_FIELD_SIZE / 2);
+		JTextField thicknessField = new JTextField(Double.toString((optic == null) ? DEFAULT_THICKNESS
+				: optic.getLength()), TEXT_FIELD_SIZE / 2);
+		double index = (thickLens != null) ? thickLens.getIndex() : (slab != null) ? slab.getIndex() : DEFAULT_INDEX;
+		JTextField indexField = new JTextField(Double.toString(index), TEXT_FIELD_SIZE / 2);
+		JPanel panel = new JPanel(new GridLayout(lens ? 4 : 2, 2, 4, 4));
+		if (lens) {
+			panel.add(new JLabel("Front radius (mm, Infinity if flat)"));
+			panel.add(frontField);
+			panel.add(new JLabel("Back radius (mm, Infinity if flat)"));
+			panel.add(backField);
+		}
+		panel.add(new JLabel("Thickness (mm)"));
+		panel.add(thicknessField);
+		panel.add(new JLabel("Refractive index"));
+		panel.add(indexField);
+		String title = (optic == null) ? (lens ? "Add Thick Lens" : "Add Slab") : "Edit " + optic.getName();
+		int option = JOptionPane.showConfirmDialog(this, panel, title, JOptionPane.OK_CANCEL_OPTION);
+		if (option != JOptionPane.OK_OPTION) return null;
+		try {
+			double front = Double.parseDouble(frontField.getText());
+			double back = Double.parseDouble(backField.getText());
+			double thickness = Double.parseDouble(thicknessField.getText());
+			double n = Double.parseDouble(indexField.getText());
+			if (front == 0 || back == 0 || ! (thickness > 0) || Double.isInfinite(thickness) || ! (n >= 1)
+					|| Double.isInfinite(n)) {
+				throw new NumberFormatException();
+			}
+			return lens ? new double[] {front, back, thickness, n} : new double[] {thickness, n};
+		} catch (NumberFormatException ex) {
+			JOptionPane.showMessageDialog(this, "Enter nonzero radii, a positive thickness and an index of at "
+					+ "least 1.");
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * Sets the waist and wavelength of the selected optic from the fields, if it is an added source.
+	 */
+	private void changeAuxiliarySource() {
+		if (! (selectedOptic instanceof AuxiliarySource)) return;
+		AuxiliarySource source = (AuxiliarySource) selectedOptic;
+		if (! (sourceWaistField.getValue() > 0) || ! (sourceWavelengthField.getValue() > 0)) {
+			sourceWaistField.setValue(source.getWaist()); //Restore previous values
+			sourceWavelengthField.setValue(source.getWavelength());
+			return;
+		}
+		source.setWaist(sourceWaistField.getValue());
+		source.setWavelength(sourceWavelengthField.getValue());
+		recordHistory();
+		requestRefresh();
+	}
+	
+	
+	/**
+	 * Returns the fraction of power in the beam that couples into a target mode.
+	 * @param target The target mode.
+	 * @return The coupling efficiency, from 0 to 1.
+	 */
+	private double getCouplingEfficiency(TargetMode target) {
+		Complex q = getBeamTrace(getQIn()).getQ(target.getPosition());
+		if (q == null) return Double.NaN; //Before the source
+		return TargetMode.couplingEfficiency(q, target.getTargetQ(wavelength));
 	}
 	
 	
@@ -989,7 +3849,7 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 			minCurrentFocalLengthLabel.setText("Focal Length at Min Current");
 			maxCurrentFocalLengthLabel.setText("Focal Length at Max Current");
 			invertValuesInFields();
-			refreshCanvasFlag = true;
+			requestRefresh();
 		}
 	}
 	
@@ -1004,7 +3864,7 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 			minCurrentFocalLengthLabel.setText("Min focal power (diopters)");
 			maxCurrentFocalLengthLabel.setText("Max focal power (diopters)");
 			invertValuesInFields();
-			refreshCanvasFlag = true;
+			requestRefresh();
 		}
 	}
 	
@@ -1048,7 +3908,8 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		
 		lens.setMaxFocalLength(maxCurrentFocalLength);
 		setTuneLensBar(lens);
-		refreshCanvasFlag = true;
+		recordHistory();
+		requestRefresh();
 	}
 	
 	
@@ -1092,7 +3953,8 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		
 		lens.setMinFocalLength(minCurrentFocalLength);
 		setTuneLensBar(lens);
-		refreshCanvasFlag = true;
+		recordHistory();
+		requestRefresh();
 	}
 	
 	
@@ -1126,7 +3988,8 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		
 		if (selectedOptic instanceof TunableLens) setTuneLensBar((TunableLens) selectedOptic);
 		propagateABCDMatrices();
-		refreshCanvasFlag = true;
+		recordHistory();
+		requestRefresh();
 	}
 	
 	
@@ -1139,7 +4002,8 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 			selectedOptic.setPosition(positionField.getValue());
 			sortOpticsList();
 			propagateABCDMatrices();
-			refreshCanvasFlag = true;
+			recordHistory();
+			requestRefresh();
 		}
 	}
 
@@ -1151,8 +4015,13 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		if ((selectedOptic != null) && (! (selectedOptic instanceof Source))) {
 			String name = nameField.getText().trim();
 			if (checkForNamingCollision(name, null)) { //If we are good and have no naming collisions
-				selectedOptic.setName(name);
-				refreshCanvasFlag = true;
+				synchronized (lock) {
+					nameIndex.remove(selectedOptic.getName());
+					selectedOptic.setName(name);
+					nameIndex.put(name, selectedOptic);
+				}
+				recordHistory();
+				requestRefresh();
 			}
 		}
 	}
@@ -1165,10 +4034,12 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		if (selectedOptic != null && (! (selectedOptic instanceof Source))) {
 			synchronized (lock) {
 				opticsList.remove(selectedOptic);
+				nameIndex.remove(selectedOptic.getName());
 			}
 			deselectAll();
 			propagateABCDMatrices();
-			refreshCanvasFlag = true;
+			recordHistory();
+			requestRefresh();
 		}
 	}
 	
@@ -1181,7 +4052,7 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		leftEdge = DEFAULT_LEFT_EDGE;
 		rightEdge = DEFAULT_RIGHT_EDGE;
 		propagateABCDMatrices();
-		refreshCanvasFlag = true;
+		requestRefresh();
 	}
 	
 	
@@ -1209,7 +4080,7 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		double minFocalPower = 1000.0 / lens.getMinFocalLength();
 		double currentFocalPower = 1000.0 / lens.getFocalLength();
 		ignoreChangeEventFlag = true;
-		int value = (int) (100 * (currentFocalPower - minFocalPower) / (maxFocalPower - minFocalPower));
+		int value = (int) (TUNE_LENS_SLIDER_STEPS * (currentFocalPower - minFocalPower) / (maxFocalPower - minFocalPower));
 		tuneLens.setValue(value);
 	}
 	
@@ -1240,6 +4111,13 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	 * @return q_in
 	 */
 	private Complex getQIn() {
+		if (resonatorMode) {
+			Complex q;
+			synchronized (lock) {
+				q = Resonator.eigenmode(matrixList.get(matrixList.size() - 1));
+			}
+			return (q == null) ? new Complex(Double.NaN, Double.NaN) : q; //NaN when the cavity is unstable
+		}
 		return new Complex(0, Math.PI * Math.pow(collWaist,2) / (wavelength * Math.pow(10, -6)));
 	}
 	
@@ -1253,14 +4131,29 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	 * @return Whether the position is valid.
 	 */
 	private boolean checkIfFarEnoughFromOtherOptics(double position, OpticsHardware toIgnore) {
+		double length = (toIgnore instanceof ThickOptic) ? ((ThickOptic) toIgnore).getLength() : 0;
+		return checkIfFarEnoughFromOtherOptics(position, length, toIgnore);
+	}
+	
+	
+	/**
+	 * Checks whether an optic spanning a length, such as a block of lenses, is spaced far enough from the others,
+	 * with none inside it and it inside no other thick optic.
+	 * @param position The position of the start of the optic.
+	 * @param length The length of the optic (mm), 0 for a thin optic.
+	 * @param toIgnore One OpticsHardware to ignore, or null.
+	 * @return Whether the position is valid.
+	 */
+	private boolean checkIfFarEnoughFromOtherOptics(double position, double length, OpticsHardware toIgnore) {
+		double distance = MIN_DISTANCE_BETWEEN_OPTICS + Math.pow(10, -8);
 		synchronized (lock) {
-			for (OpticsHardware o: opticsList) {
-				if (( o != toIgnore)) {
-					if (Math.abs(position - o.getPosition()) < MIN_DISTANCE_BETWEEN_OPTICS + Math.pow(10, -8)) 
-						return false;
-				}
+			if (opticsIndex.anyWithin(position, distance, toIgnore)) return false;
+			if (opticsIndex.anyWithin(position + length, distance, toIgnore)) return false;
+			int i = opticsIndex.floorIndex(position + length);
+			for (; i >= 0 && opticsIndex.getPosition(i) > position; i--) {
+				if (opticsIndex.get(i) != toIgnore) return false; //Inside the optic
 			}
-			return true;
+			return ! opticsIndex.anyThickOverlapping(position, position + length, distance, toIgnore);
 		}
 	}
 	
@@ -1273,12 +4166,34 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	 */
 	private boolean checkForNamingCollision(String name, OpticsHardware toIgnore) {
 		name = name.trim();
-		if (name == "") return false;
+		if (name.isEmpty()) return false;
 		synchronized (lock) {
-			for (OpticsHardware o: opticsList) {
-				if (o != toIgnore && o.getName().equals(name)) return false;
-			}
-			return true;
+			OpticsHardware o = nameIndex.get(name);
+			return o == null || o == toIgnore;
+		}
+	}
+	
+	
+	/**
+	 * Returns the optic with a given name, for scripts and reports that address optics by name.
+	 * @param name The name of the optic, e.g. "L3". The source is named "Source".
+	 * @return The optic, or null if there is no optic with that name.
+	 */
+	public OpticsHardware getOpticByName(String name) {
+		synchronized (lock) {
+			return nameIndex.get(name);
+		}
+	}
+	
+	
+	/**
+	 * Adds an optic to the end of the optics list and to the name index. Callers sort the list afterwards if needed.
+	 * @param o The optic to add.
+	 */
+	private void addToOpticsList(OpticsHardware o) {
+		synchronized (lock) {
+			opticsList.add(o);
+			nameIndex.put(o.getName(), o);
 		}
 	}
 	
@@ -1291,6 +4206,128 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 			Collections.sort(opticsList);
 		}
 	}
+	
+	
+	/**
+	 * Rebuilds the name index from the optics list. The caller must hold lock.
+	 */
+	private void rebuildNameIndex() {
+		nameIndex.clear();
+		for (OpticsHardware o: opticsList) nameIndex.put(o.getName(), o);
+	}
+	
+	
+	/**
+	 * Records the current state of the bench as a step in the undo history, if it has changed, and appends it to the
+	 * autosave journal. Called after every edit, once the matrices have been propagated.
+	 */
+	private void recordHistory() {
+		synchronized (lock) {
+			history.record(opticsList, wavelength, collWaist);
+		}
+		undoButton.setEnabled(history.canUndo());
+		redoButton.setEnabled(history.canRedo());
+		appendToJournal(history.current());
+	}
+	
+	
+	/**
+	 * Appends the changes up to a snapshot to the autosave journal. Turns autosave off if the journal can't be
+	 * written.
+	 * @param snapshot The state of the bench.
+	 */
+	private void appendToJournal(BenchSnapshot snapshot) {
+		if (journal == null) return;
+		try {
+			journal.record(snapshot);
+		} catch (IOException ex) {
+			journal.close();
+			journal = null;
+			JOptionPane.showMessageDialog(this, "Autosave turned off: " + ex.getMessage());
+		}
+	}
+	
+	
+	/**
+	 * Starts the autosave journal from the current step of the history, and closes it when the program exits.
+	 */
+	private void startJournal() {
+		try {
+			journal = new EditJournal(EditJournal.defaultDirectory(), history.current(), backgroundExecutor);
+			final EditJournal toClose = journal;
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> toClose.close()));
+		} catch (IOException ex) {
+			journal = null; //Runs without autosave
+		}
+	}
+	
+	
+	/**
+	 * If the last session left an autosave, asks whether to restore it and if so loads it onto the bench.
+	 */
+	private void recoverSession() {
+		File directory = EditJournal.defaultDirectory();
+		if (! EditJournal.hasAutosave(directory)) return;
+		int option = JOptionPane.showConfirmDialog(this, "The last session did not close cleanly. Restore it?",
+				"Restore Session", JOptionPane.YES_NO_OPTION);
+		if (option != JOptionPane.YES_OPTION) return;
+		try {
+			ArrayList<OpticsHardware> newOpticsList = new ArrayList<OpticsHardware>();
+			double[] source = new double[2];
+			EditJournal.recover(directory, newOpticsList, source);
+			if (newOpticsList.isEmpty() || ! (newOpticsList.get(0) instanceof Source)) {
+				throw new IOException("No source");
+			}
+			wavelength = source[0];
+			collWaist = source[1];
+			synchronized (lock) {
+				opticsList = newOpticsList;
+				rebuildNameIndex();
+			}
+			wavelengthField.setValue(wavelength);
+			collWaistField.setValue(collWaist);
+			propagateABCDMatrices();
+		} catch (IOException ex) {
+			JOptionPane.showMessageDialog(this, "Could not restore the last session: " + ex.getMessage());
+		}
+	}
+	
+	
+	/**
+	 * Puts the bench in the state of a snapshot from the undo history. The propagated matrices are kept for the
+	 * optics before the first one the snapshot changes, and computed again from there on.
+	 * @param snapshot The snapshot to restore. Does nothing if null.
+	 */
+	private void restoreSnapshot(BenchSnapshot snapshot) {
+		if (snapshot == null) return;
+		deselectAll();
+		ArrayList<OpticsHardware> newOpticsList = new ArrayList<OpticsHardware>(snapshot.size());
+		snapshot.restore(newOpticsList);
+		synchronized (lock) {
+			int unchanged = 0;
+			if (snapshot.getWavelength() == wavelength) {
+				int limit = Math.min(Math.min(opticsList.size(), newOpticsList.size()), matrixList.size());
+				while (unchanged < limit && opticsList.get(unchanged).matches(newOpticsList.get(unchanged))) {
+					unchanged++;
+				}
+			}
+			ArrayList<ABCDMatrix> newMatrixList = new ArrayList<ABCDMatrix>(matrixList.subList(0, unchanged));
+			propagateABCDMatrices(newOpticsList, snapshot.getWavelength(), newMatrixList);
+			opticsList = newOpticsList;
+			matrixList = newMatrixList;
+			opticsIndex = new OpticsIndex(opticsList);
+			rebuildNameIndex();
+			modelVersion++;
+		}
+		wavelength = snapshot.getWavelength();
+		collWaist = snapshot.getCollWaist();
+		wavelengthField.setValue(wavelength);
+		collWaistField.setValue(collWaist);
+		undoButton.setEnabled(history.canUndo());
+		redoButton.setEnabled(history.canRedo());
+		appendToJournal(snapshot);
+		requestRefresh();
+	}
 
 	
 	/**
@@ -1315,7 +4352,7 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 				calcWaistLabel.setText("No waist");
 			} else {
 				calcWaistPositionLabel.setText(Double.toString(waistPosition));
-				calcWaistLabel.setText(Double.toString(beamParametersAtPoint(waistPosition, getQIn()).getY()));
+				calcWaistLabel.setText(Double.toString(beamParametersAtPoint(waistPosition, getQIn()).getRadius()));
 			}
 		}
 	}
@@ -1329,16 +4366,37 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		assert (ROI != null); //Throws exception if for some reason we don't have a ROI.
 		double start = canvasToSpacialX(ROI.getX());
 		double end = canvasToSpacialX(ROI.getX() + ROI.getWidth());
+		long timerStart = metrics.start();
+		synchronized (lock) {
+			double waist = findWaist(start, end, getQIn(), wavelength, opticsList, matrixList);
+			metrics.stop(metrics.findWaist, timerStart);
+			return waist;
+		}
+	}
+	
+	
+	/**
+	 * Locates the position of the waist between two points to within tolerance of MIN_RESOLUTION_FOR_WAIST_POSITION,
+	 * given the optics and their propagated matrices. The caller is responsible for locking.
+	 * @param start The start of the region to search (mm).
+	 * @param end The end of the region to search (mm).
+	 * @param q_in The q parameter at the start of the beam.
+	 * @param wavelength The wavelength (nm).
+	 * @param optics The optics, sorted by position.
+	 * @param matrices The matrices returned by propagateABCDMatrices for those optics.
+	 * @return The location of the waist within the region, or NaN if there is no waist.
+	 */
+	static double findWaist(double start, double end, Complex q_in, double wavelength,
+			List<OpticsHardware> optics, List<ABCDMatrix> matrices) {
 		end += ((double) (end-start)) / (CALC_WAIST_ARRAY_SIZE - 1);
-		Complex q_in = getQIn();
 		
 		while (end - start > MIN_RESOLUTION_FOR_WAIST_POSITION) {
 			double[] arr = new double[CALC_WAIST_ARRAY_SIZE];
 			double interval = ((double)(end - start)) / (CALC_WAIST_ARRAY_SIZE - 1);
 			double position = start;
 			for (int i = 0; i < CALC_WAIST_ARRAY_SIZE; i++) {
-				arr[i] = beamParametersAtPoint(position, q_in).getX(); //Beam radius of curvature
-				position += interval;
+				arr[i] = beamParameters(getMatrixForPoint(position, optics, matrices), q_in, wavelength).getX();
+				position += interval; //Beam radius of curvature
 			}
 			int index = getIndexOfSignChangeInArray(arr);
 			if (index == -1) return Double.NaN; //We have no waist
@@ -1349,10 +4407,9 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		double finalWaist = start + (end - start) / 2.0;
 		
 		//Check to ensure we aren't just finding a negative focal length lens.
-		synchronized (lock) {
-			for (OpticsHardware o: opticsList) {
-				if (Math.abs(o.getPosition() - finalWaist) <= MIN_RESOLUTION_FOR_WAIST_POSITION) return Double.NaN;
-			}
+		int floor = OpticsIndex.floorIndex(optics, finalWaist + MIN_RESOLUTION_FOR_WAIST_POSITION);
+		if (floor >= 0 && finalWaist - optics.get(floor).getPosition() <= MIN_RESOLUTION_FOR_WAIST_POSITION) {
+			return Double.NaN;
 		}
 		
 		return finalWaist;
@@ -1364,7 +4421,7 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	 * @param arr The array which to analyze.
 	 * @return The index at which the sign changes, or -1 if no such sign change.
 	 */
-	private int getIndexOfSignChangeInArray(double[] arr) {
+	private static int getIndexOfSignChangeInArray(double[] arr) {
 		for (int i = 0; i < arr.length - 1; i++) {
 			if ((Math.signum(arr[i]) == -1) && (Math.signum(arr[i+1]) == 1)) return i;
 		}
@@ -1390,13 +4447,13 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 			}
 			deselectAll();
 			if (needToRefresh) {
-				refreshCanvasFlag = true;
+				requestRefresh();
 			}
 		} else {
 			deselectAll();
 			o.setSelected(true);
 			selectedOptic = o;
-			refreshCanvasFlag = true;
+			requestRefresh();
 			fillFields(selectedOptic);
 			if (o instanceof TunableLens) {
 				tuneLens.setVisible(true);
@@ -1440,6 +4497,11 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		positionField.setValue(o.getPosition());
 		if (o instanceof Lens) { //Includes tunable lenses
 			setFieldFocalLengthValue(focalLengthField, ((Lens) o).getFocalLength());
+			Glass glass = ((Lens) o).getGlass();
+			glassBox.setSelectedItem((glass == null) ? NO_GLASS : glass.getName());
+			clearApertureField.setValue(((Lens) o).getClearAperture());
+			decentreField.setValue(((Lens) o).getDecentre());
+			tiltField.setValue(((Lens) o).getTilt());
 		}
 		if (o instanceof TunableLens) {
 			TunableLens t = (TunableLens) o;
@@ -1447,6 +4509,14 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 			setFieldFocalLengthValue(maxFocalLengthField, t.getMaxFocalLength());
 			setTuneLensBar(t);
 		}
+		if (o instanceof TargetMode) {
+			targetWaistField.setValue(((TargetMode) o).getTargetWaist());
+			targetOffsetField.setValue(((TargetMode) o).getTargetWaistOffset());
+		}
+		if (o instanceof AuxiliarySource) {
+			sourceWaistField.setValue(((AuxiliarySource) o).getWaist());
+			sourceWavelengthField.setValue(((AuxiliarySource) o).getWavelength());
+		}
 	}
 	
 	
@@ -1468,13 +4538,40 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	 * @return The OpticsHardware closest to that position, or null if no hardware clicked.
 	 */
 	private OpticsHardware getHardwareAt(double position) {
-		GObject obj = canvas.getElementAt(position, canvas.getHeight() - CENTERLINE_HEIGHT);
-		if (obj == null || obj instanceof GLabel || obj instanceof GLine) return null; 
-		//Return null if we clicked somewhere that isn't a piece of hardware
-		GRectangle bounds = obj.getBounds();
-		double opticsPosition = canvasToSpacialX(bounds.getX() + bounds.getWidth() / 2.0);
-		//Find optics closest to either side of the clicked point
-		return locateClosestOptic(opticsPosition);
+		double spacialPosition = canvasToSpacialX(position);
+		OpticsHardware closest = locateClosestOptic(spacialPosition);
+		if (closest != null && isDrawnAt(closest, position)) return closest;
+		
+		//Shapes can overlap when zoomed out, so check every optic drawn near the click, topmost (last drawn) first
+		double reach = SOURCE_WIDTH / getScaleFactor(); //Half the widest shape, in mm
+		synchronized (lock) {
+			for (int i = opticsIndex.floorIndex(spacialPosition + reach); 
+					i >= 0 && opticsIndex.getPosition(i) >= spacialPosition - reach; i--) {
+				if (isDrawnAt(opticsIndex.get(i), position)) return opticsIndex.get(i);
+			}
+			int floor = opticsIndex.floorIndex(spacialPosition); //A block may start far to the left of the click
+			if (floor >= 0 && isDrawnAt(opticsIndex.get(floor), position)) return opticsIndex.get(floor);
+		}
+		return null; //Clicked somewhere that isn't a piece of hardware
+	}
+	
+	
+	/**
+	 * Returns whether the shape drawn for an optic covers a column of the canvas.
+	 * @param o The optic.
+	 * @param canvasX The column on the canvas.
+	 * @return Whether the optic is drawn at that column.
+	 */
+	private boolean isDrawnAt(OpticsHardware o, double canvasX) {
+		double center = spacialToCanvasX(o.getPosition());
+		if (o instanceof Source) return canvasX >= center - SOURCE_WIDTH && canvasX <= center;
+		if (o instanceof Lens) return Math.abs(canvasX - center) <= LENS_WIDTH / 2.0;
+		if (o instanceof POI) return Math.abs(canvasX - center) <= POI_WIDTH / 2.0;
+		if (o instanceof ThickOptic) {
+			double exit = spacialToCanvasX(o.getPosition() + ((ThickOptic) o).getLength());
+			return canvasX >= center - LENS_WIDTH / 2.0 && canvasX <= exit + LENS_WIDTH / 2.0;
+		}
+		return false;
 	}
 	
 	
@@ -1484,42 +4581,49 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	 * @return The closest optic
 	 */
 	private OpticsHardware locateClosestOptic(double spacialPosition) {
-		double smallestDistance = Double.POSITIVE_INFINITY;
-		OpticsHardware closestOptic = null;
 		synchronized (lock) {
-			for (OpticsHardware o: opticsList) {
-				if (Math.abs(spacialPosition - o.getPosition()) < smallestDistance) {
-					closestOptic = o;
-					smallestDistance = Math.abs(spacialPosition - o.getPosition());
-				}
-			}
-			return closestOptic;
+			return opticsIndex.nearest(spacialPosition);
 		}
 	}
 	
 
 	/**
-	 * Updates cursor position labels when mouse is moved.
+	 * Updates cursor position labels when mouse is moved. Readouts come from the table filled during the last
+	 * render; exact values are computed once the cursor stops moving.
 	 */
 	public void mouseMoved(MouseEvent e) {
 		double point = canvasToSpacialX(e.getX());
 		cursorPositionField.setValue(point);
-		updateParamsAtPointLabels(point);
+		hoverPosition = point;
+		int pixel = e.getX();
+		if (point < 0) {
+			radiusOfCurvatureLabel.setText(" ");
+			radiusLabel.setText(" ");
+			gouyPhaseLabel.setText(" ");
+		} else if (! refreshCanvasFlag && pixelRadiusTable != null && pixel >= 0 && pixel < pixelRadiusTable.length
+				&& ! Double.isNaN(pixelRadiusTable[pixel])) { //Table is only valid until the next render is requested
+			radiusOfCurvatureLabel.setText(Double.toString(pixelCurvatureTable[pixel]));
+			radiusLabel.setText(Double.toString(pixelRadiusTable[pixel]));
+			gouyPhaseLabel.setText(Double.toString(pixelGouyTable[pixel]));
+		}
+		hoverTimer.restart();
 	}
 	
 	
 	/**
-	 * Updates the radius and radius of curvature labels to selected point.
+	 * Updates the radius, radius of curvature and Gouy phase labels to selected point.
 	 * @param position The point in space.
 	 */
 	private void updateParamsAtPointLabels(double position) {
 		if (position < 0) {
 			radiusOfCurvatureLabel.setText(" ");
 			radiusLabel.setText(" ");
+			gouyPhaseLabel.setText(" ");
 		} else {
-			GPoint params = beamParametersAtPoint(position, getQIn());
-			radiusOfCurvatureLabel.setText(Double.toString(params.getX()));
-			radiusLabel.setText(Double.toString(params.getY()));
+			BeamParameters params = beamParametersAtPoint(position, getQIn());
+			radiusOfCurvatureLabel.setText(Double.toString(params.getRadiusOfCurvature()));
+			radiusLabel.setText(Double.toString(params.getRadius()));
+			gouyPhaseLabel.setText(Double.toString(params.getGouyPhase()));
 		}
 	}
 	
@@ -1534,7 +4638,8 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 		ROI = null;
 		synchronized (lock) {
 			opticsList.clear();
-			opticsList.add(new Source(0));
+			nameIndex.clear();
+			addToOpticsList(new Source(0));
 		}
 		propagateABCDMatrices();
 		refreshCanvas();
@@ -1595,7 +4700,7 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	 */
 	private void addTunableLens() {	
 		deselectAll();
-		refreshCanvasFlag = true;
+		requestRefresh();
 		double position  = positionField.getValue();
 		double minCurrentFocalLength = getDoubleFromField(minFocalLengthField);
 		double maxCurrentFocalLength = getDoubleFromField(maxFocalLengthField);
@@ -1618,16 +4723,18 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 			}
 			
 			TunableLens lens = new TunableLens(position, minCurrentFocalLength, maxCurrentFocalLength, focalLength, name);
+			if (clearApertureField.getValue() > 0) lens.setClearAperture(clearApertureField.getValue());
 			synchronized (lock) {
-				opticsList.add(lens);
+				addToOpticsList(lens);
 			}
 			lens.setSelected(true);
 			selectedOptic = lens;
 			sortOpticsList();
 			propagateABCDMatrices();
+			recordHistory();
 			setTuneLensBar(lens);
 			tuneLens.setVisible(true);
-			refreshCanvasFlag = true;
+			requestRefresh();
 		}
 	}
 	
@@ -1637,19 +4744,45 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	 */
 	private void addLens() {
 		deselectAll();
-		refreshCanvasFlag = true;
+		requestRefresh();
 		double position = positionField.getValue();
 		String name = nameField.getText();
 		if (checkIfFarEnoughFromOtherOptics(position, null) && (checkForNamingCollision(name, null))) {
 			Lens lens = new Lens(position, getDoubleFromField(focalLengthField), name);
+			if (clearApertureField.getValue() > 0) lens.setClearAperture(clearApertureField.getValue());
 			synchronized (lock) {
-				opticsList.add(lens);
+				addToOpticsList(lens);
 			}
 			sortOpticsList();
 			propagateABCDMatrices();
+			recordHistory();
 			lens.setSelected(true);
 			selectedOptic = lens;
-			refreshCanvasFlag = true;
+			requestRefresh();
+		}
+	}
+	
+	
+	/**
+	 * Adds a curved mirror whose radius of curvature is twice the focal length in the focal length field.
+	 */
+	private void addMirror() {
+		deselectAll();
+		requestRefresh();
+		double position = positionField.getValue();
+		String name = nameField.getText();
+		if (checkIfFarEnoughFromOtherOptics(position, null) && (checkForNamingCollision(name, null))) {
+			CurvedMirror mirror = new CurvedMirror(position, 2 * getDoubleFromField(focalLengthField), name);
+			if (clearApertureField.getValue() > 0) mirror.setClearAperture(clearApertureField.getValue());
+			synchronized (lock) {
+				addToOpticsList(mirror);
+			}
+			sortOpticsList();
+			propagateABCDMatrices();
+			recordHistory();
+			mirror.setSelected(true);
+			selectedOptic = mirror;
+			requestRefresh();
 		}
 	}
 	
@@ -1658,7 +4791,7 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	 * Called externally when the canvas is resized.
 	 */
 	public void componentResized(ComponentEvent e) {
-		if (e.getSource() == canvas) refreshCanvasFlag = true;
+		if (e.getSource() == canvas) requestRefresh();
 	}
 	
 	
@@ -1689,6 +4822,11 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	
 	/* Interactors */
 	private DoubleField wavelengthField = new DoubleField(DEFAULT_WAVELENGTH);
+	private JTextField otherWavelengthsField = new JTextField(TEXT_FIELD_SIZE);
+	private JComboBox<String> glassBox = new JComboBox<String>();
+	private DoubleField clearApertureField = new DoubleField();
+	private DoubleField decentreField = new DoubleField();
+	private DoubleField tiltField = new DoubleField();
 	private DoubleField collWaistField = new DoubleField(DEFAULT_COLLWAIST);
 	private JButton leftScroll;
 	private JButton rightScroll;
@@ -1697,6 +4835,20 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	private JButton addLensButton;
 	private JButton addTunableLensButton;
 	private JButton addPOIButton;
+	private JButton addTargetButton;
+	private DoubleField targetWaistField = new DoubleField();
+	private DoubleField targetOffsetField = new DoubleField();
+	private JButton addSourceButton;
+	private JButton groupButton;
+	private JButton editBlockButton;
+	private JButton insertBlockButton;
+	private JButton addRelayButton;
+	private JButton addMirrorButton;
+	private JButton addThickLensButton;
+	private JButton addSlabButton;
+	private JButton addGradientIndexButton;
+	private DoubleField sourceWaistField = new DoubleField();
+	private DoubleField sourceWavelengthField = new DoubleField();
 	private JButton removeButton;
 	private JTextField nameField = new JTextField(TEXT_FIELD_SIZE);
 	private DoubleField focalLengthField = new DoubleField();
@@ -1707,10 +4859,13 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	private JButton saveAsButton;
 	private JButton openButton;
 	private JSlider apparentBeamDiameter = new JSlider();
-	private JSlider tuneLens = new JSlider();
+	private JSlider tuneLens = new JSlider(0, TUNE_LENS_SLIDER_STEPS);
 	private DoubleField cursorPositionField = new DoubleField();
 	private JLabel radiusOfCurvatureLabel;
 	private JLabel radiusLabel;
+	private JLabel gouyPhaseLabel = new JLabel(" ");
+	private JLabel transmissionLabel = new JLabel(" ");
+	private JLabel peakRadiusLabel = new JLabel(" ");
 	private JToggleButton findWaistButton = new JToggleButton("Find Waist");
 	private JLabel calcWaistPositionLabel = new JLabel(" ");
 	private JLabel calcWaistLabel = new JLabel(" ");
@@ -1722,12 +4877,36 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	private javax.swing.Timer timer;
 	private JButton clearButton;
 	private JButton newButton;
+	private JButton playbackButton;
+	private JToggleButton hudButton = new JToggleButton("Performance HUD");
+	private JToggleButton resonatorButton = new JToggleButton("Resonator Mode");
+	private JLabel resonatorLabel = new JLabel(" ");
+	private JButton stabilityMapButton;
+	private JButton couplingMapButton;
+	private JButton crossSectionButton;
+	private JToggleButton waveOpticsButton = new JToggleButton("Wave Optics");
+	private JToggleButton backwardBeamButton = new JToggleButton("Backward Beam");
+	private JButton undoButton;
+	private JButton redoButton;
 	
 	
 	/* List of optics */
 	private ArrayList<OpticsHardware> opticsList = new ArrayList<OpticsHardware>();
 	
 	
+	/* Index from name to optic, maintained on every add, rename, removal and file load. Guarded by lock. */
+	private HashMap<String, OpticsHardware> nameIndex = new HashMap<String, OpticsHardware>();
+	
+	/* Snapshots of the bench for undo and redo. Guarded by lock. */
+	private BenchHistory history = new BenchHistory();
+	
+	/* Crash-safe autosave of every edit, or null if autosave is off */
+	private EditJournal journal = null;
+	
+	/* Index of the positions of the optics, rebuilt whenever the optics list is propagated */
+	private OpticsIndex opticsIndex = new OpticsIndex(opticsList);
+	
+	
 	/* Lists the ABCD matrix of the entire system immediately past the optic */
 	private ArrayList<ABCDMatrix> matrixList = new ArrayList<ABCDMatrix>();
 	
@@ -1735,8 +4914,59 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	/* Beam radius at collimated source */
 	private volatile double collWaist = DEFAULT_COLLWAIST;
 	
-	/* Wavelength */
+	/* Wavelength, and the other wavelengths drawn alongside it (nm) */
 	private volatile double wavelength = DEFAULT_WAVELENGTH;
+	private volatile double[] otherWavelengths = new double[0];
+	
+	/* Names of the beams other than the main one and their radii (mm) at each of the optics, found in the last
+	 * refresh and NaN where a beam has not started, for the optics labels */
+	private String[] otherBeamNames = new String[0];
+	private double[][] otherBeamRadii = new double[0][];
+	private OpticsHardware[] otherBeamOptics = new OpticsHardware[0];
+	
+	/* Clipping by the clear apertures, found for the optics as they were at the key {model version, wavelength,
+	 * collimated waist, resonator mode}. The worst transmission over tuning is NaN except at tunable lenses. */
+	private double[] apertureKey = null;
+	private OpticsHardware[] apertureOptics = new OpticsHardware[0];
+	private ApertureAnalysis apertureAnalysis = null;
+	private double[] worstTunedTransmission = new double[0];
+	private double[] pendingApertureKey = null; //Of the analysis being computed in the background
+	
+	/* Pointing of the beam centre at the points of interest, found for the optics as they were at the key {model
+	 * version, wavelength}, and the chain it was found through */
+	private double[] pointingKey = null;
+	private OpticsHardware[] pointingOptics = new OpticsHardware[0];
+	private int[] pointingTargets = new int[0];
+	private PointingAnalysis pointingAnalysis = null;
+	private OpticsChain pointingChain = null;
+	private boolean anyMisalignment = false;
+	
+	/* How each class of optic is drawn and labelled, and the added sources drawn so far in this refresh */
+	private final HashMap<Class<?>, Consumer<OpticsHardware>> opticDrawers
+			= new HashMap<Class<?>, Consumer<OpticsHardware>>();
+	private final HashMap<Class<?>, BiConsumer<OpticsHardware, ArrayList<GLabel>>> opticLabelers
+			= new HashMap<Class<?>, BiConsumer<OpticsHardware, ArrayList<GLabel>>>();
+	private int auxiliarySourcesDrawn = 0;
+	
+	/* System shown by a running waveform playback, a copy so the optics on the bench are never animated */
+	private OpticsChain playbackChain = null;
+	private Complex playbackQIn;
+	private double playbackWavelength; //nm
+	private int playbackSample;
+	
+	/* Name of the target mode the backward beam is run from */
+	private String backwardTargetName = "";
+	
+	/* Measured beam profile, and the source beam last fitted to it */
+	private JToggleButton profileFitButton = new JToggleButton("Profile Fit");
+	private JButton applyFitButton;
+	private double[] profilePositions; //mm, ascending
+	private double[] profileRadii; //mm
+	private volatile BeamProfileFit profileFit;
+	private double[] profileFitKey; //{modelVersion, wavelength, collWaist} of the last fit
+	
+	/* Whether the optics form one round trip of a resonator, whose eigenmode replaces the collimated source */
+	private volatile boolean resonatorMode = false;
 	
 	/* Area on screen */
 	private volatile double leftEdge = DEFAULT_LEFT_EDGE;
@@ -1746,6 +4976,15 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	 * To ensure speed, we don't want to refresh screen too frequently. */
 	private boolean refreshCanvasFlag = false;
 	
+	/* Number of refresh requests since the last refresh, time spent propagating since the last refresh, and
+	 * number of points at which the beam was sampled in the last refresh. Reported by the HUD and JFR events. */
+	private int refreshRequests = 0;
+	private long propagationNanosSinceRefresh = 0;
+	private int beamSampleCount = 0;
+	
+	/* Number of times the optics list has been propagated. Identifies the version of the model drawn. */
+	private long modelVersion = 0;
+	
 	/* Current scale factor for beam radius, pixels per mm */
 	private volatile double radiusScaleFactor = DEFAULT_RADIUS_SCALE_FACTOR;
 	
@@ -1758,6 +4997,54 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	/* The rectangle holding the region of interest for finding the waist. */
 	private GRect ROI = null;
 	
+	/* Beam radius, radius of curvature and Gouy phase at each pixel column, filled during the last render of the
+	 * beams. NaN where no beam was drawn. */
+	private double[] pixelRadiusTable = null;
+	private double[] pixelCurvatureTable = null;
+	private double[] pixelGouyTable = null;
+	
+	/* Settings of the wave optics overlay, and its last result: the D4 sigma radius at each sample position, for the
+	 * system state and view identified by waveOpticsKey. Only accessed on the event thread. */
+	private int waveOpticsGridSize = 256;
+	private double waveOpticsAperture = 0; //mm, 0 for none
+	private double[] waveOpticsKey = null;
+	private double[] waveOpticsPositions = null;
+	private double[] waveOpticsRadii = null;
+	private double waveOpticsGridWidth = 0; //mm
+	private boolean waveOpticsUndersampled = false;
+	private boolean waveOpticsComputing = false;
+	
+	/* Grid and buffers of the wave optics overlay, kept between runs. Only accessed on the background thread. */
+	private FresnelPropagator waveOpticsPropagator = null;
+	
+	/* Open cross section windows, updated at every refresh. Only accessed on the event thread. */
+	private ArrayList<CrossSectionWindow> crossSectionWindows = new ArrayList<CrossSectionWindow>();
+	
+	/* The beam traced through the system at modelVersion beamTraceVersion, for point queries. Guarded by lock. */
+	private BeamTrace beamTrace = null;
+	private long beamTraceVersion = -1;
+	
+	/* Spacial position under the cursor at the last mouse move, and timer that fires once the cursor settles */
+	private double hoverPosition = 0;
+	private javax.swing.Timer hoverTimer;
+	
+	/* Beam envelopes {radii, curvatures, Gouy phases} at every tune lens slider position for the selected tunable
+	 * lens, and the key of the system state they were computed for. pendingEnvelopeFamilyKey is the key of a family
+	 * being computed in the background, or null. Only accessed on the event thread. */
+	private double[][][] envelopeFamily = null;
+	private double[] envelopeFamilyKey = null;
+	private double[] pendingEnvelopeFamilyKey = null;
+	
+	/* Timings exposed over JMX */
+	private final WorkbenchMetrics metrics = new WorkbenchMetrics();
+	
+	/* Executor for calculations run in the background */
+	private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "GaussianWorkbench background");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
 	/* Flag indicating whether to ignore ChangeEvents for the tunable lens slider. */
 	private boolean ignoreChangeEventFlag = false;
 	
@@ -1779,6 +5066,7 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	private static final double DEFAULT_RIGHT_EDGE = 1020;
 	private static final double SCROLL_FRACTION = 0.3; //Fraction of screen to scroll
 	private static final int CANVAS_REFRESH_PAUSE_TIME = 10; //ms
+	private static final int HOVER_SETTLE_TIME = 150; //ms cursor must rest before exact readout is computed
 	private static final int RULER_Y_FROM_BOTTOM = 85; //pixels from bottom
 	private static final int LABEL_Y_FROM_BOTTOM = 65; //pixels from bottom
 	private static final int RULER_TITLE_Y_FROM_BOTTOM = 45; //pixels from bottom
@@ -1797,18 +5085,48 @@ public class GaussianWorkbench extends Program implements ChangeListener, Compon
 	private static final int LENS_WIDTH = 10;
 	private static final int LENS_HEIGHT = 150;
 	private static final int POI_WIDTH = 4;
+	private static final int MIRROR_WIDTH = 4;
 	private static final int POI_HEIGHT = 150;
 	private static final int SELECT_BOX_HEIGHT = 170;
 	private static final int SELECT_BOX_DEFAULT_WIDTH = 20;
 	private static final double MIN_RESOLUTION_FOR_WAIST_POSITION = Math.pow(10, -10); //mm
 	private static final int CALC_WAIST_ARRAY_SIZE = 20;
+	private static final int TUNE_LENS_SLIDER_STEPS = 100; //Slider runs from 0 to this value
+	private static final int ENVELOPE_KEY_STRIDE = 6; //Entries of the envelope family key for each optic
+	private static final double DEFAULT_DRIVE_FREQUENCY = 100; //Hz
+	private static final double DEFAULT_DRIVE_SAMPLE_RATE = 1000000; //Hz
+	private static final double DEFAULT_DRIVE_DURATION = 0.02; //s
+	private static final int MAX_PLAYBACK_SAMPLES = 1000000; //Per waveform, to bound the memory of a playback
 	private static final double DEFAULT_FOCAL_LENGTH = 100;
+	private static final double DEFAULT_TARGET_WAIST = 0.0025; //mm, mode field radius of a typical single mode fiber
 	private static final double DEFAULT_POSITION = 100;
+	private static final int DEFAULT_RELAY_LENSES = 10;
+	private static final double DEFAULT_THICKNESS = 5; //mm, of thick lenses and slabs
+	private static final double DEFAULT_INDEX = 1.5;
+	private static final double DEFAULT_GRIN_LENGTH = 20; //mm
+	private static final double DEFAULT_GRADIENT = 0.01; //1/mm^2, about a quarter pitch over the default length
+	private static final int PROFILE_ROWS = 8;
+	private static final double CLIPPING_FLAG_TRANSMISSION = 0.99; //Lenses passing less are flagged as clipping
 	private static final double DEFAULT_MIN_FOCAL_LENGTH = 150;
 	private static final double DEFAULT_MAX_FOCAL_LENGTH = 50;
 	private static final int LABEL_SEPARATION_FROM_CENTERLINE = 100;
 	private static final int LABEL_SEPARATION = 20;
 	private static final int OPTICS_LABEL_X_OFFSET = 30; //pixels
+	private static final int HUD_X = 10; //pixels from left edge
+	private static final int HUD_Y = 20; //pixels from top edge
+	private static final Color PLAYBACK_COLOR = new Color(255, 100, 0); //Beam at the sample a playback shows
+	private static final Color PROFILE_COLOR = new Color(139, 69, 19); //Measured beam profile and the fit to it
+	private static final int PROFILE_POINT_SIZE = 4; //pixels
+	private static final int MIN_PROFILE_POINTS = 3; //To fit waist, source position and M^2
+	private static final double M_SQUARED_TOLERANCE = 0.05; //Fitted M^2 above 1 by more than this is reported
+	private static final int PARAMETER_MAP_RESOLUTION = 1024; //Points along each axis of a parameter map
+	private static final int UNSTABLE_COLOR = 0x404040; //Parts of a stability map with no confined mode
+	private static final String NO_GLASS = "None"; //Glass box entry for a lens without dispersion
+	private static final Color[] WAVELENGTH_COLORS = {new Color(0, 150, 0), new Color(255, 140, 0), Color.CYAN,
+			new Color(128, 0, 128), Color.PINK, Color.DARK_GRAY}; //Beams of the other wavelengths, in order
+	private static final int WAVE_OPTICS_SAMPLES = 128; //Positions across the view at which wave optics is sampled
+	private static final double WAVE_OPTICS_GRID_RADII = 6; //Width of the grid in radii of the widest beam
+	private static final double WAVE_OPTICS_MIN_PIXELS_PER_RADIUS = 3; //Below this the smallest spot is undersampled
 	
 	/* Serial Version UID */
 	public static final long serialVersionUID = 1L;
@@ -0,0 +1,121 @@
+import java.util.*;
+
+/*
+ * Dispersion of an optical glass, from the three term Sellmeier equation
+ * n^2 = 1 + sum B_i L^2 / (L^2 - C_i), with the wavelength L in micrometers. Note that this is an immutable object.
+ */
+public class Glass {
+
+	/*
+	 * Constructor. b and c hold the three Sellmeier coefficients B_i and C_i (um^2).
+	 */
+	public Glass(String name, double[] b, double[] c) {
+		if (b.length != 3 || c.length != 3) throw new IllegalArgumentException("Three Sellmeier terms expected");
+		this.name = name;
+		this.b = b.clone();
+		this.c = c.clone();
+	}
+
+	/*
+	 * Returns the name of the glass.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/*
+	 * Returns a copy of the B coefficients.
+	 */
+	public double[] getB() {
+		return b.clone();
+	}
+
+	/*
+	 * Returns a copy of the C coefficients (um^2).
+	 */
+	public double[] getC() {
+		return c.clone();
+	}
+
+	/*
+	 * Returns the refractive index at a wavelength in nm.
+	 */
+	public double refractiveIndex(double wavelength) {
+		double l2 = wavelength * wavelength * Math.pow(10, -6); //um^2
+		double n2 = 1;
+		for (int i = 0; i < 3; i++) {
+			n2 += b[i] * l2 / (l2 - c[i]);
+		}
+		return Math.sqrt(n2);
+	}
+
+	/*
+	 * Returns the focal length at a wavelength (nm) of a thin lens of this glass whose focal length is
+	 * focalLength at designWavelength (nm). The power of a thin lens is proportional to n - 1.
+	 */
+	public double focalLength(double focalLength, double designWavelength, double wavelength) {
+		if (wavelength == designWavelength) return focalLength;
+		return focalLength * (refractiveIndex(designWavelength) - 1) / (refractiveIndex(wavelength) - 1);
+	}
+
+	/*
+	 * Returns whether another object is a glass with the same name and coefficients.
+	 */
+	public boolean equals(Object o) {
+		if (! (o instanceof Glass)) return false;
+		Glass g = (Glass) o;
+		return name.equals(g.name) && Arrays.equals(b, g.b) && Arrays.equals(c, g.c);
+	}
+
+	/*
+	 * Returns a hash code consistent with equals.
+	 */
+	public int hashCode() {
+		return name.hashCode() ^ Arrays.hashCode(b) ^ Arrays.hashCode(c);
+	}
+
+	/*
+	 * Returns the name of the glass.
+	 */
+	public String toString() {
+		return name;
+	}
+
+
+	//Static methods
+
+	/*
+	 * Returns the glasses of the catalog, in order.
+	 */
+	public static List<Glass> getCatalog() {
+		return CATALOG;
+	}
+
+	/*
+	 * Returns the glass of the catalog with a name, or null if there is none.
+	 */
+	public static Glass forName(String name) {
+		for (Glass glass: CATALOG) {
+			if (glass.name.equals(name)) return glass;
+		}
+		return null;
+	}
+
+
+	/* Instance variables */
+	private final String name;
+	private final double[] b;
+	private final double[] c; //um^2
+
+	/* Constants */
+	private static final List<Glass> CATALOG = Collections.unmodifiableList(Arrays.asList(
+			new Glass("N-BK7", new double[] {1.03961212, 0.231792344, 1.01046945},
+					new double[] {0.00600069867, 0.0200179144, 103.560653}),
+			new Glass("Fused silica", new double[] {0.6961663, 0.4079426, 0.8974794},
+					new double[] {0.00467914826, 0.0135120631, 97.9340025}),
+			new Glass("N-SF11", new double[] {1.73759695, 0.313747346, 1.89878101},
+					new double[] {0.013188707, 0.0623068142, 155.23629}),
+			new Glass("CaF2", new double[] {0.5675888, 0.4710914, 3.8484723},
+					new double[] {0.00252642999, 0.0100783328, 1200.5560})));
+
+}
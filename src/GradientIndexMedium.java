@@ -0,0 +1,433 @@
+import java.util.*;
+
+/*
+ * Class representing a medium whose index varies continuously, such as a GRIN rod or a crystal with a thermal lens.
+ * Near the axis the index is n(r, z) = n0(z) - n2(z) r^2 / 2, with n0 and n2 (1/mm^2) given at a list of points along
+ * the medium and linear between them. n2 is positive where the medium focuses. The position is that of the entrance
+ * face, the first point of the profile is at the entrance, and the last is at the exit.
+ *
+ * In reduced angles u = n0 dx/dz, the paraxial ray equation is dx/dz = u / n0, du/dz = -n2 x, which is integrated
+ * across the medium for the two rays that make the columns of the matrix. The integration is adaptive Runge-Kutta
+ * (Dormand-Prince 5(4)), with steps ending at every point of the profile, where the index may have a kink. The matrix
+ * and the accepted steps are kept until the profile changes, so moving the medium, drawing it and scanning the bench
+ * do not integrate again. The beam inside is interpolated between the steps kept. Dispersion is not modelled.
+ */
+public class GradientIndexMedium implements ThickOptic {
+
+	/*
+	 * Constructor. positions are the distances (mm) of the points of the profile from the entrance, ascending from 0,
+	 * and indices and gradients are n0 and n2 (1/mm^2) at those points. Throws IllegalArgumentException if the
+	 * profile is not valid.
+	 */
+	public GradientIndexMedium(double position, double[] positions, double[] indices, double[] gradients,
+			String name) {
+		this.position = position;
+		this.name = name;
+		setProfile(positions, indices, gradients);
+	}
+
+	/*
+	 * Returns the type.
+	 */
+	public String getType() {
+		return "Gradient-Index Medium";
+	}
+
+	/*
+	 * Returns the position of the entrance face.
+	 */
+	public double getPosition() {
+		return position;
+	}
+
+	/*
+	 * Sets the position of the entrance face. Moving the medium does not change its matrix.
+	 */
+	public void setPosition(double position) {
+		this.position = position;
+	}
+
+	/*
+	 * Returns the distances (mm) of the points of the profile from the entrance.
+	 */
+	public double[] getProfilePositions() {
+		return solution.positions.clone();
+	}
+
+	/*
+	 * Returns the index n0 on the axis at each point of the profile.
+	 */
+	public double[] getProfileIndices() {
+		return solution.indices.clone();
+	}
+
+	/*
+	 * Returns the gradient n2 (1/mm^2) at each point of the profile.
+	 */
+	public double[] getProfileGradients() {
+		return solution.gradients.clone();
+	}
+
+	/*
+	 * Changes the profile of the medium and integrates its matrix anew. Throws IllegalArgumentException if there are
+	 * fewer than two points, the first is not at 0, the positions do not go up, or an index is not positive.
+	 */
+	public synchronized void setProfile(double[] positions, double[] indices, double[] gradients) {
+		if (positions.length < 2 || indices.length != positions.length || gradients.length != positions.length) {
+			throw new IllegalArgumentException("A profile needs two or more points, each with an index and gradient");
+		}
+		if (positions[0] != 0) throw new IllegalArgumentException("The profile must start at the entrance, 0");
+		for (int i = 0; i < positions.length; i++) {
+			if (i > 0 && ! (positions[i] > positions[i - 1])) {
+				throw new IllegalArgumentException("The positions of the profile must go up");
+			}
+			if (! (indices[i] > 0) || Double.isInfinite(indices[i]) || Double.isNaN(gradients[i])
+					|| Double.isInfinite(gradients[i]) || Double.isInfinite(positions[i])) {
+				throw new IllegalArgumentException("The profile must have positive indices and finite gradients");
+			}
+		}
+		solution = new Solution(positions.clone(), indices.clone(), gradients.clone());
+	}
+
+	/*
+	 * Changes the profile of the medium to that of another, sharing its integrated matrix rather than integrating
+	 * it again.
+	 */
+	public void setProfile(GradientIndexMedium medium) {
+		solution = medium.solution;
+	}
+
+	/*
+	 * Returns the distance (mm) from the entrance to the exit.
+	 */
+	public double getLength() {
+		double[] positions = solution.positions;
+		return positions[positions.length - 1];
+	}
+
+	/*
+	 * Returns the number of steps the integration took across the medium.
+	 */
+	public int getStepCount() {
+		return solution.steps.length - 1;
+	}
+
+	/*
+	 * Returns the matrix of the medium at its entrance: the matrix from entrance to exit, preceded by free space of
+	 * minus the length.
+	 */
+	public ABCDMatrix ABCD() {
+		return solution.matrix;
+	}
+
+	/*
+	 * Returns the matrix of the medium at its entrance, the same at every wavelength.
+	 */
+	public ABCDMatrix ABCD(double wavelength) {
+		return solution.matrix;
+	}
+
+	/*
+	 * Returns the effective focal length (mm), measured from the principal planes, or infinity if the medium does
+	 * not focus.
+	 */
+	public double getFocalLength() {
+		return -1 / solution.throughMatrix.baseArray()[2];
+	}
+
+	/*
+	 * Returns the position of the front principal plane.
+	 */
+	public double getFrontPrincipalPlane() {
+		double[] m = solution.throughMatrix.baseArray();
+		return position + (m[3] - 1) / m[2];
+	}
+
+	/*
+	 * Returns the position of the back principal plane.
+	 */
+	public double getBackPrincipalPlane() {
+		double[] m = solution.throughMatrix.baseArray();
+		return position + getLength() + (1 - m[0]) / m[2];
+	}
+
+	/*
+	 * Computes the beam radius inside the medium from the matrix up to each sample, interpolated between the steps
+	 * kept from the integration. As the faces are flat, q over the index is continuous across them.
+	 */
+	public void sampleInterior(double[] samplePositions, Complex q_arriving, double wavelength, double[] radiusOut) {
+		Solution s = solution;
+		double entrance = position;
+		double lambda = wavelength * Math.pow(10, -6); //mm
+		double[] y = new double[STATE_SIZE];
+		int step = 0;
+		for (int i = 0; i < samplePositions.length; i++) {
+			double z = samplePositions[i] - entrance;
+			if (! (z >= 0) || z > s.steps[s.steps.length - 1]) {
+				radiusOut[i] = Double.NaN;
+				continue;
+			}
+			while (step < s.steps.length - 2 && s.steps[step + 1] < z) step++;
+			s.interpolate(step, z, y);
+			Complex q = q_arriving.times(y[0]).plus(y[2]).divideBy(q_arriving.times(y[1]).plus(y[3]));
+			radiusOut[i] = Math.sqrt(-lambda / (Math.PI * q.reciprocal().imag()));
+		}
+	}
+
+	/*
+	 * Returns the Gouy phase through the medium, summed over the steps kept from the integration, then back over free
+	 * space of its length. The steps are short beside the pitch, so none passes pi.
+	 */
+	public double getGouyPhase(Complex q_arriving, double wavelength) {
+		Solution s = solution;
+		double qr = q_arriving.real();
+		double qi = q_arriving.imag();
+		double gouy = 0;
+		double previous = 0; //Phase of the matrix to the last step, reduced to within pi
+		for (double[] y: s.states) {
+			double wrapped = OpticsChain.gouyPhase(y[0], y[2], qr, qi);
+			gouy += Math.IEEEremainder(wrapped - previous, 2 * Math.PI);
+			previous = wrapped;
+		}
+		Complex q = s.throughMatrix.transformQ(q_arriving);
+		return gouy + OpticsChain.gouyPhase(1, -s.steps[s.steps.length - 1], q.real(), q.imag());
+	}
+
+	/*
+	 * Returns the name of the medium.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/*
+	 * Sets the name of the medium.
+	 */
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/*
+	 * Returns whether the medium is selected.
+	 */
+	public boolean isSelected() {
+		return selected;
+	}
+
+	/*
+	 * Sets whether the medium is selected.
+	 */
+	public void setSelected(boolean selected) {
+		this.selected = selected;
+	}
+
+	/*
+	 * Returns a copy of the medium, which shares the integration already done.
+	 */
+	public OpticsHardware copy() {
+		return new GradientIndexMedium(position, name, solution);
+	}
+
+	/*
+	 * Returns whether another optic is a medium with the same name, position and profile.
+	 */
+	public boolean matches(OpticsHardware o) {
+		if (o == null || o.getClass() != GradientIndexMedium.class) return false;
+		GradientIndexMedium medium = (GradientIndexMedium) o;
+		Solution s = solution;
+		Solution t = medium.solution;
+		return position == medium.position && name.equals(medium.name) && (s == t
+				|| (Arrays.equals(s.positions, t.positions) && Arrays.equals(s.indices, t.indices)
+				&& Arrays.equals(s.gradients, t.gradients)));
+	}
+
+	/*
+	 * Compares the position of two optics. Does not work with .equals()!
+	 */
+	public int compareTo(OpticsHardware o) {
+		if (position == o.getPosition()) return 0;
+		if (position > o.getPosition()) return 1;
+		return -1;
+	}
+
+	/*
+	 * Constructor for a copy, which shares an integrated profile.
+	 */
+	private GradientIndexMedium(double position, String name, Solution solution) {
+		this.position = position;
+		this.name = name;
+		this.solution = solution;
+	}
+
+
+	/*
+	 * An integrated profile: the profile, and the steps of the integration across it with the two rays at the end of
+	 * each. The state of the rays is {x1, u1, x2, u2}, from {1, 0, 0, 1} at the entrance, so the matrix from the
+	 * entrance to a step is [[x1, x2], [u1, u2]]. Never changed once made.
+	 */
+	private static class Solution {
+
+		/*
+		 * Integrates across a profile.
+		 */
+		Solution(double[] positions, double[] indices, double[] gradients) {
+			this.positions = positions;
+			this.indices = indices;
+			this.gradients = gradients;
+			double length = positions[positions.length - 1];
+			double maxStep = length / MIN_STEPS;
+			double tolerance = TOLERANCE;
+
+			double[] stepList = new double[MIN_STEPS + 1];
+			double[][] stateList = new double[MIN_STEPS + 1][];
+			double[][] slopeList = new double[MIN_STEPS + 1][];
+			int count = 0;
+			double[] y = {1, 0, 0, 1};
+			double[][] k = new double[7][STATE_SIZE];
+			double[] trial = new double[STATE_SIZE];
+			double[] next = new double[STATE_SIZE];
+			derivative(0, y, k[0]);
+			stepList[count] = 0;
+			stateList[count] = y.clone();
+			slopeList[count++] = k[0].clone();
+			double z = 0;
+			double h = maxStep;
+			int attempts = 0;
+			for (int segment = 1; segment < positions.length; segment++) {
+				double end = positions[segment];
+				while (z < end) {
+					if (++attempts > MAX_ATTEMPTS) {
+						throw new IllegalArgumentException("The profile varies too fast to integrate");
+					}
+					boolean last = z + h >= end;
+					double step = last ? end - z : h;
+					double error = dormandPrinceStep(z, y, step, k, trial, next);
+					if (error > 1 && step > length * MIN_STEP_FRACTION) { //Rejected, so try a shorter step
+						h = step * Math.max(MIN_SHRINK, SAFETY * Math.pow(error, -0.2));
+						continue;
+					}
+					z = last ? end : z + step;
+					double[] swap = y;
+					y = next;
+					next = swap;
+					System.arraycopy(k[6], 0, k[0], 0, STATE_SIZE); //Slope at the end of the step, first same as last
+					if (count == stepList.length) {
+						stepList = Arrays.copyOf(stepList, 2 * count);
+						stateList = Arrays.copyOf(stateList, 2 * count);
+						slopeList = Arrays.copyOf(slopeList, 2 * count);
+					}
+					stepList[count] = z;
+					stateList[count] = y.clone();
+					slopeList[count++] = k[0].clone();
+					double grow = (error == 0) ? MAX_GROW : Math.min(MAX_GROW, SAFETY * Math.pow(error, -0.2));
+					h = Math.min(maxStep, Math.max(step, h) * Math.max(MIN_SHRINK, grow));
+				}
+			}
+			steps = Arrays.copyOf(stepList, count);
+			states = Arrays.copyOf(stateList, count);
+			slopes = Arrays.copyOf(slopeList, count);
+			throughMatrix = new ABCDMatrix(y[0], y[2], y[1], y[3]);
+			matrix = ABCDMatrix.freeSpace(-length).times(throughMatrix);
+		}
+
+		/*
+		 * Takes one Dormand-Prince step of length h from z, filling next with the fifth-order result and k[1] to k[6]
+		 * with the slopes, given the slope at z in k[0]. Returns the error of the step over the tolerance.
+		 */
+		private double dormandPrinceStep(double z, double[] y, double h, double[][] k, double[] trial,
+				double[] next) {
+			for (int stage = 1; stage < 7; stage++) {
+				double[] a = A[stage];
+				for (int j = 0; j < STATE_SIZE; j++) {
+					double sum = y[j];
+					for (int m = 0; m < stage; m++) sum += h * a[m] * k[m][j];
+					trial[j] = sum;
+				}
+				derivative(z + C[stage] * h, trial, k[stage]);
+			}
+			System.arraycopy(trial, 0, next, 0, STATE_SIZE); //The last stage is at the fifth-order result
+			double error = 0;
+			for (int j = 0; j < STATE_SIZE; j++) {
+				double difference = 0;
+				for (int m = 0; m < 7; m++) difference += h * E[m] * k[m][j];
+				double scale = TOLERANCE * (1 + Math.max(Math.abs(y[j]), Math.abs(next[j])));
+				error = Math.max(error, Math.abs(difference) / scale);
+			}
+			return error;
+		}
+
+		/*
+		 * Fills dy with the slope of the state y at a distance z from the entrance.
+		 */
+		private void derivative(double z, double[] y, double[] dy) {
+			int i = 1;
+			while (i < positions.length - 1 && positions[i] < z) i++;
+			double t = (z - positions[i - 1]) / (positions[i] - positions[i - 1]);
+			t = Math.max(0, Math.min(1, t));
+			double n0 = indices[i - 1] + t * (indices[i] - indices[i - 1]);
+			double n2 = gradients[i - 1] + t * (gradients[i] - gradients[i - 1]);
+			dy[0] = y[1] / n0;
+			dy[1] = -n2 * y[0];
+			dy[2] = y[3] / n0;
+			dy[3] = -n2 * y[2];
+		}
+
+		/*
+		 * Fills y with the state at a distance z from the entrance within a step, by cubic Hermite interpolation
+		 * between the states and slopes at its ends.
+		 */
+		void interpolate(int step, double z, double[] y) {
+			double h = steps[step + 1] - steps[step];
+			double t = (z - steps[step]) / h;
+			double h00 = (1 + 2 * t) * (1 - t) * (1 - t);
+			double h10 = t * (1 - t) * (1 - t);
+			double h01 = t * t * (3 - 2 * t);
+			double h11 = t * t * (t - 1);
+			for (int j = 0; j < STATE_SIZE; j++) {
+				y[j] = h00 * states[step][j] + h10 * h * slopes[step][j] + h01 * states[step + 1][j]
+						+ h11 * h * slopes[step + 1][j];
+			}
+		}
+
+		final double[] positions; //mm
+		final double[] indices;
+		final double[] gradients; //1/mm^2
+		final double[] steps; //mm from the entrance, at the ends of the accepted steps
+		final double[][] states;
+		final double[][] slopes;
+		final ABCDMatrix throughMatrix; //From the entrance face to the exit face
+		final ABCDMatrix matrix; //At the entrance, as the bench applies it
+	}
+
+
+	/* Instance variables */
+	private volatile double position;
+	private String name;
+	private boolean selected = false;
+	private volatile Solution solution;
+
+	/* Constants */
+	private static final int STATE_SIZE = 4;
+	private static final double TOLERANCE = 1e-10;
+	private static final int MIN_STEPS = 32; //Across the whole length, so the beam inside is drawn smoothly
+	private static final int MAX_ATTEMPTS = 1000000;
+	private static final double MIN_STEP_FRACTION = 1e-12; //Of the length, below which a step is always accepted
+	private static final double SAFETY = 0.9;
+	private static final double MIN_SHRINK = 0.2;
+	private static final double MAX_GROW = 5;
+
+	//Dormand-Prince 5(4) tableau: nodes, stages, and fifth- minus fourth-order weights
+	private static final double[] C = {0, 1 / 5.0, 3 / 10.0, 4 / 5.0, 8 / 9.0, 1, 1};
+	private static final double[][] A = {
+		{},
+		{1 / 5.0},
+		{3 / 40.0, 9 / 40.0},
+		{44 / 45.0, -56 / 15.0, 32 / 9.0},
+		{19372 / 6561.0, -25360 / 2187.0, 64448 / 6561.0, -212 / 729.0},
+		{9017 / 3168.0, -355 / 33.0, 46732 / 5247.0, 49 / 176.0, -5103 / 18656.0},
+		{35 / 384.0, 0, 500 / 1113.0, 125 / 192.0, -2187 / 6784.0, 11 / 84.0}
+	};
+	private static final double[] E = {71 / 57600.0, 0, -71 / 16695.0, 71 / 1920.0, -17253 / 339200.0, 22 / 525.0,
+		-1 / 40.0};
+
+}
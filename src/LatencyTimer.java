@@ -0,0 +1,65 @@
+import java.util.concurrent.atomic.*;
+
+/*
+ * Low-overhead counter and latency histogram for one operation. Latencies are counted in power-of-two buckets of
+ * nanoseconds, so recording costs a few atomic adds and percentiles are accurate to within a factor of two.
+ */
+public class LatencyTimer {
+
+	/*
+	 * Records one call of the operation that took the given number of nanoseconds.
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(nanos | 1));
+		long max = maxNanos.get();
+		while (nanos > max && ! maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+	}
+
+	/*
+	 * Clears all recorded calls.
+	 */
+	public void reset() {
+		count.set(0);
+		totalNanos.set(0);
+		maxNanos.set(0);
+		for (int i = 0; i < buckets.length(); i++) buckets.set(i, 0);
+	}
+
+	/*
+	 * Returns a snapshot of the statistics recorded so far.
+	 */
+	public TimerStats getStats() {
+		long n = count.get();
+		long[] counts = new long[buckets.length()];
+		for (int i = 0; i < counts.length; i++) counts[i] = buckets.get(i);
+		return new TimerStats(n, totalNanos.get(), maxNanos.get(), percentile(counts, n, 0.5),
+				percentile(counts, n, 0.9), percentile(counts, n, 0.99));
+	}
+
+	/*
+	 * Returns the upper bound in nanoseconds of the bucket containing a percentile, or 0 if there are no calls.
+	 */
+	private static long percentile(long[] counts, long total, double fraction) {
+		if (total == 0) return 0;
+		long target = (long) Math.ceil(fraction * total);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= target) return (i >= 62) ? Long.MAX_VALUE : (2L << i) - 1;
+		}
+		return Long.MAX_VALUE;
+	}
+
+
+	/* Instance variables */
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+	private final AtomicLongArray buckets = new AtomicLongArray(64); //Bucket i holds [2^i, 2^(i+1)) ns
+
+}
@@ -9,6 +9,7 @@ public class Lens implements OpticsHardware {
 	 */
 	public Lens(double position, double focalLength, String name) {
 		this.focalLength = focalLength;
+		matrix = ABCDMatrix.lensMatrix(focalLength);
 		this.position = position;
 		this.name = name;
 	}
@@ -21,10 +22,11 @@ public class Lens implements OpticsHardware {
 	}
 	
 	/*
-	 * Sets or changes the focal length of the lens.
+	 * Sets or changes the focal length of the lens, and the matrix kept for it.
 	 */
 	public void setFocalLength(double focalLength) {
 		this.focalLength = focalLength;
+		matrix = ABCDMatrix.lensMatrix(focalLength);
 	}
 	
 	
@@ -51,10 +53,58 @@ public class Lens implements OpticsHardware {
 	}
 	
 	/*
-	 * Returns ABCD matrix for the lens.
+	 * Returns ABCD matrix for the lens, kept from when its focal length was last set.
 	 */
 	public ABCDMatrix ABCD() {
-		return ABCDMatrix.lensMatrix(focalLength);
+		return matrix;
+	}
+	
+	/*
+	 * Returns ABCD matrix for the lens at a wavelength in nm. With a glass, the matrix of the last wavelength asked
+	 * for is kept, and only made anew for another wavelength or once the lens has changed.
+	 */
+	public ABCDMatrix ABCD(double wavelength) {
+		Glass g = glass; //Read once each, as they may be changed on another thread
+		if (g == null) return matrix;
+		double f = focalLength;
+		double d = designWavelength;
+		ChromaticMatrix c = chromaticMatrix;
+		if (c == null || ! c.isFor(g, d, f, wavelength)) {
+			c = new ChromaticMatrix(g, d, f, wavelength, ABCDMatrix.lensMatrix(g.focalLength(f, d, wavelength)));
+			chromaticMatrix = c;
+		}
+		return c.matrix;
+	}
+	
+	/*
+	 * Returns the focal length at a wavelength in nm. Without a glass, the same at every wavelength.
+	 */
+	public double getFocalLength(double wavelength) {
+		Glass g = glass; //Read once, as it may be changed on another thread
+		return (g == null) ? focalLength : g.focalLength(focalLength, designWavelength, wavelength);
+	}
+	
+	/*
+	 * Returns the glass of the lens, or null if its focal length does not depend on wavelength.
+	 */
+	public Glass getGlass() {
+		return glass;
+	}
+	
+	/*
+	 * Returns the wavelength (nm) at which the focal length of the lens is given.
+	 */
+	public double getDesignWavelength() {
+		return designWavelength;
+	}
+	
+	/*
+	 * Sets the glass of the lens and the wavelength (nm) at which its focal length is given. A null glass makes the
+	 * focal length the same at every wavelength.
+	 */
+	public void setGlass(Glass glass, double designWavelength) {
+		this.designWavelength = designWavelength;
+		this.glass = glass;
 	}
 	
 	/*
@@ -101,6 +151,100 @@ public class Lens implements OpticsHardware {
 	}
 	
 	
+	/*
+	 * Returns the diameter (mm) of the clear aperture, or 0 if it is not known and the lens clips nothing.
+	 */
+	public double getClearAperture() {
+		return clearAperture;
+	}
+	
+	/*
+	 * Sets the diameter (mm) of the clear aperture, 0 if it is not known.
+	 */
+	public void setClearAperture(double clearAperture) {
+		this.clearAperture = clearAperture;
+	}
+	
+	/*
+	 * Returns how far (mm) the axis of the lens is moved sideways from the bench axis.
+	 */
+	public double getDecentre() {
+		return decentre;
+	}
+	
+	/*
+	 * Sets how far (mm) the axis of the lens is moved sideways from the bench axis.
+	 */
+	public void setDecentre(double decentre) {
+		this.decentre = decentre;
+	}
+	
+	/*
+	 * Returns the angle (mrad) by which the axis of the lens is turned from the bench axis.
+	 */
+	public double getTilt() {
+		return tilt;
+	}
+	
+	/*
+	 * Sets the angle (mrad) by which the axis of the lens is turned from the bench axis.
+	 */
+	public void setTilt(double tilt) {
+		this.tilt = tilt;
+	}
+	
+	/*
+	 * Returns the entries [dE/dd, dE/dt, dF/dd, dF/dt] of the offset E (mm) and angle F (rad) the lens adds to the
+	 * beam centre, per mm of decentre d and per mrad of tilt t, given its ABCD matrix. A thin lens tilted about its
+	 * centre does not steer the beam to first order, so only its decentre counts.
+	 */
+	public double[] misalignmentResponse(ABCDMatrix abcd) {
+		double[] r = ABCDEFMatrix.misalignmentResponse(abcd);
+		r[1] /= MRAD_PER_RAD;
+		r[3] /= MRAD_PER_RAD;
+		return r;
+	}
+	
+	
+	/*
+	 * Returns a copy of the lens.
+	 */
+	public OpticsHardware copy() {
+		Lens lens = new Lens(position, focalLength, name);
+		lens.setGlass(glass, designWavelength);
+		lens.setClearAperture(clearAperture);
+		lens.setDecentre(decentre);
+		lens.setTilt(tilt);
+		return lens;
+	}
+	
+	/*
+	 * Returns whether another optic is a lens (not tunable) with the same name and parameters.
+	 */
+	public boolean matches(OpticsHardware o) {
+		if (o == null || o.getClass() != Lens.class) return false;
+		Lens lens = (Lens) o;
+		return position == lens.position && focalLength == lens.focalLength && name.equals(lens.name)
+				&& sameGlass(lens) && clearAperture == lens.clearAperture && sameAlignment(lens);
+	}
+	
+	/*
+	 * Returns whether another lens has the same glass and design wavelength.
+	 */
+	protected boolean sameGlass(Lens lens) {
+		if (glass == null) return lens.glass == null;
+		return glass.equals(lens.glass) && designWavelength == lens.designWavelength;
+	}
+	
+	
+	/*
+	 * Returns whether another lens has the same decentre and tilt.
+	 */
+	protected boolean sameAlignment(Lens lens) {
+		return decentre == lens.decentre && tilt == lens.tilt;
+	}
+	
+	
 	/*
 	 * Compares the position of two optics. Does not work with .equals()!
 	 */
@@ -111,10 +255,51 @@ public class Lens implements OpticsHardware {
 	}
 	
 	
+	/*
+	 * The matrix of a lens with a glass at one wavelength, with the state of the lens it was made for. Kept in one
+	 * object so that it is read and replaced whole. Never changed once made.
+	 */
+	private static class ChromaticMatrix {
+
+		ChromaticMatrix(Glass glass, double designWavelength, double focalLength, double wavelength,
+				ABCDMatrix matrix) {
+			this.glass = glass;
+			this.designWavelength = designWavelength;
+			this.focalLength = focalLength;
+			this.wavelength = wavelength;
+			this.matrix = matrix;
+		}
+
+		/*
+		 * Returns whether the matrix was made for this state of the lens and wavelength.
+		 */
+		boolean isFor(Glass glass, double designWavelength, double focalLength, double wavelength) {
+			return this.glass == glass && this.designWavelength == designWavelength
+					&& this.focalLength == focalLength && this.wavelength == wavelength;
+		}
+
+		final Glass glass;
+		final double designWavelength; //nm
+		final double focalLength; //mm, at the design wavelength
+		final double wavelength; //nm
+		final ABCDMatrix matrix;
+	}
+	
+	
 	/* Private instance variables */
 	protected volatile double position;
 	protected volatile double focalLength;
+	protected volatile ABCDMatrix matrix; //Of the focal length, made when it is set
 	protected boolean selected = false;
 	protected String name;
+	protected volatile Glass glass = null;
+	protected volatile double designWavelength = 0; //nm
+	private volatile ChromaticMatrix chromaticMatrix = null; //Cached for the last wavelength, with a glass
+	protected volatile double clearAperture = 0; //mm, diameter
+	protected volatile double decentre = 0; //mm
+	protected volatile double tilt = 0; //mrad
+	
+	/* Constants */
+	protected static final double MRAD_PER_RAD = 1000;
 	
 }
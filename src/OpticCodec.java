@@ -0,0 +1,18 @@
+import java.io.*;
+
+/*
+ * Interface implemented by the codecs that save and load one class of optic in the format of a saved file: a line
+ * naming its type, then its parameters, usually one to a line. Codecs are registered with class OpticCodecs.
+ */
+public interface OpticCodec {
+	
+	/*
+	 * Writes an optic, starting with its type line.
+	 */
+	public void write(PrintWriter wr, OpticsHardware o);
+	
+	/*
+	 * Reads the rest of an optic whose type line has already been read.
+	 */
+	public OpticsHardware read(BufferedReader rd, String type) throws IOException;
+}
@@ -0,0 +1,367 @@
+import java.io.*;
+import java.util.*;
+
+/*
+ * Table of the codecs that save and load each class of optic. An optic is saved by the codec of its exact class and
+ * loaded by the codec of its type line, both found by a hash lookup, so saving and loading take the same time per
+ * optic however many types there are. A new type of optic is added by registering its codec, here or at startup,
+ * without touching the code that reads and writes whole benches.
+ */
+public class OpticCodecs {
+
+	/*
+	 * Registers the codec for a class of optic, and the type lines it reads.
+	 */
+	public static synchronized void register(Class<? extends OpticsHardware> opticClass, OpticCodec codec,
+			String... types) {
+		byClass.put(opticClass, codec);
+		for (String type: types) byType.put(type, codec);
+	}
+
+	/*
+	 * Writes an optic with the codec for its class. Throws IllegalArgumentException if it has none.
+	 */
+	public static void write(PrintWriter wr, OpticsHardware o) {
+		OpticCodec codec = byClass.get(o.getClass());
+		if (codec == null) throw new IllegalArgumentException("No codec for " + o.getClass().getName());
+		codec.write(wr, o);
+	}
+
+	/*
+	 * Reads an optic, starting with its type line, with the codec for that type.
+	 */
+	public static OpticsHardware read(BufferedReader rd) throws IOException {
+		String type = rd.readLine();
+		if (type == null) throw new IOException("Reached end of file before the name of an optic");
+		OpticCodec codec = byType.get(type);
+		if (codec == null) throw new IOException("Unknown type of optic: " + type);
+		return codec.read(rd, type);
+	}
+
+	/*
+	 * Writes the glass of a lens, if it has one: its name, its Sellmeier coefficients B1 B2 B3 C1 C2 C3 on one line,
+	 * and the wavelength at which the focal length of the lens is given.
+	 */
+	static void writeGlass(PrintWriter wr, Lens lens) {
+		Glass glass = lens.getGlass();
+		if (glass == null) return;
+		wr.println(glass.getName());
+		double[] b = glass.getB();
+		double[] c = glass.getC();
+		wr.println(b[0] + " " + b[1] + " " + b[2] + " " + c[0] + " " + c[1] + " " + c[2]);
+		wr.println(lens.getDesignWavelength());
+	}
+
+	/*
+	 * Reads the glass of a lens in the format written by writeGlass and gives it to the lens.
+	 */
+	static void readGlass(BufferedReader rd, Lens lens) throws IOException {
+		String name = rd.readLine();
+		String[] coefficients = rd.readLine().trim().split(" ");
+		if (coefficients.length != 6) throw new IOException("Expected six Sellmeier coefficients");
+		double[] b = new double[3];
+		double[] c = new double[3];
+		for (int i = 0; i < 3; i++) {
+			b[i] = Double.parseDouble(coefficients[i]);
+			c[i] = Double.parseDouble(coefficients[i + 3]);
+		}
+		lens.setGlass(new Glass(name, b, c), Double.parseDouble(rd.readLine()));
+	}
+
+	/*
+	 * Writes the optional properties of a lens that it has, one line each: its clear aperture as "Aperture" followed
+	 * by its diameter, and its misalignment as "Misalignment" followed by its decentre and tilt. Files without the
+	 * lines load as before.
+	 */
+	static void writeLensOptions(PrintWriter wr, Lens lens) {
+		if (lens.getClearAperture() > 0) wr.println("Aperture " + lens.getClearAperture());
+		if (lens.getDecentre() != 0 || lens.getTilt() != 0) {
+			wr.println("Misalignment " + lens.getDecentre() + " " + lens.getTilt());
+		}
+	}
+
+	/*
+	 * Reads the optional lines of a lens written by writeLensOptions, as long as the next line is one, and gives them
+	 * to the lens. Leaves the reader at the first line that is not.
+	 */
+	static void readLensOptions(BufferedReader rd, Lens lens) throws IOException {
+		while (true) {
+			rd.mark(READ_AHEAD_LIMIT);
+			String line = rd.readLine();
+			if (line != null && line.startsWith("Aperture ")) {
+				lens.setClearAperture(Double.parseDouble(line.substring("Aperture ".length()).trim()));
+			} else if (line != null && line.startsWith("Misalignment ")) {
+				String[] values = line.substring("Misalignment ".length()).trim().split(" ");
+				if (values.length != 2) throw new IOException("Expected a decentre and a tilt");
+				lens.setDecentre(Double.parseDouble(values[0]));
+				lens.setTilt(Double.parseDouble(values[1]));
+			} else {
+				rd.reset();
+				return;
+			}
+		}
+	}
+
+
+	/*
+	 * Registers the codecs for the optics built in.
+	 */
+	private static void registerBuiltInCodecs() {
+		register(Source.class, new OpticCodec() {
+			public void write(PrintWriter wr, OpticsHardware o) {
+				wr.println("Source");
+				wr.println(o.getName());
+				wr.println(o.getPosition());
+			}
+			public OpticsHardware read(BufferedReader rd, String type) throws IOException {
+				rd.readLine(); //Name not needed, always "source"
+				return new Source(Double.parseDouble(rd.readLine()));
+			}
+		}, "Source");
+		
+		register(POI.class, new OpticCodec() {
+			public void write(PrintWriter wr, OpticsHardware o) {
+				wr.println("POI");
+				wr.println(o.getName());
+				wr.println(o.getPosition());
+			}
+			public OpticsHardware read(BufferedReader rd, String type) throws IOException {
+				String name = rd.readLine();
+				return new POI(Double.parseDouble(rd.readLine()), name);
+			}
+		}, "POI");
+		
+		register(TargetMode.class, new OpticCodec() {
+			public void write(PrintWriter wr, OpticsHardware o) {
+				TargetMode target = (TargetMode) o;
+				wr.println("TargetMode");
+				wr.println(target.getName());
+				wr.println(target.getPosition());
+				wr.println(target.getTargetWaist());
+				wr.println(target.getTargetWaistOffset());
+			}
+			public OpticsHardware read(BufferedReader rd, String type) throws IOException {
+				String name = rd.readLine();
+				double position = Double.parseDouble(rd.readLine());
+				double targetWaist = Double.parseDouble(rd.readLine());
+				return new TargetMode(position, targetWaist, Double.parseDouble(rd.readLine()), name);
+			}
+		}, "TargetMode");
+		
+		register(AuxiliarySource.class, new OpticCodec() {
+			public void write(PrintWriter wr, OpticsHardware o) {
+				AuxiliarySource source = (AuxiliarySource) o;
+				wr.println("AuxiliarySource");
+				wr.println(source.getName());
+				wr.println(source.getPosition());
+				wr.println(source.getWaist());
+				wr.println(source.getWavelength());
+			}
+			public OpticsHardware read(BufferedReader rd, String type) throws IOException {
+				String name = rd.readLine();
+				double position = Double.parseDouble(rd.readLine());
+				double waist = Double.parseDouble(rd.readLine());
+				return new AuxiliarySource(position, waist, Double.parseDouble(rd.readLine()), name);
+			}
+		}, "AuxiliarySource");
+		
+		register(Lens.class, new OpticCodec() {
+			public void write(PrintWriter wr, OpticsHardware o) {
+				Lens lens = (Lens) o;
+				wr.println((lens.getGlass() == null) ? "Lens" : "GlassLens");
+				wr.println(lens.getName());
+				wr.println(lens.getPosition());
+				wr.println(lens.getFocalLength());
+				writeGlass(wr, lens);
+				writeLensOptions(wr, lens);
+			}
+			public OpticsHardware read(BufferedReader rd, String type) throws IOException {
+				String name = rd.readLine();
+				double position = Double.parseDouble(rd.readLine());
+				Lens lens = new Lens(position, Double.parseDouble(rd.readLine()), name);
+				if (type.equals("GlassLens")) readGlass(rd, lens);
+				readLensOptions(rd, lens);
+				return lens;
+			}
+		}, "Lens", "GlassLens");
+		
+		register(TunableLens.class, new OpticCodec() {
+			public void write(PrintWriter wr, OpticsHardware o) {
+				TunableLens lens = (TunableLens) o;
+				wr.println((lens.getGlass() == null) ? "TunableLens" : "GlassTunableLens");
+				wr.println(lens.getName());
+				wr.println(lens.getPosition());
+				wr.println(lens.getFocalLength());
+				wr.println(lens.getMinFocalLength());
+				wr.println(lens.getMaxFocalLength());
+				writeGlass(wr, lens);
+				writeLensOptions(wr, lens);
+			}
+			public OpticsHardware read(BufferedReader rd, String type) throws IOException {
+				String name = rd.readLine();
+				double position = Double.parseDouble(rd.readLine());
+				double focalLength = Double.parseDouble(rd.readLine());
+				TunableLens lens = new TunableLens(position, Double.parseDouble(rd.readLine()),
+						Double.parseDouble(rd.readLine()), focalLength, name);
+				if (type.equals("GlassTunableLens")) readGlass(rd, lens);
+				readLensOptions(rd, lens);
+				return lens;
+			}
+		}, "TunableLens", "GlassTunableLens");
+		
+		register(Subassembly.class, new OpticCodec() {
+			public void write(PrintWriter wr, OpticsHardware o) { //Followed by its lenses, at their offsets
+				Subassembly block = (Subassembly) o;
+				wr.println("Subassembly");
+				wr.println(block.getName());
+				wr.println(block.getPosition());
+				wr.println(block.isExpanded());
+				wr.println(block.getLensCount());
+				for (int i = 0; i < block.getLensCount(); i++) OpticCodecs.write(wr, block.getLens(i));
+			}
+			public OpticsHardware read(BufferedReader rd, String type) throws IOException {
+				String name = rd.readLine();
+				double position = Double.parseDouble(rd.readLine());
+				boolean expanded = Boolean.parseBoolean(rd.readLine());
+				int count = Integer.parseInt(rd.readLine());
+				ArrayList<Lens> lenses = new ArrayList<Lens>();
+				for (int i = 0; i < count; i++) {
+					OpticsHardware lens = OpticCodecs.read(rd);
+					if (lens.getClass() != Lens.class) {
+						throw new IOException("A subassembly can only contain fixed lenses");
+					}
+					lenses.add((Lens) lens);
+				}
+				Subassembly block = new Subassembly(position, lenses, name);
+				block.setExpanded(expanded);
+				return block;
+			}
+		}, "Subassembly");
+		
+		register(PeriodicRelay.class, new OpticCodec() {
+			public void write(PrintWriter wr, OpticsHardware o) {
+				PeriodicRelay relay = (PeriodicRelay) o;
+				wr.println("PeriodicRelay");
+				wr.println(relay.getName());
+				wr.println(relay.getPosition());
+				wr.println(relay.isExpanded());
+				wr.println(relay.getFocalLength());
+				wr.println(relay.getSpacing());
+				wr.println(relay.getLensCount());
+			}
+			public OpticsHardware read(BufferedReader rd, String type) throws IOException {
+				String name = rd.readLine();
+				double position = Double.parseDouble(rd.readLine());
+				boolean expanded = Boolean.parseBoolean(rd.readLine());
+				double focalLength = Double.parseDouble(rd.readLine());
+				double spacing = Double.parseDouble(rd.readLine());
+				PeriodicRelay relay = new PeriodicRelay(position, focalLength, spacing,
+						Integer.parseInt(rd.readLine()), name);
+				relay.setExpanded(expanded);
+				return relay;
+			}
+		}, "PeriodicRelay");
+		
+		register(CurvedMirror.class, new OpticCodec() {
+			public void write(PrintWriter wr, OpticsHardware o) {
+				CurvedMirror mirror = (CurvedMirror) o;
+				wr.println("CurvedMirror");
+				wr.println(mirror.getName());
+				wr.println(mirror.getPosition());
+				wr.println(mirror.getRadiusOfCurvature());
+				writeLensOptions(wr, mirror);
+			}
+			public OpticsHardware read(BufferedReader rd, String type) throws IOException {
+				String name = rd.readLine();
+				double position = Double.parseDouble(rd.readLine());
+				CurvedMirror mirror = new CurvedMirror(position, Double.parseDouble(rd.readLine()), name);
+				readLensOptions(rd, mirror);
+				return mirror;
+			}
+		}, "CurvedMirror");
+		
+		register(ThickLens.class, new OpticCodec() {
+			public void write(PrintWriter wr, OpticsHardware o) {
+				ThickLens lens = (ThickLens) o;
+				wr.println("ThickLens");
+				wr.println(lens.getName());
+				wr.println(lens.getPosition());
+				wr.println(lens.getFrontRadius());
+				wr.println(lens.getBackRadius());
+				wr.println(lens.getThickness());
+				wr.println(lens.getIndex());
+			}
+			public OpticsHardware read(BufferedReader rd, String type) throws IOException {
+				String name = rd.readLine();
+				double position = Double.parseDouble(rd.readLine());
+				double frontRadius = Double.parseDouble(rd.readLine());
+				double backRadius = Double.parseDouble(rd.readLine());
+				double thickness = Double.parseDouble(rd.readLine());
+				return new ThickLens(position, frontRadius, backRadius, thickness, Double.parseDouble(rd.readLine()),
+						name);
+			}
+		}, "ThickLens");
+		
+		register(DielectricSlab.class, new OpticCodec() {
+			public void write(PrintWriter wr, OpticsHardware o) {
+				DielectricSlab slab = (DielectricSlab) o;
+				wr.println("DielectricSlab");
+				wr.println(slab.getName());
+				wr.println(slab.getPosition());
+				wr.println(slab.getThickness());
+				wr.println(slab.getIndex());
+			}
+			public OpticsHardware read(BufferedReader rd, String type) throws IOException {
+				String name = rd.readLine();
+				double position = Double.parseDouble(rd.readLine());
+				double thickness = Double.parseDouble(rd.readLine());
+				return new DielectricSlab(position, thickness, Double.parseDouble(rd.readLine()), name);
+			}
+		}, "DielectricSlab");
+		
+		register(GradientIndexMedium.class, new OpticCodec() {
+			public void write(PrintWriter wr, OpticsHardware o) {
+				GradientIndexMedium medium = (GradientIndexMedium) o;
+				double[] positions = medium.getProfilePositions();
+				double[] indices = medium.getProfileIndices();
+				double[] gradients = medium.getProfileGradients();
+				wr.println("GradientIndex");
+				wr.println(medium.getName());
+				wr.println(medium.getPosition());
+				wr.println(positions.length);
+				for (int i = 0; i < positions.length; i++) {
+					wr.println(positions[i] + " " + indices[i] + " " + gradients[i]);
+				}
+			}
+			public OpticsHardware read(BufferedReader rd, String type) throws IOException {
+				String name = rd.readLine();
+				double position = Double.parseDouble(rd.readLine());
+				int count = Integer.parseInt(rd.readLine().trim());
+				double[][] profile = new double[3][count];
+				for (int i = 0; i < count; i++) {
+					String[] values = rd.readLine().trim().split(" ");
+					if (values.length != 3) throw new IOException("Expected a distance, index and gradient");
+					for (int j = 0; j < 3; j++) profile[j][i] = Double.parseDouble(values[j]);
+				}
+				try {
+					return new GradientIndexMedium(position, profile[0], profile[1], profile[2], name);
+				} catch (IllegalArgumentException ex) {
+					throw new IOException(ex.getMessage());
+				}
+			}
+		}, "GradientIndex");
+	}
+
+
+	/* Class variables */
+	private static final HashMap<Class<?>, OpticCodec> byClass = new HashMap<Class<?>, OpticCodec>();
+	private static final HashMap<String, OpticCodec> byType = new HashMap<String, OpticCodec>();
+
+	static {
+		registerBuiltInCodecs(); //After the tables above are made
+	}
+
+	/* Constants */
+	private static final int READ_AHEAD_LIMIT = 1024; //Characters, for optional lines in saved files
+
+}
@@ -0,0 +1,424 @@
+import java.util.*;
+
+/*
+ * Immutable snapshot of a list of optics, stored as primitive arrays of positions and ABCD matrix entries.
+ * Used for calculations that evaluate many variants of the same system, often off the event thread, without
+ * touching the live optics list or allocating a Complex per step.
+ */
+public class OpticsChain {
+
+	/*
+	 * Constructs a snapshot of a list of optics sorted by position. The first optic is taken to be the source.
+	 * The caller is responsible for holding whatever lock guards the list.
+	 */
+	public OpticsChain(List<OpticsHardware> optics) {
+		int n = optics.size();
+		positions = new double[n];
+		matrices = new double[4 * n];
+		responses = new double[4 * n];
+		misalignments = new double[2 * n];
+		gouyBranches = new double[n];
+		for (int i = 0; i < n; i++) {
+			OpticsHardware o = optics.get(i);
+			positions[i] = o.getPosition();
+			System.arraycopy(o.ABCD().baseArray(), 0, matrices, 4 * i, 4);
+			if (o instanceof Lens) setMisalignment(i, (Lens) o);
+			if (o instanceof ThickOptic) setGouyBranch(i, (ThickOptic) o, Double.NaN);
+		}
+	}
+
+	/*
+	 * Constructs a snapshot of a list of optics sorted by position, with each optic evaluated at a wavelength in nm.
+	 * The caller is responsible for holding whatever lock guards the list.
+	 */
+	public OpticsChain(List<OpticsHardware> optics, double wavelength) {
+		int n = optics.size();
+		positions = new double[n];
+		matrices = new double[4 * n];
+		responses = new double[4 * n];
+		misalignments = new double[2 * n];
+		gouyBranches = new double[n];
+		for (int i = 0; i < n; i++) {
+			OpticsHardware o = optics.get(i);
+			positions[i] = o.getPosition();
+			System.arraycopy(o.ABCD(wavelength).baseArray(), 0, matrices, 4 * i, 4);
+			if (o instanceof Lens) setMisalignment(i, (Lens) o);
+			if (o instanceof ThickOptic) setGouyBranch(i, (ThickOptic) o, wavelength);
+		}
+	}
+
+	/*
+	 * Records the misalignment of a lens at an index and how it moves the beam centre, from the matrix stored for it.
+	 * Only lenses, mirrors among them, carry a misalignment: blocks of lenses and relays are taken to be aligned.
+	 */
+	private void setMisalignment(int index, Lens lens) {
+		System.arraycopy(lens.misalignmentResponse(getMatrix(index)), 0, responses, 4 * index, 4);
+		misalignments[2 * index] = lens.getDecentre();
+		misalignments[2 * index + 1] = lens.getTilt();
+	}
+	
+	/*
+	 * Records the multiple of 2 pi by which the Gouy phase of a thick optic exceeds -arg(A + B/q) of its matrix, from
+	 * the phase the optic gives for one beam. A + B/q stays in a half plane as q ranges over the upper half plane, so
+	 * the multiple is the same for every beam, and the walks add it rather than asking the optic for every beam.
+	 */
+	private void setGouyBranch(int index, ThickOptic optic, double wavelength) {
+		int m = 4 * index;
+		double wrapped = gouyPhase(matrices[m], matrices[m + 1], GOUY_REFERENCE.real(), GOUY_REFERENCE.imag());
+		double gouy = optic.getGouyPhase(GOUY_REFERENCE, wavelength);
+		gouyBranches[index] = 2 * Math.PI * Math.rint((gouy - wrapped) / (2 * Math.PI));
+	}
+	
+	/*
+	 * Constructs a snapshot directly from its arrays. Arrays are not copied.
+	 */
+	private OpticsChain(double[] positions, double[] matrices, double[] responses, double[] misalignments,
+			double[] gouyBranches) {
+		this.positions = positions;
+		this.matrices = matrices;
+		this.responses = responses;
+		this.misalignments = misalignments;
+		this.gouyBranches = gouyBranches;
+	}
+
+	/*
+	 * Returns the number of optics in the chain.
+	 */
+	public int size() {
+		return positions.length;
+	}
+
+	/*
+	 * Returns the position of the optic at an index.
+	 */
+	public double getPosition(int index) {
+		return positions[index];
+	}
+
+	/*
+	 * Returns the ABCD matrix of the optic at an index.
+	 */
+	public ABCDMatrix getMatrix(int index) {
+		return new ABCDMatrix(matrices[4 * index], matrices[4 * index + 1], matrices[4 * index + 2],
+				matrices[4 * index + 3]);
+	}
+
+	/*
+	 * Returns a copy of the chain in which the optic at an index is replaced by a thin lens of given focal length.
+	 */
+	public OpticsChain withLens(int index, double focalLength) {
+		double[] newMatrices = matrices.clone();
+		newMatrices[4 * index] = 1;
+		newMatrices[4 * index + 1] = 0;
+		newMatrices[4 * index + 2] = -1 / focalLength;
+		newMatrices[4 * index + 3] = 1;
+		double[] newResponses = responses.clone(); //A thin lens is only steered by its decentre
+		newResponses[4 * index] = 0;
+		newResponses[4 * index + 1] = 0;
+		newResponses[4 * index + 2] = 1 / focalLength;
+		newResponses[4 * index + 3] = 0;
+		double[] newGouyBranches = gouyBranches.clone();
+		newGouyBranches[index] = 0;
+		return new OpticsChain(positions, newMatrices, newResponses, misalignments, newGouyBranches);
+	}
+	
+	/*
+	 * Returns the entries [dE/dd, dE/dt, dF/dd, dF/dt] of the offset E (mm) and angle F (rad) the optic at an index
+	 * adds to the beam centre, per mm of decentre d and per mrad of tilt t. All zero for an optic that cannot be
+	 * misaligned.
+	 */
+	public double[] getMisalignmentResponse(int index) {
+		return Arrays.copyOfRange(responses, 4 * index, 4 * index + 4);
+	}
+	
+	/*
+	 * Returns the decentre (mm) of the optic at an index.
+	 */
+	public double getDecentre(int index) {
+		return misalignments[2 * index];
+	}
+	
+	/*
+	 * Returns the tilt (mrad) of the optic at an index.
+	 */
+	public double getTilt(int index) {
+		return misalignments[2 * index + 1];
+	}
+	
+	/*
+	 * Returns the ABCDEF matrix of the optic at an index, with its misalignment.
+	 */
+	public ABCDEFMatrix getMisalignedMatrix(int index) {
+		int r = 4 * index;
+		double d = misalignments[2 * index];
+		double t = misalignments[2 * index + 1];
+		return new ABCDEFMatrix(getMatrix(index), responses[r] * d + responses[r + 1] * t,
+				responses[r + 2] * d + responses[r + 3] * t);
+	}
+	
+	/*
+	 * Returns the ABCD matrix carrying the beam from just past the optic at index from to just past the optic
+	 * at index to, including that optic.
+	 */
+	public ABCDMatrix transfer(int from, int to) {
+		double a = 1, b = 0, c = 0, d = 1;
+		for (int i = from + 1; i <= to; i++) {
+			double gap = positions[i] - positions[i - 1];
+			a += gap * c; //Free space: [1, gap; 0, 1] times current matrix
+			b += gap * d;
+			int m = 4 * i;
+			double na = matrices[m] * a + matrices[m + 1] * c;
+			double nb = matrices[m] * b + matrices[m + 1] * d;
+			double nc = matrices[m + 2] * a + matrices[m + 3] * c;
+			double nd = matrices[m + 2] * b + matrices[m + 3] * d;
+			a = na;
+			b = nb;
+			c = nc;
+			d = nd;
+		}
+		return new ABCDMatrix(a, b, c, d);
+	}
+
+	/*
+	 * Computes the entries [A, B, C, D] of transfer(0, to) for a variant of the chain in which some optics are moved
+	 * or replaced by thin lenses, without copying the chain. indices lists the optics changed; a NaN new position
+	 * or focal length leaves that property as it is. Moves must keep the optics in order.
+	 */
+	public void transfer(int to, int[] indices, double[] newPositions, double[] newFocalLengths, double[] out) {
+		double a = 1, b = 0, c = 0, d = 1;
+		double previous = position(0, indices, newPositions);
+		for (int i = 1; i <= to; i++) {
+			double position = position(i, indices, newPositions);
+			double gap = position - previous;
+			previous = position;
+			a += gap * c;
+			b += gap * d;
+			int m = 4 * i;
+			double ma = matrices[m], mb = matrices[m + 1], mc = matrices[m + 2], md = matrices[m + 3];
+			for (int k = 0; k < indices.length; k++) {
+				if (indices[k] == i && ! Double.isNaN(newFocalLengths[k])) {
+					ma = 1;
+					mb = 0;
+					mc = -1 / newFocalLengths[k];
+					md = 1;
+				}
+			}
+			double na = ma * a + mb * c;
+			double nb = ma * b + mb * d;
+			double nc = mc * a + md * c;
+			double nd = mc * b + md * d;
+			a = na;
+			b = nb;
+			c = nc;
+			d = nd;
+		}
+		out[0] = a;
+		out[1] = b;
+		out[2] = c;
+		out[3] = d;
+	}
+
+	/*
+	 * Returns the position of an optic in a variant of the chain.
+	 */
+	private double position(int index, int[] indices, double[] newPositions) {
+		for (int k = 0; k < indices.length; k++) {
+			if (indices[k] == index && ! Double.isNaN(newPositions[k])) return newPositions[k];
+		}
+		return positions[index];
+	}
+
+	/*
+	 * Computes the beam radius, radius of curvature and Gouy phase at each of an ascending array of positions,
+	 * walking the chain once and carrying q and the Gouy phase from optic to optic. Cost is linear in the number of
+	 * optics plus samples. Positions before the source are set to NaN. q_in is q at the source and wavelength is in
+	 * nm. Any output array may be null if not needed.
+	 */
+	public void sample(double[] samplePositions, Complex q_in, double wavelength,
+			double[] radiusOut, double[] curvatureOut, double[] gouyOut) {
+		double qr = q_in.real();
+		double qi = q_in.imag();
+		double gouy = 0; //Accumulated up to the last optic passed
+		double lambda = wavelength * Math.pow(10, -6); //mm
+		int n = positions.length;
+		int index = 0; //Index of the last optic the beam has passed through
+		for (int s = 0; s < samplePositions.length; s++) {
+			double z = samplePositions[s];
+			if (n == 0 || z < positions[0]) {
+				if (radiusOut != null) radiusOut[s] = Double.NaN;
+				if (curvatureOut != null) curvatureOut[s] = Double.NaN;
+				if (gouyOut != null) gouyOut[s] = Double.NaN;
+				continue;
+			}
+			while (index + 1 < n && positions[index + 1] <= z) { //Carry q through the next optic
+				double gap = positions[index + 1] - positions[index];
+				gouy += gouyPhase(1, gap, qr, qi);
+				qr += gap;
+				index++;
+				int m = 4 * index;
+				gouy += gouyPhase(matrices[m], matrices[m + 1], qr, qi) + gouyBranches[index];
+				double nr = matrices[m] * qr + matrices[m + 1];
+				double ni = matrices[m] * qi;
+				double dr = matrices[m + 2] * qr + matrices[m + 3];
+				double di = matrices[m + 2] * qi;
+				double denominator = dr * dr + di * di;
+				qr = (nr * dr + ni * di) / denominator;
+				qi = (ni * dr - nr * di) / denominator;
+			}
+			double distance = z - positions[index];
+			double zr = qr + distance;
+			double modulusSquared = zr * zr + qi * qi;
+			if (radiusOut != null) radiusOut[s] = Math.sqrt(lambda * modulusSquared / (Math.PI * qi));
+			if (curvatureOut != null) curvatureOut[s] = modulusSquared / zr;
+			if (gouyOut != null) gouyOut[s] = gouy + gouyPhase(1, distance, qr, qi);
+		}
+	}
+
+	/*
+	 * Computes the beam radius at each of an ascending array of positions for a beam run backwards from the optic at
+	 * index end, where q just past it is q_end, to the source. Each optic is undone by the inverse of its matrix,
+	 * [D, -B; -C, A] up to a factor that cancels in the action on q. Positions after that optic or before the
+	 * source are set to NaN. wavelength is in nm.
+	 */
+	public void sampleBackward(double[] samplePositions, int end, Complex q_end, double wavelength,
+			double[] radiusOut) {
+		double qr = q_end.real();
+		double qi = q_end.imag();
+		double lambda = wavelength * Math.pow(10, -6); //mm
+		int index = end; //Index of the optic the beam has reached, q being that just past it
+		for (int s = samplePositions.length - 1; s >= 0; s--) {
+			double z = samplePositions[s];
+			if (z > positions[end] || z < positions[0]) {
+				radiusOut[s] = Double.NaN;
+				continue;
+			}
+			while (z < positions[index]) { //Carry q back through the optic, then to the one before
+				int m = 4 * index;
+				double nr = matrices[m + 3] * qr - matrices[m + 1];
+				double ni = matrices[m + 3] * qi;
+				double dr = -matrices[m + 2] * qr + matrices[m];
+				double di = -matrices[m + 2] * qi;
+				double denominator = dr * dr + di * di;
+				qr = (nr * dr + ni * di) / denominator - (positions[index] - positions[index - 1]);
+				qi = (ni * dr - nr * di) / denominator;
+				index--;
+			}
+			double zr = qr + z - positions[index];
+			radiusOut[s] = Math.sqrt(lambda * (zr * zr + qi * qi) / (Math.PI * qi));
+		}
+	}
+	
+	/*
+	 * Computes the offset (mm) of the beam centre from the bench axis at each of an ascending array of positions,
+	 * carrying the centre as a ray that starts on the axis at the source through the misaligned optics. Positions
+	 * before the source are set to NaN.
+	 */
+	public void sampleCentre(double[] samplePositions, double[] offsetOut) {
+		double x = 0;
+		double theta = 0; //rad
+		int index = 0; //Index of the last optic the centre has passed through
+		for (int s = 0; s < samplePositions.length; s++) {
+			double z = samplePositions[s];
+			if (positions.length == 0 || z < positions[0]) {
+				offsetOut[s] = Double.NaN;
+				continue;
+			}
+			while (index + 1 < positions.length && positions[index + 1] <= z) {
+				x += (positions[index + 1] - positions[index]) * theta;
+				index++;
+				int m = 4 * index;
+				double d = misalignments[2 * index];
+				double t = misalignments[2 * index + 1];
+				double nx = matrices[m] * x + matrices[m + 1] * theta + responses[m] * d + responses[m + 1] * t;
+				theta = matrices[m + 2] * x + matrices[m + 3] * theta + responses[m + 2] * d + responses[m + 3] * t;
+				x = nx;
+			}
+			offsetOut[s] = x + (z - positions[index]) * theta;
+		}
+	}
+	
+	/*
+	 * Computes the A and B entries of the matrix from just past the source to each of an ascending array of positions.
+	 * These do not depend on the beam, so a beam radius can be found from them for any input beam without walking
+	 * the chain again. Positions before the source are reached by free space from it, run backwards.
+	 */
+	public void sampleTransfer(double[] samplePositions, double[] aOut, double[] bOut) {
+		double a = 1;
+		double b = 0;
+		double c = 0;
+		double d = 1;
+		int index = 0; //Index of the last optic passed through
+		for (int s = 0; s < samplePositions.length; s++) {
+			double z = samplePositions[s];
+			while (index + 1 < positions.length && positions[index + 1] <= z) { //Through the gap, then the optic
+				double gap = positions[index + 1] - positions[index];
+				a += gap * c;
+				b += gap * d;
+				index++;
+				int m = 4 * index;
+				double na = matrices[m] * a + matrices[m + 1] * c;
+				double nb = matrices[m] * b + matrices[m + 1] * d;
+				c = matrices[m + 2] * a + matrices[m + 3] * c;
+				d = matrices[m + 2] * b + matrices[m + 3] * d;
+				a = na;
+				b = nb;
+			}
+			double distance = (positions.length == 0) ? z : z - positions[index];
+			aOut[s] = a + distance * c;
+			bOut[s] = b + distance * d;
+		}
+	}
+	
+	/*
+	 * Carries q through the whole chain, recording q just past each optic and the Gouy phase accumulated from the
+	 * source up to each optic.
+	 */
+	public void trace(Complex q_in, double[] qrOut, double[] qiOut, double[] gouyOut) {
+		double qr = q_in.real();
+		double qi = q_in.imag();
+		double gouy = 0;
+		for (int i = 0; i < positions.length; i++) {
+			if (i > 0) {
+				double gap = positions[i] - positions[i - 1];
+				gouy += gouyPhase(1, gap, qr, qi);
+				qr += gap;
+			}
+			int m = 4 * i;
+			gouy += gouyPhase(matrices[m], matrices[m + 1], qr, qi) + gouyBranches[i];
+			double nr = matrices[m] * qr + matrices[m + 1];
+			double ni = matrices[m] * qi;
+			double dr = matrices[m + 2] * qr + matrices[m + 3];
+			double di = matrices[m + 2] * qi;
+			double denominator = dr * dr + di * di;
+			qr = (nr * dr + ni * di) / denominator;
+			qi = (ni * dr - nr * di) / denominator;
+			qrOut[i] = qr;
+			qiOut[i] = qi;
+			gouyOut[i] = gouy;
+		}
+	}
+
+
+	//Static methods
+
+	/*
+	 * Returns the Gouy phase a beam with q = qr + i qi picks up passing through a system with matrix entries A and
+	 * B: -arg(A + B/q), which lies within (-pi, pi). Zero for a thin lens; atan(L/z_R) from a waist over distance L.
+	 * The fused matrix of a thick optic gives its phase only to within a multiple of 2 pi, which the chain adds.
+	 */
+	public static double gouyPhase(double a, double b, double qr, double qi) {
+		return Math.atan2(b * qi, a * (qr * qr + qi * qi) + b * qr);
+	}
+
+
+	/* Instance variables */
+	private final double[] positions;
+	private final double[] matrices; //Entries [A, B, C, D] of each optic, concatenated
+	private final double[] responses; //Entries of getMisalignmentResponse for each optic, concatenated
+	private final double[] misalignments; //Decentre (mm) and tilt (mrad) of each optic, concatenated
+	private final double[] gouyBranches; //Multiple of 2 pi to add to the Gouy phase of each optic's matrix
+
+	/* Constants */
+	private static final Complex GOUY_REFERENCE = new Complex(0, 1); //Beam for which thick optics give their phase
+
+}
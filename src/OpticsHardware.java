@@ -18,6 +18,11 @@ public interface OpticsHardware extends Comparable<OpticsHardware> {
 	 */
 	public ABCDMatrix ABCD();
 	
+	/*
+	 * Returns the ABCD matrix representing the optic at a wavelength in nm.
+	 */
+	public ABCDMatrix ABCD(double wavelength);
+	
 	
 	/*
 	 * Sets the position of the optic.
@@ -43,4 +48,14 @@ public interface OpticsHardware extends Comparable<OpticsHardware> {
 	 * Returns whether an optic is selected.
 	 */
 	public boolean isSelected();
+	
+	/*
+	 * Returns a new, unselected optic of the same type with the same name and parameters.
+	 */
+	public OpticsHardware copy();
+	
+	/*
+	 * Returns whether another optic is of the same type with the same name and parameters. Ignores selection.
+	 */
+	public boolean matches(OpticsHardware o);
 }
@@ -0,0 +1,140 @@
+import java.util.*;
+
+/*
+ * Index of the positions of a list of optics sorted by position, kept as a primitive sorted array so that
+ * proximity queries take O(log n) rather than a scan of the whole list. The thick optics are indexed again on their
+ * own, with their lengths, so that overlaps with them are found the same way. The index is a snapshot; it must be
+ * rebuilt whenever optics are added, removed, moved or change length.
+ */
+public class OpticsIndex {
+
+	/*
+	 * Constructs an index of a list of optics sorted by position. The caller is responsible for locking.
+	 */
+	public OpticsIndex(List<OpticsHardware> optics) {
+		this.optics = optics.toArray(new OpticsHardware[optics.size()]);
+		positions = new double[this.optics.length];
+		for (int i = 0; i < positions.length; i++) positions[i] = this.optics[i].getPosition();
+		int count = 0;
+		for (OpticsHardware o: this.optics) {
+			if (o instanceof ThickOptic) count++;
+		}
+		thickOptics = new OpticsHardware[count];
+		thickPositions = new double[count];
+		thickLengths = new double[count];
+		double longest = 0;
+		count = 0;
+		for (int i = 0; i < positions.length; i++) {
+			if (! (this.optics[i] instanceof ThickOptic)) continue;
+			thickOptics[count] = this.optics[i];
+			thickPositions[count] = positions[i];
+			thickLengths[count] = ((ThickOptic) this.optics[i]).getLength();
+			longest = Math.max(longest, thickLengths[count++]);
+		}
+		maxThickLength = longest;
+	}
+
+	/*
+	 * Returns the number of optics indexed.
+	 */
+	public int size() {
+		return optics.length;
+	}
+
+	/*
+	 * Returns the optic at an index.
+	 */
+	public OpticsHardware get(int index) {
+		return optics[index];
+	}
+
+	/*
+	 * Returns the position of the optic at an index.
+	 */
+	public double getPosition(int index) {
+		return positions[index];
+	}
+
+	/*
+	 * Returns the index of the last optic at or before a position, or -1 if there is none.
+	 */
+	public int floorIndex(double position) {
+		int index = Arrays.binarySearch(positions, position);
+		if (index >= 0) {
+			while (index + 1 < positions.length && positions[index + 1] == position) index++;
+			return index;
+		}
+		return -index - 2; //Insertion point minus one
+	}
+
+	/*
+	 * Returns the optic closest to a position, or null if there are no optics.
+	 */
+	public OpticsHardware nearest(double position) {
+		if (optics.length == 0) return null;
+		int floor = floorIndex(position);
+		if (floor < 0) return optics[0];
+		if (floor + 1 >= optics.length) return optics[floor];
+		return (position - positions[floor] <= positions[floor + 1] - position) ? optics[floor] : optics[floor + 1];
+	}
+
+	/*
+	 * Returns whether any optic other than toIgnore lies strictly closer than distance to a position.
+	 * toIgnore may be null.
+	 */
+	public boolean anyWithin(double position, double distance, OpticsHardware toIgnore) {
+		int floor = floorIndex(position);
+		for (int i = floor; i >= 0 && position - positions[i] < distance; i--) {
+			if (optics[i] != toIgnore) return true;
+		}
+		for (int i = floor + 1; i < positions.length && positions[i] - position < distance; i++) {
+			if (optics[i] != toIgnore) return true;
+		}
+		return false;
+	}
+
+	/*
+	 * Returns whether any thick optic other than toIgnore, widened by distance at each end, overlaps the span from
+	 * start to end. Only the thick optics whose entrance lies within the longest thick optic of the span are looked
+	 * at. toIgnore may be null.
+	 */
+	public boolean anyThickOverlapping(double start, double end, double distance, OpticsHardware toIgnore) {
+		double from = start - maxThickLength - distance;
+		int i = Arrays.binarySearch(thickPositions, from);
+		if (i < 0) i = -i - 1;
+		while (i > 0 && thickPositions[i - 1] == from) i--;
+		for (; i < thickPositions.length && thickPositions[i] - distance < end; i++) {
+			if (thickOptics[i] == toIgnore) continue;
+			if (thickPositions[i] + thickLengths[i] + distance > start) return true;
+		}
+		return false;
+	}
+
+	/*
+	 * Returns the index of the last optic in a list sorted by position that lies at or before a position, or -1 if
+	 * there is none. Binary search on the list itself, for callers that have no index.
+	 */
+	public static int floorIndex(List<OpticsHardware> optics, double position) {
+		int low = 0;
+		int high = optics.size() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (optics.get(mid).getPosition() <= position) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return high;
+	}
+
+
+	/* Instance variables */
+	private final OpticsHardware[] optics;
+	private final double[] positions;
+	private final OpticsHardware[] thickOptics; //The thick optics alone, sorted by position
+	private final double[] thickPositions;
+	private final double[] thickLengths; //mm, as they were when indexed
+	private final double maxThickLength; //mm, 0 if there are no thick optics
+
+}
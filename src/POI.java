@@ -39,6 +39,13 @@ public class POI implements OpticsHardware {
 		return ABCDMatrix.identity();
 	}
 	
+	/*
+	 * Returns the ABCD matrix at a wavelength, which is the identity at every wavelength.
+	 */
+	public ABCDMatrix ABCD(double wavelength) {
+		return ABCDMatrix.identity();
+	}
+	
 	/*
 	 * Returns the name of the POI.
 	 */
@@ -67,6 +74,21 @@ public class POI implements OpticsHardware {
 		this.selected = selected;
 	}
 	
+	/*
+	 * Returns a copy of the POI.
+	 */
+	public OpticsHardware copy() {
+		return new POI(position, name);
+	}
+	
+	/*
+	 * Returns whether another optic is a POI with the same name and position.
+	 */
+	public boolean matches(OpticsHardware o) {
+		if (o == null || o.getClass() != POI.class) return false;
+		return position == o.getPosition() && name.equals(o.getName());
+	}
+	
 	/*
 	 * Compares the position of two optics. Does not work with .equals()!
 	 */
@@ -0,0 +1,151 @@
+import java.awt.image.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+/*
+ * A quantity computed from the system, evaluated over a grid of two parameters, each the position or focal length
+ * of one optic. Rows are evaluated in parallel, and each point walks the chain with the two changes applied in
+ * place, so a map allocates nothing per point.
+ */
+public class ParameterMap {
+
+	/* The property of an optic varied along an axis */
+	public enum Kind {
+		POSITION,
+		FOCAL_LENGTH
+	}
+
+	/*
+	 * One axis of a map: a property of the optic at an index of the chain, swept between two values.
+	 */
+	public static class Axis {
+		public Axis(int index, Kind kind, double min, double max, String label) {
+			this.index = index;
+			this.kind = kind;
+			this.min = min;
+			this.max = max;
+			this.label = label;
+		}
+
+		/* Returns the value at step i of n. */
+		public double getValue(int i, int n) {
+			return (n <= 1) ? min : min + (max - min) * i / (n - 1);
+		}
+
+		public final int index;
+		public final Kind kind;
+		public final double min;
+		public final double max;
+		public final String label;
+	}
+
+	/*
+	 * The quantity mapped, from the entries of the matrix carrying the beam from the source to the end optic.
+	 */
+	public interface Function {
+		public double evaluate(double a, double b, double c, double d);
+	}
+
+	/*
+	 * Evaluates a map. end is the index of the optic just past which the matrix is taken.
+	 */
+	public ParameterMap(OpticsChain chain, int end, Axis x, Axis y, int width, int height, Function function) {
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		values = new double[width * height];
+		final int[] indices = {x.index, y.index};
+		IntStream.range(0, height).parallel().forEach(row -> {
+			double[] newPositions = new double[2];
+			double[] newFocalLengths = new double[2];
+			double[] m = new double[4];
+			double yValue = y.getValue(row, height);
+			set(y, 1, yValue, newPositions, newFocalLengths);
+			for (int col = 0; col < width; col++) {
+				set(x, 0, x.getValue(col, width), newPositions, newFocalLengths);
+				chain.transfer(end, indices, newPositions, newFocalLengths, m);
+				values[row * width + col] = function.evaluate(m[0], m[1], m[2], m[3]);
+			}
+		});
+	}
+
+	/*
+	 * Puts the value of an axis into slot k of the change arrays.
+	 */
+	private static void set(Axis axis, int k, double value, double[] newPositions, double[] newFocalLengths) {
+		newPositions[k] = (axis.kind == Kind.POSITION) ? value : Double.NaN;
+		newFocalLengths[k] = (axis.kind == Kind.FOCAL_LENGTH) ? value : Double.NaN;
+	}
+
+	/*
+	 * Returns the horizontal axis.
+	 */
+	public Axis getX() {
+		return x;
+	}
+
+	/*
+	 * Returns the vertical axis.
+	 */
+	public Axis getY() {
+		return y;
+	}
+
+	/*
+	 * Returns the number of columns.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/*
+	 * Returns the number of rows.
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/*
+	 * Returns the value at a column and row. Row 0 is the minimum of the vertical axis.
+	 */
+	public double getValue(int col, int row) {
+		return values[row * width + col];
+	}
+
+	/*
+	 * Returns the point of the map with the largest value, as {col, row}, ignoring NaN. Returns null if every value
+	 * is NaN.
+	 */
+	public int[] getMaximum() {
+		int best = -1;
+		for (int i = 0; i < values.length; i++) {
+			if (! Double.isNaN(values[i]) && (best < 0 || values[i] > values[best])) best = i;
+		}
+		return (best < 0) ? null : new int[] {best % width, best / width};
+	}
+
+	/*
+	 * Renders the map with the maximum of the vertical axis at the top.
+	 */
+	public BufferedImage toImage(DoubleToIntFunction colorScale) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		IntStream.range(0, height).parallel().forEach(row -> {
+			int offset = (height - 1 - row) * width;
+			for (int col = 0; col < width; col++) {
+				pixels[offset + col] = colorScale.applyAsInt(values[row * width + col]);
+			}
+		});
+		return image;
+	}
+
+
+	/* Instance variables */
+	private final Axis x;
+	private final Axis y;
+	private final int width;
+	private final int height;
+	private final double[] values;
+
+}
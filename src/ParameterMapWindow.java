@@ -0,0 +1,103 @@
+import acm.graphics.*;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.image.*;
+import java.util.function.*;
+
+/*
+ * Window that shows a parameter map as an image, with the value under the cursor.
+ */
+public class ParameterMapWindow extends JFrame implements MouseMotionListener, ComponentListener {
+
+	/*
+	 * Constructs and shows the window. valueName describes the mapped quantity in the readout.
+	 */
+	public ParameterMapWindow(String title, ParameterMap map, DoubleToIntFunction colorScale, String valueName) {
+		super(title);
+		this.map = map;
+		this.valueName = valueName;
+		image = map.toImage(colorScale);
+		setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+		canvas.setAutoRepaintFlag(false);
+		canvas.addComponentListener(this);
+		canvas.addMouseMotionListener(this);
+		add(canvas, BorderLayout.CENTER);
+		JPanel south = new JPanel();
+		south.add(readoutLabel);
+		add(south, BorderLayout.SOUTH);
+		setSize(WINDOW_SIZE_X, WINDOW_SIZE_Y);
+		setVisible(true);
+	}
+
+	/*
+	 * Draws the map scaled to the canvas, with the ranges of both axes.
+	 */
+	private void drawMap() {
+		canvas.removeAll();
+		double width = canvas.getWidth() - 2 * MAP_MARGIN;
+		double height = canvas.getHeight() - 2 * MAP_MARGIN;
+		if (width <= 0 || height <= 0) return;
+		GImage picture = new GImage(image, MAP_MARGIN, MAP_MARGIN);
+		picture.setSize(width, height);
+		canvas.add(picture);
+		ParameterMap.Axis x = map.getX();
+		ParameterMap.Axis y = map.getY();
+		canvas.add(new GLabel(x.label, MAP_MARGIN + width / 2 - 40, MAP_MARGIN + height + 30));
+		canvas.add(new GLabel(Double.toString(x.min), MAP_MARGIN, MAP_MARGIN + height + 15));
+		GLabel xMax = new GLabel(Double.toString(x.max));
+		canvas.add(xMax, MAP_MARGIN + width - xMax.getWidth(), MAP_MARGIN + height + 15);
+		canvas.add(new GLabel(y.label, 4, MAP_MARGIN - 8));
+		canvas.add(new GLabel(Double.toString(y.max), 4, MAP_MARGIN + 12));
+		canvas.add(new GLabel(Double.toString(y.min), 4, MAP_MARGIN + height));
+		canvas.repaint();
+	}
+
+	/*
+	 * Shows the parameters and value under the cursor.
+	 */
+	public void mouseMoved(MouseEvent e) {
+		double width = canvas.getWidth() - 2 * MAP_MARGIN;
+		double height = canvas.getHeight() - 2 * MAP_MARGIN;
+		int col = (int) ((e.getX() - MAP_MARGIN) / width * map.getWidth());
+		int row = map.getHeight() - 1 - (int) ((e.getY() - MAP_MARGIN) / height * map.getHeight());
+		if (col < 0 || col >= map.getWidth() || row < 0 || row >= map.getHeight()) {
+			readoutLabel.setText(" ");
+			return;
+		}
+		ParameterMap.Axis x = map.getX();
+		ParameterMap.Axis y = map.getY();
+		readoutLabel.setText(x.label + " = " + x.getValue(col, map.getWidth()) + ", " + y.label + " = "
+				+ y.getValue(row, map.getHeight()) + ", " + valueName + " = " + map.getValue(col, row));
+	}
+
+	/*
+	 * Redraws the map when the canvas is resized.
+	 */
+	public void componentResized(ComponentEvent e) {
+		drawMap();
+	}
+
+	/*
+	 * Empty methods within MouseMotionListener and ComponentListener interfaces.
+	 */
+	public void mouseDragged(MouseEvent e) {}
+	public void componentHidden(ComponentEvent e) {}
+	public void componentMoved(ComponentEvent e) {}
+	public void componentShown(ComponentEvent e) {}
+
+
+	/* Instance variables */
+	private final ParameterMap map;
+	private final String valueName;
+	private final BufferedImage image;
+	private final GCanvas canvas = new GCanvas();
+	private final JLabel readoutLabel = new JLabel(" ");
+
+	/* Constants */
+	private static final int WINDOW_SIZE_X = 800;
+	private static final int WINDOW_SIZE_Y = 800;
+	private static final int MAP_MARGIN = 60; //pixels
+	public static final long serialVersionUID = 1L;
+
+}
@@ -0,0 +1,262 @@
+/*
+ * Class representing a relay of identical cells, such as a lens waveguide or a multipass cell: a number of equal
+ * thin lenses at equal spacing. Its matrix is one lens times the cell matrix to the power of the number of cells,
+ * which ABCDMatrix.power gives in constant time, so a relay of a million lenses costs the same to propagate as one
+ * of two. The beam at any point inside is found the same way, from the power up to the last lens passed.
+ * Dispersion is not modelled.
+ */
+public class PeriodicRelay implements ExtendedOptic {
+
+	/*
+	 * Constructor. The first of count lenses is at the position, and each is spacing (mm) after the last.
+	 */
+	public PeriodicRelay(double position, double focalLength, double spacing, int count, String name) {
+		this.position = position;
+		this.name = name;
+		setCell(focalLength, spacing, count);
+	}
+
+	/*
+	 * Returns the type.
+	 */
+	public String getType() {
+		return "PeriodicRelay";
+	}
+
+	/*
+	 * Returns the position of the first lens.
+	 */
+	public double getPosition() {
+		return position;
+	}
+
+	/*
+	 * Sets the position of the first lens.
+	 */
+	public void setPosition(double position) {
+		this.position = position;
+	}
+
+	/*
+	 * Returns the focal length of each lens.
+	 */
+	public double getFocalLength() {
+		return cell[0];
+	}
+
+	/*
+	 * Returns the spacing (mm) of the lenses.
+	 */
+	public double getSpacing() {
+		return cell[1];
+	}
+
+	/*
+	 * Returns the number of lenses.
+	 */
+	public int getLensCount() {
+		return (int) cell[2];
+	}
+
+	/*
+	 * Sets the focal length, spacing and number of the lenses together, and makes the matrix of the relay: the last
+	 * lens back to the first, then free space of minus the length so that the beam leaving it is exact from the last
+	 * lens onwards.
+	 */
+	public void setCell(double focalLength, double spacing, int count) {
+		ABCDMatrix lens = ABCDMatrix.lensMatrix(focalLength);
+		ABCDMatrix cellMatrix = lens.times(ABCDMatrix.freeSpace(spacing));
+		cell = new double[] {focalLength, spacing, count};
+		matrix = ABCDMatrix.freeSpace(-(count - 1) * spacing).times(cellMatrix.power(count - 1)).times(lens);
+	}
+
+	/*
+	 * Returns the distance (mm) from the first lens to the last.
+	 */
+	public double getLength() {
+		double[] c = cell;
+		return (c[2] - 1) * c[1];
+	}
+
+	/*
+	 * Returns the matrix of the relay at its entrance.
+	 */
+	public ABCDMatrix ABCD() {
+		return matrix;
+	}
+
+	/*
+	 * Returns the matrix of the relay at a wavelength, which is the same at every wavelength.
+	 */
+	public ABCDMatrix ABCD(double wavelength) {
+		return ABCD();
+	}
+
+	/*
+	 * Returns the Gouy phase through the relay, then back over free space of its length. The first lens adds none,
+	 * and the cells after it are taken together: their matrix gives the phase to within a multiple of 2 pi, which is
+	 * then found from the cell alone, so a relay of a million cells costs the same as one of two.
+	 */
+	public double getGouyPhase(Complex q_arriving, double wavelength) {
+		double[] c = cell;
+		long passes = (long) c[2] - 1;
+		ABCDMatrix lens = ABCDMatrix.lensMatrix(c[0]);
+		ABCDMatrix cellMatrix = lens.times(ABCDMatrix.freeSpace(c[1]));
+		ABCDMatrix cells = cellMatrix.power(passes);
+		double[] m = cells.baseArray();
+		Complex q = lens.transformQ(q_arriving);
+		Complex exit = cells.transformQ(q);
+		return OpticsChain.gouyPhase(m[0], m[1], q.real(), q.imag()) + branchOffset(cellMatrix, cells, passes)
+				+ OpticsChain.gouyPhase(1, -passes * c[1], exit.real(), exit.imag());
+	}
+
+	/*
+	 * Returns the multiple of 2 pi missing from -arg(A + B/q) of a number of passes through a cell, which is the same
+	 * for every q in the upper half plane. It is found from a beam whose phase is known: the eigenmode of a stable
+	 * cell picks up the same phase on every pass. Through a cell with negative eigenvalues any beam picks up pi a
+	 * pass, less what it picks up through the negated cell, which comes to less than pi in all, as does the phase
+	 * through a cell with positive eigenvalues.
+	 */
+	private static double branchOffset(ABCDMatrix cellMatrix, ABCDMatrix cells, long passes) {
+		double[] m = cells.baseArray();
+		double[] cm = cellMatrix.baseArray();
+		double stability = Resonator.stability(cm[0], cm[3]);
+		Complex q;
+		double gouy;
+		if (Resonator.isStable(cellMatrix)) {
+			q = Resonator.eigenmode(cellMatrix);
+			gouy = passes * OpticsChain.gouyPhase(cm[0], cm[1], q.real(), q.imag());
+		} else if (stability <= -1) {
+			q = new Complex(0, 1);
+			double sign = (passes % 2 == 0) ? 1 : -1; //The negated cells are the cells negated passes times
+			gouy = passes * Math.PI + OpticsChain.gouyPhase(sign * m[0], sign * m[1], q.real(), q.imag());
+		} else {
+			return 0;
+		}
+		double wrapped = OpticsChain.gouyPhase(m[0], m[1], q.real(), q.imag());
+		return 2 * Math.PI * Math.rint((gouy - wrapped) / (2 * Math.PI));
+	}
+
+	/*
+	 * Computes the beam radius at positions inside the relay. Each sample costs the same however many lenses it is
+	 * past the last, since the lenses in between are passed with one matrix power.
+	 */
+	public void sampleInterior(double[] samplePositions, Complex q_arriving, double wavelength, double[] radiusOut) {
+		double[] c = cell;
+		double lambda = wavelength * Math.pow(10, -6); //mm
+		ABCDMatrix lens = ABCDMatrix.lensMatrix(c[0]);
+		ABCDMatrix cellMatrix = lens.times(ABCDMatrix.freeSpace(c[1]));
+		Complex q = lens.transformQ(q_arriving); //Just past the lens at index
+		long index = 0;
+		for (int s = 0; s < samplePositions.length; s++) {
+			double z = samplePositions[s] - position;
+			if (z < 0 || z > (c[2] - 1) * c[1]) {
+				radiusOut[s] = Double.NaN;
+				continue;
+			}
+			long passed = Math.min((long) c[2] - 1, (long) Math.floor(z / c[1]));
+			if (passed > index) {
+				q = cellMatrix.power(passed - index).transformQ(q);
+				index = passed;
+			}
+			double zr = q.real() + z - index * c[1];
+			radiusOut[s] = Math.sqrt(lambda * (zr * zr + q.imag() * q.imag()) / (Math.PI * q.imag()));
+		}
+	}
+
+	/*
+	 * Returns the positions of the lenses between two positions, every so many lenses if they are closer than the
+	 * minimum spacing.
+	 */
+	public double[] getLensPositions(double from, double to, double minSpacing) {
+		double[] c = cell;
+		long step = Math.max(1, (long) Math.ceil(minSpacing / c[1]));
+		long first = Math.max(0, (long) Math.ceil((from - position) / c[1]));
+		first = (first + step - 1) / step * step;
+		long last = Math.min((long) c[2] - 1, (long) Math.floor((to - position) / c[1]));
+		if (last < first) return new double[0];
+		double[] positions = new double[(int) ((last - first) / step + 1)];
+		for (int i = 0; i < positions.length; i++) positions[i] = position + (first + i * step) * c[1];
+		return positions;
+	}
+
+	/*
+	 * Returns whether the relay is drawn with its lenses showing.
+	 */
+	public boolean isExpanded() {
+		return expanded;
+	}
+
+	/*
+	 * Sets whether the relay is drawn with its lenses showing.
+	 */
+	public void setExpanded(boolean expanded) {
+		this.expanded = expanded;
+	}
+
+	/*
+	 * Returns the name of the relay.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/*
+	 * Sets the name of the relay.
+	 */
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/*
+	 * Returns whether the relay is selected.
+	 */
+	public boolean isSelected() {
+		return selected;
+	}
+
+	/*
+	 * Sets whether the relay is selected.
+	 */
+	public void setSelected(boolean selected) {
+		this.selected = selected;
+	}
+
+	/*
+	 * Returns a copy of the relay, drawn the same way.
+	 */
+	public OpticsHardware copy() {
+		PeriodicRelay r = new PeriodicRelay(position, getFocalLength(), getSpacing(), getLensCount(), name);
+		r.expanded = expanded;
+		return r;
+	}
+
+	/*
+	 * Returns whether another optic is a relay with the same name, position and cells. Ignores how it is drawn.
+	 */
+	public boolean matches(OpticsHardware o) {
+		if (o == null || o.getClass() != PeriodicRelay.class) return false;
+		PeriodicRelay r = (PeriodicRelay) o;
+		return position == r.getPosition() && name.equals(r.getName()) && getFocalLength() == r.getFocalLength()
+				&& getSpacing() == r.getSpacing() && getLensCount() == r.getLensCount();
+	}
+
+	/*
+	 * Compares the position of two optics. Does not work with .equals()!
+	 */
+	public int compareTo(OpticsHardware o) {
+		if (position == o.getPosition()) return 0;
+		if (position > o.getPosition()) return 1;
+		return -1;
+	}
+
+
+	/* Instance variables */
+	private volatile double position;
+	private String name;
+	private boolean selected = false;
+	private volatile boolean expanded = false;
+	private volatile double[] cell; //Focal length, spacing and number of lenses, replaced together
+	private volatile ABCDMatrix matrix; //At the entrance, as the bench applies it
+
+}
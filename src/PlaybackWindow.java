@@ -0,0 +1,217 @@
+import acm.graphics.*;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.*;
+
+/*
+ * Window that plots the waist trajectory of a waveform playback and optionally animates the envelope on the
+ * workbench in sync with a cursor on the plot.
+ */
+public class PlaybackWindow extends JFrame implements ActionListener, ComponentListener {
+
+	/*
+	 * Listener notified as the animation steps through samples.
+	 */
+	public interface Listener {
+		/* Called on the event thread to show the system at a sample. */
+		public void sampleShown(WaveformPlayback playback, int sample);
+
+		/* Called on the event thread when the animation stops or the window closes. */
+		public void playbackStopped(WaveformPlayback playback);
+	}
+
+	/*
+	 * Constructs and shows the window.
+	 */
+	public PlaybackWindow(WaveformPlayback playback, String[] lensNames, Listener listener) {
+		super("Waveform Playback");
+		this.playback = playback;
+		this.lensNames = lensNames;
+		this.listener = listener;
+		setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+		canvas.setAutoRepaintFlag(false);
+		canvas.addComponentListener(this);
+		add(canvas, BorderLayout.CENTER);
+
+		JPanel south = new JPanel();
+		animateButton.setActionCommand("Animate");
+		animateButton.addActionListener(this);
+		south.add(animateButton);
+		JButton exportButton = new JButton("Export CSV");
+		exportButton.setActionCommand("Export");
+		exportButton.addActionListener(this);
+		south.add(exportButton);
+		south.add(readoutLabel);
+		add(south, BorderLayout.SOUTH);
+
+		animationTimer = new javax.swing.Timer(ANIMATION_FRAME_TIME, this);
+		animationTimer.setActionCommand("Frame");
+		addWindowListener(new WindowAdapter() {
+			public void windowClosed(WindowEvent e) {
+				stopAnimation();
+			}
+		});
+		setSize(WINDOW_SIZE_X, WINDOW_SIZE_Y);
+		setVisible(true);
+	}
+
+	/*
+	 * Responds to the buttons and the animation timer.
+	 */
+	public void actionPerformed(ActionEvent e) {
+		switch (e.getActionCommand()) {
+		case "Animate":
+			if (animateButton.isSelected()) {
+				animationTimer.start();
+			} else {
+				stopAnimation();
+			}
+			break;
+		case "Frame":
+			int step = Math.max(1, (int) ((long) playback.getSampleCount() * ANIMATION_FRAME_TIME / ANIMATION_LOOP_TIME));
+			currentSample = (currentSample + step) % Math.max(1, playback.getSampleCount());
+			listener.sampleShown(playback, currentSample);
+			updateCursor();
+			break;
+		case "Export":
+			exportCSV();
+			break;
+		}
+	}
+
+	/*
+	 * Stops the animation, if running, and notifies the listener.
+	 */
+	private void stopAnimation() {
+		if (animationTimer.isRunning()) {
+			animationTimer.stop();
+			animateButton.setSelected(false);
+			listener.playbackStopped(playback);
+		}
+	}
+
+	/*
+	 * Writes the trajectory to a CSV file chosen by the user.
+	 */
+	private void exportCSV() {
+		JFileChooser chooser = new JFileChooser();
+		if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+		try {
+			PrintWriter wr = new PrintWriter(new BufferedWriter(new FileWriter(chooser.getSelectedFile())));
+			playback.writeCSV(wr, lensNames);
+			wr.close();
+		} catch (IOException ex) {
+			JOptionPane.showMessageDialog(this, "Could not write file: " + ex.getMessage());
+		}
+	}
+
+	/*
+	 * Redraws both plots.
+	 */
+	private void drawPlots() {
+		canvas.removeAll();
+		int n = playback.getSampleCount();
+		double[] positions = new double[n];
+		double[] radii = new double[n];
+		for (int s = 0; s < n; s++) {
+			positions[s] = playback.getWaistPosition(s);
+			radii[s] = playback.getWaistRadius(s);
+		}
+		double plotHeight = (canvas.getHeight() - 3 * PLOT_MARGIN) / 2.0;
+		drawPlot(positions, "Waist position (mm)", PLOT_MARGIN, plotHeight);
+		drawPlot(radii, "Waist radius (mm)", 2 * PLOT_MARGIN + plotHeight, plotHeight);
+		cursor = new GLine(0, 0, 0, 0);
+		cursor.setColor(Color.BLUE);
+		canvas.add(cursor);
+		updateCursor();
+	}
+
+	/*
+	 * Draws one trace against time, taking the minimum and maximum of the samples in each pixel column.
+	 */
+	private void drawPlot(double[] values, String title, double top, double height) {
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (double v: values) {
+			if (v < min) min = v;
+			if (v > max) max = v;
+		}
+		if (values.length == 0) return;
+		if (max == min) {
+			max += 0.5;
+			min -= 0.5;
+		}
+		double width = canvas.getWidth() - 2 * PLOT_MARGIN;
+		canvas.add(new GRect(PLOT_MARGIN, top, width, height));
+		canvas.add(new GLabel(title, PLOT_MARGIN, top - 4));
+		canvas.add(new GLabel(Double.toString(max), PLOT_MARGIN + width + 4, top + 10));
+		canvas.add(new GLabel(Double.toString(min), PLOT_MARGIN + width + 4, top + height));
+		int columns = Math.max(1, (int) width);
+		for (int col = 0; col < columns; col++) {
+			int start = (int) ((long) col * values.length / columns);
+			int end = Math.max(start + 1, (int) ((long) (col + 1) * values.length / columns));
+			double low = Double.POSITIVE_INFINITY;
+			double high = Double.NEGATIVE_INFINITY;
+			for (int s = start; s < Math.min(end, values.length); s++) {
+				low = Math.min(low, values[s]);
+				high = Math.max(high, values[s]);
+			}
+			double x = PLOT_MARGIN + col;
+			GLine line = new GLine(x, top + height * (max - low) / (max - min), x,
+					top + height * (max - high) / (max - min));
+			line.setColor(Color.RED);
+			canvas.add(line);
+		}
+		canvas.repaint();
+	}
+
+	/*
+	 * Moves the cursor to the current sample and updates the readout.
+	 */
+	private void updateCursor() {
+		if (cursor == null || playback.getSampleCount() == 0) return;
+		double x = PLOT_MARGIN + (canvas.getWidth() - 2 * PLOT_MARGIN) * currentSample / playback.getSampleCount();
+		cursor.setStartPoint(x, PLOT_MARGIN);
+		cursor.setEndPoint(x, canvas.getHeight() - PLOT_MARGIN);
+		readoutLabel.setText("t = " + currentSample / playback.getSampleRate() + " s, waist at "
+				+ playback.getWaistPosition(currentSample) + " mm, radius " + playback.getWaistRadius(currentSample)
+				+ " mm");
+		canvas.repaint();
+	}
+
+	/*
+	 * Redraws the plots when the canvas is resized.
+	 */
+	public void componentResized(ComponentEvent e) {
+		drawPlots();
+	}
+
+	/*
+	 * Empty methods within ComponentListener interface.
+	 */
+	public void componentHidden(ComponentEvent e) {}
+	public void componentMoved(ComponentEvent e) {}
+	public void componentShown(ComponentEvent e) {}
+
+
+	/* Instance variables */
+	private final WaveformPlayback playback;
+	private final String[] lensNames;
+	private final Listener listener;
+	private final GCanvas canvas = new GCanvas();
+	private final JToggleButton animateButton = new JToggleButton("Animate Envelope");
+	private final JLabel readoutLabel = new JLabel(" ");
+	private final javax.swing.Timer animationTimer;
+	private GLine cursor = null;
+	private int currentSample = 0;
+
+	/* Constants */
+	private static final int WINDOW_SIZE_X = 900;
+	private static final int WINDOW_SIZE_Y = 600;
+	private static final int PLOT_MARGIN = 40; //pixels
+	private static final int ANIMATION_FRAME_TIME = 30; //ms
+	private static final int ANIMATION_LOOP_TIME = 5000; //ms to animate the whole waveform once
+	public static final long serialVersionUID = 1L;
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Beam pointing at a set of target optics through a chain of misaligned optics. The centre of the beam is carried
+ * as a ray through the ABCDEF matrices of the optics, starting on the axis at the source. Since the centre is
+ * linear in the decentre and tilt of every optic, the sensitivity to each is the ray launched by a unit misalignment
+ * of that optic alone. All of those rays are carried together in one pass down the chain, so the sensitivity of
+ * every target to every optic costs one walk of the chain rather than one per optic and target.
+ */
+public class PointingAnalysis {
+
+	/*
+	 * Analyzes the pointing at the optics at an ascending array of indices of a chain.
+	 */
+	public PointingAnalysis(OpticsChain chain, int[] targets) {
+		int n = chain.size();
+		offsets = new double[targets.length];
+		angles = new double[targets.length];
+		sensitivities = new double[targets.length][4 * n];
+
+		int[] columns = new int[n]; //Indices of the optics passed so far that can be misaligned
+		int count = 0;
+		double[] rays = new double[4 * n]; //Offset and angle per unit decentre, then per unit tilt, of each column
+		double x = 0;
+		double theta = 0;
+		int target = 0;
+		for (int i = 0; i < n && target < targets.length; i++) {
+			ABCDEFMatrix m = chain.getMisalignedMatrix(i);
+			double[] abcd = m.ABCD().baseArray();
+			double gap = (i == 0) ? 0 : chain.getPosition(i) - chain.getPosition(i - 1);
+			x += gap * theta;
+			double nx = abcd[0] * x + abcd[1] * theta + m.getE();
+			theta = abcd[2] * x + abcd[3] * theta + m.getF();
+			x = nx;
+			for (int c = 0; c < 2 * count; c++) { //Each ray through the gap and the optic
+				double rx = rays[2 * c] + gap * rays[2 * c + 1];
+				double ra = rays[2 * c + 1];
+				rays[2 * c] = abcd[0] * rx + abcd[1] * ra;
+				rays[2 * c + 1] = abcd[2] * rx + abcd[3] * ra;
+			}
+			double[] response = chain.getMisalignmentResponse(i);
+			if (response[0] != 0 || response[1] != 0 || response[2] != 0 || response[3] != 0) {
+				int c = 4 * count;
+				rays[c] = response[0]; //Ray launched by a unit decentre
+				rays[c + 1] = response[2];
+				rays[c + 2] = response[1]; //Ray launched by a unit tilt
+				rays[c + 3] = response[3];
+				columns[count++] = i;
+			}
+			while (target < targets.length && targets[target] == i) {
+				offsets[target] = x;
+				angles[target] = theta * MRAD_PER_RAD;
+				for (int c = 0; c < count; c++) {
+					int s = 4 * columns[c];
+					sensitivities[target][s] = rays[4 * c];
+					sensitivities[target][s + 1] = rays[4 * c + 1] * MRAD_PER_RAD;
+					sensitivities[target][s + 2] = rays[4 * c + 2];
+					sensitivities[target][s + 3] = rays[4 * c + 3] * MRAD_PER_RAD;
+				}
+				target++;
+			}
+		}
+	}
+
+	/*
+	 * Returns the number of targets.
+	 */
+	public int size() {
+		return offsets.length;
+	}
+
+	/*
+	 * Returns the offset (mm) of the beam centre from the axis at a target.
+	 */
+	public double getOffset(int target) {
+		return offsets[target];
+	}
+
+	/*
+	 * Returns the angle (mrad) of the beam centre to the axis at a target.
+	 */
+	public double getAngle(int target) {
+		return angles[target];
+	}
+
+	/*
+	 * Returns the offset (mm) of the beam centre at a target per mm of decentre of the optic at an index.
+	 */
+	public double getOffsetPerDecentre(int target, int index) {
+		return sensitivities[target][4 * index];
+	}
+
+	/*
+	 * Returns the angle (mrad) of the beam centre at a target per mm of decentre of the optic at an index.
+	 */
+	public double getAnglePerDecentre(int target, int index) {
+		return sensitivities[target][4 * index + 1];
+	}
+
+	/*
+	 * Returns the offset (mm) of the beam centre at a target per mrad of tilt of the optic at an index.
+	 */
+	public double getOffsetPerTilt(int target, int index) {
+		return sensitivities[target][4 * index + 2];
+	}
+
+	/*
+	 * Returns the angle (mrad) of the beam centre at a target per mrad of tilt of the optic at an index.
+	 */
+	public double getAnglePerTilt(int target, int index) {
+		return sensitivities[target][4 * index + 3];
+	}
+
+	/*
+	 * Returns the index of the optic whose decentre, or tilt, moves the beam centre at a target furthest per unit,
+	 * or -1 if none moves it at all.
+	 */
+	public int getMostSensitive(int target, boolean tilt) {
+		double[] s = sensitivities[target];
+		int most = -1;
+		double largest = 0;
+		for (int i = tilt ? 2 : 0; i < s.length; i += 4) {
+			if (Math.abs(s[i]) > largest) {
+				largest = Math.abs(s[i]);
+				most = i / 4;
+			}
+		}
+		return most;
+	}
+
+
+	/* Instance variables */
+	private final double[] offsets; //mm
+	private final double[] angles; //mrad
+	private final double[][] sensitivities; //Per target, getOffsetPerDecentre to getAnglePerTilt for each optic
+
+	/* Constants */
+	private static final double MRAD_PER_RAD = 1000;
+
+}
@@ -0,0 +1,50 @@
+import jdk.jfr.*;
+
+/*
+ * Java Flight Recorder event emitted for each refresh of the canvas. Records the state of the model that was
+ * drawn and where the time went, so a slow bench can be recorded rather than guessed at.
+ */
+@Name("GaussianWorkbench.Refresh")
+@Label("Canvas Refresh")
+@Category("Gaussian Workbench")
+@Description("One refresh of the workbench canvas")
+public class RefreshEvent extends Event {
+
+	@Label("Model Version")
+	@Description("Number of propagations of the optics list so far")
+	long modelVersion;
+
+	@Label("Element Count")
+	int elementCount;
+
+	@Label("Sample Count")
+	@Description("Number of points at which the beam was sampled")
+	int sampleCount;
+
+	@Label("Requests Coalesced")
+	@Description("Number of refresh requests served by this refresh")
+	int requestsCoalesced;
+
+	@Label("Propagation Time")
+	@Description("Time spent in propagateABCDMatrices since the previous refresh")
+	@Timespan(Timespan.NANOSECONDS)
+	long propagationTime;
+
+	@Label("Draw Beams Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long drawBeamsTime;
+
+	@Label("Draw Overlays Time")
+	@Description("Time spent on the other beams drawn over the main ones and on the analyses of the beam")
+	@Timespan(Timespan.NANOSECONDS)
+	long drawOverlaysTime;
+
+	@Label("Draw Optics Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long drawOpticsTime;
+
+	@Label("Draw Optics Labels Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long drawOpticsLabelsTime;
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Eigenmode of an optical resonator, unfolded so that the optics from the source to the last optic make up one
+ * round trip and the plane just past the last optic is the source plane again. A two mirror cavity, for example,
+ * is a lens of focal length R/2 for each mirror: source at the first mirror, the second mirror one spacing
+ * along, and the first mirror again one spacing further.
+ */
+public class Resonator {
+
+	/*
+	 * Returns the stability parameter (A + D) / 2 of a round trip matrix. The resonator is stable when this lies
+	 * strictly between -1 and 1.
+	 */
+	public static double stability(double a, double d) {
+		return (a + d) / 2;
+	}
+
+	/*
+	 * Returns whether a round trip matrix supports a stable mode.
+	 */
+	public static boolean isStable(ABCDMatrix roundTrip) {
+		double[] m = roundTrip.baseArray();
+		return m[1] != 0 && Math.abs(stability(m[0], m[3])) < 1;
+	}
+
+	/*
+	 * Returns the q that reproduces itself after a round trip, or null if the resonator is unstable. From
+	 * 1/q = (D - A) / 2B - i sqrt(1 - m^2) / |B|, with m = (A + D) / 2, taking the root that is a confined beam.
+	 */
+	public static Complex eigenmode(ABCDMatrix roundTrip) {
+		if (! isStable(roundTrip)) return null;
+		double[] m = roundTrip.baseArray();
+		double stability = stability(m[0], m[3]);
+		Complex qInverse = new Complex((m[3] - m[0]) / (2 * m[1]),
+				-Math.sqrt(1 - stability * stability) / Math.abs(m[1]));
+		return qInverse.reciprocal();
+	}
+
+}
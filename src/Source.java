@@ -42,6 +42,13 @@ public class Source implements OpticsHardware {
 		return ABCDMatrix.identity();
 	}
 	
+	/*
+	 * Returns the ABCD matrix at a wavelength, which is the identity at every wavelength.
+	 */
+	public ABCDMatrix ABCD(double wavelength) {
+		return ABCDMatrix.identity();
+	}
+	
 	/*
 	 * Has no effect because you cannot rename the source. Need to retain for compatibility
 	 * with interface.
@@ -69,6 +76,20 @@ public class Source implements OpticsHardware {
 		if (selected) throw new IllegalArgumentException("Source cannot be selected");
 	}
 	
+	/*
+	 * Returns a copy of the source.
+	 */
+	public OpticsHardware copy() {
+		return new Source(position);
+	}
+	
+	/*
+	 * Returns whether another optic is a source at the same position.
+	 */
+	public boolean matches(OpticsHardware o) {
+		return o != null && o.getClass() == Source.class && position == o.getPosition();
+	}
+	
 	/*
 	 * Compares the position of two optics. Does not work with .equals()!
 	 */
@@ -0,0 +1,278 @@
+import java.util.*;
+
+/*
+ * Class representing a named block of fixed lenses, such as a telescope or a relay pair, that is placed and moved
+ * as one optic. The block runs from its entrance, at its position, to its exit at the last lens. To the rest of
+ * the bench it is a single matrix at its entrance: the fused matrix of the lenses and the spaces between them,
+ * preceded by free space of minus its length, so that the beam leaving it is exact from the exit onwards. The
+ * fused matrices are cached, and only recomputed when a lens of the block changes or at a new wavelength.
+ */
+public class Subassembly implements ExtendedOptic {
+
+	/*
+	 * Constructor. The lenses are copied, and their positions taken to be offsets (mm) from the entrance. The first
+	 * lens must be at offset 0 and the rest in ascending order.
+	 */
+	public Subassembly(double position, List<Lens> lenses, String name) {
+		this.position = position;
+		this.name = name;
+		for (Lens lens: lenses) this.lenses.add((Lens) lens.copy());
+	}
+
+	/*
+	 * Returns a block of lenses at absolute positions, with its entrance at the first lens.
+	 */
+	public static Subassembly group(List<Lens> lenses, String name) {
+		double entrance = lenses.get(0).getPosition();
+		ArrayList<Lens> relative = new ArrayList<Lens>();
+		for (Lens lens: lenses) {
+			Lens copy = (Lens) lens.copy();
+			copy.setPosition(lens.getPosition() - entrance);
+			relative.add(copy);
+		}
+		return new Subassembly(entrance, relative, name);
+	}
+
+	/*
+	 * Returns the type.
+	 */
+	public String getType() {
+		return "Subassembly";
+	}
+
+	/*
+	 * Returns the position of the entrance.
+	 */
+	public double getPosition() {
+		return position;
+	}
+
+	/*
+	 * Sets the position of the entrance. Moving the block does not change its matrices.
+	 */
+	public void setPosition(double position) {
+		this.position = position;
+	}
+
+	/*
+	 * Returns the distance (mm) from the entrance to the exit.
+	 */
+	public synchronized double getLength() {
+		return lenses.get(lenses.size() - 1).getPosition();
+	}
+
+	/*
+	 * Returns the number of lenses in the block.
+	 */
+	public synchronized int getLensCount() {
+		return lenses.size();
+	}
+
+	/*
+	 * Returns a copy of a lens of the block, at its offset from the entrance.
+	 */
+	public synchronized Lens getLens(int index) {
+		return (Lens) lenses.get(index).copy();
+	}
+
+	/*
+	 * Returns copies of the lenses of the block at their absolute positions on the bench.
+	 */
+	public synchronized List<Lens> getLensesOnBench() {
+		ArrayList<Lens> onBench = new ArrayList<Lens>();
+		for (Lens lens: lenses) {
+			Lens copy = (Lens) lens.copy();
+			copy.setPosition(position + lens.getPosition());
+			onBench.add(copy);
+		}
+		return onBench;
+	}
+
+	/*
+	 * Changes the offset (mm) and focal length of a lens of the block, invalidating the cached matrices. The offset
+	 * of the first lens stays 0.
+	 */
+	public synchronized void setLens(int index, double offset, double focalLength) {
+		Lens lens = lenses.get(index);
+		if (index > 0) lens.setPosition(offset);
+		lens.setFocalLength(focalLength);
+		nominalMatrix = null;
+		chromaticMatrices.clear();
+	}
+
+	/*
+	 * Returns the matrix of the block at its entrance, from the cache if possible.
+	 */
+	public synchronized ABCDMatrix ABCD() {
+		if (nominalMatrix == null) nominalMatrix = fuse(Double.NaN);
+		return nominalMatrix;
+	}
+
+	/*
+	 * Returns the matrix of the block at its entrance at a wavelength in nm, from the cache if possible. The cache
+	 * holds one matrix per wavelength, so that the several wavelengths of chromatic mode all stay cached; it is
+	 * emptied if it grows past a bound.
+	 */
+	public synchronized ABCDMatrix ABCD(double wavelength) {
+		ABCDMatrix m = chromaticMatrices.get(wavelength);
+		if (m == null) {
+			if (chromaticMatrices.size() >= MAX_CACHED_WAVELENGTHS) chromaticMatrices.clear();
+			m = fuse(wavelength);
+			chromaticMatrices.put(wavelength, m);
+		}
+		return m;
+	}
+
+	/*
+	 * Multiplies out the matrix of the block at its entrance, nominal if the wavelength is NaN.
+	 */
+	private ABCDMatrix fuse(double wavelength) {
+		ABCDMatrix m = ABCDMatrix.identity();
+		double previous = 0;
+		for (Lens lens: lenses) {
+			m = ABCDMatrix.freeSpace(lens.getPosition() - previous).times(m);
+			m = (Double.isNaN(wavelength) ? lens.ABCD() : lens.ABCD(wavelength)).times(m);
+			previous = lens.getPosition();
+		}
+		return ABCDMatrix.freeSpace(-previous).times(m);
+	}
+
+	/*
+	 * Computes the beam radius at positions inside the block, from a chain of its lenses on the bench that starts
+	 * with a marker at the entrance.
+	 */
+	public void sampleInterior(double[] samplePositions, Complex q_arriving, double wavelength, double[] radiusOut) {
+		ArrayList<OpticsHardware> interior = new ArrayList<OpticsHardware>();
+		interior.add(new POI(position, name));
+		interior.addAll(getLensesOnBench());
+		new OpticsChain(interior, wavelength).sample(samplePositions, q_arriving, wavelength, radiusOut, null, null);
+		double exit = position + getLength();
+		for (int s = 0; s < samplePositions.length; s++) {
+			if (samplePositions[s] > exit) radiusOut[s] = Double.NaN;
+		}
+	}
+
+	/*
+	 * Returns the Gouy phase through the lenses and the spaces between them, summed a space at a time, then back over
+	 * free space of the length of the block.
+	 */
+	public synchronized double getGouyPhase(Complex q_arriving, double wavelength) {
+		double qr = q_arriving.real();
+		double qi = q_arriving.imag();
+		double gouy = 0;
+		double previous = 0;
+		for (Lens lens: lenses) {
+			double gap = lens.getPosition() - previous;
+			gouy += OpticsChain.gouyPhase(1, gap, qr, qi);
+			Complex q = (Double.isNaN(wavelength) ? lens.ABCD() : lens.ABCD(wavelength))
+					.transformQ(new Complex(qr + gap, qi));
+			qr = q.real();
+			qi = q.imag();
+			previous = lens.getPosition();
+		}
+		return gouy + OpticsChain.gouyPhase(1, -previous, qr, qi);
+	}
+
+	/*
+	 * Returns the positions of the lenses between two positions, skipping any closer than the minimum spacing to
+	 * the last one kept.
+	 */
+	public synchronized double[] getLensPositions(double from, double to, double minSpacing) {
+		double[] positions = new double[lenses.size()];
+		int count = 0;
+		for (Lens lens: lenses) {
+			double z = position + lens.getPosition();
+			if (z < from || z > to || (count > 0 && z - positions[count - 1] < minSpacing)) continue;
+			positions[count++] = z;
+		}
+		return Arrays.copyOf(positions, count);
+	}
+
+	/*
+	 * Returns whether the block is drawn with its lenses showing.
+	 */
+	public boolean isExpanded() {
+		return expanded;
+	}
+
+	/*
+	 * Sets whether the block is drawn with its lenses showing.
+	 */
+	public void setExpanded(boolean expanded) {
+		this.expanded = expanded;
+	}
+
+	/*
+	 * Returns the name of the block.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/*
+	 * Sets the name of the block.
+	 */
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/*
+	 * Returns whether the block is selected.
+	 */
+	public boolean isSelected() {
+		return selected;
+	}
+
+	/*
+	 * Sets whether the block is selected.
+	 */
+	public void setSelected(boolean selected) {
+		this.selected = selected;
+	}
+
+	/*
+	 * Returns a copy of the block, drawn the same way.
+	 */
+	public synchronized OpticsHardware copy() {
+		Subassembly s = new Subassembly(position, lenses, name);
+		s.expanded = expanded;
+		return s;
+	}
+
+	/*
+	 * Returns whether another optic is a block with the same name, position and lenses. Ignores how it is drawn.
+	 */
+	public boolean matches(OpticsHardware o) {
+		if (o == null || o.getClass() != Subassembly.class) return false;
+		Subassembly s = (Subassembly) o;
+		int count = getLensCount();
+		if (position != s.getPosition() || ! name.equals(s.getName()) || count != s.getLensCount()) return false;
+		for (int i = 0; i < count; i++) {
+			if (! getLens(i).matches(s.getLens(i))) return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Compares the position of two optics. Does not work with .equals()!
+	 */
+	public int compareTo(OpticsHardware o) {
+		if (position == o.getPosition()) return 0;
+		if (position > o.getPosition()) return 1;
+		return -1;
+	}
+
+
+	/* Instance variables */
+	private volatile double position;
+	private String name;
+	private boolean selected = false;
+	private volatile boolean expanded = false;
+	private final ArrayList<Lens> lenses = new ArrayList<Lens>(); //Positions are offsets from the entrance
+	private ABCDMatrix nominalMatrix = null; //Cached, or null if a lens has changed
+	private final HashMap<Double, ABCDMatrix> chromaticMatrices = new HashMap<Double, ABCDMatrix>(); //By nm
+
+	/* Constants */
+	private static final int MAX_CACHED_WAVELENGTHS = 64;
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Class representing a target mode, such as the mode of a fiber or cavity, at a plane. Like a POI it has no effect
+ * on the beam; it reports how efficiently the beam arriving at the plane couples into the target.
+ */
+public class TargetMode extends POI {
+
+	/*
+	 * Constructor. targetWaist is the 1/e^2 radius (mm) of the target's waist, and targetWaistOffset (mm) is where
+	 * that waist lies relative to the plane, positive if downstream.
+	 */
+	public TargetMode(double position, double targetWaist, double targetWaistOffset, String name) {
+		super(position, name);
+		this.targetWaist = targetWaist;
+		this.targetWaistOffset = targetWaistOffset;
+	}
+
+	/*
+	 * Returns the type.
+	 */
+	public String getType() {
+		return "TargetMode";
+	}
+
+	/*
+	 * Returns the 1/e^2 radius (mm) of the target's waist.
+	 */
+	public double getTargetWaist() {
+		return targetWaist;
+	}
+
+	/*
+	 * Sets the 1/e^2 radius (mm) of the target's waist.
+	 */
+	public void setTargetWaist(double targetWaist) {
+		this.targetWaist = targetWaist;
+	}
+
+	/*
+	 * Returns the position (mm) of the target's waist relative to the plane.
+	 */
+	public double getTargetWaistOffset() {
+		return targetWaistOffset;
+	}
+
+	/*
+	 * Sets the position (mm) of the target's waist relative to the plane.
+	 */
+	public void setTargetWaistOffset(double targetWaistOffset) {
+		this.targetWaistOffset = targetWaistOffset;
+	}
+
+	/*
+	 * Returns the q of the target mode at the plane, for a wavelength in nm.
+	 */
+	public Complex getTargetQ(double wavelength) {
+		return new Complex(-targetWaistOffset, Math.PI * targetWaist * targetWaist / (wavelength * Math.pow(10, -6)));
+	}
+
+	/*
+	 * Returns a copy of the target mode.
+	 */
+	public OpticsHardware copy() {
+		return new TargetMode(getPosition(), targetWaist, targetWaistOffset, getName());
+	}
+
+	/*
+	 * Returns whether another optic is a target mode with the same name and parameters.
+	 */
+	public boolean matches(OpticsHardware o) {
+		if (o == null || o.getClass() != TargetMode.class) return false;
+		TargetMode t = (TargetMode) o;
+		return getPosition() == t.getPosition() && getName().equals(t.getName()) && targetWaist == t.targetWaist
+				&& targetWaistOffset == t.targetWaistOffset;
+	}
+
+
+	//Static methods
+
+	/*
+	 * Returns the fraction of power coupled between two Gaussian beams of the same wavelength, from their q at the
+	 * same plane: 4 Im(q1) Im(q2) / |q1 - conj(q2)|^2. Equal to 1 only when the beams are identical.
+	 */
+	public static double couplingEfficiency(Complex q1, Complex q2) {
+		return couplingEfficiency(q1.real(), q1.imag(), q2.real(), q2.imag());
+	}
+
+	/*
+	 * Returns the coupling efficiency from the real and imaginary parts of the two q, without allocating.
+	 */
+	public static double couplingEfficiency(double qr1, double qi1, double qr2, double qi2) {
+		double dr = qr1 - qr2;
+		double di = qi1 + qi2;
+		return 4 * qi1 * qi2 / (dr * dr + di * di);
+	}
+
+
+	/* Instance variables */
+	private volatile double targetWaist;
+	private volatile double targetWaistOffset;
+
+}
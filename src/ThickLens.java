@@ -0,0 +1,224 @@
+/*
+ * Class representing a thick lens: two spherical surfaces of given radii with glass of a given index and thickness
+ * between them, in air. Radii (mm) are positive when the centre of curvature is after the surface, and infinite for a
+ * flat surface. The position is that of the front vertex and the length is the thickness. Matrices use reduced
+ * angles, n times the angle, so the beam inside the glass has q over n in place of q. They are made when the shape
+ * changes and kept, rather than multiplied out on every call. Dispersion is not modelled.
+ */
+public class ThickLens implements ThickOptic {
+
+	/*
+	 * Constructor.
+	 */
+	public ThickLens(double position, double frontRadius, double backRadius, double thickness, double index,
+			String name) {
+		this.position = position;
+		this.name = name;
+		setShape(frontRadius, backRadius, thickness, index);
+	}
+
+	/*
+	 * Returns the type.
+	 */
+	public String getType() {
+		return "Thick Lens";
+	}
+
+	/*
+	 * Returns the position of the front vertex.
+	 */
+	public double getPosition() {
+		return position;
+	}
+
+	/*
+	 * Sets the position of the front vertex. Moving the lens does not change its matrices.
+	 */
+	public void setPosition(double position) {
+		this.position = position;
+	}
+
+	/*
+	 * Returns the radius (mm) of the front surface.
+	 */
+	public double getFrontRadius() {
+		return frontRadius;
+	}
+
+	/*
+	 * Returns the radius (mm) of the back surface.
+	 */
+	public double getBackRadius() {
+		return backRadius;
+	}
+
+	/*
+	 * Returns the thickness (mm) at the axis.
+	 */
+	public double getThickness() {
+		return thickness;
+	}
+
+	/*
+	 * Returns the refractive index of the glass.
+	 */
+	public double getIndex() {
+		return index;
+	}
+
+	/*
+	 * Changes the shape of the lens and makes its matrices anew.
+	 */
+	public synchronized void setShape(double frontRadius, double backRadius, double thickness, double index) {
+		this.frontRadius = frontRadius;
+		this.backRadius = backRadius;
+		this.thickness = thickness;
+		this.index = index;
+		ABCDMatrix front = new ABCDMatrix(1, 0, -(index - 1) / frontRadius, 1);
+		ABCDMatrix back = new ABCDMatrix(1, 0, -(1 - index) / backRadius, 1);
+		vertexMatrix = back.times(ABCDMatrix.freeSpace(thickness / index)).times(front);
+		matrix = ABCDMatrix.freeSpace(-thickness).times(vertexMatrix);
+	}
+
+	/*
+	 * Returns the distance (mm) from the entrance to the exit, the thickness.
+	 */
+	public double getLength() {
+		return thickness;
+	}
+
+	/*
+	 * Returns the matrix of the lens at its entrance: the matrix from vertex to vertex, preceded by free space of
+	 * minus the thickness.
+	 */
+	public ABCDMatrix ABCD() {
+		return matrix;
+	}
+
+	/*
+	 * Returns the matrix of the lens at its entrance, the same at every wavelength.
+	 */
+	public ABCDMatrix ABCD(double wavelength) {
+		return matrix;
+	}
+
+	/*
+	 * Returns the effective focal length (mm), measured from the principal planes.
+	 */
+	public double getFocalLength() {
+		return -1 / vertexMatrix.baseArray()[2];
+	}
+
+	/*
+	 * Returns the position of the front principal plane, from which the focal length is measured on the way in.
+	 */
+	public double getFrontPrincipalPlane() {
+		double[] m = vertexMatrix.baseArray();
+		return position + (m[3] - 1) / m[2];
+	}
+
+	/*
+	 * Returns the position of the back principal plane, from which the focal length is measured on the way out.
+	 */
+	public double getBackPrincipalPlane() {
+		double[] m = vertexMatrix.baseArray();
+		return position + thickness + (1 - m[0]) / m[2];
+	}
+
+	/*
+	 * Returns the Gouy phase from vertex to vertex, then back over free space of the thickness. Neither reaches pi.
+	 */
+	public double getGouyPhase(Complex q_arriving, double wavelength) {
+		ABCDMatrix through = vertexMatrix;
+		double[] m = through.baseArray();
+		Complex q = through.transformQ(q_arriving);
+		return OpticsChain.gouyPhase(m[0], m[1], q_arriving.real(), q_arriving.imag())
+				+ OpticsChain.gouyPhase(1, -thickness, q.real(), q.imag());
+	}
+
+	/*
+	 * Computes the beam radius inside the glass, where q over n goes up by the distance over n.
+	 */
+	public void sampleInterior(double[] samplePositions, Complex q_arriving, double wavelength, double[] radiusOut) {
+		double entrance = position;
+		double n = index;
+		Complex q = new ABCDMatrix(1, 0, -(n - 1) / frontRadius, 1).transformQ(q_arriving);
+		double lambda = wavelength * Math.pow(10, -6); //mm
+		for (int s = 0; s < samplePositions.length; s++) {
+			double z = samplePositions[s] - entrance;
+			if (z < 0 || z > thickness) {
+				radiusOut[s] = Double.NaN;
+				continue;
+			}
+			double qr = q.real() + z / n;
+			radiusOut[s] = Math.sqrt(lambda * (qr * qr + q.imag() * q.imag()) / (Math.PI * q.imag()));
+		}
+	}
+
+	/*
+	 * Returns the name of the lens.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/*
+	 * Sets the name of the lens.
+	 */
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/*
+	 * Returns whether the lens is selected.
+	 */
+	public boolean isSelected() {
+		return selected;
+	}
+
+	/*
+	 * Sets whether the lens is selected.
+	 */
+	public void setSelected(boolean selected) {
+		this.selected = selected;
+	}
+
+	/*
+	 * Returns a copy of the lens.
+	 */
+	public synchronized OpticsHardware copy() {
+		return new ThickLens(position, frontRadius, backRadius, thickness, index, name);
+	}
+
+	/*
+	 * Returns whether another optic is a thick lens with the same name, position and shape.
+	 */
+	public boolean matches(OpticsHardware o) {
+		if (o == null || o.getClass() != ThickLens.class) return false;
+		ThickLens lens = (ThickLens) o;
+		return position == lens.position && name.equals(lens.name) && frontRadius == lens.frontRadius
+				&& backRadius == lens.backRadius && thickness == lens.thickness && index == lens.index;
+	}
+
+	/*
+	 * Compares the position of two optics. Does not work with .equals()!
+	 */
+	public int compareTo(OpticsHardware o) {
+		if (position == o.getPosition()) return 0;
+		if (position > o.getPosition()) return 1;
+		return -1;
+	}
+
+
+	/* Instance variables */
+	private volatile double position;
+	private String name;
+	private boolean selected = false;
+	private volatile double frontRadius; //mm
+	private volatile double backRadius; //mm
+	private volatile double thickness; //mm
+	private volatile double index;
+	private volatile ABCDMatrix vertexMatrix; //From the front vertex to the back vertex
+	private volatile ABCDMatrix matrix; //At the entrance, as the bench applies it
+
+}
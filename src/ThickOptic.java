@@ -0,0 +1,26 @@
+/*
+ * Interface implemented by optics that span a length of the bench, such as thick lenses, slabs and blocks of lenses.
+ * Like any optic, one acts on the beam as a single matrix at its position, its entrance, and the beam it gives is
+ * exact from its exit, at its position plus its length, onwards. The beam inside is found separately.
+ */
+public interface ThickOptic extends OpticsHardware {
+	
+	/*
+	 * Returns the distance (mm) from the entrance to the exit.
+	 */
+	public double getLength();
+	
+	/*
+	 * Computes the beam radius at each of an ascending array of positions inside the optic, for a beam with q just
+	 * before the entrance of q_arriving. Positions outside the optic are set to NaN. wavelength is in nm.
+	 */
+	public void sampleInterior(double[] samplePositions, Complex q_arriving, double wavelength, double[] radiusOut);
+	
+	/*
+	 * Returns the Gouy phase (rad) picked up by a beam with q just before the entrance of q_arriving as the optic acts
+	 * on it at its entrance: through the optic to its exit, then back over free space of minus its length. Unlike
+	 * -arg(A + B/q) of the matrix, it is not reduced to within pi, so it counts every pass of a long relay.
+	 * wavelength is in nm, or NaN for the matrix ABCD() gives.
+	 */
+	public double getGouyPhase(Complex q_arriving, double wavelength);
+}
@@ -0,0 +1,85 @@
+/*
+ * Immutable snapshot of the statistics of a LatencyTimer. Exposed through JMX as composite data, so each getter
+ * appears as an item in JConsole or JMC.
+ */
+public class TimerStats {
+
+	/*
+	 * Constructs a snapshot. Times are in nanoseconds.
+	 */
+	public TimerStats(long count, long totalNanos, long maxNanos, long p50Nanos, long p90Nanos, long p99Nanos) {
+		this.count = count;
+		this.totalNanos = totalNanos;
+		this.maxNanos = maxNanos;
+		this.p50Nanos = p50Nanos;
+		this.p90Nanos = p90Nanos;
+		this.p99Nanos = p99Nanos;
+	}
+
+	/*
+	 * Returns the number of calls recorded.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/*
+	 * Returns the total time spent in the operation, in milliseconds.
+	 */
+	public double getTotalMillis() {
+		return totalNanos / 1e6;
+	}
+
+	/*
+	 * Returns the mean latency in microseconds, or 0 if there are no calls.
+	 */
+	public double getMeanMicros() {
+		return (count == 0) ? 0 : totalNanos / 1e3 / count;
+	}
+
+	/*
+	 * Returns the maximum latency in microseconds.
+	 */
+	public double getMaxMicros() {
+		return maxNanos / 1e3;
+	}
+
+	/*
+	 * Returns the median latency in microseconds, rounded up to a power of two nanoseconds.
+	 */
+	public double getP50Micros() {
+		return p50Nanos / 1e3;
+	}
+
+	/*
+	 * Returns the 90th percentile latency in microseconds, rounded up to a power of two nanoseconds.
+	 */
+	public double getP90Micros() {
+		return p90Nanos / 1e3;
+	}
+
+	/*
+	 * Returns the 99th percentile latency in microseconds, rounded up to a power of two nanoseconds.
+	 */
+	public double getP99Micros() {
+		return p99Nanos / 1e3;
+	}
+
+	/*
+	 * Returns a string summarizing the snapshot.
+	 */
+	public String toString() {
+		return "count: " + count + ", mean: " + getMeanMicros() + " us, p99: " + getP99Micros() + " us, max: "
+				+ getMaxMicros() + " us";
+	}
+
+
+	/* Instance variables */
+	private final long count;
+	private final long totalNanos;
+	private final long maxNanos;
+	private final long p50Nanos;
+	private final long p90Nanos;
+	private final long p99Nanos;
+
+}
@@ -72,7 +72,31 @@ public class TunableLens extends Lens {
 	 * Sets the current focal length of the lens, if within range allowed by lens.
 	 */
 	public void setFocalLength(double focalLength) {
-		this.focalLength = focalLength;
+		super.setFocalLength(focalLength);
+	}
+	
+	
+	/*
+	 * Returns a copy of the tunable lens at its current focal length.
+	 */
+	public OpticsHardware copy() {
+		TunableLens lens = new TunableLens(position, minFocalLength, maxFocalLength, focalLength, name);
+		lens.setGlass(glass, designWavelength);
+		lens.setClearAperture(clearAperture);
+		lens.setDecentre(decentre);
+		lens.setTilt(tilt);
+		return lens;
+	}
+	
+	/*
+	 * Returns whether another optic is a tunable lens with the same name and parameters.
+	 */
+	public boolean matches(OpticsHardware o) {
+		if (o == null || o.getClass() != TunableLens.class) return false;
+		TunableLens lens = (TunableLens) o;
+		return position == lens.position && focalLength == lens.focalLength && name.equals(lens.name)
+				&& minFocalLength == lens.minFocalLength && maxFocalLength == lens.maxFocalLength && sameGlass(lens)
+				&& clearAperture == lens.clearAperture && sameAlignment(lens);
 	}
 	
 	
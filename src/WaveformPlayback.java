@@ -0,0 +1,242 @@
+import java.io.*;
+import java.util.*;
+import java.util.stream.*;
+
+/*
+ * A sampled focal power waveform driving one or more tunable lenses, and the trajectory of the waist past the
+ * last optic and the Gouy phase at the last optic that it produces. The fixed parts of the system between driven
+ * lenses are collapsed into single matrices once, so each sample costs a handful of primitive operations per driven
+ * lens.
+ */
+public class WaveformPlayback {
+
+	/*
+	 * Constructs a playback and computes the waist trajectory for every sample.
+	 * chain: the system, with the source first. lensIndices: ascending indices into the chain of the driven lenses.
+	 * focalPowers: focalPowers[j][s] is the focal power (diopters) of driven lens j at sample s.
+	 * sampleRate: samples per second. q_in: q at the source. wavelength: in nm.
+	 */
+	public WaveformPlayback(OpticsChain chain, int[] lensIndices, double[][] focalPowers, double sampleRate,
+			Complex q_in, double wavelength) {
+		if (lensIndices.length != focalPowers.length) throw new IllegalArgumentException("One waveform per lens");
+		this.lensIndices = lensIndices.clone();
+		this.focalPowers = focalPowers;
+		this.sampleRate = sampleRate;
+		sampleCount = (focalPowers.length == 0) ? 0 : focalPowers[0].length;
+		for (double[] waveform: focalPowers) {
+			if (waveform.length != sampleCount) throw new IllegalArgumentException("Waveforms differ in length");
+		}
+		waistPosition = new double[sampleCount];
+		waistRadius = new double[sampleCount];
+		gouyPhase = new double[sampleCount];
+		computeTrajectory(chain, q_in, wavelength);
+	}
+
+	/*
+	 * Returns the number of samples.
+	 */
+	public int getSampleCount() {
+		return sampleCount;
+	}
+
+	/*
+	 * Returns the sample rate in samples per second.
+	 */
+	public double getSampleRate() {
+		return sampleRate;
+	}
+
+	/*
+	 * Returns the number of driven lenses.
+	 */
+	public int getLensCount() {
+		return lensIndices.length;
+	}
+
+	/*
+	 * Returns the focal power (diopters) of a driven lens at a sample.
+	 */
+	public double getFocalPower(int lens, int sample) {
+		return focalPowers[lens][sample];
+	}
+
+	/*
+	 * Returns the position (mm) of the waist past the last optic at a sample. May lie before the last optic, in
+	 * which case the waist is virtual.
+	 */
+	public double getWaistPosition(int sample) {
+		return waistPosition[sample];
+	}
+
+	/*
+	 * Returns the 1/e^2 radius (mm) of the waist past the last optic at a sample.
+	 */
+	public double getWaistRadius(int sample) {
+		return waistRadius[sample];
+	}
+
+	/*
+	 * Returns the Gouy phase (radians) accumulated from the source to just past the last optic at a sample.
+	 */
+	public double getGouyPhase(int sample) {
+		return gouyPhase[sample];
+	}
+
+	/*
+	 * Writes the waveform and trajectory as CSV: time, focal power of each lens, waist position, waist radius,
+	 * Gouy phase at the last optic.
+	 */
+	public void writeCSV(PrintWriter wr, String[] lensNames) {
+		wr.print("time");
+		for (String name: lensNames) wr.print("," + name);
+		wr.println(",waist position,waist radius,gouy phase");
+		for (int s = 0; s < sampleCount; s++) {
+			wr.print(s / sampleRate);
+			for (int j = 0; j < lensIndices.length; j++) wr.print("," + focalPowers[j][s]);
+			wr.println("," + waistPosition[s] + "," + waistRadius[s] + "," + gouyPhase[s]);
+		}
+	}
+
+	/*
+	 * Collapses the fixed optics between driven lenses into matrices, then evaluates each sample. Large
+	 * waveforms are split across threads.
+	 *
+	 * A collapsed segment only gives its Gouy phase -arg(A + B/q) modulo 2 pi. Since q stays in the upper half
+	 * plane, A + B/q stays in a half plane and the missing multiple of 2 pi is the same for every sample, so it is
+	 * found once by tracing the first sample optic by optic.
+	 */
+	private void computeTrajectory(OpticsChain chain, Complex q_in, double wavelength) {
+		int k = lensIndices.length;
+		OpticsChain fixed = chain;
+		for (int index: lensIndices) fixed = fixed.withLens(index, Double.POSITIVE_INFINITY); //Identity
+		//segments[j] carries the beam up to driven lens j (j < k), or from the last driven lens to the end (j = k)
+		final double[] segments = new double[4 * (k + 1)];
+		int previous = 0;
+		for (int j = 0; j <= k; j++) {
+			int next = (j < k) ? lensIndices[j] : chain.size() - 1;
+			System.arraycopy(fixed.transfer(previous, next).baseArray(), 0, segments, 4 * j, 4);
+			previous = next;
+		}
+		final double qr0 = q_in.real();
+		final double qi0 = q_in.imag();
+		final double lastPosition = chain.getPosition(chain.size() - 1);
+		final double lambda = wavelength * Math.pow(10, -6); //mm
+		final double[] branchOffsets = new double[k + 1];
+		if (sampleCount > 0) {
+			OpticsChain first = chain; //The system at the 0th sample
+			for (int j = 0; j < k; j++) first = first.withLens(lensIndices[j], 1000.0 / focalPowers[j][0]);
+			int n = chain.size();
+			double[] qr = new double[n];
+			double[] qi = new double[n];
+			double[] gouy = new double[n];
+			first.trace(q_in, qr, qi, gouy);
+			previous = 0;
+			for (int j = 0; j <= k; j++) {
+				int next = (j < k) ? lensIndices[j] : n - 1;
+				int m = 4 * j;
+				double wrapped = OpticsChain.gouyPhase(segments[m], segments[m + 1], qr[previous], qi[previous]);
+				branchOffsets[j] = 2 * Math.PI * Math.rint((gouy[next] - gouy[previous] - wrapped) / (2 * Math.PI));
+				previous = next;
+			}
+		}
+		IntStream samples = IntStream.range(0, sampleCount);
+		if (sampleCount >= PARALLEL_THRESHOLD) samples = samples.parallel();
+		samples.forEach(s -> {
+			double qr = qr0;
+			double qi = qi0;
+			double gouy = 0;
+			for (int j = 0; j <= k; j++) {
+				if (j > 0) { //Thin lens of power P: 1/q -> 1/q - P, applied as q / (1 - P q)
+					double c = -focalPowers[j - 1][s] / 1000.0;
+					double dr = c * qr + 1;
+					double di = c * qi;
+					double denominator = dr * dr + di * di;
+					double nr = (qr * dr + qi * di) / denominator;
+					qi = (qi * dr - qr * di) / denominator;
+					qr = nr;
+				}
+				int m = 4 * j;
+				gouy += OpticsChain.gouyPhase(segments[m], segments[m + 1], qr, qi) + branchOffsets[j];
+				double nr = segments[m] * qr + segments[m + 1];
+				double ni = segments[m] * qi;
+				double dr = segments[m + 2] * qr + segments[m + 3];
+				double di = segments[m + 2] * qi;
+				double denominator = dr * dr + di * di;
+				qr = (nr * dr + ni * di) / denominator;
+				qi = (ni * dr - nr * di) / denominator;
+			}
+			waistPosition[s] = lastPosition - qr;
+			waistRadius[s] = Math.sqrt(lambda * qi / Math.PI);
+			gouyPhase[s] = gouy;
+		});
+	}
+
+
+	//Static methods
+
+	/*
+	 * Returns a sine waveform sweeping focal power between two values, starting at the midpoint.
+	 */
+	public static double[] sineWaveform(double minFocalPower, double maxFocalPower, double frequency,
+			double sampleRate, int sampleCount) {
+		double[] waveform = new double[sampleCount];
+		double mid = (minFocalPower + maxFocalPower) / 2.0;
+		double amplitude = (maxFocalPower - minFocalPower) / 2.0;
+		for (int s = 0; s < sampleCount; s++) {
+			waveform[s] = mid + amplitude * Math.sin(2 * Math.PI * frequency * s / sampleRate);
+		}
+		return waveform;
+	}
+
+	/*
+	 * Reads waveforms from a CSV file. The first line is a header naming the columns; the first column is time
+	 * in seconds and each other column holds the focal power (diopters) of the lens it names. Samples must be
+	 * evenly spaced in time. Returns the column names (excluding time) in names and the waveforms, one per column.
+	 * Files with more than maxSamples samples are refused.
+	 */
+	public static double[][] readCSV(BufferedReader rd, List<String> names, double[] sampleRateOut, int maxSamples)
+			throws IOException {
+		String header = rd.readLine();
+		if (header == null) throw new IOException("Empty waveform file");
+		String[] columns = header.split(",");
+		for (int i = 1; i < columns.length; i++) names.add(columns[i].trim());
+		ArrayList<double[]> rows = new ArrayList<double[]>();
+		String line;
+		while ((line = rd.readLine()) != null) {
+			if (line.trim().isEmpty()) continue;
+			String[] values = line.split(",");
+			if (values.length != columns.length) throw new IOException("Wrong number of columns: " + line);
+			double[] row = new double[values.length];
+			try {
+				for (int i = 0; i < values.length; i++) row[i] = Double.parseDouble(values[i].trim());
+			} catch (NumberFormatException ex) {
+				throw new IOException("Not a number: " + line);
+			}
+			rows.add(row);
+			if (rows.size() > maxSamples) throw new IOException("More than " + maxSamples + " samples");
+		}
+		if (rows.size() < 2) throw new IOException("Waveform needs at least two samples");
+		double duration = rows.get(rows.size() - 1)[0] - rows.get(0)[0];
+		if (duration <= 0) throw new IOException("Time must increase");
+		sampleRateOut[0] = (rows.size() - 1) / duration;
+		double[][] waveforms = new double[columns.length - 1][rows.size()];
+		for (int s = 0; s < rows.size(); s++) {
+			for (int j = 0; j < waveforms.length; j++) waveforms[j][s] = rows.get(s)[j + 1];
+		}
+		return waveforms;
+	}
+
+
+	/* Instance variables */
+	private final int[] lensIndices;
+	private final double[][] focalPowers;
+	private final double sampleRate;
+	private final int sampleCount;
+	private final double[] waistPosition;
+	private final double[] waistRadius;
+	private final double[] gouyPhase;
+
+	/* Constants */
+	private static final int PARALLEL_THRESHOLD = 10000; //Samples before the work is split across threads
+
+}
@@ -0,0 +1,124 @@
+import java.lang.management.*;
+import javax.management.*;
+
+/*
+ * Counters and latency histograms for the expensive operations of the workbench. Callers take a timestamp with
+ * start() and pass it to the timer's stop method when done; when recording is disabled, start() returns 0 and
+ * nothing is recorded, so the cost is one volatile read.
+ */
+public class WorkbenchMetrics implements WorkbenchMetricsMXBean {
+
+	/*
+	 * Registers the metrics with the platform MBean server. Returns whether registration succeeded.
+	 */
+	public boolean register() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+			return true;
+		} catch (JMException ex) {
+			return false; //Metrics are optional; e.g. a second workbench in the same JVM
+		}
+	}
+
+	/*
+	 * Returns a timestamp to pass to stop, or 0 if recording is disabled.
+	 */
+	public long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/*
+	 * Records the time since a timestamp returned by start against a timer.
+	 */
+	public void stop(LatencyTimer timer, long start) {
+		if (start != 0) timer.record(System.nanoTime() - start);
+	}
+
+	/*
+	 * Records a duration already measured by the caller against a timer, if recording is enabled.
+	 */
+	public void record(LatencyTimer timer, long nanos) {
+		if (enabled) timer.record(nanos);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public void reset() {
+		propagation.reset();
+		refresh.reset();
+		refreshRuler.reset();
+		refreshBeams.reset();
+		refreshOverlays.reset();
+		refreshOptics.reset();
+		refreshLabels.reset();
+		findWaist.reset();
+		save.reset();
+		open.reset();
+	}
+
+	public TimerStats getPropagation() {
+		return propagation.getStats();
+	}
+
+	public TimerStats getRefresh() {
+		return refresh.getStats();
+	}
+
+	public TimerStats getRefreshRuler() {
+		return refreshRuler.getStats();
+	}
+
+	public TimerStats getRefreshBeams() {
+		return refreshBeams.getStats();
+	}
+
+	public TimerStats getRefreshOverlays() {
+		return refreshOverlays.getStats();
+	}
+
+	public TimerStats getRefreshOptics() {
+		return refreshOptics.getStats();
+	}
+
+	public TimerStats getRefreshLabels() {
+		return refreshLabels.getStats();
+	}
+
+	public TimerStats getFindWaist() {
+		return findWaist.getStats();
+	}
+
+	public TimerStats getSave() {
+		return save.getStats();
+	}
+
+	public TimerStats getOpen() {
+		return open.getStats();
+	}
+
+
+	/* Timers, one per instrumented operation */
+	public final LatencyTimer propagation = new LatencyTimer();
+	public final LatencyTimer refresh = new LatencyTimer();
+	public final LatencyTimer refreshRuler = new LatencyTimer();
+	public final LatencyTimer refreshBeams = new LatencyTimer();
+	public final LatencyTimer refreshOverlays = new LatencyTimer();
+	public final LatencyTimer refreshOptics = new LatencyTimer();
+	public final LatencyTimer refreshLabels = new LatencyTimer();
+	public final LatencyTimer findWaist = new LatencyTimer();
+	public final LatencyTimer save = new LatencyTimer();
+	public final LatencyTimer open = new LatencyTimer();
+
+	/* Whether timings are recorded */
+	private volatile boolean enabled = true;
+
+	/* Name under which the metrics are registered */
+	public static final String OBJECT_NAME = "GaussianWorkbench:type=Metrics";
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Management interface for the timings of the workbench, registered with the platform MBean server under
+ * WorkbenchMetrics.OBJECT_NAME so it can be watched in JConsole or JMC.
+ */
+public interface WorkbenchMetricsMXBean {
+
+	/*
+	 * Returns whether timings are being recorded.
+	 */
+	public boolean isEnabled();
+
+	/*
+	 * Turns recording of timings on or off.
+	 */
+	public void setEnabled(boolean enabled);
+
+	/*
+	 * Clears all recorded timings.
+	 */
+	public void reset();
+
+	/* Timings of propagateABCDMatrices */
+	public TimerStats getPropagation();
+
+	/* Timings of a whole canvas refresh, and of its stages */
+	public TimerStats getRefresh();
+	public TimerStats getRefreshRuler();
+	public TimerStats getRefreshBeams();
+	public TimerStats getRefreshOverlays();
+	public TimerStats getRefreshOptics();
+	public TimerStats getRefreshLabels();
+
+	/* Timings of the waist search */
+	public TimerStats getFindWaist();
+
+	/* Timings of saving and opening files, excluding time spent in the file chooser */
+	public TimerStats getSave();
+	public TimerStats getOpen();
+
+}